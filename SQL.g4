@@ -5,22 +5,41 @@ statementList
 ;
 
 statement
-    : createStatement
+    : copyStatement
+    | createStatement
+    | createIndexStatement
     | dropStatement
+    | dropIndexStatement
     | insertStatement
     | updateStatement
     | deleteStatement
     | selectStatement
 ;
 
+copyStatement
+    : COPY tableName FROM STRING_LITERAL
+;
+
 createStatement
-    : CREATE TABLE tableName OPEN_PAR columnName columnType (COMMA columnName columnType)* CLOSE_PAR
+    : CREATE TABLE tableName OPEN_PAR columnDefinition (COMMA columnDefinition)* CLOSE_PAR
+;
+
+columnDefinition
+    : columnName columnType (PRIMARY KEY | UNIQUE)? // 约束靠哈希索引检查
+;
+
+createIndexStatement
+    : CREATE INDEX indexName ON tableName OPEN_PAR columnName CLOSE_PAR (USING indexType)? // 默认是 hash
 ;
 
 dropStatement
     : DROP TABLE tableName
 ;
 
+dropIndexStatement
+    : DROP INDEX indexName
+;
+
 insertStatement
     : INSERT INTO tableName (OPEN_PAR columnName (COMMA columnName)* CLOSE_PAR)?
     VALUES OPEN_PAR expr (COMMA expr)* CLOSE_PAR
@@ -114,6 +133,14 @@ tableName
     : IDENTIFIER
     ;
 
+indexName
+    : IDENTIFIER
+    ;
+
+indexType
+    : IDENTIFIER // hash、btree 或 bitmap
+    ;
+
 columnName
     : IDENTIFIER
     ;
@@ -145,6 +172,7 @@ AS: A S;
 ASC: A S C;
 BETWEEN: B E T W E E N;
 BY: B Y;
+COPY: C O P Y;
 CREATE: C R E A T E;
 DELETE: D E L E T E;
 DESC: D E S C;
@@ -156,12 +184,14 @@ FROM: F R O M;
 GROUP: G R O U P;
 HAVING: H A V I N G;
 IN: I N;
+INDEX: I N D E X;
 INNER: I N N E R;
 INSERT: I N S E R T;
 INT: I N T;
 INTO: I N T O;
 IS: I S;
 JOIN: J O I N;
+KEY: K E Y;
 LEFT: L E F T;
 LIKE: L I K E;
 LIMIT: L I M I T;
@@ -172,6 +202,7 @@ ON: O N;
 OR: O R;
 ORDER: O R D E R;
 OUTER: O U T E R;
+PRIMARY: P R I M A R Y;
 REGEXP: R E G E X P;
 RIGHT: R I G H T;
 SELECT: S E L E C T;
@@ -179,7 +210,9 @@ SET: S E T;
 STRING: S T R I N G;
 TABLE: T A B L E;
 TRUE: T R U E;
+UNIQUE: U N I Q U E;
 UPDATE: U P D A T E;
+USING: U S I N G;
 VALUES: V A L U E S;
 WHERE: W H E R E;
 
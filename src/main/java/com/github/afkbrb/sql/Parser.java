@@ -4,6 +4,7 @@ import com.github.afkbrb.sql.ast.expressions.*;
 import com.github.afkbrb.sql.ast.statements.*;
 import com.github.afkbrb.sql.ast.statements.SelectStatement.*;
 import com.github.afkbrb.sql.model.DataType;
+import com.github.afkbrb.sql.model.Index;
 import com.github.afkbrb.sql.utils.Pair;
 
 import java.util.ArrayList;
@@ -46,8 +47,11 @@ public class Parser {
     /**
      * <pre>
      * statement
-     *     : createStatement
+     *     : copyStatement
+     *     | createStatement
+     *     | createIndexStatement
      *     | dropStatement
+     *     | dropIndexStatement
      *     | insertStatement
      *     | updateStatement
      *     | deleteStatement
@@ -60,10 +64,12 @@ public class Parser {
     public Statement statement() throws SQLParseException {
         Token token = lexer.current();
         switch (token.getType()) {
+            case COPY:
+                return copyStatement();
             case CREATE:
-                return createStatement();
+                return lexer.peek().getType() == INDEX ? createIndexStatement() : createStatement();
             case DROP:
-                return dropStatement();
+                return lexer.peek().getType() == INDEX ? dropIndexStatement() : dropStatement();
             case INSERT:
                 return insertStatement();
             case SELECT:
@@ -73,7 +79,7 @@ public class Parser {
             case DELETE:
                 return deleteStatement();
             default:
-                throw new SQLParseException("expected CREATE/DROP/INSERT/SELECT/UPDATE/DELETE, but got " + token);
+                throw new SQLParseException("expected COPY/CREATE/DROP/INSERT/SELECT/UPDATE/DELETE, but got " + token);
         }
     }
 
@@ -81,10 +87,25 @@ public class Parser {
 
     //****************************************** statement *******************************************
 
+    /**
+     * <pre>
+     * copyStatement
+     *     : COPY tableName FROM STRING_LITERAL
+     * ;
+     * </pre>
+     */
+    public CopyStatement copyStatement() throws SQLParseException {
+        match(COPY);
+        String tableName = match(IDENTIFIER).getText();
+        match(FROM);
+        String filename = match(STRING_LITERAL).getText();
+        return new CopyStatement(tableName, filename);
+    }
+
     /**
      * <pre>
      * createTableStatement
-     *     : CREATE TABLE tableName OPEN_PAR columnName columnType (COMMA columnName columnType)* CLOSE_PAR
+     *     : CREATE TABLE tableName OPEN_PAR columnDefinition (COMMA columnDefinition)* CLOSE_PAR
      * ;
      * </pre>
      */
@@ -94,22 +115,68 @@ public class Parser {
         String tableName = match(IDENTIFIER).getText();
         List<CreateStatement.ColumnDefinition> columnDefinitionList = new ArrayList<>();
         match(OPEN_PAR);
-        String columnName = match(IDENTIFIER).getText();
-        DataType dataType = tokenTypeToDataType(matchAny(INT, DOUBLE, STRING).getType());
-        CreateStatement.ColumnDefinition columnDefinition = new CreateStatement.ColumnDefinition(columnName, dataType);
-        columnDefinitionList.add(columnDefinition);
+        columnDefinitionList.add(columnDefinition());
         while (lexer.currentType() == COMMA) {
             match(COMMA);
-            columnName = match(IDENTIFIER).getText();
-            dataType = tokenTypeToDataType(matchAny(INT, DOUBLE, STRING).getType());
-            columnDefinition = new CreateStatement.ColumnDefinition(columnName, dataType);
-            columnDefinitionList.add(columnDefinition);
+            columnDefinitionList.add(columnDefinition());
         }
         match(CLOSE_PAR);
 
         return new CreateStatement(tableName, columnDefinitionList);
     }
 
+    /**
+     * <pre>
+     * columnDefinition
+     *     : columnName columnType (PRIMARY KEY | UNIQUE)?
+     * ;
+     * </pre>
+     */
+    private CreateStatement.ColumnDefinition columnDefinition() throws SQLParseException {
+        String columnName = match(IDENTIFIER).getText();
+        DataType dataType = tokenTypeToDataType(matchAny(INT, DOUBLE, STRING).getType());
+        Index.Constraint constraint = Index.Constraint.NONE;
+        if (lexer.currentType() == PRIMARY) {
+            match(PRIMARY);
+            match(KEY);
+            constraint = Index.Constraint.PRIMARY_KEY;
+        } else if (lexer.currentType() == UNIQUE) {
+            match(UNIQUE);
+            constraint = Index.Constraint.UNIQUE;
+        }
+        return new CreateStatement.ColumnDefinition(columnName, dataType, constraint);
+    }
+
+    /**
+     * <pre>
+     * createIndexStatement
+     *     : CREATE INDEX indexName ON tableName OPEN_PAR columnName CLOSE_PAR (USING indexType)?
+     * ;
+     * </pre>
+     * 省略 USING 时创建哈希索引。
+     */
+    public CreateIndexStatement createIndexStatement() throws SQLParseException {
+        match(CREATE);
+        match(INDEX);
+        String indexName = match(IDENTIFIER).getText();
+        match(ON);
+        String tableName = match(IDENTIFIER).getText();
+        match(OPEN_PAR);
+        String columnName = match(IDENTIFIER).getText();
+        match(CLOSE_PAR);
+        Index.Type indexType = Index.Type.HASH;
+        if (lexer.currentType() == USING) {
+            match(USING);
+            Token token = match(IDENTIFIER);
+            try {
+                indexType = Index.Type.valueOf(token.getText().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new SQLParseException("unknown index type " + token.getText());
+            }
+        }
+        return new CreateIndexStatement(indexName, tableName, columnName, indexType);
+    }
+
     /**
      * <pre>
      * dropTableStatement
@@ -124,6 +191,20 @@ public class Parser {
         return new DropStatement(tableName);
     }
 
+    /**
+     * <pre>
+     * dropIndexStatement
+     *     : DROP INDEX indexName
+     * ;
+     * </pre>
+     */
+    public DropIndexStatement dropIndexStatement() throws SQLParseException {
+        match(DROP);
+        match(INDEX);
+        String indexName = match(IDENTIFIER).getText();
+        return new DropIndexStatement(indexName);
+    }
+
     /**
      * <pre>
      * insertStatement
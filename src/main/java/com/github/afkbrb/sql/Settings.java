@@ -0,0 +1,155 @@
+package com.github.afkbrb.sql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 执行相关的可调参数，可以在 Shell 中用 .set 修改。
+ */
+public class Settings {
+
+    // 哈希连接时右表最多的行数，超过的话改用排序合并连接
+    private int hashJoinMaxRows = 1_000_000;
+    // 外部排序时内存中最多缓存的行数，超过的话把排好序的一段写到临时文件中
+    private int sortBufferRows = 100_000;
+    // 外部排序时内存中缓存的行大约最多占用的兆字节数，与 sortBufferRows 先达到哪个就溢出
+    private int sortMemoryMb = 64;
+    // 直接扫描表时是否按批向量化求值过滤条件和投影
+    private boolean vectorized = true;
+    // 向量化求值时是否为表达式生成字节码，关闭时总是解释执行
+    private boolean codegen = true;
+    // 扫描较大的表时并行求值过滤条件和投影的线程数，为 1 时不并行
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private static final Settings instance = new Settings();
+
+    public static Settings getInstance() {
+        return instance;
+    }
+
+    public int getHashJoinMaxRows() {
+        return hashJoinMaxRows;
+    }
+
+    public void setHashJoinMaxRows(int hashJoinMaxRows) {
+        this.hashJoinMaxRows = requirePositive("hash_join_max_rows", hashJoinMaxRows);
+    }
+
+    public int getSortBufferRows() {
+        return sortBufferRows;
+    }
+
+    public void setSortBufferRows(int sortBufferRows) {
+        this.sortBufferRows = requirePositive("sort_buffer_rows", sortBufferRows);
+    }
+
+    public int getSortMemoryMb() {
+        return sortMemoryMb;
+    }
+
+    public void setSortMemoryMb(int sortMemoryMb) {
+        this.sortMemoryMb = requirePositive("sort_memory_mb", sortMemoryMb);
+    }
+
+    /**
+     * 外部排序的内存预算，单位为字节。
+     */
+    public long getSortMemoryBytes() {
+        return sortMemoryMb * 1024L * 1024L;
+    }
+
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    public void setVectorized(boolean vectorized) {
+        this.vectorized = vectorized;
+    }
+
+    public boolean isCodegen() {
+        return codegen;
+    }
+
+    public void setCodegen(boolean codegen) {
+        this.codegen = codegen;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = requirePositive("parallelism", parallelism);
+    }
+
+    /**
+     * 按名字修改参数，名字或值不合法时抛出 IllegalArgumentException。
+     */
+    public void set(String name, String value) {
+        switch (name.toLowerCase()) {
+            case "hash_join_max_rows":
+                setHashJoinMaxRows(parseInt(name, value));
+                break;
+            case "sort_buffer_rows":
+                setSortBufferRows(parseInt(name, value));
+                break;
+            case "sort_memory_mb":
+                setSortMemoryMb(parseInt(name, value));
+                break;
+            case "vectorized":
+                setVectorized(parseBoolean(name, value));
+                break;
+            case "codegen":
+                setCodegen(parseBoolean(name, value));
+                break;
+            case "parallelism":
+                setParallelism(parseInt(name, value));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown setting '" + name + "'");
+        }
+    }
+
+    /**
+     * 所有参数及其当前值，按名字排列。
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("hash_join_max_rows", String.valueOf(hashJoinMaxRows));
+        map.put("sort_buffer_rows", String.valueOf(sortBufferRows));
+        map.put("sort_memory_mb", String.valueOf(sortMemoryMb));
+        map.put("vectorized", vectorized ? "on" : "off");
+        map.put("codegen", codegen ? "on" : "off");
+        map.put("parallelism", String.valueOf(parallelism));
+        return map;
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("expected an integer value of '" + name + "', but got '" + value + "'");
+        }
+    }
+
+    private static boolean parseBoolean(String name, String value) {
+        switch (value.toLowerCase()) {
+            case "on":
+            case "true":
+                return true;
+            case "off":
+            case "false":
+                return false;
+            default:
+                throw new IllegalArgumentException("expected on or off as the value of '" + name + "', but got '" + value + "'");
+        }
+    }
+
+    private static int requirePositive(String name, int value) {
+        if (value <= 0) throw new IllegalArgumentException("'" + name + "' should be positive");
+        return value;
+    }
+
+    private Settings() {
+    }
+}
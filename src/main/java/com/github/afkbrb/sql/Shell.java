@@ -5,6 +5,8 @@ import com.github.afkbrb.sql.executors.*;
 import com.github.afkbrb.sql.model.Column;
 import com.github.afkbrb.sql.model.Row;
 import com.github.afkbrb.sql.model.Table;
+import com.github.afkbrb.sql.storage.ExternalSorter;
+import com.github.afkbrb.sql.storage.StorageFormat;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -54,6 +56,8 @@ public class Shell {
                 Statement statement = parser.statementList().get(0);
 
                 if (debug) System.out.println(statement);
+                long runCount = ExternalSorter.getTotalRunCount();
+                long spilledBytes = ExternalSorter.getTotalSpilledBytes();
 
                 if (statement instanceof SelectStatement) {
                     Table table = new SelectExecutor().doSelect((SelectStatement) statement);
@@ -66,13 +70,24 @@ public class Shell {
                     CreateExecutor.doCreate((CreateStatement) statement);
                 } else if (statement instanceof DropStatement) {
                     DropExecutor.doDrop((DropStatement) statement);
+                } else if (statement instanceof CreateIndexStatement) {
+                    IndexExecutor.doCreateIndex((CreateIndexStatement) statement);
+                } else if (statement instanceof DropIndexStatement) {
+                    IndexExecutor.doDropIndex((DropIndexStatement) statement);
                 } else if (statement instanceof InsertStatement) {
                     InsertExecutor.doInsert((InsertStatement) statement);
                 } else if (statement instanceof UpdateStatement) {
                     UpdateExecutor.doUpdate((UpdateStatement) statement);
+                } else if (statement instanceof CopyStatement) {
+                    int rowCount = CopyExecutor.doCopy((CopyStatement) statement);
+                    System.out.println("Copied " + rowCount + " row(s)");
                 } else {
                     DeleteExecutor.doDelete((DeleteStatement) statement);
                 }
+                if (ExternalSorter.getTotalRunCount() > runCount) {
+                    System.out.println("Sorting spilled " + (ExternalSorter.getTotalRunCount() - runCount) + " run(s), "
+                            + (ExternalSorter.getTotalSpilledBytes() - spilledBytes) + " byte(s) to disk");
+                }
             } catch (SQLParseException e) {
                 System.out.println("Syntax error: " + e.getMessage());
             } catch (SQLExecuteException e) {
@@ -84,6 +99,7 @@ public class Shell {
         }
 
         try {
+            TableManager.getInstance().close();
             reader.close();
         } catch (IOException e) {
             e.printStackTrace();
@@ -165,6 +181,33 @@ public class Shell {
                     source(split[1]);
                 }
                 break;
+            case ".checkpoint":
+                TableManager.getInstance().checkpoint();
+                break;
+            case ".format":
+                StorageFormat format = split.length < 2 ? null : StorageFormat.fromName(split[1]);
+                if (format == null) {
+                    System.out.println("Usage: .format <csv | binary> [table name]");
+                } else if (split.length < 3) {
+                    TableManager.getInstance().setDefaultFormat(format);
+                } else {
+                    TableManager.getInstance().setTableFormat(split[2], format);
+                }
+                break;
+            case ".import":
+                if (split.length < 3) {
+                    System.out.println("Usage: .import <csv file> <table name>");
+                } else {
+                    TableManager.getInstance().importTable(new File(trimQuotes(split[1])), split[2]);
+                }
+                break;
+            case ".export":
+                if (split.length < 3) {
+                    System.out.println("Usage: .export <table name> <csv file>");
+                } else {
+                    TableManager.getInstance().exportTable(split[1], new File(trimQuotes(split[2])));
+                }
+                break;
             case ".database":
             case ".db":
                 if (split.length < 2) {
@@ -174,6 +217,19 @@ public class Shell {
                     TableManager.getInstance().loadTables();
                 }
                 break;
+            case ".set":
+                if (split.length == 1) {
+                    Settings.getInstance().toMap().forEach((name, value) -> System.out.println(name + " = " + value));
+                } else if (split.length != 3) {
+                    System.out.println("Usage: .set [<name> <value>]");
+                } else {
+                    try {
+                        Settings.getInstance().set(split[1], split[2]);
+                    } catch (IllegalArgumentException e) {
+                        System.out.println(e.getMessage());
+                    }
+                }
+                break;
             default:
                 System.out.println("Unknown meta command '" + split[0] + "', enter '.help' for usage hints");
                 break;
@@ -191,23 +247,27 @@ public class Shell {
     }
 
     private void help() {
+        System.out.printf("%-24s Fold the write-ahead log into table files\n", ".checkpoint");
         System.out.printf("%-24s Change database directory\n", ".db <db directory>");
         System.out.printf("%-24s Change debug mode, ast will be echoed if set to on\n", ".debug <on | off>");
         System.out.printf("%-24s Exit this program\n", ".exit");
+        System.out.printf("%-24s Export a table to a csv file\n", ".export <table> <file>");
+        System.out.printf("%-24s Set storage format (csv | binary) of new tables or a table\n", ".format <fmt> [table]");
         System.out.printf("%-24s Show this message\n", ".help");
+        System.out.printf("%-24s Import a csv file as a new table\n", ".import <file> <table>");
         System.out.printf("%-24s Set output mode of select statements\n", ".mode <column | json>");
         System.out.printf("%-24s Exit this program\n", ".quit");
         System.out.printf("%-24s Show the description of a table\n", ".schema <table name>");
+        System.out.printf("%-24s Show or change execution settings\n", ".set [<name> <value>]");
         System.out.printf("%-24s Execute SQL statements from a file\n", ".source <filename>");
         System.out.printf("%-24s Show all tables\n", ".tables");
     }
 
     private void schema(String tableName) {
-        Table table = TableManager.getInstance().getTable(tableName);
-        if (table == null) {
+        List<Column> columns = TableManager.getInstance().getColumns(tableName);
+        if (columns == null) {
             System.out.println("Table \"" + tableName + "\" not found");
         } else {
-            List<Column> columns = table.getSchema().getColumns();
             StringBuilder sb = new StringBuilder();
             sb.append("(");
             boolean first = true;
@@ -224,10 +284,10 @@ public class Shell {
     }
 
     private void tables() {
-        List<Table> tables = TableManager.getInstance().getTables();
-        if (tables.size() == 0) return;
-        for (Table table : tables) {
-            System.out.print(table.getTableName() + " ");
+        List<String> tableNames = TableManager.getInstance().getTableNames();
+        if (tableNames.size() == 0) return;
+        for (String tableName : tableNames) {
+            System.out.print(tableName + " ");
         }
         System.out.println();
     }
@@ -260,12 +320,18 @@ public class Shell {
                     CreateExecutor.doCreate((CreateStatement) statement);
                 } else if (statement instanceof DropStatement) {
                     DropExecutor.doDrop((DropStatement) statement);
+                } else if (statement instanceof CreateIndexStatement) {
+                    IndexExecutor.doCreateIndex((CreateIndexStatement) statement);
+                } else if (statement instanceof DropIndexStatement) {
+                    IndexExecutor.doDropIndex((DropIndexStatement) statement);
                 } else if (statement instanceof InsertStatement) {
                     InsertExecutor.doInsert((InsertStatement) statement);
                 } else if (statement instanceof UpdateStatement) {
                     UpdateExecutor.doUpdate((UpdateStatement) statement);
                 } else if (statement instanceof DeleteStatement) {
                     DeleteExecutor.doDelete((DeleteStatement) statement);
+                } else if (statement instanceof CopyStatement) {
+                    CopyExecutor.doCopy((CopyStatement) statement);
                 }
             }
             System.out.println("Total SQL statements executed: " + statementList.size());
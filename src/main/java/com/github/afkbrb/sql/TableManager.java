@@ -1,9 +1,12 @@
 package com.github.afkbrb.sql;
 
 import com.github.afkbrb.sql.model.*;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import com.github.afkbrb.sql.storage.CsvTableFile;
+import com.github.afkbrb.sql.storage.IndexFile;
+import com.github.afkbrb.sql.storage.ParallelLoader;
+import com.github.afkbrb.sql.storage.StorageFormat;
+import com.github.afkbrb.sql.storage.TableSource;
+import com.github.afkbrb.sql.storage.WriteAheadLog;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -11,12 +14,35 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
-import static com.github.afkbrb.sql.model.DataType.*;
-
 public class TableManager {
 
+    private static final String CHECKPOINT_MARKER = "checkpoint.done";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String PROPERTIES_FILE = "db.properties";
+    private static final String FORMAT_PROPERTY = "storage.format";
+    private static final String INDEXES_FILE = "indexes.properties";
+
     private File dbDir = null;
-    private final Map<String, Table> tableMap = new HashMap<>();
+    private final Map<String, Table> tableMap = new TreeMap<>();
+    // 已经注册但还没解码的表（小写表名），第一次 getTable 时才真正加载并移入 tableMap
+    private final Map<String, TableSource> lazyTables = new TreeMap<>();
+    // 用于并行打开、解码表文件，第一次用到时才创建
+    private ParallelLoader loader = null;
+    private int loadParallelism = Runtime.getRuntime().availableProcessors();
+
+    // 新建表默认使用的存储格式，按数据库保存在 db.properties 中
+    private StorageFormat defaultFormat = StorageFormat.CSV;
+    // 每张表实际使用的存储格式（小写表名）
+    private final Map<String, StorageFormat> tableFormats = new HashMap<>();
+
+    // 所有索引的定义（小写索引名），保存在 indexes.properties 中，表被加载到内存时才建索引
+    private final Map<String, IndexDefinition> indexDefinitions = new TreeMap<>();
+
+    private WriteAheadLog wal = null;
+    // 上次 checkpoint 之后被修改过的表（小写表名）
+    private final Set<String> dirtyTables = new HashSet<>();
+    // 日志超过该大小（字节）时自动 checkpoint
+    private long checkpointThreshold = 16 * 1024 * 1024;
 
     public static final TableManager instance = new TableManager(); // 维护一个单例
 
@@ -27,40 +53,169 @@ public class TableManager {
     public void addTable(@NotNull Table table) throws IOException {
         Objects.requireNonNull(table);
         tableMap.put(table.getTableName().toLowerCase(), table);
+        tableFormats.put(table.getTableName().toLowerCase(), defaultFormat);
         if (dbDir == null) return;
         saveTable(table);
     }
 
+    /**
+     * 获取表，懒加载的表在这里解码。
+     */
     @Nullable
     public Table getTable(String tableName) {
         if (tableName == null) return null;
-        return tableMap.get(tableName.toLowerCase());
+        String key = tableName.toLowerCase();
+        Table table = tableMap.get(key);
+        if (table != null) return table;
+        TableSource source = lazyTables.get(key);
+        if (source == null) return null;
+        try {
+            table = loader().run(Collections.<ParallelLoader.IOTask<Table>>singletonList(source::load)).get(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to load table '" + source.getTableName() + "'", e);
+        }
+        lazyTables.remove(key);
+        tableMap.put(key, table);
+        try {
+            attachIndexes(table);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to load indexes of table '" + source.getTableName() + "'", e);
+        }
+        return table;
     }
 
+    /**
+     * 判断表是否存在，不会触发懒加载。
+     */
+    public boolean hasTable(String tableName) {
+        if (tableName == null) return false;
+        String key = tableName.toLowerCase();
+        return tableMap.containsKey(key) || lazyTables.containsKey(key);
+    }
+
+    /**
+     * 表的列信息，不会触发懒加载。表不存在时返回 null。
+     */
+    @Nullable
+    public List<Column> getColumns(String tableName) {
+        if (tableName == null) return null;
+        String key = tableName.toLowerCase();
+        Table table = tableMap.get(key);
+        if (table != null) return table.getColumns();
+        TableSource source = lazyTables.get(key);
+        return source == null ? null : source.getColumns();
+    }
+
+    /**
+     * 所有表的表名，不会触发懒加载。
+     */
+    public List<String> getTableNames() {
+        List<String> tableNames = new ArrayList<>();
+        for (Table table : tableMap.values()) {
+            tableNames.add(table.getTableName());
+        }
+        for (TableSource source : lazyTables.values()) {
+            tableNames.add(source.getTableName());
+        }
+        tableNames.sort(String.CASE_INSENSITIVE_ORDER);
+        return tableNames;
+    }
+
+    /**
+     * 获取所有表（按小写表名排序），还没加载的表会被并行加载。
+     */
     public List<Table> getTables() {
+        List<TableSource> sources = new ArrayList<>(lazyTables.values());
+        List<ParallelLoader.IOTask<Table>> tasks = new ArrayList<>();
+        for (TableSource source : sources) {
+            tasks.add(source::load);
+        }
+        List<Table> tables;
+        try {
+            tables = loader().run(tasks);
+        } catch (IOException e) {
+            throw new UncheckedIOException("unable to load tables", e);
+        }
+        for (int i = 0; i < sources.size(); i++) {
+            String key = sources.get(i).getTableName().toLowerCase();
+            lazyTables.remove(key);
+            tableMap.put(key, tables.get(i));
+            try {
+                attachIndexes(tables.get(i));
+            } catch (IOException e) {
+                throw new UncheckedIOException("unable to load indexes of table '" + sources.get(i).getTableName() + "'", e);
+            }
+        }
         return new ArrayList<>(tableMap.values());
     }
 
+    /**
+     * 设置打开、解码表文件时的并行度。
+     */
+    public void setLoadParallelism(int loadParallelism) {
+        if (loadParallelism <= 0) throw new IllegalArgumentException("parallelism should be positive");
+        this.loadParallelism = loadParallelism;
+        if (loader != null && loader.getParallelism() != loadParallelism) {
+            loader.shutdown();
+            loader = null;
+        }
+    }
+
+    private ParallelLoader loader() {
+        if (loader == null) loader = new ParallelLoader(loadParallelism);
+        return loader;
+    }
+
+    /**
+     * 表是否已经解码到内存中。
+     */
+    public boolean isLoaded(String tableName) {
+        return tableName != null && tableMap.containsKey(tableName.toLowerCase());
+    }
+
     public void removeTable(String tableName) throws IOException {
         if (tableName == null) return;
+        // 先把日志折叠进去，保证日志中不会残留已删除表的记录
+        checkpoint();
         tableMap.remove(tableName.toLowerCase());
+        lazyTables.remove(tableName.toLowerCase());
+        tableFormats.remove(tableName.toLowerCase());
+        dirtyTables.remove(tableName.toLowerCase());
+        List<IndexDefinition> removed = new ArrayList<>();
+        for (IndexDefinition definition : indexDefinitions.values()) {
+            if (definition.tableName.equalsIgnoreCase(tableName)) removed.add(definition);
+        }
+        if (!removed.isEmpty()) {
+            indexDefinitions.values().removeAll(removed);
+            saveIndexes();
+        }
         if (dbDir == null) return;
-        String pathname = dbDir.getCanonicalPath() + File.separator + tableName + ".csv";
-        File file = new File(pathname);
-        if (file.exists()) {
-            if (!file.delete()) {
-                throw new IOException("unable to delete file " + file.getCanonicalPath());
+        for (IndexDefinition definition : removed) {
+            deleteIndexFile(definition);
+        }
+        for (StorageFormat format : StorageFormat.values()) {
+            File file = tableFile(tableName + format.getExtension());
+            if (file.exists()) {
+                if (!file.delete()) {
+                    throw new IOException("unable to delete file " + file.getCanonicalPath());
+                }
             }
         }
     }
 
     public void clear() throws IOException {
         tableMap.clear();
+        lazyTables.clear();
+        tableFormats.clear();
+        dirtyTables.clear();
+        indexDefinitions.clear();
+        if (wal != null) wal.truncate();
         if (dbDir == null) return;
+        saveIndexes();
         File[] files = dbDir.listFiles();
         if (files != null) {
             for (File file : files) {
-                if (file.getName().endsWith(".csv")) {
+                if (StorageFormat.fromFileName(file.getName()) != null || file.getName().endsWith(IndexFile.EXTENSION)) {
                     if (!file.delete()) {
                         throw new IOException("unable to delete file " + file.getCanonicalPath());
                     }
@@ -82,6 +237,7 @@ public class TableManager {
         if (!dbDir.isDirectory()) {
             throw new IOException("'" + dbDir + "' is not a directory");
         }
+        closeWal();
         if (this.dbDir == null) {
             System.out.printf("Set db directory to '%s'\n", dbDir.getCanonicalPath());
         } else {
@@ -90,181 +246,494 @@ public class TableManager {
         this.dbDir = dbDir;
     }
 
+    /**
+     * 关闭当前数据库：做一次 checkpoint 并释放日志文件，之后回到内存数据库。
+     */
+    public void close() throws IOException {
+        closeWal();
+        tableMap.clear();
+        lazyTables.clear();
+        tableFormats.clear();
+        indexDefinitions.clear();
+        dbDir = null;
+        defaultFormat = StorageFormat.CSV;
+    }
+
+    @NotNull
+    public StorageFormat getDefaultFormat() {
+        return defaultFormat;
+    }
 
     /**
-     * 将 table 以 UTF-8 编码保存到 csv 文件中。
+     * 设置当前数据库新建表时使用的存储格式，已有的表不受影响。
      */
-    public void saveTable(@NotNull Table table) throws IOException {
+    public void setDefaultFormat(@NotNull StorageFormat format) throws IOException {
+        this.defaultFormat = Objects.requireNonNull(format);
         if (dbDir == null) return;
-        TableSaver tableSaver = new TableSaver(dbDir, Objects.requireNonNull(table));
-        tableSaver.saveTable();
+        Properties properties = new Properties();
+        properties.setProperty(FORMAT_PROPERTY, format.name());
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tableFile(PROPERTIES_FILE)), StandardCharsets.UTF_8)) {
+            properties.store(writer, "how-sql-works database settings");
+        }
     }
 
+    @Nullable
+    public StorageFormat getTableFormat(String tableName) {
+        if (tableName == null) return null;
+        return tableFormats.get(tableName.toLowerCase());
+    }
 
     /**
-     * 根据 UTF-8 编码的 csv 文件生成 table。
-     * 懒加载策略更好些，但此处简单地一次性全加载了。
+     * 将一张表转换为另一种存储格式。
      */
-    public void loadTables() throws IOException {
-        tableMap.clear();
+    public void setTableFormat(@NotNull String tableName, @NotNull StorageFormat format) throws IOException {
+        Table table = getTable(tableName);
+        if (table == null) throw new IOException("table '" + tableName + "' doesn't exist");
+        // 先把日志折叠进去，否则新的表文件已经包含日志中的修改，崩溃后重放日志会重复应用
+        checkpoint();
+        StorageFormat oldFormat = tableFormats.put(tableName.toLowerCase(), Objects.requireNonNull(format));
+        if (dbDir == null || oldFormat == format) return;
+        saveTable(table);
+        for (Index index : table.getIndexes()) {
+            if (index instanceof BTreeIndex) saveIndexFile(table, (BTreeIndex) index);
+        }
+        File oldFile = tableFile(table.getTableName() + oldFormat.getExtension());
+        if (oldFile.exists() && !oldFile.delete()) {
+            throw new IOException("unable to delete file " + oldFile.getCanonicalPath());
+        }
+    }
+
+    /**
+     * 将表导出为 csv 文件，不管该表使用哪种存储格式。
+     */
+    public void exportTable(@NotNull String tableName, @NotNull File file) throws IOException {
+        Table table = getTable(tableName);
+        if (table == null) throw new IOException("table '" + tableName + "' doesn't exist");
+        CsvTableFile.write(table, file);
+    }
+
+    /**
+     * 从 csv 文件导入一张新表，新表使用数据库的默认存储格式。
+     */
+    public void importTable(@NotNull File file, @NotNull String tableName) throws IOException {
+        if (hasTable(tableName)) throw new IOException("table '" + tableName + "' already exists");
+        addTable(CsvTableFile.read(file, tableName));
+    }
+
+    public void setCheckpointThreshold(long checkpointThreshold) {
+        this.checkpointThreshold = checkpointThreshold;
+    }
+
+    public void logInsert(@NotNull Table table, @NotNull Row row) throws IOException {
+        if (wal == null) return;
+        wal.logInsert(table.getTableName(), row);
+        dirtyTables.add(table.getTableName().toLowerCase());
+    }
+
+    public void logUpdate(@NotNull Table table, int rowIndex, @NotNull Row row) throws IOException {
+        if (wal == null) return;
+        wal.logUpdate(table.getTableName(), rowIndex, row);
+        dirtyTables.add(table.getTableName().toLowerCase());
+    }
+
+    public void logDelete(@NotNull Table table, int rowIndex) throws IOException {
+        if (wal == null) return;
+        wal.logDelete(table.getTableName(), rowIndex);
+        dirtyTables.add(table.getTableName().toLowerCase());
+    }
+
+    /**
+     * 提交当前语句产生的日志，日志过大时顺便做 checkpoint。
+     */
+    public void commit() throws IOException {
+        if (wal == null) return;
+        wal.commit();
+        if (wal.size() >= checkpointThreshold) checkpoint();
+    }
+
+    /**
+     * 把日志折叠进表文件，然后清空日志。
+     * <p>
+     * 先把被修改过的表写到临时文件，再创建 checkpoint.done 标记，最后替换表文件并清空日志。
+     * 标记存在说明临时文件已经完整，此时崩溃的话，下次加载时会把 checkpoint 做完，
+     * 而不会在新的表文件上重复重放日志。
+     */
+    public void checkpoint() throws IOException {
+        if (wal == null) return;
+        wal.commit();
+        if (dirtyTables.isEmpty() && wal.size() == 0) return;
+
+        for (String tableName : dirtyTables) {
+            Table table = tableMap.get(tableName);
+            if (table == null) continue;
+            formatOf(table).write(table, tableFile(table.getTableName() + formatOf(table).getExtension() + TMP_SUFFIX));
+        }
+        File marker = tableFile(CHECKPOINT_MARKER);
+        try (FileOutputStream out = new FileOutputStream(marker)) {
+            out.getFD().sync();
+        }
+        finishCheckpoint();
+        // 表文件与内存中的数据重新一致了，这时才能写索引文件
+        for (String tableName : dirtyTables) {
+            Table table = tableMap.get(tableName);
+            if (table == null) continue;
+            for (Index index : table.getIndexes()) {
+                if (index instanceof BTreeIndex) saveIndexFile(table, (BTreeIndex) index);
+            }
+        }
+        dirtyTables.clear();
+    }
+
+    /**
+     * 将临时文件替换为正式的表文件，清空日志，最后删除标记。
+     */
+    private void finishCheckpoint() throws IOException {
         File[] files = dbDir.listFiles();
         if (files != null) {
             for (File file : files) {
-                if (file.getName().endsWith(".csv")) {
-                    new TableLoader(file).loadTable();
+                String name = file.getName();
+                if (name.endsWith(TMP_SUFFIX)) {
+                    File target = tableFile(name.substring(0, name.length() - TMP_SUFFIX.length()));
+                    if (target.exists() && !target.delete()) {
+                        throw new IOException("unable to delete file " + target.getCanonicalPath());
+                    }
+                    if (!file.renameTo(target)) {
+                        throw new IOException("unable to rename file " + file.getCanonicalPath());
+                    }
                 }
             }
         }
+        if (wal != null) {
+            wal.truncate();
+        } else {
+            File log = tableFile(WriteAheadLog.FILE_NAME);
+            if (log.exists() && !log.delete()) {
+                throw new IOException("unable to delete file " + log.getCanonicalPath());
+            }
+        }
+        File marker = tableFile(CHECKPOINT_MARKER);
+        if (marker.exists() && !marker.delete()) {
+            throw new IOException("unable to delete file " + marker.getCanonicalPath());
+        }
     }
 
-    private TableManager() {
+    /**
+     * 加载表之前调用：完成上次被中断的 checkpoint，或者清理没写完的临时文件。
+     */
+    private void recoverCheckpoint() throws IOException {
+        if (tableFile(CHECKPOINT_MARKER).exists()) {
+            finishCheckpoint();
+            return;
+        }
+        File[] files = dbDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(TMP_SUFFIX) && !file.delete()) {
+                    throw new IOException("unable to delete file " + file.getCanonicalPath());
+                }
+            }
+        }
     }
 
-    private static class TableLoader {
+    private void closeWal() throws IOException {
+        if (wal == null) return;
+        checkpoint();
+        wal.close();
+        wal = null;
+    }
 
-        private final File file;
+    private File tableFile(String filename) throws IOException {
+        return new File(dbDir.getCanonicalPath() + File.separator + filename);
+    }
 
-        public TableLoader(@NotNull File file) {
-            this.file = Objects.requireNonNull(file);
-        }
+    private StorageFormat formatOf(Table table) {
+        StorageFormat format = tableFormats.get(table.getTableName().toLowerCase());
+        return format == null ? defaultFormat : format;
+    }
 
-        public void loadTable() throws IOException {
-            String filename = file.getName();
-            if (!filename.endsWith(".csv")) {
-                throw new IOException("invalid format of '" + filename + "': expected a csv file");
-            }
-            String tableName = filename.substring(0, filename.length() - 4);
-            if (TableManager.getInstance().getTable(tableName) != null) {
-                System.out.println("Warning: table '" + tableName + "' already exists, it will be overridden");
-                TableManager.getInstance().removeTable(tableName);
+
+    /**
+     * 按表的存储格式保存 table。
+     */
+    public void saveTable(@NotNull Table table) throws IOException {
+        if (dbDir == null) return;
+        Objects.requireNonNull(table);
+        formatOf(table).write(table, tableFile(table.getTableName() + formatOf(table).getExtension()));
+    }
+
+
+    /**
+     * 注册 csv 文件或二进制表文件中的表，然后重放日志。
+     * <p>
+     * 加载时只映射文件并解析文件头，数据在第一次访问该表时才解码，
+     * 所以启动时间和内存占用与没被访问的表的大小无关。日志中涉及的表在重放时会被加载。
+     * <p>
+     * 表文件在 {@link ParallelLoader} 中并行打开，但总是按文件名的顺序注册，结果与线程调度无关。
+     */
+    public void loadTables() throws IOException {
+        closeWal();
+        tableMap.clear();
+        lazyTables.clear();
+        tableFormats.clear();
+        dirtyTables.clear();
+        recoverCheckpoint();
+        loadProperties();
+        loadIndexes();
+        File[] files = dbDir.listFiles();
+        List<File> tableFiles = new ArrayList<>();
+        if (files != null) {
+            for (File file : files) {
+                if (StorageFormat.fromFileName(file.getName()) != null) tableFiles.add(file);
             }
+        }
+        tableFiles.sort(Comparator.comparing(File::getName));
+        List<ParallelLoader.IOTask<TableSource>> tasks = new ArrayList<>();
+        for (File file : tableFiles) {
+            StorageFormat format = StorageFormat.fromFileName(file.getName());
+            tasks.add(() -> format.open(file, tableNameOf(file, format)));
+        }
+        List<TableSource> sources = loader().run(tasks);
+        for (int i = 0; i < tableFiles.size(); i++) {
+            registerTable(sources.get(i), StorageFormat.fromFileName(tableFiles.get(i).getName()));
+        }
 
-            try (CSVParser parser = new CSVParser(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), CSVFormat.DEFAULT)) {
-                List<CSVRecord> records = parser.getRecords();
-                if (records.size() < 2) {
-                    throw new IOException("invalid format of '" + tableName + "': missing columns and/or types");
-                }
-                CSVRecord columnsRecord = records.get(0);
-                int columnCount = columnsRecord.size();
-                CSVRecord typesRecord = records.get(1);
-                if (typesRecord.size() != columnCount) {
-                    throw new IOException("invalid format of '" + tableName + "': every record should have the same number of items");
-                }
+        int replayed = WriteAheadLog.replay(dbDir, new WriteAheadLog.Handler() {
+            @Override
+            public void insert(String tableName, Row row) throws IOException {
+                requireLoggedTable(tableName).addRow(row);
+            }
 
-                List<Column> columns = new ArrayList<>();
-                DataType[] dataTypes = new DataType[columnCount]; // 为了快速访问，提高加载速度
-                for (int i = 0; i < columnCount; i++) {
-                    String columnName = columnsRecord.get(i);
-                    DataType dateType = getDateType(typesRecord.get(i));
-                    dataTypes[i] = dateType;
-                    Column column = new Column(i, columnName, dateType, tableName);
-                    columns.add(column);
+            @Override
+            public void update(String tableName, int rowIndex, Row row) throws IOException {
+                Table table = requireLoggedTable(tableName);
+                if (rowIndex < 0 || rowIndex >= table.getRowCount()) {
+                    throw new IOException("invalid row index " + rowIndex + " of table '" + tableName + "' in log");
                 }
+                table.getRows().set(rowIndex, row);
+            }
 
-                Table table = new Table(tableName, columns);
-                List<Row> rows = new ArrayList<>();
-                for (int i = 2; i < records.size(); i++) {
-                    CSVRecord record = records.get(i);
-                    if (record.size() != columnCount)
-                        throw new IOException("invalid format of '" + tableName + "': every record should have the same number of items");
-                    List<Cell> cells = new ArrayList<>();
-                    for (int j = 0; j < columnCount; j++) {
-                        String valueStr = record.get(j);
-
-                        DataType dataType = dataTypes[j];
-                        Cell cell;
-                        if (valueStr.equals("")) {
-                            cell = new Cell(TypedValue.NULL);
-                        } else if (dataType == INT) {
-                            cell = new Cell(new TypedValue(INT, Integer.parseInt(valueStr)));
-                        } else if (dataType == DOUBLE) {
-                            cell = new Cell(new TypedValue(DOUBLE, Double.parseDouble(valueStr)));
-                        } else {
-                            cell = new Cell(new TypedValue(STRING, valueStr));
-                        }
-                        cells.add(cell);
-                    }
-                    rows.add(new Row(cells));
+            @Override
+            public void delete(String tableName, int rowIndex) throws IOException {
+                Table table = requireLoggedTable(tableName);
+                if (rowIndex < 0 || rowIndex >= table.getRowCount()) {
+                    throw new IOException("invalid row index " + rowIndex + " of table '" + tableName + "' in log");
                 }
-                table.addRows(rows);
-
-                TableManager.getInstance().addTable(table);
-                System.out.println("Successfully load table '" + tableName + "'");
+                table.getRows().remove(rowIndex);
             }
+        });
+        wal = new WriteAheadLog(dbDir);
+        if (replayed > 0) {
+            System.out.println("Replayed " + replayed + " logged statement(s)");
+            checkpoint();
         }
+    }
 
+    private Table requireLoggedTable(String tableName) throws IOException {
+        Table table = getTable(tableName);
+        if (table == null) throw new IOException("log refers to unknown table '" + tableName + "'");
+        dirtyTables.add(tableName.toLowerCase());
+        return table;
+    }
 
-        private static DataType getDateType(String type) {
-            String t = type.toUpperCase();
-            if (t.equals("INT")) return INT;
-            if (t.equals("STRING")) return STRING;
-            if (t.equals("DOUBLE")) return DOUBLE;
-            throw new IllegalArgumentException("invalid type '" + type + "'");
+    private void loadProperties() throws IOException {
+        defaultFormat = StorageFormat.CSV;
+        File file = tableFile(PROPERTIES_FILE);
+        if (!file.exists()) return;
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        String formatName = properties.getProperty(FORMAT_PROPERTY);
+        if (formatName != null) {
+            StorageFormat format = StorageFormat.fromName(formatName);
+            if (format == null) throw new IOException("invalid storage format '" + formatName + "' in " + PROPERTIES_FILE);
+            defaultFormat = format;
         }
     }
 
-    private static class TableSaver {
+    /**
+     * 是否存在该索引（索引名不区分大小写，在整个数据库中唯一）。
+     */
+    public boolean hasIndex(String indexName) {
+        return indexName != null && indexDefinitions.containsKey(indexName.toLowerCase());
+    }
+
+    /**
+     * 索引所在的表的表名，索引不存在时返回 null。
+     */
+    @Nullable
+    public String getIndexTableName(String indexName) {
+        if (indexName == null) return null;
+        IndexDefinition definition = indexDefinitions.get(indexName.toLowerCase());
+        return definition == null ? null : definition.tableName;
+    }
 
-        private final File dbDir;
-        private final Table table;
+    /**
+     * 索引带的约束，索引不存在时返回 null。
+     */
+    @Nullable
+    public Index.Constraint getIndexConstraint(String indexName) {
+        if (indexName == null) return null;
+        IndexDefinition definition = indexDefinitions.get(indexName.toLowerCase());
+        return definition == null ? null : definition.constraint;
+    }
 
-        public TableSaver(@NotNull File dbDir, @NotNull Table table) {
-            this.dbDir = Objects.requireNonNull(dbDir);
-            this.table = Objects.requireNonNull(table);
+    /**
+     * 在表上建索引并保存索引的定义，table 必须是通过 {@link #getTable(String)} 得到的表。
+     * B+ 树索引的内容还会写到索引文件中，表有还没折叠的日志时等到 checkpoint 再写。
+     */
+    public void createIndex(@NotNull Table table, @NotNull Index index) throws IOException {
+        table.addIndex(index);
+        String columnName = table.getColumns().get(index.getColumnIndex()).getColumnName();
+        indexDefinitions.put(index.getIndexName().toLowerCase(),
+                new IndexDefinition(index.getIndexName(), table.getTableName(), columnName, index.getType(), index.getConstraint()));
+        saveIndexes();
+        if (index instanceof BTreeIndex && !dirtyTables.contains(table.getTableName().toLowerCase())) {
+            saveIndexFile(table, (BTreeIndex) index);
         }
+    }
 
-        public void saveTable() throws IOException {
-            if (table.getColumnCount() == 0) return;
-            String pathname = dbDir.getCanonicalPath() + File.separator + table.getTableName() + ".csv";
-            File file = new File(pathname);
-            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
-                    new FileOutputStream(file), StandardCharsets.UTF_8))) {
-                List<Column> columns = table.getColumns();
-                writer.write(csvNormalize(columns.get(0).getColumnName()));
-                for (int i = 1; i < columns.size(); i++) {
-                    writer.write(",");
-                    writer.write(csvNormalize(columns.get(i).getColumnName()));
-                }
-                writer.write("\n"); // TODO: \r\n?
+    public void dropIndex(@NotNull String indexName) throws IOException {
+        IndexDefinition definition = indexDefinitions.remove(indexName.toLowerCase());
+        if (definition == null) return;
+        Table table = tableMap.get(definition.tableName.toLowerCase());
+        if (table != null) table.removeIndex(indexName);
+        saveIndexes();
+        deleteIndexFile(definition);
+    }
 
-                writer.write(csvNormalize(columns.get(0).getDataType().name()));
-                for (int i = 1; i < columns.size(); i++) {
-                    writer.write(",");
-                    writer.write(csvNormalize(columns.get(i).getDataType().name()));
-                }
-                writer.write("\n");
-
-                for (Row row : table.getRows()) {
-                    List<Cell> cells = row.getCells();
-                    writer.write(normalizeTypedData(cells.get(0).getTypedValue()));
-                    for (int i = 1; i < cells.size(); i++) {
-                        writer.write(",");
-                        writer.write(normalizeTypedData(cells.get(i).getTypedValue()));
-                    }
-                    writer.write("\n");
+    /**
+     * 表被加载到内存时，按保存的定义建好它的索引。
+     * B+ 树索引优先从索引文件中读取，索引文件不存在或者与表文件对不上时重建并重新写索引文件。
+     */
+    private void attachIndexes(Table table) throws IOException {
+        for (IndexDefinition definition : indexDefinitions.values()) {
+            if (!definition.tableName.equalsIgnoreCase(table.getTableName())) continue;
+            Column column = null;
+            for (Column c : table.getColumns()) {
+                if (c.getColumnName().equalsIgnoreCase(definition.columnName)) column = c;
+            }
+            if (column == null) {
+                System.out.println("Warning: column '" + definition.columnName + "' of index '" + definition.indexName + "' doesn't exist, it will be ignored");
+                continue;
+            }
+            Index index = Index.create(definition.type, definition.indexName, column.getColumnIndex(), definition.constraint);
+            if (index instanceof BTreeIndex && dbDir != null) {
+                File tableFile = tableFile(table.getTableName() + formatOf(table).getExtension());
+                if (IndexFile.read((BTreeIndex) index, indexFile(definition), tableFile, table.getRowCount())) {
+                    table.attachIndex(index);
+                } else {
+                    table.addIndex(index);
+                    saveIndexFile(table, (BTreeIndex) index);
                 }
+                continue;
             }
+            table.addIndex(index);
         }
+    }
+
+    /**
+     * 表的数据必须与表文件一致。
+     */
+    private void saveIndexFile(Table table, BTreeIndex index) throws IOException {
+        if (dbDir == null) return;
+        File tableFile = tableFile(table.getTableName() + formatOf(table).getExtension());
+        if (!tableFile.exists()) return;
+        IndexDefinition definition = indexDefinitions.get(index.getIndexName().toLowerCase());
+        if (definition == null) return;
+        IndexFile.write(index, indexFile(definition), tableFile, table.getRowCount());
+    }
+
+    private void deleteIndexFile(IndexDefinition definition) throws IOException {
+        if (dbDir == null) return;
+        File file = indexFile(definition);
+        if (file.exists() && !file.delete()) throw new IOException("unable to delete file " + file.getCanonicalPath());
+    }
 
-        private static String normalizeTypedData(TypedValue typedValue) {
-            switch (typedValue.getDataType()) {
-                case INT:
-                case DOUBLE:
-                    return typedValue.getValue().toString();
-                case STRING:
-                    return csvNormalize((String) typedValue.getValue());
-                case NULL:
-                    return "";
-                case ERROR:
-                    throw new IllegalStateException("unexpected error data a table: " + typedValue.getValue());
-                default:
-                    throw new IllegalStateException("bug");
+    /**
+     * 索引文件与表文件放在一起，命名为 表名.索引名.idx。
+     */
+    private File indexFile(IndexDefinition definition) throws IOException {
+        return tableFile(definition.tableName + "." + definition.indexName + IndexFile.EXTENSION);
+    }
+
+    /**
+     * 每个索引保存为一项：索引名 = 类型 表名 列名，带约束的索引在最后加上约束（UNIQUE 或 PRIMARY_KEY）。
+     */
+    private void saveIndexes() throws IOException {
+        if (dbDir == null) return;
+        File file = tableFile(INDEXES_FILE);
+        if (indexDefinitions.isEmpty()) {
+            if (file.exists() && !file.delete()) throw new IOException("unable to delete file " + file.getCanonicalPath());
+            return;
+        }
+        Properties properties = new Properties();
+        for (IndexDefinition definition : indexDefinitions.values()) {
+            String value = definition.type + " " + definition.tableName + " " + definition.columnName;
+            if (definition.constraint != Index.Constraint.NONE) value += " " + definition.constraint;
+            properties.setProperty(definition.indexName, value);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            properties.store(writer, "how-sql-works indexes");
+        }
+    }
+
+    private void loadIndexes() throws IOException {
+        indexDefinitions.clear();
+        File file = tableFile(INDEXES_FILE);
+        if (!file.exists()) return;
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        for (String indexName : properties.stringPropertyNames()) {
+            String[] parts = properties.getProperty(indexName).trim().split("\\s+");
+            Index.Type type = null;
+            Index.Constraint constraint = Index.Constraint.NONE;
+            try {
+                if (parts.length == 3 || parts.length == 4) type = Index.Type.valueOf(parts[0]);
+                if (parts.length == 4) constraint = Index.Constraint.valueOf(parts[3]);
+            } catch (IllegalArgumentException e) {
+                type = null; // 下面统一报错
             }
+            if (type == null) throw new IOException("invalid index definition '" + indexName + "' in " + INDEXES_FILE);
+            indexDefinitions.put(indexName.toLowerCase(), new IndexDefinition(indexName, parts[1], parts[2], type, constraint));
+        }
+    }
+
+    private static String tableNameOf(File file, StorageFormat format) {
+        String filename = file.getName();
+        return filename.substring(0, filename.length() - format.getExtension().length());
+    }
+
+    private void registerTable(TableSource source, StorageFormat format) {
+        String tableName = source.getTableName();
+        if (hasTable(tableName)) {
+            System.out.println("Warning: table '" + tableName + "' already exists, it will be overridden");
+            tableMap.remove(tableName.toLowerCase());
         }
+        lazyTables.put(tableName.toLowerCase(), source);
+        tableFormats.put(tableName.toLowerCase(), format);
+        System.out.println("Successfully load table '" + tableName + "'");
+    }
+
+    private TableManager() {
+    }
+
+    private static class IndexDefinition {
+
+        private final String indexName;
+        private final String tableName;
+        private final String columnName;
+        private final Index.Type type;
+        private final Index.Constraint constraint;
 
-        private static String csvNormalize(String str) {
-            String replace = str.replace("\"", "\"\"");
-            return "\"" + replace + "\"";
+        IndexDefinition(String indexName, String tableName, String columnName, Index.Type type, Index.Constraint constraint) {
+            this.indexName = indexName;
+            this.tableName = tableName;
+            this.columnName = columnName;
+            this.type = type;
+            this.constraint = constraint;
         }
     }
 }
@@ -37,6 +37,7 @@ public enum TokenType {
     ASC,
     BETWEEN,
     BY,
+    COPY,
     CREATE,
     DELETE,
     DESC,
@@ -48,12 +49,14 @@ public enum TokenType {
     GROUP,
     HAVING,
     IN,
+    INDEX,
     INNER,
     INSERT,
     INT,
     INTO,
     IS,
     JOIN,
+    KEY,
     LEFT,
     LIKE,
     LIMIT,
@@ -64,6 +67,7 @@ public enum TokenType {
     OR,
     ORDER,
     OUTER,
+    PRIMARY,
     REGEXP,
     RIGHT,
     SELECT,
@@ -71,7 +75,9 @@ public enum TokenType {
     STRING,
     TABLE,
     TRUE,
+    UNIQUE,
     UPDATE,
+    USING,
     VALUES,
     WHERE;
 
@@ -83,6 +89,7 @@ public enum TokenType {
         keywords.put("ASC", ASC);
         keywords.put("BETWEEN", BETWEEN);
         keywords.put("BY", BY);
+        keywords.put("COPY", COPY);
         keywords.put("CREATE", CREATE);
         keywords.put("DELETE", DELETE);
         keywords.put("DESC", DESC);
@@ -94,12 +101,14 @@ public enum TokenType {
         keywords.put("GROUP", GROUP);
         keywords.put("HAVING", HAVING);
         keywords.put("IN", IN);
+        keywords.put("INDEX", INDEX);
         keywords.put("INNER", INNER);
         keywords.put("INSERT", INSERT);
         keywords.put("INT", INT);
         keywords.put("INTO", INTO);
         keywords.put("IS", IS);
         keywords.put("JOIN", JOIN);
+        keywords.put("KEY", KEY);
         keywords.put("LEFT", LEFT);
         keywords.put("LIKE", LIKE);
         keywords.put("LIMIT", LIMIT);
@@ -110,6 +119,7 @@ public enum TokenType {
         keywords.put("OR", OR);
         keywords.put("ORDER", ORDER);
         keywords.put("OUTER", OUTER);
+        keywords.put("PRIMARY", PRIMARY);
         keywords.put("REGEXP", REGEXP);
         keywords.put("RIGHT", RIGHT);
         keywords.put("SELECT", SELECT);
@@ -117,7 +127,9 @@ public enum TokenType {
         keywords.put("STRING", STRING);
         keywords.put("TABLE", TABLE);
         keywords.put("TRUE", TRUE);
+        keywords.put("UNIQUE", UNIQUE);
         keywords.put("UPDATE", UPDATE);
+        keywords.put("USING", USING);
         keywords.put("VALUES", VALUES);
         keywords.put("WHERE", WHERE);
     }
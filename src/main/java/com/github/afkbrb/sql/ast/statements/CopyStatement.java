@@ -0,0 +1,36 @@
+package com.github.afkbrb.sql.ast.statements;
+
+import com.github.afkbrb.sql.visitors.ToStringVisitor;
+import com.github.afkbrb.sql.visitors.Visitor;
+
+/**
+ * COPY tableName FROM 'filename';
+ */
+public class CopyStatement extends Statement {
+
+    private final String tableName;
+    private final String filename;
+
+    public CopyStatement(String tableName, String filename) {
+        this.tableName = tableName;
+        this.filename = filename;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public <T> T accept(Visitor<? extends T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringVisitor(this).toString();
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.afkbrb.sql.ast.statements;
+
+import com.github.afkbrb.sql.model.Index;
+import com.github.afkbrb.sql.visitors.ToStringVisitor;
+import com.github.afkbrb.sql.visitors.Visitor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Objects;
+
+/**
+ * CREATE INDEX indexName ON tableName (columnName) (USING indexType)?;
+ */
+public class CreateIndexStatement extends Statement {
+
+    private final String indexName;
+    private final String tableName;
+    private final String columnName;
+    private final Index.Type indexType;
+
+    public CreateIndexStatement(String indexName, String tableName, String columnName, @NotNull Index.Type indexType) {
+        this.indexName = indexName;
+        this.tableName = tableName;
+        this.columnName = columnName;
+        this.indexType = Objects.requireNonNull(indexType);
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    @NotNull
+    public Index.Type getIndexType() {
+        return indexType;
+    }
+
+    @Override
+    public <T> T accept(Visitor<? extends T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringVisitor(this).toString();
+    }
+}
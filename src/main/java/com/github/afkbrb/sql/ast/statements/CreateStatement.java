@@ -3,6 +3,7 @@ package com.github.afkbrb.sql.ast.statements;
 import com.github.afkbrb.sql.visitors.ToStringVisitor;
 import com.github.afkbrb.sql.visitors.Visitor;
 import com.github.afkbrb.sql.model.DataType;
+import com.github.afkbrb.sql.model.Index;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
@@ -10,6 +11,8 @@ import java.util.Objects;
 
 /**
  * CREATE TABLE tableName (columnDefinitionList);
+ * <p>
+ * 列定义可以带 PRIMARY KEY 或 UNIQUE 约束，建表时为它们建哈希索引。
  */
 public class CreateStatement extends Statement {
 
@@ -44,10 +47,16 @@ public class CreateStatement extends Statement {
 
         private final String columnName;
         private final DataType columnType;
+        private final Index.Constraint constraint;
 
         public ColumnDefinition(String columnName, DataType columnType) {
+            this(columnName, columnType, Index.Constraint.NONE);
+        }
+
+        public ColumnDefinition(String columnName, DataType columnType, @NotNull Index.Constraint constraint) {
             this.columnName = columnName;
             this.columnType = columnType;
+            this.constraint = Objects.requireNonNull(constraint);
         }
 
         public DataType getColumnType() {
@@ -57,5 +66,10 @@ public class CreateStatement extends Statement {
         public String getColumnName() {
             return columnName;
         }
+
+        @NotNull
+        public Index.Constraint getConstraint() {
+            return constraint;
+        }
     }
 }
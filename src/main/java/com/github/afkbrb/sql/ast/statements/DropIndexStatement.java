@@ -0,0 +1,30 @@
+package com.github.afkbrb.sql.ast.statements;
+
+import com.github.afkbrb.sql.visitors.ToStringVisitor;
+import com.github.afkbrb.sql.visitors.Visitor;
+
+/**
+ * DROP INDEX indexName;
+ */
+public class DropIndexStatement extends Statement {
+
+    private final String indexName;
+
+    public DropIndexStatement(String indexName) {
+        this.indexName = indexName;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    @Override
+    public <T> T accept(Visitor<? extends T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringVisitor(this).toString();
+    }
+}
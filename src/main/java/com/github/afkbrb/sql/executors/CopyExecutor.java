@@ -0,0 +1,47 @@
+package com.github.afkbrb.sql.executors;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.statements.CopyStatement;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Table;
+import com.github.afkbrb.sql.storage.CsvTableFile;
+
+import java.io.File;
+import java.io.IOException;
+
+public class CopyExecutor extends Executor {
+
+    /**
+     * 将 csv 文件中的数据批量追加到已有的表中，文件格式与 .export 导出的相同。
+     * <p>
+     * 文件是流式读取的，每读完一块就写日志并提交，所以内存占用与文件大小无关，
+     * 表文件也不会被重写（之后由 checkpoint 折叠）。出错时之前已经提交的行会被保留。
+     *
+     * @return 追加的行数
+     */
+    public static int doCopy(CopyStatement copyStatement) throws SQLExecuteException, IOException {
+        Table table = requireTableExists(copyStatement.getTableName());
+        File file = new File(copyStatement.getFilename());
+        if (!file.isFile()) {
+            throw new SQLExecuteException("file '%s' doesn't exist", copyStatement.getFilename());
+        }
+        try {
+            return CsvTableFile.stream(file, table.getTableName(), table.getColumns(), rows -> {
+                try {
+                    for (Row row : rows) {
+                        table.checkConstraints(row);
+                        table.addRow(row);
+                        logInsert(table, row);
+                    }
+                } catch (SQLExecuteException e) {
+                    throw new IOException(e.getMessage());
+                } finally {
+                    // 违反约束时，这一块中已经追加的行也要提交
+                    commit();
+                }
+            });
+        } catch (IOException e) {
+            throw new SQLExecuteException("unable to copy from '%s': %s", copyStatement.getFilename(), e.getMessage());
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.github.afkbrb.sql.TableManager;
 import com.github.afkbrb.sql.ast.statements.CreateStatement;
 import com.github.afkbrb.sql.ast.statements.CreateStatement.ColumnDefinition;
 import com.github.afkbrb.sql.model.Column;
+import com.github.afkbrb.sql.model.Index;
 import com.github.afkbrb.sql.model.Table;
 
 import java.io.IOException;
@@ -14,7 +15,7 @@ import java.util.List;
 public class CreateExecutor extends Executor {
 
     /**
-     * 根据 CreateStatement 创建一个表
+     * 根据 CreateStatement 创建一个表，并为列上的 PRIMARY KEY 和 UNIQUE 约束建哈希索引。
      */
     public static void doCreate(CreateStatement createStatement) throws SQLExecuteException, IOException {
         String tableName = createStatement.getTableName();
@@ -22,13 +23,38 @@ public class CreateExecutor extends Executor {
 
         List<Column> columnList = new ArrayList<>();
         List<ColumnDefinition> columnDefinitionList = createStatement.getColumnDefinitionList();
+        boolean hasPrimaryKey = false;
         for (int i = 0; i < columnDefinitionList.size(); i++) {
             ColumnDefinition columnDefinition = columnDefinitionList.get(i);
             Column column = new Column(i, columnDefinition.getColumnName(), columnDefinition.getColumnType(), tableName);
             columnList.add(column);
+            if (columnDefinition.getConstraint() == Index.Constraint.PRIMARY_KEY) {
+                if (hasPrimaryKey) throw new SQLExecuteException("multiple primary keys for table %s are not allowed", tableName);
+                hasPrimaryKey = true;
+            }
         }
 
         Table table = new Table(tableName, columnList);
         TableManager.getInstance().addTable(table);
+        for (int i = 0; i < columnDefinitionList.size(); i++) {
+            ColumnDefinition columnDefinition = columnDefinitionList.get(i);
+            if (columnDefinition.getConstraint() == Index.Constraint.NONE) continue;
+            String indexName = constraintIndexName(tableName, columnDefinition);
+            Index index = Index.create(Index.Type.HASH, indexName, i, columnDefinition.getConstraint());
+            TableManager.getInstance().createIndex(table, index);
+        }
+    }
+
+    /**
+     * 约束的索引命名为 表名_pkey 或 表名_列名_key，与已有的索引重名时在后面加数字。
+     */
+    private static String constraintIndexName(String tableName, ColumnDefinition columnDefinition) {
+        String name = columnDefinition.getConstraint() == Index.Constraint.PRIMARY_KEY
+                ? tableName + "_pkey" : tableName + "_" + columnDefinition.getColumnName() + "_key";
+        String indexName = name;
+        for (int i = 1; TableManager.getInstance().hasIndex(indexName); i++) {
+            indexName = name + i;
+        }
+        return indexName;
     }
 }
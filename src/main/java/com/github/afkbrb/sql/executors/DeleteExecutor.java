@@ -6,9 +6,9 @@ import com.github.afkbrb.sql.ast.expressions.IntExpression;
 import com.github.afkbrb.sql.ast.statements.DeleteStatement;
 import com.github.afkbrb.sql.model.Row;
 import com.github.afkbrb.sql.model.Table;
+import com.github.afkbrb.sql.visitors.CompiledExpression;
 
 import java.io.IOException;
-import java.util.Iterator;
 import java.util.List;
 
 public class DeleteExecutor extends Executor {
@@ -18,9 +18,32 @@ public class DeleteExecutor extends Executor {
         Table table = requireTableExists(tableName);
         List<Row> rows = table.getRows();
         Expression condition = deleteStatement.getWhereCondition() == null ? new IntExpression(1) : deleteStatement.getWhereCondition();
-        for (Iterator<Row> iterator = rows.iterator(); iterator.hasNext(); ) {
-            if (predicate(table.getSchema(), iterator.next(), condition)) iterator.remove();
+        CompiledExpression compiledCondition = compile(null, table.getSchema(), condition);
+        int[] candidates = candidateRows(deleteStatement.getWhereCondition(), table);
+        try {
+            if (candidates != null) {
+                // 只检查索引找到的候选行，前面每删除一行，候选行的下标就要减 1
+                int deleted = 0;
+                for (int candidate : candidates) {
+                    int i = candidate - deleted;
+                    if (predicate(compiledCondition, rows.get(i))) {
+                        rows.remove(i);
+                        logDelete(table, i);
+                        deleted++;
+                    }
+                }
+                return;
+            }
+            for (int i = 0; i < rows.size(); ) {
+                if (predicate(compiledCondition, rows.get(i))) {
+                    rows.remove(i);
+                    logDelete(table, i);
+                } else {
+                    i++;
+                }
+            }
+        } finally {
+            commit();
         }
-        saveTable(table);
     }
 }
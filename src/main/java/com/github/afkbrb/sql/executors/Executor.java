@@ -4,6 +4,10 @@ import com.github.afkbrb.sql.SQLExecuteException;
 import com.github.afkbrb.sql.TableManager;
 import com.github.afkbrb.sql.ast.expressions.Expression;
 import com.github.afkbrb.sql.model.*;
+import com.github.afkbrb.sql.operators.BitmapLookup;
+import com.github.afkbrb.sql.operators.IndexLookup;
+import com.github.afkbrb.sql.visitors.CompiledExpression;
+import com.github.afkbrb.sql.visitors.ExpressionCompiler;
 import com.github.afkbrb.sql.visitors.RowEvaluator;
 import com.github.afkbrb.sql.visitors.RowsEvaluator;
 import org.jetbrains.annotations.NotNull;
@@ -18,8 +22,37 @@ import static com.github.afkbrb.sql.utils.DataTypeUtils.*;
 
 public abstract class Executor {
 
-    protected static void saveTable(Table table) throws IOException {
-        TableManager.getInstance().saveTable(table);
+    protected static void logInsert(Table table, Row row) throws IOException {
+        TableManager.getInstance().logInsert(table, row);
+    }
+
+    protected static void logUpdate(Table table, int rowIndex, Row row) throws IOException {
+        TableManager.getInstance().logUpdate(table, rowIndex, row);
+    }
+
+    protected static void logDelete(Table table, int rowIndex) throws IOException {
+        TableManager.getInstance().logDelete(table, rowIndex);
+    }
+
+    /**
+     * 语句执行完后调用，把该语句产生的日志落盘。
+     */
+    protected static void commit() throws IOException {
+        TableManager.getInstance().commit();
+    }
+
+    /**
+     * update/delete 的 WHERE 条件能用索引时返回候选行的下标（升序），否则返回 null，这时要检查所有行。
+     * 位图索引只在哈希索引和 B+ 树索引用不上时使用，与 select 相同。
+     */
+    @Nullable
+    protected static int[] candidateRows(@Nullable Expression condition, @NotNull Table table) throws SQLExecuteException {
+        IndexLookup lookup = IndexLookup.analyze(condition, table);
+        if (lookup == null || lookup.getIndex() instanceof BitmapIndex) {
+            BitmapLookup bitmapLookup = BitmapLookup.analyze(condition, table);
+            if (bitmapLookup != null) return bitmapLookup.rowIndexes();
+        }
+        return lookup == null ? null : lookup.rowIndexes();
     }
 
     @NotNull
@@ -67,6 +100,27 @@ public abstract class Executor {
         return typedValue;
     }
 
+    /**
+     * 编译在 schema 的行上反复求值的表达式，列名只解析一次。
+     */
+    @NotNull
+    public static CompiledExpression compile(@Nullable InheritedContext context, @NotNull Schema schema,
+                                             @NotNull Expression expression) {
+        return ExpressionCompiler.compile(context, schema, expression);
+    }
+
+    @NotNull
+    public static TypedValue evaluate(@NotNull CompiledExpression expression, @NotNull Row row) throws SQLExecuteException {
+        TypedValue typedValue = expression.evaluate(row);
+        if (isError(typedValue)) throw new SQLExecuteException(typedValue.getValue().toString());
+        return typedValue;
+    }
+
+    public static boolean predicate(@NotNull CompiledExpression condition, @NotNull Row row) throws SQLExecuteException {
+        TypedValue typedValue = evaluate(condition, row);
+        return typedValue.getValue() instanceof Number && ((Number) typedValue.getValue()).intValue() != 0;
+    }
+
     public static TypedValue evaluate(@Nullable InheritedContext context, @NotNull Schema schema,
                                       @NotNull List<Row> rows, @NotNull Expression expression) throws SQLExecuteException {
         RowsEvaluator evaluator = new RowsEvaluator(context, schema, rows);
@@ -76,7 +130,7 @@ public abstract class Executor {
     }
 
     protected static void requireTableNotExists(String tableName) throws SQLExecuteException {
-        if (TableManager.getInstance().getTable(tableName) != null) {
+        if (TableManager.getInstance().hasTable(tableName)) {
             throw new SQLExecuteException("table %s already exists", tableName);
         }
     }
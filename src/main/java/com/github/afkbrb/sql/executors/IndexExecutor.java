@@ -0,0 +1,42 @@
+package com.github.afkbrb.sql.executors;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.TableManager;
+import com.github.afkbrb.sql.ast.statements.CreateIndexStatement;
+import com.github.afkbrb.sql.ast.statements.DropIndexStatement;
+import com.github.afkbrb.sql.model.Column;
+import com.github.afkbrb.sql.model.Index;
+import com.github.afkbrb.sql.model.Table;
+
+import java.io.IOException;
+
+public class IndexExecutor extends Executor {
+
+    /**
+     * 在表的某一列上建索引，之后增删改该表时索引会同步更新。
+     */
+    public static void doCreateIndex(CreateIndexStatement createIndexStatement) throws SQLExecuteException, IOException {
+        String indexName = createIndexStatement.getIndexName();
+        if (TableManager.getInstance().hasIndex(indexName)) {
+            throw new SQLExecuteException("index %s already exists", indexName);
+        }
+        Table table = requireTableExists(createIndexStatement.getTableName());
+        Column column = table.getSchema().getColumn(createIndexStatement.getColumnName());
+        if (column == null) {
+            throw new SQLExecuteException("cannot find column %s in table %s", createIndexStatement.getColumnName(), table.getTableName());
+        }
+        Index index = Index.create(createIndexStatement.getIndexType(), indexName, column.getColumnIndex());
+        TableManager.getInstance().createIndex(table, index);
+    }
+
+    public static void doDropIndex(DropIndexStatement dropIndexStatement) throws SQLExecuteException, IOException {
+        String indexName = dropIndexStatement.getIndexName();
+        if (!TableManager.getInstance().hasIndex(indexName)) {
+            throw new SQLExecuteException("index %s doesn't exist", indexName);
+        }
+        if (TableManager.getInstance().getIndexConstraint(indexName) != Index.Constraint.NONE) {
+            throw new SQLExecuteException("cannot drop index %s because a constraint requires it", indexName);
+        }
+        TableManager.getInstance().dropIndex(indexName);
+    }
+}
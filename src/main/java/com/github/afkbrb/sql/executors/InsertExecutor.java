@@ -42,8 +42,10 @@ public class InsertExecutor extends Executor {
         }
 
         Row row = new Row(Arrays.asList(cells));
+        table.checkConstraints(row);
         table.addRow(row);
 
-        saveTable(table);
+        logInsert(table, row);
+        commit();
     }
 }
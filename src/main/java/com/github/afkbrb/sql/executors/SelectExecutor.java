@@ -1,27 +1,35 @@
 package com.github.afkbrb.sql.executors;
 
 import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.Settings;
 import com.github.afkbrb.sql.TableManager;
 import com.github.afkbrb.sql.ast.expressions.ColumnNameExpression;
 import com.github.afkbrb.sql.ast.expressions.Expression;
-import com.github.afkbrb.sql.ast.expressions.IntExpression;
+import com.github.afkbrb.sql.ast.expressions.FunctionCallExpression;
 import com.github.afkbrb.sql.ast.expressions.WildcardExpression;
 import com.github.afkbrb.sql.ast.statements.SelectStatement;
 import com.github.afkbrb.sql.ast.statements.SelectStatement.*;
+import com.github.afkbrb.sql.ast.statements.SelectStatement.TableJoin.JoinType;
 import com.github.afkbrb.sql.model.*;
+import com.github.afkbrb.sql.operators.*;
 import com.github.afkbrb.sql.utils.ExpressionUtils;
 import com.github.afkbrb.sql.utils.Pair;
 import com.github.afkbrb.sql.visitors.AggregateDetector;
+import com.github.afkbrb.sql.visitors.ExpressionCompiler;
 import com.github.afkbrb.sql.visitors.TypeInferer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
-import static com.github.afkbrb.sql.utils.DataTypeUtils.isNull;
-
 public class SelectExecutor extends Executor {
 
+    // 为 group by 后的排序附加的列的列名前缀，parser 不会生成这样的列名
+    private static final String ORDER_BY_COLUMN_PREFIX = "#order";
+    // 查一次索引的代价大约相当于往哈希表中放入多少行，左表的行数不超过右表的这么多分之一时才用索引连接
+    private static final int INDEX_PROBE_COST = 4;
+
     private final InheritedContext context;
 
     public SelectExecutor() {
@@ -37,11 +45,38 @@ public class SelectExecutor extends Executor {
     }
 
     /**
-     * 处理 select 比较麻烦，需要考虑多种情况。
+     * 生成算子树，再把算子树的输出收集成表。
      *
      * tableName 是查询结果的表名
      */
     public Table doSelect(@NotNull SelectStatement selectStatement, @NotNull String tableName) throws SQLExecuteException {
+        Operator plan = plan(selectStatement, tableName);
+        Table table = new Table(tableName, plan.getSchema().getColumns());
+        plan.open();
+        try {
+            Row row;
+            while ((row = plan.next()) != null) {
+                table.addRow(row);
+            }
+        } finally {
+            plan.close();
+        }
+        table.setSortedBy(plan.getSortedBy());
+        return table;
+    }
+
+    /**
+     * 将 select 语句转换成算子树：
+     * <pre>
+     * Scan/Join -> [Filter] -> [Sort/TopN] -> Project -> [Limit]
+     * Scan/Join -> [Filter] -> Aggregate -> [Sort/TopN -> Limit -> Project]
+     * </pre>
+     * 分组时 order by 针对的是组而不是行，所以排序键由 Aggregate 在每组上求值后附加到输出的末尾，排序后再去掉。
+     *
+     * tableName 是查询结果的表名
+     */
+    @NotNull
+    public Operator plan(@NotNull SelectStatement selectStatement, @NotNull String tableName) throws SQLExecuteException {
         Objects.requireNonNull(selectStatement);
         Objects.requireNonNull(tableName);
         List<Pair<Expression, String>> originalSelectItemList = selectStatement.getSelectItemList();
@@ -57,14 +92,56 @@ public class SelectExecutor extends Executor {
         }
 
         // FROM tableReference
-        Table referenceTable = makeReferenceTable(selectStatement.getTableReference());
-        Schema schema = referenceTable.getSchema();
-        List<Row> rows = new ArrayList<>(referenceTable.getRows());
+        Operator input = planTableReference(selectStatement.getTableReference());
+        Schema schema = input.getSchema();
+
+        // WHERE 中有能用索引查找的项时只读取索引找到的行，整个条件仍然在这些行上过滤。
+        // 位图索引可以把多个项组合起来，哈希索引和 B+ 树索引用不上时才用它。
+        BitmapLookup bitmapLookup = null;
+        if (input instanceof ScanOperator && selectStatement.getWhereCondition() != null) {
+            Table table = ((ScanOperator) input).getTable();
+            IndexLookup lookup = IndexLookup.analyze(selectStatement.getWhereCondition(), table);
+            if (lookup == null || lookup.getIndex() instanceof BitmapIndex) {
+                bitmapLookup = BitmapLookup.analyze(selectStatement.getWhereCondition(), table);
+            }
+            if (bitmapLookup != null) input = new IndexScanOperator(table, bitmapLookup);
+            else if (lookup != null) input = new IndexScanOperator(table, lookup);
+        }
+
+        // 不分组、有 limit 并且按一个有 B+ 树索引的列排序时，按索引的顺序读取行，不再排序，读够了就停下。
+        // WHERE 已经用上了别的索引时，还是先按那个索引查找再排序。
+        OrderBy orderBy = selectStatement.getOrderBy();
+        boolean orderedByIndex = false;
+        if (orderBy != null && selectStatement.getLimit() != null && !isGroupBy && !isAggregate && bitmapLookup == null
+                && (input instanceof ScanOperator || input instanceof IndexScanOperator)) {
+            Table table = input instanceof ScanOperator ? ((ScanOperator) input).getTable() : ((IndexScanOperator) input).getTable();
+            IndexLookup lookup = input instanceof IndexScanOperator ? ((IndexScanOperator) input).getLookup() : null;
+            BTreeIndex orderIndex = IndexLookup.orderIndex(orderBy.getOrderByList(), table);
+            if (orderIndex != null && (lookup == null || (lookup.isRange() && lookup.getIndex() == orderIndex))) {
+                input = new IndexScanOperator(table, orderIndex, lookup, orderBy.getOrderByList().get(0).getValue());
+                orderedByIndex = true;
+            }
+        }
+
+        // 直接扫描表时，过滤条件和投影按批向量化求值，不能向量化的表达式仍然逐行求值。
+        // 表足够大时向量化的扫描切成小块并行执行。
+        // 不分组、不排序但有 limit 时，逐行求值只会算到够数为止，按批求值却可能对用不到的行报错，所以不向量化。
+        Table vectorizedTable = null;
+        if (Settings.getInstance().isVectorized() && input instanceof ScanOperator
+                && (isGroupBy || isAggregate || orderBy != null || selectStatement.getLimit() == null)) {
+            vectorizedTable = ((ScanOperator) input).getTable();
+        }
 
         // WHERE condition
+        VectorExpression vectorizedCondition = null;
         if (selectStatement.getWhereCondition() != null) {
-            for (Iterator<Row> iterator = rows.iterator(); iterator.hasNext(); ) {
-                if (!predicate(context, schema, iterator.next(), selectStatement.getWhereCondition())) iterator.remove();
+            if (vectorizedTable != null) vectorizedCondition = VectorExpression.compile(selectStatement.getWhereCondition(), vectorizedTable);
+            if (vectorizedCondition != null) {
+                input = isParallel(vectorizedTable)
+                        ? new ParallelScanOperator(vectorizedTable, selectStatement.getWhereCondition(), null, null, vectorizedTable.getSortedBy(), parallelism())
+                        : new VectorizedScanOperator(vectorizedTable, vectorizedCondition);
+            } else {
+                input = new FilterOperator(input, selectStatement.getWhereCondition(), context);
             }
         }
 
@@ -100,7 +177,7 @@ public class SelectExecutor extends Executor {
         List<Expression> selectExpressionList = new ArrayList<>();
         selectItemList.forEach(pair -> selectExpressionList.add(pair.getKey()));
 
-        // 先生成表，再往里面填数据
+        // 查询结果的列信息
         List<Column> columnList = new ArrayList<>();
         for (int i = 0; i < selectItemList.size(); i++) {
             Pair<Expression, String> pair = selectItemList.get(i);
@@ -109,9 +186,8 @@ public class SelectExecutor extends Executor {
             Column column = new Column(i, pair.getValue(), dataType, tableName);
             columnList.add(column);
         }
-        Table table = new Table(tableName, columnList);
 
-        int limit = rows.size(); // 查询结果最多也就 rows.size() 条记录
+        Integer limit = null;
         int offset = 0;
         if (selectStatement.getLimit() != null) {
             TypedValue evaluatedLimit = evaluate(context, selectStatement.getLimit().getLimitExpression());
@@ -134,81 +210,111 @@ public class SelectExecutor extends Executor {
             }
         }
 
+        int[] sortedBy = orderBy == null ? new int[0] : sortedColumns(orderBy.getOrderByList(), selectExpressionList);
+        Operator output;
         if (!isGroupBy && !isAggregate) {
-            // 如果需要排序的话，先对 rows 进行排序。
-            if (selectStatement.getOrderBy() != null) {
-                OrderBy orderBy = selectStatement.getOrderBy();
-                List<Pair<Expression, Boolean>> orderByList = orderBy.getOrderByList();
-                sortRows(rows, schema, orderByList);
+            List<VectorExpression> vectorizedProjection = null;
+            if (vectorizedTable != null && orderBy == null && (selectStatement.getWhereCondition() == null || vectorizedCondition != null)) {
+                vectorizedProjection = VectorExpression.compile(selectExpressionList, vectorizedTable);
             }
-
-            // 填充数据
-            // 简单优化：根据 limit 和 offset 来确定需要往查询结果中添加的记录数，
-            // 而不是添加完所有记录后再进行 limit 和 offset。
-            int upperBound = Math.min(rows.size(), offset + limit);
-            for (int i = offset; i < upperBound; i++) {
-                Row row = rows.get(i);
-                List<Cell> cells = new ArrayList<>();
-                for (Expression expression : selectExpressionList) {
-                    TypedValue value = evaluate(context, schema, row, expression);
-                    cells.add(new Cell(value));
-                }
-                table.addRow(new Row(cells));
-            }
-        } else if (!isGroupBy) {
-            // 没有 group by，但使用了聚集函数的话，只有一行记录
-            if (!(limit > 0 && offset == 0)) return table;
-            List<Cell> cells = new ArrayList<>();
-            for (Expression expression : selectExpressionList) {
-                cells.add(new Cell(evaluate(context, schema, rows, expression)));
+            if (vectorizedProjection != null) {
+                // 过滤和投影在同一个算子中按批完成
+                output = isParallel(vectorizedTable)
+                        ? new ParallelScanOperator(vectorizedTable, selectStatement.getWhereCondition(), selectExpressionList, columnList, sortedBy, parallelism())
+                        : new VectorizedScanOperator(vectorizedTable, vectorizedCondition, vectorizedProjection, columnList, sortedBy);
+            } else {
+                // 如果需要排序的话，先对输入的行进行排序。
+                if (orderBy != null && !orderedByIndex) input = sort(input, orderBy.getOrderByList(), limit, offset);
+                output = new ProjectOperator(input, selectExpressionList, columnList, context, sortedBy);
             }
-            table.addRow(new Row(cells));
+            // limit 在 project 之后，够了就不再往下拉取，剩下的行不会被求值
+            if (limit != null) output = new LimitOperator(output, limit, offset);
         } else {
-            // 有 groupBy 了
+            // 没有 group by 但使用了聚集函数的话，所有行属于同一组，只有一行记录。
             // 分组时，虽然每组可以有多行记录，但是生成表时，一组只对应一条记录，
             // 所以 order by 是针对 group 的，而不是 rows。
-
-            GroupBy groupBy = selectStatement.getGroupBy();
-            List<Expression> groupByList = groupBy.getGroupByList();
-            Map<Group, List<Row>> groupMap = new HashMap<>();
-            for (Row row : rows) {
-                List<TypedValue> items = new ArrayList<>();
-                for (Expression expression : groupByList) {
-                    items.add(evaluate(context, schema, row, expression));
+            List<Expression> groupByList = isGroupBy ? selectStatement.getGroupBy().getGroupByList() : Collections.emptyList();
+            Expression havingCondition = isGroupBy ? selectStatement.getGroupBy().getHavingCondition() : null;
+            List<Expression> aggregateExpressionList = new ArrayList<>(selectExpressionList);
+            List<Column> aggregateColumnList = new ArrayList<>(columnList);
+            List<Pair<Expression, Boolean>> orderByColumnList = new ArrayList<>();
+            if (orderBy != null) {
+                for (Pair<Expression, Boolean> pair : orderBy.getOrderByList()) {
+                    String columnName = ORDER_BY_COLUMN_PREFIX + orderByColumnList.size();
+                    aggregateExpressionList.add(pair.getKey());
+                    aggregateColumnList.add(new Column(aggregateColumnList.size(), columnName, inferType(schema, pair.getKey()), tableName));
+                    orderByColumnList.add(new Pair<>(new ColumnNameExpression(tableName, columnName), pair.getValue()));
                 }
-                Group group = new Group(items);
-                groupMap.putIfAbsent(group, new ArrayList<>());
-                groupMap.get(group).add(row);
             }
 
-            if (groupBy.getHavingCondition() != null) {
-                for (Iterator<Map.Entry<Group, List<Row>>> iterator = groupMap.entrySet().iterator(); iterator.hasNext(); ) {
-                    if (!predicate(context, schema, iterator.next().getValue(), groupBy.getHavingCondition()))
-                        iterator.remove();
-                }
+            // 没有 where 时也并行扫描，各线程直接在扫描时做部分聚集
+            if (vectorizedTable != null && input instanceof ScanOperator && isParallel(vectorizedTable)) {
+                input = new ParallelScanOperator(vectorizedTable, null, null, null, vectorizedTable.getSortedBy(), parallelism());
             }
-
-            ArrayList<Map.Entry<Group, List<Row>>> groupEntryList = new ArrayList<>(groupMap.entrySet());
-            if (selectStatement.getOrderBy() != null) {
-                OrderBy orderBy = selectStatement.getOrderBy();
-                List<Pair<Expression, Boolean>> orderByList = orderBy.getOrderByList();
-                sortGroups(groupEntryList, schema, orderByList);
+            output = new AggregateOperator(input, groupByList, havingCondition, aggregateExpressionList, aggregateColumnList, context);
+            if (orderBy != null) output = sort(output, orderByColumnList, limit, offset);
+            if (limit != null) output = new LimitOperator(output, limit, offset);
+            if (orderBy != null) output = new ProjectOperator(output, columnList, sortedBy);
+            // 只有 count(*) 并且条件整个都能在位图上算出来时，直接数位图中 1 的个数
+            if (bitmapLookup != null && bitmapLookup.isExact() && !isGroupBy && orderBy == null && limit == null
+                    && selectExpressionList.size() == 1 && isCountStar(selectExpressionList.get(0))) {
+                output = new BitmapCountOperator(bitmapLookup, output);
             }
+        }
+
+        return output;
+    }
+
+    /**
+     * 并行度大于 1 并且表至少能切成两个小块时，向量化的扫描在多个线程中并行执行。
+     */
+    private static boolean isParallel(Table table) {
+        return parallelism() > 1 && table.getRowCount() >= 2 * ParallelScanOperator.MORSEL_SIZE;
+    }
+
+    private static int parallelism() {
+        return Settings.getInstance().getParallelism();
+    }
+
+    /**
+     * 有 limit 并且 offset + limit 不超过 sort_buffer_rows 时，只用堆保留排在前面的 offset + limit 行，不对所有行排序。
+     */
+    private Operator sort(Operator input, List<Pair<Expression, Boolean>> orderByList, @Nullable Integer limit, int offset) {
+        if (limit != null && (long) offset + limit <= Settings.getInstance().getSortBufferRows()) {
+            return new TopNOperator(input, orderByList, offset + limit, context);
+        }
+        return new SortOperator(input, orderByList, context);
+    }
 
-            // limit/offset 优化
-            int upperBound = Math.min(groupEntryList.size(), offset + limit);
-            for (int i = offset; i < upperBound; i++) {
-                List<Row> groupRows = groupEntryList.get(i).getValue();
-                List<Cell> cells = new ArrayList<>();
-                for (Expression expression : selectExpressionList) {
-                    TypedValue value = evaluate(context, schema, groupRows, expression);
-                    cells.add(new Cell(value));
+    /**
+     * 根据 order by 推断查询结果按哪些列有序：从第一项开始，每一项都是升序并且与某个 select 表达式相同。
+     */
+    private static int[] sortedColumns(List<Pair<Expression, Boolean>> orderByList, List<Expression> selectExpressionList) {
+        List<Integer> sortedBy = new ArrayList<>();
+        for (Pair<Expression, Boolean> pair : orderByList) {
+            if (pair.getValue()) break; // desc
+            int index = -1;
+            for (int i = 0; i < selectExpressionList.size(); i++) {
+                if (selectExpressionList.get(i).toString().equals(pair.getKey().toString())) {
+                    index = i;
+                    break;
                 }
-                table.addRow(new Row(cells));
             }
+            if (index < 0) break;
+            sortedBy.add(index);
         }
+        return sortedBy.stream().mapToInt(Integer::intValue).toArray();
+    }
 
-        return table;
+    /**
+     * 是否是 count(*)
+     */
+    private static boolean isCountStar(Expression expression) {
+        if (!(expression instanceof FunctionCallExpression)) return false;
+        FunctionCallExpression call = (FunctionCallExpression) expression;
+        return call.getFunctionName().equalsIgnoreCase("count") && call.getArgumentList().size() == 1
+                && call.getArgumentList().get(0) instanceof WildcardExpression
+                && ((WildcardExpression) call.getArgumentList().get(0)).getTableName() == null;
     }
 
     /**
@@ -227,67 +333,15 @@ public class SelectExecutor extends Executor {
         return inferer.infer(expression);
     }
 
-    public void sortRows(List<Row> rows, Schema schema, List<Pair<Expression, Boolean>> orderByList) throws SQLExecuteException {
-        Row[] rowArr = rows.toArray(new Row[0]);
-
-        // 先在外部将 evaluate 的结果计算出来，否则如果在 lambda 内部求值的话，异常没法处理。
-        Map<Row, List<TypedValue>> rowToTypedValue = new HashMap<>();
-        for (Row row : rows) {
-            rowToTypedValue.put(row, new ArrayList<>());
-            for (Pair<Expression, Boolean> pair : orderByList) {
-                rowToTypedValue.get(row).add(evaluate(context, schema, row, pair.getKey()));
-            }
-        }
-
-        Arrays.sort(rowArr, (thisRow, otherRow) -> {
-            for (int i = 0; i < orderByList.size(); i++) {
-                TypedValue thisResult = rowToTypedValue.get(thisRow).get(i);
-                TypedValue otherResult = rowToTypedValue.get(otherRow).get(i);
-                int cmp = thisResult.compareTo(otherResult);
-                if (cmp == 0) continue; // 继续比较
-                return orderByList.get(i).getValue() ? -cmp : cmp;
-            }
-            return 0; // 所有都尝试了，仍相等，返回 0
-        });
-        rows.clear();
-        rows.addAll(Arrays.asList(rowArr));
-    }
-
-    @SuppressWarnings("unchecked")
-    private void sortGroups(List<Map.Entry<Group, List<Row>>> groups, Schema schema, List<Pair<Expression, Boolean>> orderByList) throws SQLExecuteException {
-        Map.Entry<Group, List<Row>>[] groupArr = groups.toArray(new Map.Entry[0]);
-        Map<Map.Entry<Group, List<Row>>, List<TypedValue>> groupToTypedValue = new HashMap<>();
-        for (Map.Entry<Group, List<Row>> groupEntry : groups) {
-            groupToTypedValue.put(groupEntry, new ArrayList<>());
-            for (Pair<Expression, Boolean> pair : orderByList) {
-                groupToTypedValue.get(groupEntry).add(evaluate(context, schema, groupEntry.getValue(), pair.getKey()));
-            }
-        }
-
-        Arrays.sort(groupArr, (thisGroup, otherGroup) -> {
-            for (int i = 0; i < orderByList.size(); i++) {
-                TypedValue thisResult = groupToTypedValue.get(thisGroup).get(i);
-                TypedValue otherResult = groupToTypedValue.get(otherGroup).get(i);
-                int cmp = thisResult.compareTo(otherResult);
-                if (cmp == 0) continue;
-                return orderByList.get(i).getValue() ? -cmp : cmp;
-            }
-            return 0;
-        });
-
-        groups.clear();
-        groups.addAll(Arrays.asList(groupArr));
-    }
-
     /**
-     * 根据 table reference 生成一张虚表。
+     * 根据 table reference 生成算子。
      */
-    private Table makeReferenceTable(TableReference tableReference) throws SQLExecuteException {
-        if (tableReference == null) return Table.dummyTable();
+    private Operator planTableReference(TableReference tableReference) throws SQLExecuteException {
+        if (tableReference == null) return new ScanOperator(Table.dummyTable());
 
         if (tableReference instanceof TableJoin) {
             TableJoin tableJoin = (TableJoin) tableReference;
-            return doJoin(tableJoin);
+            return planJoin(tableJoin);
         } else if (tableReference instanceof RealTableFactor) {
             RealTableFactor realTableFactor = (RealTableFactor) tableReference;
             String tableName = realTableFactor.getTableName();
@@ -298,7 +352,7 @@ public class SelectExecutor extends Executor {
             String alias = realTableFactor.getTableNameAlias();
             if (alias == null) alias = tableName;
 
-            // 此时需要复制表，因为我们会修改别名
+            // 此时需要新的列信息，因为我们会修改别名
             List<Column> columnList = table.getColumns();
             List<Column> newColumnList = new ArrayList<>();
             for (int i = 0; i < columnList.size(); i++) {
@@ -306,111 +360,72 @@ public class SelectExecutor extends Executor {
                 Column newColumn = new Column(i, column.getColumnName(), column.getDataType(), alias);
                 newColumnList.add(newColumn);
             }
-            Table newTable = new Table(tableName, newColumnList);
-            // 不能是 getRows，否则执行 where 子句进行过滤时会把原表的数据给删了
-            newTable.addRows(table.getRows());
-            return newTable;
+            // 只是换了列信息，与原表共享数据，不需要复制
+            return new ScanOperator(table.withColumns(tableName, newColumnList));
         } else { // derived table
             DerivedTable derivedTable = (DerivedTable) tableReference;
-            return new SelectExecutor(context).doSelect(derivedTable.getSelectStatement(), derivedTable.getAlias());
+            return new SelectExecutor(context).plan(derivedTable.getSelectStatement(), derivedTable.getAlias());
         }
     }
 
-    private Table doJoin(TableJoin tableJoin) throws SQLExecuteException {
-        Table left = makeReferenceTable(tableJoin.getLeft());
-        Table right = makeReferenceTable(tableJoin.getRight());
-
-        // 先合并列信息
-        List<Column> leftColumnList = left.getColumns();
-        List<Column> rightColumnList = right.getColumns();
-        List<Column> newColumnList = new ArrayList<>();
-        for (int i = 0; i < leftColumnList.size(); i++) {
-            Column column = leftColumnList.get(i);
-            Column newColumn = new Column(i, column.getColumnName(),
-                    column.getDataType(), column.getTableName());
-            newColumnList.add(newColumn);
-        }
-        for (int i = 0; i < rightColumnList.size(); i++) {
-            Column column = rightColumnList.get(i);
-            Column newColumn = new Column(leftColumnList.size() + i,
-                    column.getColumnName(), column.getDataType(), column.getTableName());
-            newColumnList.add(newColumn);
+    /**
+     * 选择连接算法：没有等值连接键时使用嵌套循环；右表在连接键上有索引并且左表的行少得多时，逐行查右表的索引；
+     * 两边已经按连接键有序时直接归并；否则一般使用哈希连接（行数较多时并行），右表可能太大、哈希表放不下时改为排序后归并。
+     */
+    private Operator planJoin(TableJoin tableJoin) throws SQLExecuteException {
+        Operator left = planTableReference(tableJoin.getLeft());
+        Operator right = planTableReference(tableJoin.getRight());
+        JoinType joinType = tableJoin.getJoinType();
+
+        JoinCondition joinCondition = JoinCondition.analyze(tableJoin.getOn(), left.getSchema(), right.getSchema());
+        if (!joinCondition.isEquiJoin()) {
+            return new NestedLoopJoinOperator(left, right, joinType, tableJoin.getOn(), context);
         }
-
-        Table newTable = new Table(tableJoin.toString(), newColumnList);
-
-        // 对 rows 进行 join
-        Schema schema = newTable.getSchema();
-        Expression condition = tableJoin.getOn() == null ? new IntExpression(1) : tableJoin.getOn();
-        List<Row> leftRows = left.getRows();
-        List<Row> rightRows = right.getRows();
-        boolean[] needLeftJoin = new boolean[leftRows.size()];
-        for (int i = 0; i < leftRows.size(); i++) {
-            needLeftJoin[i] = true;
-            Row leftRow = leftRows.get(i);
-            for (Row rightRow : rightRows) {
-                List<Cell> newCells = new ArrayList<>();
-                newCells.addAll(leftRow.getCells());
-                newCells.addAll(rightRow.getCells());
-                Row newRow = new Row(newCells);
-                // 简单优化：符合条件再连接，而不是连接后再根据条件过滤
-                if (predicate(context, schema, newRow, condition)) {
-                    newTable.addRow(newRow);
-                    needLeftJoin[i] = false;
-                }
+        if (right instanceof ScanOperator) {
+            Index index = joinIndex(((ScanOperator) right).getTable(), joinCondition.getRightKeys());
+            if (index != null && left.estimateRowCount() <= right.estimateRowCount() / INDEX_PROBE_COST) {
+                return new IndexNestedLoopJoinOperator(left, (ScanOperator) right, index, joinType, joinCondition, context);
             }
         }
-
-        // 如果是左连接的话，还需要把左边的表并进去
-        if (tableJoin.getJoinType() == TableJoin.JoinType.LEFT) {
-            for (int i = 0; i < leftRows.size(); i++) {
-                if (needLeftJoin[i]) {
-                    List<Cell> newCells = new ArrayList<>(leftRows.get(i).getCells());
-                    for (int j = 0; j < right.getColumnCount(); j++) {
-                        newCells.add(new Cell(TypedValue.NULL));
-                    }
-                    newTable.addRow(new Row(newCells));
-                }
+        if (isSortedBy(left.getSortedBy(), joinCondition.getLeftKeys()) && isSortedBy(right.getSortedBy(), joinCondition.getRightKeys())) {
+            return new MergeJoinOperator(left, right, joinType, joinCondition, context, true);
+        }
+        if (right.estimateRowCount() <= Settings.getInstance().getHashJoinMaxRows()) {
+            // 两边加起来足够多时并行地建表和探测，剩余条件中有子查询时不能并发求值
+            Expression residual = joinCondition.getResidual();
+            if (parallelism() > 1 && left.estimateRowCount() + right.estimateRowCount() >= 2 * ParallelScanOperator.MORSEL_SIZE
+                    && (residual == null || ExpressionCompiler.isThreadSafe(residual))) {
+                return new ParallelHashJoinOperator(left, right, joinType, joinCondition, context, parallelism());
             }
+            return new HashJoinOperator(left, right, joinType, joinCondition, context);
         }
-
-        return newTable;
+        return new MergeJoinOperator(left, right, joinType, joinCondition, context, false);
     }
 
-    private static class Group {
-
-        private final List<TypedValue> items;
-
-        /**
-         * items 中的 Object 是 immutable 的。
-         */
-        public Group(@NotNull List<TypedValue> items) {
-            this.items = items;
-        }
-
-        public List<TypedValue> getItems() {
-            return items;
-        }
-
-        /**
-         * 当且仅当两个 group 内部的列表元素完全相等的时候，两个 group 相等。
-         */
-        @Override
-        public boolean equals(Object other) {
-            if (other == this) return true;
-            if (!(other instanceof Group)) return false;
-            Group otherGroup = (Group) other;
-            List<TypedValue> otherItems = otherGroup.getItems();
-            if (items.size() != otherItems.size()) return false;
-            for (int i = 0; i < items.size(); i++) {
-                if (!items.get(i).equals(otherItems.get(i))) return false;
+    /**
+     * 右表的连接键上的索引，哈希索引优先，没有的话返回 null。
+     */
+    @Nullable
+    private static Index joinIndex(Table table, int[] rightKeys) {
+        Index result = null;
+        for (int key : rightKeys) {
+            for (Index index : table.getIndexes()) {
+                if (index.getColumnIndex() != key) continue;
+                if (index.getType() == Index.Type.HASH) return index;
+                if (result == null) result = index;
             }
-            return true;
         }
+        return result;
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(items.toArray());
+    /**
+     * keys 是否是 sortedBy 的前缀。
+     */
+    private static boolean isSortedBy(int[] sortedBy, int[] keys) {
+        if (sortedBy.length < keys.length) return false;
+        for (int i = 0; i < keys.length; i++) {
+            if (sortedBy[i] != keys[i]) return false;
         }
+        return true;
     }
 }
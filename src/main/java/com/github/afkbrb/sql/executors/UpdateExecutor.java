@@ -6,6 +6,7 @@ import com.github.afkbrb.sql.ast.expressions.IntExpression;
 import com.github.afkbrb.sql.ast.statements.UpdateStatement;
 import com.github.afkbrb.sql.model.*;
 import com.github.afkbrb.sql.utils.Pair;
+import com.github.afkbrb.sql.visitors.CompiledExpression;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -20,26 +21,56 @@ public class UpdateExecutor extends Executor {
         Schema schema = table.getSchema();
 
         Expression condition = updateStatement.getWhereCondition() == null ? new IntExpression(1) : updateStatement.getWhereCondition();
+        CompiledExpression compiledCondition = compile(null, schema, condition);
         List<Row> rows = table.getRows();
-        List<Row> filteredRows = new ArrayList<>();
-        for (Row row : rows) {
-            if (predicate(schema, row, condition)) filteredRows.add(row);
+        List<Integer> filteredIndexes = new ArrayList<>();
+        // 能用索引查找时只检查候选行
+        int[] candidates = candidateRows(updateStatement.getWhereCondition(), table);
+        if (candidates != null) {
+            for (int i : candidates) {
+                if (predicate(compiledCondition, rows.get(i))) filteredIndexes.add(i);
+            }
+        } else {
+            for (int i = 0; i < rows.size(); i++) {
+                if (predicate(compiledCondition, rows.get(i))) filteredIndexes.add(i);
+            }
         }
 
         List<Pair<String, Expression>> updateList = updateStatement.getUpdateList();
-        for (Row row : filteredRows) {
-            List<Cell> cells = row.getCells();
-            for (Pair<String, Expression> pair : updateList) {
-                Column column = schema.getColumn(pair.getKey());
-                if (column == null)
-                    throw new SQLExecuteException("cannot find column %s in table %s", pair.getKey(), tableName);
-                int index = column.getColumnIndex();
-                DataType expectedType = column.getDataType();
-                TypedValue typedValue = evaluate(schema, row, pair.getValue());
-                cells.get(index).setTypedValue(ensureDataType(expectedType, typedValue));
+        List<CompiledExpression> compiledUpdateList = new ArrayList<>(updateList.size());
+        for (Pair<String, Expression> pair : updateList) {
+            compiledUpdateList.add(compile(null, schema, pair.getValue()));
+        }
+        try {
+            for (int rowIndex : filteredIndexes) {
+                Row row = rows.get(rowIndex);
+                List<Cell> cells = row.getCells();
+                // 每一项都在已经换上前面各项新值的副本上求值，检查完所有约束后才写回，出错时这一行保持不变
+                List<Cell> scratchCells = new ArrayList<>(cells.size());
+                for (Cell cell : cells) {
+                    scratchCells.add(new Cell(cell.getTypedValue()));
+                }
+                Row scratch = new Row(scratchCells);
+                boolean[] updated = new boolean[cells.size()];
+                for (int i = 0; i < updateList.size(); i++) {
+                    Pair<String, Expression> pair = updateList.get(i);
+                    Column column = schema.getColumn(pair.getKey());
+                    if (column == null)
+                        throw new SQLExecuteException("cannot find column %s in table %s", pair.getKey(), tableName);
+                    int index = column.getColumnIndex();
+                    TypedValue typedValue = ensureDataType(column.getDataType(), evaluate(compiledUpdateList.get(i), scratch));
+                    table.checkConstraint(rowIndex, index, typedValue); // 通过索引检查，不扫描表
+                    scratchCells.get(index).setTypedValue(typedValue);
+                    updated[index] = true;
+                }
+                for (int i = 0; i < cells.size(); i++) {
+                    if (updated[i]) cells.get(i).setTypedValue(scratchCells.get(i).getTypedValue());
+                }
+                logUpdate(table, rowIndex, row);
             }
+        } finally {
+            // 出错时已经修改的行也要落盘，保证日志和内存一致
+            commit();
         }
-
-        saveTable(table);
     }
 }
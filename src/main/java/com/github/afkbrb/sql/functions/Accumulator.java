@@ -0,0 +1,27 @@
+package com.github.afkbrb.sql.functions;
+
+import com.github.afkbrb.sql.model.EvaluateError;
+import com.github.afkbrb.sql.model.TypedValue;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 聚集函数在一组值上的中间状态，只占常数空间。
+ * <p>
+ * 由 {@link AggregateFunction#init()} 创建，逐个 accumulate 组中的值，最后 finish 得到结果。
+ * 同一组的值分成几部分分别累积时，可以用 merge 把各部分的状态合并起来。
+ */
+public interface Accumulator {
+
+    /**
+     * 累积一个值，代码实现确保了 value 不会是 {@link EvaluateError}，但可能是 NULL。
+     */
+    void accumulate(@NotNull TypedValue value);
+
+    /**
+     * 把同一个函数的另一个状态合并进来，相当于 accumulate 了 other 累积过的所有值。
+     */
+    void merge(@NotNull Accumulator other);
+
+    @NotNull
+    TypedValue finish();
+}
@@ -0,0 +1,32 @@
+package com.github.afkbrb.sql.functions;
+
+import com.github.afkbrb.sql.model.TypedValue;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * 聚集函数，通过 {@link Accumulator} 逐个累积参数，不需要先把一组的参数都收集起来。
+ */
+public interface AggregateFunction extends Function {
+
+    @Override
+    default boolean isAggregate() {
+        return true;
+    }
+
+    /**
+     * 创建一个空的累积状态。
+     */
+    @NotNull
+    Accumulator init();
+
+    @Override
+    default TypedValue call(@NotNull List<TypedValue> arguments) {
+        Accumulator accumulator = init();
+        for (TypedValue argument : arguments) {
+            accumulator.accumulate(argument);
+        }
+        return accumulator.finish();
+    }
+}
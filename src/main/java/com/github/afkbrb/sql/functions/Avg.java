@@ -4,11 +4,9 @@ import com.github.afkbrb.sql.model.DataType;
 import com.github.afkbrb.sql.model.TypedValue;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
-
 import static com.github.afkbrb.sql.utils.DataTypeUtils.isNumber;
 
-public class Avg implements Function {
+public class Avg implements AggregateFunction {
 
     @Override
     public String getName() {
@@ -20,23 +18,36 @@ public class Avg implements Function {
         return DataType.DOUBLE;
     }
 
+    @NotNull
     @Override
-    public boolean isAggregate() {
-        return true;
+    public Accumulator init() {
+        return new AvgAccumulator();
     }
 
-    @Override
-    public TypedValue call(@NotNull List<TypedValue> arguments) {
-        double sum = 0.0;
-        int counter = 0;
-        for (TypedValue typedValue : arguments) {
-            if (isNumber(typedValue)) {
-                double doubleValue = ((Number) typedValue.getValue()).doubleValue();
-                sum += doubleValue;
+    private static class AvgAccumulator implements Accumulator {
+
+        private double sum = 0.0;
+        private int counter = 0;
+
+        @Override
+        public void accumulate(@NotNull TypedValue value) {
+            if (isNumber(value)) {
+                sum += ((Number) value.getValue()).doubleValue();
                 counter++;
             }
         }
 
-        return counter == 0 ? TypedValue.NULL : new TypedValue(DataType.DOUBLE, sum / counter);
+        @Override
+        public void merge(@NotNull Accumulator other) {
+            AvgAccumulator that = (AvgAccumulator) other;
+            sum += that.sum;
+            counter += that.counter;
+        }
+
+        @NotNull
+        @Override
+        public TypedValue finish() {
+            return counter == 0 ? TypedValue.NULL : new TypedValue(DataType.DOUBLE, sum / counter);
+        }
     }
 }
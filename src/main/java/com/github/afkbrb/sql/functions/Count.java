@@ -4,12 +4,10 @@ import com.github.afkbrb.sql.model.DataType;
 import com.github.afkbrb.sql.model.TypedValue;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
-
 import static com.github.afkbrb.sql.model.DataType.INT;
 import static com.github.afkbrb.sql.utils.DataTypeUtils.isNull;
 
-public class Count implements Function {
+public class Count implements AggregateFunction {
     @Override
     public String getName() {
         return "count";
@@ -20,18 +18,30 @@ public class Count implements Function {
         return INT;
     }
 
+    @NotNull
     @Override
-    public boolean isAggregate() {
-        return true;
+    public Accumulator init() {
+        return new CountAccumulator();
     }
 
-    @Override
-    public TypedValue call(@NotNull List<TypedValue> arguments) {
-        int count = 0;
-        for (TypedValue typedValue : arguments) {
-            if (isNull(typedValue)) continue;
-            count++;
+    private static class CountAccumulator implements Accumulator {
+
+        private int count = 0;
+
+        @Override
+        public void accumulate(@NotNull TypedValue value) {
+            if (!isNull(value)) count++;
+        }
+
+        @Override
+        public void merge(@NotNull Accumulator other) {
+            count += ((CountAccumulator) other).count;
+        }
+
+        @NotNull
+        @Override
+        public TypedValue finish() {
+            return new TypedValue(INT, count);
         }
-        return new TypedValue(INT, count);
     }
 }
@@ -4,41 +4,53 @@ import com.github.afkbrb.sql.model.DataType;
 import com.github.afkbrb.sql.model.TypedValue;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
-
 import static com.github.afkbrb.sql.model.DataType.DOUBLE;
 import static com.github.afkbrb.sql.utils.DataTypeUtils.isNumber;
 
-public class Max implements Function {
+public class Max implements AggregateFunction {
 
     @Override
     public String getName() {
         return "max";
     }
 
-    @Override
-    public boolean isAggregate() {
-        return true;
-    }
-
     @Override
     public DataType getReturnType() {
         return DOUBLE;
     }
 
+    @NotNull
     @Override
-    public TypedValue call(@NotNull List<TypedValue> arguments) {
-        Double max = null;
-        for (TypedValue typedValue : arguments) {
-            if (isNumber(typedValue)) {
-                double doubleValue = ((Number) typedValue.getValue()).doubleValue();
-                if (max == null) {
-                    max = doubleValue;
-                } else if (doubleValue > max) {
-                    max = doubleValue;
-                }
+    public Accumulator init() {
+        return new MaxAccumulator();
+    }
+
+    private static class MaxAccumulator implements Accumulator {
+
+        private double max;
+        private boolean isNull = true;
+
+        @Override
+        public void accumulate(@NotNull TypedValue value) {
+            if (isNumber(value)) {
+                double doubleValue = ((Number) value.getValue()).doubleValue();
+                if (isNull || doubleValue > max) max = doubleValue;
+                isNull = false;
             }
         }
-        return max == null ? TypedValue.NULL : new TypedValue(DOUBLE, max);
+
+        @Override
+        public void merge(@NotNull Accumulator other) {
+            MaxAccumulator that = (MaxAccumulator) other;
+            if (that.isNull) return;
+            if (isNull || that.max > max) max = that.max;
+            isNull = false;
+        }
+
+        @NotNull
+        @Override
+        public TypedValue finish() {
+            return isNull ? TypedValue.NULL : new TypedValue(DOUBLE, max);
+        }
     }
 }
@@ -4,12 +4,10 @@ import com.github.afkbrb.sql.model.DataType;
 import com.github.afkbrb.sql.model.TypedValue;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
-
 import static com.github.afkbrb.sql.model.DataType.DOUBLE;
 import static com.github.afkbrb.sql.utils.DataTypeUtils.isNumber;
 
-public class Min implements Function {
+public class Min implements AggregateFunction {
 
     @Override
     public String getName() {
@@ -18,27 +16,41 @@ public class Min implements Function {
 
     @Override
     public DataType getReturnType() {
-        return DataType.DOUBLE;
+        return DOUBLE;
     }
 
+    @NotNull
     @Override
-    public boolean isAggregate() {
-        return true;
+    public Accumulator init() {
+        return new MinAccumulator();
     }
 
-    @Override
-    public TypedValue call(@NotNull List<TypedValue> arguments) {
-        Double min = null;
-        for (TypedValue typedValue : arguments) {
-            if (isNumber(typedValue)) {
-                double doubleValue = ((Number) typedValue.getValue()).doubleValue();
-                if (min == null) {
-                    min = doubleValue;
-                } else if (doubleValue < min) {
-                    min = doubleValue;
-                }
+    private static class MinAccumulator implements Accumulator {
+
+        private double min;
+        private boolean isNull = true;
+
+        @Override
+        public void accumulate(@NotNull TypedValue value) {
+            if (isNumber(value)) {
+                double doubleValue = ((Number) value.getValue()).doubleValue();
+                if (isNull || doubleValue < min) min = doubleValue;
+                isNull = false;
             }
         }
-        return min == null ? TypedValue.NULL : new TypedValue(DOUBLE, min);
+
+        @Override
+        public void merge(@NotNull Accumulator other) {
+            MinAccumulator that = (MinAccumulator) other;
+            if (that.isNull) return;
+            if (isNull || that.min < min) min = that.min;
+            isNull = false;
+        }
+
+        @NotNull
+        @Override
+        public TypedValue finish() {
+            return isNull ? TypedValue.NULL : new TypedValue(DOUBLE, min);
+        }
     }
 }
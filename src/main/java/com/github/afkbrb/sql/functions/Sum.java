@@ -4,11 +4,9 @@ import com.github.afkbrb.sql.model.DataType;
 import com.github.afkbrb.sql.model.TypedValue;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.List;
-
 import static com.github.afkbrb.sql.utils.DataTypeUtils.isNumber;
 
-public class Sum implements Function {
+public class Sum implements AggregateFunction {
 
     @Override
     public String getName() {
@@ -20,23 +18,36 @@ public class Sum implements Function {
         return DataType.DOUBLE;
     }
 
+    @NotNull
     @Override
-    public boolean isAggregate() {
-        return true;
+    public Accumulator init() {
+        return new SumAccumulator();
     }
 
-    @Override
-    public TypedValue call(@NotNull List<TypedValue> arguments) {
-        double sum = 0.0;
-        boolean isNull = true;
-        for (TypedValue typedValue : arguments) {
-            if (isNumber(typedValue)) {
-                double doubleValue = ((Number) typedValue.getValue()).doubleValue();
-                sum += doubleValue;
+    private static class SumAccumulator implements Accumulator {
+
+        private double sum = 0.0;
+        private boolean isNull = true;
+
+        @Override
+        public void accumulate(@NotNull TypedValue value) {
+            if (isNumber(value)) {
+                sum += ((Number) value.getValue()).doubleValue();
                 isNull = false;
             }
         }
 
-        return isNull ? TypedValue.NULL : new TypedValue(DataType.DOUBLE, sum);
+        @Override
+        public void merge(@NotNull Accumulator other) {
+            SumAccumulator that = (SumAccumulator) other;
+            sum += that.sum;
+            isNull &= that.isNull;
+        }
+
+        @NotNull
+        @Override
+        public TypedValue finish() {
+            return isNull ? TypedValue.NULL : new TypedValue(DataType.DOUBLE, sum);
+        }
     }
 }
@@ -0,0 +1,543 @@
+package com.github.afkbrb.sql.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * B+ 树索引：键有序，除了等值查找，还支持范围查找和按键的顺序（升序或降序）读取行，
+ * 键相同的行按下标升序输出，与稳定排序的结果一致。
+ * <p>
+ * 键都放在叶子中，叶子之间用双向链表相连，范围查找从根找到起点所在的叶子后沿链表读取。
+ * 每个节点最多 {@link #ORDER} 个键。一个键的行都被删除后键会从叶子中去掉，但节点不合并，
+ * 读取时跳过空的叶子，重建索引时才整理。
+ * <p>
+ * 数值按 double 比较，字符串按 String.compareTo 比较，与 &lt;、BETWEEN 的语义相同。
+ * NULL 不放在树中而是单独记录，按 ORDER BY 的规则它最小：升序读取所有行时最先输出，降序时最后输出。
+ */
+public class BTreeIndex extends Index {
+
+    static final int ORDER = 64;
+
+    // 批量建树时每个节点只填到 3/4，给之后的插入留出空间
+    private static final int FILL = ORDER * 3 / 4;
+
+    private static final int[] EMPTY = new int[0];
+
+    private static final byte NUMBER_KEY = 0;
+    private static final byte STRING_KEY = 1;
+
+    private Node root;
+    private Leaf first;
+    private Leaf last;
+    private RowIndexList nulls;
+    private int keyCount;
+
+    // 插入导致节点分裂时，新节点的分隔键
+    private Object separator;
+
+    BTreeIndex(@NotNull String indexName, int columnIndex) {
+        super(indexName, columnIndex);
+        clear();
+    }
+
+    @NotNull
+    @Override
+    public Type getType() {
+        return Type.BTREE;
+    }
+
+    @NotNull
+    @Override
+    public int[] lookup(@NotNull TypedValue value) {
+        Object key = keyOf(value);
+        if (key == null) return EMPTY;
+        Leaf leaf = findLeaf(key);
+        int position = leaf.search(key);
+        return position >= 0 ? leaf.values[position].toArray() : EMPTY;
+    }
+
+    @Override
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    /**
+     * 按键的顺序读取所有行，包括值为 NULL 的行。
+     */
+    @NotNull
+    public PrimitiveIterator.OfInt scan(boolean descending) {
+        return new Cursor(null, false, null, false, descending, true);
+    }
+
+    /**
+     * 按键的顺序读取键在 low 与 high 之间的行，low 或 high 为 null 表示这一端不限。
+     * 值为 NULL 的行不在结果中，low 或 high 是 NULL 值时结果为空。
+     */
+    @NotNull
+    public PrimitiveIterator.OfInt range(@Nullable TypedValue low, boolean lowInclusive,
+                                         @Nullable TypedValue high, boolean highInclusive, boolean descending) {
+        Object lowKey = low == null ? null : keyOf(low);
+        Object highKey = high == null ? null : keyOf(high);
+        if ((low != null && lowKey == null) || (high != null && highKey == null)) {
+            return Arrays.stream(EMPTY).iterator();
+        }
+        return descending
+                ? new Cursor(highKey, highInclusive, lowKey, lowInclusive, true, false)
+                : new Cursor(lowKey, lowInclusive, highKey, highInclusive, false, false);
+    }
+
+    @Override
+    void build(@NotNull ColumnVector vector) {
+        clear();
+        Map<Object, RowIndexList> groups = new HashMap<>();
+        for (int i = 0; i < vector.size(); i++) {
+            Object key = keyOf(vector.get(i));
+            if (key == null) {
+                nulls.add(i);
+            } else {
+                groups.computeIfAbsent(key, k -> new RowIndexList()).add(i);
+            }
+        }
+        Object[] keys = groups.keySet().toArray();
+        Arrays.sort(keys, BTreeIndex::compare);
+        RowIndexList[] values = new RowIndexList[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = groups.get(keys[i]);
+        }
+        bulkLoad(keys, values);
+    }
+
+    @Override
+    void insert(int rowIndex, @NotNull TypedValue value) {
+        Object key = keyOf(value);
+        if (key == null) {
+            nulls.insert(rowIndex);
+        } else {
+            insert(key, rowIndex);
+        }
+    }
+
+    @Override
+    void update(int rowIndex, @NotNull TypedValue oldValue, @NotNull TypedValue newValue) {
+        Object oldKey = keyOf(oldValue);
+        Object newKey = keyOf(newValue);
+        if (Objects.equals(oldKey, newKey)) return;
+        if (oldKey == null) {
+            nulls.remove(rowIndex);
+        } else {
+            remove(oldKey, rowIndex);
+        }
+        if (newKey == null) {
+            nulls.insert(rowIndex);
+        } else {
+            insert(newKey, rowIndex);
+        }
+    }
+
+    @Override
+    void delete(int rowIndex, @NotNull TypedValue value) {
+        Object key = keyOf(value);
+        if (key == null) {
+            nulls.remove(rowIndex);
+        } else {
+            remove(key, rowIndex);
+        }
+        nulls.shift(rowIndex);
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.size; i++) {
+                leaf.values[i].shift(rowIndex);
+            }
+        }
+    }
+
+    /**
+     * 按键的顺序写出索引：值为 NULL 的行，键的个数，然后是每个键和它的行。
+     */
+    public void write(@NotNull DataOutput out) throws IOException {
+        writeRows(out, nulls);
+        out.writeInt(keyCount);
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.size; i++) {
+                Object key = leaf.keys[i];
+                if (key instanceof String) {
+                    byte[] bytes = ((String) key).getBytes(StandardCharsets.UTF_8);
+                    out.writeByte(STRING_KEY);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                } else {
+                    out.writeByte(NUMBER_KEY);
+                    out.writeDouble((Double) key);
+                }
+                writeRows(out, leaf.values[i]);
+            }
+        }
+    }
+
+    /**
+     * 读取 {@link #write(DataOutput)} 写出的内容，替换掉索引原来的内容，不需要排序就能建好树。
+     * 读出的键必须严格递增，并且 rowCount 行中的每一行都恰好出现一次，否则抛出 IOException。
+     */
+    public void read(@NotNull DataInput in, int rowCount) throws IOException {
+        clear();
+        boolean[] seen = new boolean[rowCount];
+        nulls = readRows(in, seen);
+        int count = in.readInt();
+        if (count < 0) throw new IOException("invalid key count " + count);
+        Object[] keys = new Object[count];
+        RowIndexList[] values = new RowIndexList[count];
+        for (int i = 0; i < count; i++) {
+            byte tag = in.readByte();
+            if (tag == STRING_KEY) {
+                int length = in.readInt();
+                if (length < 0) throw new IOException("invalid string length " + length);
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                keys[i] = new String(bytes, StandardCharsets.UTF_8);
+            } else if (tag == NUMBER_KEY) {
+                keys[i] = in.readDouble();
+            } else {
+                throw new IOException("invalid key tag " + tag);
+            }
+            if (i > 0 && compare(keys[i - 1], keys[i]) >= 0) throw new IOException("keys are not in order");
+            values[i] = readRows(in, seen);
+        }
+        for (boolean s : seen) {
+            if (!s) throw new IOException("index doesn't cover all rows");
+        }
+        bulkLoad(keys, values);
+    }
+
+    private static void writeRows(DataOutput out, RowIndexList rows) throws IOException {
+        out.writeInt(rows.size);
+        for (int i = 0; i < rows.size; i++) {
+            out.writeInt(rows.rows[i]);
+        }
+    }
+
+    private static RowIndexList readRows(DataInput in, boolean[] seen) throws IOException {
+        int size = in.readInt();
+        if (size < 0 || size > seen.length) throw new IOException("invalid row count " + size);
+        RowIndexList rows = new RowIndexList();
+        for (int i = 0; i < size; i++) {
+            int rowIndex = in.readInt();
+            if (rowIndex < 0 || rowIndex >= seen.length || seen[rowIndex]) throw new IOException("invalid row index " + rowIndex);
+            if (rows.size > 0 && rows.rows[rows.size - 1] > rowIndex) throw new IOException("row indexes are not in order");
+            seen[rowIndex] = true;
+            rows.add(rowIndex);
+        }
+        return rows;
+    }
+
+    /**
+     * 数值按 double 比较，字符串按 String.compareTo 比较，数值小于字符串（与 ORDER BY 相同）。
+     */
+    public static int compare(@NotNull Object a, @NotNull Object b) {
+        if (a instanceof String) {
+            return b instanceof String ? ((String) a).compareTo((String) b) : 1;
+        }
+        return b instanceof String ? -1 : Double.compare((Double) a, (Double) b);
+    }
+
+    private void clear() {
+        Leaf leaf = new Leaf();
+        root = leaf;
+        first = leaf;
+        last = leaf;
+        nulls = new RowIndexList();
+        keyCount = 0;
+    }
+
+    /**
+     * 自底向上建树，keys 必须严格递增。
+     */
+    private void bulkLoad(Object[] keys, RowIndexList[] values) {
+        keyCount = keys.length;
+        if (keys.length == 0) return;
+        List<Node> level = new ArrayList<>();
+        List<Object> minKeys = new ArrayList<>();
+        Leaf previous = null;
+        for (int start = 0; start < keys.length; start += FILL) {
+            Leaf leaf = new Leaf();
+            leaf.size = Math.min(FILL, keys.length - start);
+            System.arraycopy(keys, start, leaf.keys, 0, leaf.size);
+            System.arraycopy(values, start, leaf.values, 0, leaf.size);
+            leaf.prev = previous;
+            if (previous == null) {
+                first = leaf;
+            } else {
+                previous.next = leaf;
+            }
+            previous = leaf;
+            level.add(leaf);
+            minKeys.add(keys[start]);
+        }
+        last = previous;
+
+        while (level.size() > 1) {
+            List<Node> parents = new ArrayList<>();
+            List<Object> parentMinKeys = new ArrayList<>();
+            for (int start = 0; start < level.size(); start += FILL + 1) {
+                Inner inner = new Inner();
+                int count = Math.min(FILL + 1, level.size() - start);
+                for (int i = 0; i < count; i++) {
+                    inner.children[i] = level.get(start + i);
+                    if (i > 0) inner.keys[i - 1] = minKeys.get(start + i);
+                }
+                inner.size = count - 1;
+                parents.add(inner);
+                parentMinKeys.add(minKeys.get(start));
+            }
+            level = parents;
+            minKeys = parentMinKeys;
+        }
+        root = level.get(0);
+    }
+
+    private Leaf findLeaf(Object key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[inner.upperBound(key)];
+        }
+        return (Leaf) node;
+    }
+
+    private void insert(Object key, int rowIndex) {
+        Node right = insert(root, key, rowIndex);
+        if (right != null) {
+            Inner newRoot = new Inner();
+            newRoot.keys[0] = separator;
+            newRoot.children[0] = root;
+            newRoot.children[1] = right;
+            newRoot.size = 1;
+            root = newRoot;
+        }
+    }
+
+    /**
+     * 把键插入到以 node 为根的子树中，node 分裂时返回分出的右边的节点，分隔键放在 {@link #separator} 中。
+     */
+    private Node insert(Node node, Object key, int rowIndex) {
+        if (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int i = inner.upperBound(key);
+            Node right = insert(inner.children[i], key, rowIndex);
+            if (right == null) return null;
+            System.arraycopy(inner.keys, i, inner.keys, i + 1, inner.size - i);
+            System.arraycopy(inner.children, i + 1, inner.children, i + 2, inner.size - i);
+            inner.keys[i] = separator;
+            inner.children[i + 1] = right;
+            inner.size++;
+            return inner.size > ORDER ? split(inner) : null;
+        }
+
+        Leaf leaf = (Leaf) node;
+        int position = leaf.search(key);
+        if (position >= 0) {
+            leaf.values[position].insert(rowIndex);
+            return null;
+        }
+        position = -position - 1;
+        RowIndexList rows = new RowIndexList();
+        rows.add(rowIndex);
+        System.arraycopy(leaf.keys, position, leaf.keys, position + 1, leaf.size - position);
+        System.arraycopy(leaf.values, position, leaf.values, position + 1, leaf.size - position);
+        leaf.keys[position] = key;
+        leaf.values[position] = rows;
+        leaf.size++;
+        keyCount++;
+        if (leaf.size <= ORDER) return null;
+        // 键递增地追加时左边的叶子保持满的，否则对半分
+        return split(leaf, leaf == last && position == leaf.size - 1 ? leaf.size - 1 : leaf.size / 2);
+    }
+
+    private Leaf split(Leaf leaf, int mid) {
+        Leaf right = new Leaf();
+        right.size = leaf.size - mid;
+        System.arraycopy(leaf.keys, mid, right.keys, 0, right.size);
+        System.arraycopy(leaf.values, mid, right.values, 0, right.size);
+        Arrays.fill(leaf.keys, mid, leaf.size, null);
+        Arrays.fill(leaf.values, mid, leaf.size, null);
+        leaf.size = mid;
+        right.next = leaf.next;
+        right.prev = leaf;
+        if (leaf.next == null) {
+            last = right;
+        } else {
+            leaf.next.prev = right;
+        }
+        leaf.next = right;
+        separator = right.keys[0];
+        return right;
+    }
+
+    private Inner split(Inner inner) {
+        int mid = inner.size / 2;
+        Inner right = new Inner();
+        right.size = inner.size - mid - 1;
+        System.arraycopy(inner.keys, mid + 1, right.keys, 0, right.size);
+        System.arraycopy(inner.children, mid + 1, right.children, 0, right.size + 1);
+        separator = inner.keys[mid];
+        Arrays.fill(inner.keys, mid, inner.size, null);
+        Arrays.fill(inner.children, mid + 1, inner.size + 1, null);
+        inner.size = mid;
+        return right;
+    }
+
+    private void remove(Object key, int rowIndex) {
+        Leaf leaf = findLeaf(key);
+        int position = leaf.search(key);
+        if (position < 0) return;
+        RowIndexList rows = leaf.values[position];
+        rows.remove(rowIndex);
+        if (rows.size > 0) return;
+        System.arraycopy(leaf.keys, position + 1, leaf.keys, position, leaf.size - position - 1);
+        System.arraycopy(leaf.values, position + 1, leaf.values, position, leaf.size - position - 1);
+        leaf.size--;
+        leaf.keys[leaf.size] = null;
+        leaf.values[leaf.size] = null;
+        keyCount--;
+    }
+
+    private abstract static class Node {
+
+        // 多留一个位置，插入后再分裂
+        final Object[] keys = new Object[ORDER + 1];
+        int size;
+
+        /**
+         * 键在 keys 中的位置，找不到的话返回 -(插入位置) - 1。
+         */
+        int search(Object key) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = compare(keys[mid], key);
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -low - 1;
+        }
+
+        /**
+         * 小于等于 key 的键的个数。
+         */
+        int upperBound(Object key) {
+            int position = search(key);
+            return position >= 0 ? position + 1 : -position - 1;
+        }
+
+        /**
+         * 小于 key 的键的个数。
+         */
+        int lowerBound(Object key) {
+            int position = search(key);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+
+    /**
+     * children[i] 中的键都小于 keys[i]，并且大于等于 keys[i - 1]。
+     */
+    private static class Inner extends Node {
+        final Node[] children = new Node[ORDER + 2];
+    }
+
+    private static class Leaf extends Node {
+        final RowIndexList[] values = new RowIndexList[ORDER + 1];
+        Leaf prev;
+        Leaf next;
+    }
+
+    /**
+     * 沿叶子的链表按键的顺序读取行，到 end 为止（null 表示不限）。
+     */
+    private class Cursor implements PrimitiveIterator.OfInt {
+
+        private final Object end;
+        private final boolean endInclusive;
+        private final boolean descending;
+        private boolean nullsPending;
+        private Leaf leaf;
+        private int position;
+        private RowIndexList rows;
+        private int rowPosition;
+
+        Cursor(Object start, boolean startInclusive, Object end, boolean endInclusive, boolean descending, boolean includeNulls) {
+            this.end = end;
+            this.endInclusive = endInclusive;
+            this.descending = descending;
+            this.nullsPending = includeNulls;
+            if (start == null) {
+                leaf = descending ? last : first;
+                position = descending ? leaf.size - 1 : 0;
+            } else {
+                leaf = findLeaf(start);
+                if (descending) {
+                    position = (startInclusive ? leaf.upperBound(start) : leaf.lowerBound(start)) - 1;
+                } else {
+                    position = startInclusive ? leaf.lowerBound(start) : leaf.upperBound(start);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (rows == null || rowPosition >= rows.size) {
+                rows = nextRows();
+                rowPosition = 0;
+                if (rows == null) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return rows.rows[rowPosition++];
+        }
+
+        private RowIndexList nextRows() {
+            // 升序时 NULL 在最前面，降序时在最后面
+            if (nullsPending && !descending) {
+                nullsPending = false;
+                return nulls;
+            }
+            while (leaf != null) {
+                if (descending ? position < 0 : position >= leaf.size) {
+                    leaf = descending ? leaf.prev : leaf.next;
+                    if (leaf != null) position = descending ? leaf.size - 1 : 0;
+                    continue;
+                }
+                Object key = leaf.keys[position];
+                if (end != null) {
+                    int c = compare(key, end);
+                    if (descending ? c < 0 || (c == 0 && !endInclusive) : c > 0 || (c == 0 && !endInclusive)) {
+                        leaf = null;
+                        break;
+                    }
+                }
+                RowIndexList result = leaf.values[position];
+                position += descending ? -1 : 1;
+                return result;
+            }
+            if (nullsPending) {
+                nullsPending = false;
+                return nulls;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package com.github.afkbrb.sql.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * 压缩位图（简化的 roaring bitmap），保存一组非负整数，比如行的下标。
+ * <p>
+ * 整数按高 16 位分块，每块用一个容器保存低 16 位：块中的数不超过 4096 个时用有序的 char 数组，
+ * 否则用 65536 位的位图（1024 个 long）。稀疏的块和稠密的块都不会占用太多空间，
+ * 与、或、差按块进行，稠密的块之间按 long 批量运算。
+ * <p>
+ * {@link #and(Bitmap)}、{@link #or(Bitmap)}、{@link #andNot(Bitmap)} 返回新的位图，不修改参与运算的位图。
+ */
+public class Bitmap {
+
+    // 数组容器最多存放的个数，超过之后位图容器更省空间
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+    private static final int CHUNK = 1 << 16;
+
+    // 块的编号（高 16 位）升序排列
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /**
+     * 包含 [0, end) 中所有整数的位图。
+     */
+    @NotNull
+    public static Bitmap range(int end) {
+        Bitmap bitmap = new Bitmap();
+        for (int start = 0; start < end; start += CHUNK) {
+            bitmap.append((char) (start >>> 16), Container.range(Math.min(end - start, CHUNK)));
+        }
+        return bitmap;
+    }
+
+    public void add(int value) {
+        if (value < 0) throw new IllegalArgumentException("negative value " + value);
+        char key = (char) (value >>> 16);
+        int i = find(key);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, key, new Container());
+        }
+        containers[i].add((char) value);
+    }
+
+    public void remove(int value) {
+        if (value < 0) return;
+        int i = find((char) (value >>> 16));
+        if (i < 0) return;
+        containers[i].remove((char) value);
+        if (containers[i].cardinality == 0) removeContainer(i);
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) return false;
+        int i = find((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @NotNull
+    public Bitmap and(@NotNull Bitmap other) {
+        Bitmap result = new Bitmap();
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    @NotNull
+    public Bitmap or(@NotNull Bitmap other) {
+        Bitmap result = new Bitmap();
+        int i = 0, j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 在当前位图中但不在 other 中的整数。
+     */
+    @NotNull
+    public Bitmap andNot(@NotNull Bitmap other) {
+        Bitmap result = new Bitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) j++;
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.append(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                result.append(keys[i], containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 所有整数，按升序排列。
+     */
+    @NotNull
+    public int[] toArray() {
+        int[] result = new int[getCardinality()];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            n = containers[i].copyTo(keys[i] << 16, result, n);
+        }
+        return result;
+    }
+
+    /**
+     * 删除 value，比它大的数都减 1，对应表中删除了一行。
+     * 在 value 所在的块之前的块不受影响，之后的块要重建。
+     */
+    void removeAndShift(int value) {
+        int from = find((char) (value >>> 16));
+        if (from < 0) from = -from - 1;
+        if (from == size) return;
+        int[] rest = new int[0];
+        for (int i = from; i < size; i++) {
+            int n = rest.length;
+            rest = Arrays.copyOf(rest, n + containers[i].cardinality);
+            containers[i].copyTo(keys[i] << 16, rest, n);
+        }
+        Arrays.fill(containers, from, size, null);
+        size = from;
+        for (int v : rest) {
+            if (v != value) add(v < value ? v : v - 1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * 找到块 key 的位置，不存在时返回 -(插入位置) - 1。按升序追加时总是最后一块，不需要二分查找。
+     */
+    private int find(char key) {
+        if (size > 0 && keys[size - 1] == key) return size - 1;
+        int low = 0, high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) low = mid + 1;
+            else if (keys[mid] > key) high = mid - 1;
+            else return mid;
+        }
+        return -low - 1;
+    }
+
+    // 结果中的块总是按升序追加，空的块不保存
+    private void append(char key, Container container) {
+        if (container.cardinality > 0) insertContainer(size, key, container);
+    }
+
+    private void insertContainer(int i, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    private void removeContainer(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    /**
+     * 一块中的数的低 16 位。array 和 words 恰好有一个不为 null。
+     */
+    private static final class Container {
+
+        char[] array;
+        long[] words;
+        int cardinality;
+
+        Container() {
+            array = new char[4];
+        }
+
+        private Container(char[] array, long[] words, int cardinality) {
+            this.array = array;
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        // 包含 [0, count) 的容器
+        static Container range(int count) {
+            if (count <= ARRAY_MAX) {
+                char[] array = new char[count];
+                for (int i = 0; i < count; i++) {
+                    array[i] = (char) i;
+                }
+                return new Container(array, null, count);
+            }
+            long[] words = new long[WORDS];
+            Arrays.fill(words, 0, count >>> 6, -1L);
+            if ((count & 63) != 0) words[count >>> 6] = (1L << count) - 1;
+            return new Container(null, words, count);
+        }
+
+        // 个数不多时转成数组容器
+        static Container ofWords(long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality > ARRAY_MAX) return new Container(null, words, cardinality);
+            char[] array = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    array[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new Container(array, null, cardinality);
+        }
+
+        boolean contains(char low) {
+            if (words != null) return (words[low >>> 6] & (1L << low)) != 0;
+            return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+
+        void add(char low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) == 0) {
+                    words[low >>> 6] |= bit;
+                    cardinality++;
+                }
+                return;
+            }
+            // 按升序追加时直接放在末尾
+            int i = cardinality > 0 && array[cardinality - 1] < low ? -cardinality - 1 : Arrays.binarySearch(array, 0, cardinality, low);
+            if (i >= 0) return;
+            if (cardinality == ARRAY_MAX) {
+                words = toWords();
+                array = null;
+                add(low);
+                return;
+            }
+            i = -i - 1;
+            if (cardinality == array.length) array = Arrays.copyOf(array, Math.min(cardinality * 2, ARRAY_MAX));
+            System.arraycopy(array, i, array, i + 1, cardinality - i);
+            array[i] = low;
+            cardinality++;
+        }
+
+        void remove(char low) {
+            if (words != null) {
+                long bit = 1L << low;
+                if ((words[low >>> 6] & bit) == 0) return;
+                words[low >>> 6] &= ~bit;
+                if (--cardinality <= ARRAY_MAX) {
+                    Container container = ofWords(words);
+                    array = container.array;
+                    words = null;
+                }
+                return;
+            }
+            int i = Arrays.binarySearch(array, 0, cardinality, low);
+            if (i < 0) return;
+            System.arraycopy(array, i + 1, array, i, cardinality - i - 1);
+            cardinality--;
+        }
+
+        Container and(Container other) {
+            if (array != null && other.array != null) {
+                char[] result = new char[Math.min(cardinality, other.cardinality)];
+                int i = 0, j = 0, n = 0;
+                while (i < cardinality && j < other.cardinality) {
+                    if (array[i] < other.array[j]) i++;
+                    else if (array[i] > other.array[j]) j++;
+                    else {
+                        result[n++] = array[i];
+                        i++;
+                        j++;
+                    }
+                }
+                return new Container(result, null, n);
+            }
+            if (array != null || other.array != null) {
+                // 数组中的每个数在位图中查一下
+                Container sparse = array != null ? this : other;
+                Container dense = array != null ? other : this;
+                char[] result = new char[sparse.cardinality];
+                int n = 0;
+                for (int i = 0; i < sparse.cardinality; i++) {
+                    if (dense.contains(sparse.array[i])) result[n++] = sparse.array[i];
+                }
+                return new Container(result, null, n);
+            }
+            long[] result = new long[WORDS];
+            for (int i = 0; i < WORDS; i++) {
+                result[i] = words[i] & other.words[i];
+            }
+            return ofWords(result);
+        }
+
+        Container or(Container other) {
+            if (array != null && other.array != null && cardinality + other.cardinality <= ARRAY_MAX) {
+                char[] result = new char[cardinality + other.cardinality];
+                int i = 0, j = 0, n = 0;
+                while (i < cardinality || j < other.cardinality) {
+                    if (j == other.cardinality || (i < cardinality && array[i] < other.array[j])) {
+                        result[n++] = array[i++];
+                    } else if (i == cardinality || array[i] > other.array[j]) {
+                        result[n++] = other.array[j++];
+                    } else {
+                        result[n++] = array[i];
+                        i++;
+                        j++;
+                    }
+                }
+                return new Container(result, null, n);
+            }
+            long[] result = toWords();
+            if (other.words != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    result[i] |= other.words[i];
+                }
+            } else {
+                for (int i = 0; i < other.cardinality; i++) {
+                    result[other.array[i] >>> 6] |= 1L << other.array[i];
+                }
+            }
+            return ofWords(result);
+        }
+
+        Container andNot(Container other) {
+            if (array != null) {
+                char[] result = new char[cardinality];
+                int n = 0;
+                for (int i = 0; i < cardinality; i++) {
+                    if (!other.contains(array[i])) result[n++] = array[i];
+                }
+                return new Container(result, null, n);
+            }
+            long[] result = words.clone();
+            if (other.words != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    result[i] &= ~other.words[i];
+                }
+            } else {
+                for (int i = 0; i < other.cardinality; i++) {
+                    result[other.array[i] >>> 6] &= ~(1L << other.array[i]);
+                }
+            }
+            return ofWords(result);
+        }
+
+        Container copy() {
+            return new Container(array == null ? null : Arrays.copyOf(array, Math.max(cardinality, 4)),
+                    words == null ? null : words.clone(), cardinality);
+        }
+
+        // 把 high | 低 16 位依次写到 dest 中，返回写完后的位置
+        int copyTo(int high, int[] dest, int offset) {
+            if (array != null) {
+                for (int i = 0; i < cardinality; i++) {
+                    dest[offset++] = high | array[i];
+                }
+                return offset;
+            }
+            for (int i = 0; i < WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    dest[offset++] = high | (i << 6) + Long.numberOfTrailingZeros(word);
+                }
+            }
+            return offset;
+        }
+
+        long[] toWords() {
+            if (words != null) return words.clone();
+            long[] result = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                result[array[i] >>> 6] |= 1L << array[i];
+            }
+            return result;
+        }
+    }
+}
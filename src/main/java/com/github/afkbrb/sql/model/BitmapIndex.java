@@ -0,0 +1,104 @@
+package com.github.afkbrb.sql.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 位图索引：每个键对应一个 {@link Bitmap}，记录值等于该键的行，值为 NULL 的行单独记在一个位图中。
+ * <p>
+ * 适合只有少量不同值的列（比如状态、地区），这时每个位图都很稠密，压缩后很小。
+ * 多个条件可以直接在位图上做与、或、差（见 {@link com.github.afkbrb.sql.operators.BitmapLookup}），
+ * 满足条件的行数就是结果位图中 1 的个数，不需要读取行。
+ * <p>
+ * 删除一行时要把每个位图中更大的下标减 1，代价与不同值的个数和行数有关。
+ */
+public class BitmapIndex extends Index {
+
+    private static final Bitmap EMPTY = new Bitmap();
+
+    private final Map<Object, Bitmap> bitmaps = new HashMap<>();
+    private Bitmap nulls = new Bitmap();
+
+    BitmapIndex(@NotNull String indexName, int columnIndex) {
+        super(indexName, columnIndex);
+    }
+
+    @NotNull
+    @Override
+    public Type getType() {
+        return Type.BITMAP;
+    }
+
+    @NotNull
+    @Override
+    public int[] lookup(@NotNull TypedValue value) {
+        return bitmap(value).toArray();
+    }
+
+    /**
+     * 值等于 value 的行，value 为 NULL 时为空。返回的位图只读。
+     */
+    @NotNull
+    public Bitmap bitmap(@NotNull TypedValue value) {
+        Object key = keyOf(value);
+        Bitmap bitmap = key == null ? null : bitmaps.get(key);
+        return bitmap == null ? EMPTY : bitmap;
+    }
+
+    /**
+     * 值为 NULL 的行。返回的位图只读。
+     */
+    @NotNull
+    public Bitmap nulls() {
+        return nulls;
+    }
+
+    @Override
+    public int getKeyCount() {
+        return bitmaps.size();
+    }
+
+    @Override
+    void build(@NotNull ColumnVector vector) {
+        bitmaps.clear();
+        nulls = new Bitmap();
+        for (int i = 0; i < vector.size(); i++) {
+            insert(i, vector.get(i));
+        }
+    }
+
+    @Override
+    void insert(int rowIndex, @NotNull TypedValue value) {
+        Object key = keyOf(value);
+        Bitmap bitmap = key == null ? nulls : bitmaps.computeIfAbsent(key, k -> new Bitmap());
+        bitmap.add(rowIndex);
+    }
+
+    @Override
+    void update(int rowIndex, @NotNull TypedValue oldValue, @NotNull TypedValue newValue) {
+        Object oldKey = keyOf(oldValue);
+        Object newKey = keyOf(newValue);
+        if (Objects.equals(oldKey, newKey)) return;
+        if (oldKey == null) {
+            nulls.remove(rowIndex);
+        } else {
+            Bitmap bitmap = bitmaps.get(oldKey);
+            bitmap.remove(rowIndex);
+            if (bitmap.isEmpty()) bitmaps.remove(oldKey);
+        }
+        insert(rowIndex, newValue);
+    }
+
+    @Override
+    void delete(int rowIndex, @NotNull TypedValue value) {
+        // 被删除的行只在一个位图中，但每个位图中更大的下标都要减 1
+        nulls.removeAndShift(rowIndex);
+        bitmaps.values().removeIf(bitmap -> {
+            bitmap.removeAndShift(rowIndex);
+            return bitmap.isEmpty();
+        });
+    }
+}
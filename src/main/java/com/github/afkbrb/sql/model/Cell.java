@@ -12,6 +12,12 @@ public class Cell {
         this.typedValue = Objects.requireNonNull(typedValue);
     }
 
+    /**
+     * 供不自己保存值的子类（比如表中某个位置的视图）使用。
+     */
+    protected Cell() {
+    }
+
     @NotNull
     public TypedValue getTypedValue() {
         return typedValue;
@@ -23,6 +29,6 @@ public class Cell {
 
     @Override
     public String toString() {
-        return typedValue.toString();
+        return getTypedValue().toString();
     }
 }
@@ -0,0 +1,179 @@
+package com.github.afkbrb.sql.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 表中一列的数据，按列连续存放。
+ * <p>
+ * INT/DOUBLE 列直接存在 int[]/double[] 中，STRING 列做字典编码，NULL 用位图标记，
+ * 这样一个 INT 值只占 4 个字节，而不是 Cell + TypedValue + Integer 三个对象。
+ * 类型不固定的列（比如查询结果中的表达式列）使用 {@link ValueVector}。
+ */
+public abstract class ColumnVector {
+
+    protected static final int INITIAL_CAPACITY = 16;
+
+    protected int size = 0;
+    private long[] nulls = new long[1];
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int index) {
+        checkIndex(index);
+        return nullAt(index);
+    }
+
+    @NotNull
+    public TypedValue get(int index) {
+        checkIndex(index);
+        return nullAt(index) ? TypedValue.NULL : read(index);
+    }
+
+    /**
+     * 能否存放 typedValue，NULL 总是可以存放的。
+     */
+    public boolean accepts(@NotNull TypedValue typedValue) {
+        return typedValue.getDataType() == DataType.NULL || acceptsValue(typedValue);
+    }
+
+    public void set(int index, @NotNull TypedValue typedValue) {
+        checkIndex(index);
+        checkAccepts(typedValue);
+        boolean isNull = typedValue.getDataType() == DataType.NULL;
+        setNull(index, isNull);
+        if (!isNull) write(index, typedValue);
+    }
+
+    public void add(@NotNull TypedValue typedValue) {
+        checkAccepts(typedValue);
+        if (typedValue.getDataType() == DataType.NULL) {
+            addNull();
+        } else {
+            int index = append();
+            write(index, typedValue);
+        }
+    }
+
+    public void addNull() {
+        int index = append();
+        setNull(index, true);
+        clear(index);
+    }
+
+    /**
+     * 把 other 的所有值按顺序追加到末尾，other 必须是同一种列，调用之后不应再修改 other。
+     */
+    public void addAll(@NotNull ColumnVector other) {
+        Objects.requireNonNull(other);
+        if (other.getClass() != getClass()) {
+            throw new IllegalArgumentException("cannot append " + other.getClass().getSimpleName() + " to " + getClass().getSimpleName());
+        }
+        int offset = size;
+        int newSize = size + other.size;
+        if (newSize > capacity()) grow(newSize);
+        if ((newSize >>> 6) >= nulls.length) nulls = Arrays.copyOf(nulls, Math.max(nulls.length * 2, (newSize >>> 6) + 1));
+        for (int i = 0; i < other.size; i++) {
+            if (other.nullAt(i)) setNull(offset + i, true);
+        }
+        size = newSize;
+        copyFrom(other, offset);
+    }
+
+    public void remove(int index) {
+        checkIndex(index);
+        move(index + 1, index, size - index - 1);
+        for (int i = index; i < size - 1; i++) {
+            setNull(i, nullAt(i + 1));
+        }
+        size--;
+        setNull(size, false);
+    }
+
+    /**
+     * 在末尾增加一个位置并返回其下标，需要的话扩容。
+     */
+    protected int append() {
+        if (size == capacity()) {
+            grow(Math.max(INITIAL_CAPACITY, size + (size >> 1)));
+        }
+        if ((size >>> 6) >= nulls.length) {
+            nulls = Arrays.copyOf(nulls, nulls.length * 2);
+        }
+        return size++;
+    }
+
+    protected void checkIndex(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+    }
+
+    private void checkAccepts(TypedValue typedValue) {
+        Objects.requireNonNull(typedValue);
+        if (!accepts(typedValue)) {
+            throw new IllegalArgumentException("unexpected " + typedValue.getDataType() + " value in " + getClass().getSimpleName());
+        }
+    }
+
+    private boolean nullAt(int index) {
+        return (nulls[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private void setNull(int index, boolean isNull) {
+        if (isNull) {
+            nulls[index >>> 6] |= 1L << index;
+        } else {
+            nulls[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * 把 other 的数据复制到 offset 开始的位置，NULL 已经标记好了。子类可以覆盖为直接复制数组。
+     */
+    protected void copyFrom(@NotNull ColumnVector other, int offset) {
+        for (int i = 0; i < other.size; i++) {
+            if (other.nullAt(i)) clear(offset + i);
+            else write(offset + i, other.read(i));
+        }
+    }
+
+    protected abstract boolean acceptsValue(@NotNull TypedValue typedValue);
+
+    protected abstract TypedValue read(int index);
+
+    protected abstract void write(int index, @NotNull TypedValue typedValue);
+
+    /**
+     * 把 NULL 所在位置的数据清空，避免残留旧值。
+     */
+    protected abstract void clear(int index);
+
+    protected abstract int capacity();
+
+    protected abstract void grow(int capacity);
+
+    /**
+     * 将 [from, from + length) 的数据移动到 to 开始的位置。
+     */
+    protected abstract void move(int from, int to, int length);
+
+    /**
+     * 根据列类型选择存储方式。
+     */
+    @NotNull
+    public static ColumnVector of(@NotNull DataType dataType) {
+        switch (dataType) {
+            case INT:
+                return new IntVector();
+            case DOUBLE:
+                return new DoubleVector();
+            case STRING:
+                return new StringVector();
+            default:
+                return new ValueVector();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.afkbrb.sql.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static com.github.afkbrb.sql.model.DataType.DOUBLE;
+
+public class DoubleVector extends ColumnVector {
+
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    /**
+     * 不检查 NULL，NULL 所在位置为 0。
+     */
+    public double getDouble(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    public void addDouble(double value) {
+        values[append()] = value;
+    }
+
+    @Override
+    protected boolean acceptsValue(@NotNull TypedValue typedValue) {
+        return typedValue.getDataType() == DOUBLE;
+    }
+
+    @Override
+    protected TypedValue read(int index) {
+        return new TypedValue(DOUBLE, values[index]);
+    }
+
+    @Override
+    protected void write(int index, @NotNull TypedValue typedValue) {
+        values[index] = (Double) typedValue.getValue();
+    }
+
+    @Override
+    protected void copyFrom(@NotNull ColumnVector other, int offset) {
+        // NULL 所在位置在 other 中已经是 0
+        System.arraycopy(((DoubleVector) other).values, 0, values, offset, other.size);
+    }
+
+    @Override
+    protected void clear(int index) {
+        values[index] = 0;
+    }
+
+    @Override
+    protected int capacity() {
+        return values.length;
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected void move(int from, int to, int length) {
+        System.arraycopy(values, from, values, to, length);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.afkbrb.sql.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 哈希索引：每个键对应一个按升序排列的行下标数组，等值查找是 O(1) 的。
+ * <p>
+ * 追加的行的下标总是最大的，直接放在数组末尾；删除一行时要把所有更大的下标减 1，是 O(n) 的，
+ * 与从列中删除一个值的代价相同。
+ */
+public class HashIndex extends Index {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<Object, RowIndexList> map = new HashMap<>();
+
+    HashIndex(@NotNull String indexName, int columnIndex) {
+        super(indexName, columnIndex);
+    }
+
+    @NotNull
+    @Override
+    public Type getType() {
+        return Type.HASH;
+    }
+
+    @NotNull
+    @Override
+    public int[] lookup(@NotNull TypedValue value) {
+        Object key = keyOf(value);
+        RowIndexList rows = key == null ? null : map.get(key);
+        return rows == null ? EMPTY : rows.toArray();
+    }
+
+    @Override
+    public int getKeyCount() {
+        return map.size();
+    }
+
+    @Override
+    void build(@NotNull ColumnVector vector) {
+        map.clear();
+        for (int i = 0; i < vector.size(); i++) {
+            insert(i, vector.get(i));
+        }
+    }
+
+    @Override
+    void insert(int rowIndex, @NotNull TypedValue value) {
+        Object key = keyOf(value);
+        if (key == null) return;
+        map.computeIfAbsent(key, k -> new RowIndexList()).add(rowIndex);
+    }
+
+    @Override
+    void update(int rowIndex, @NotNull TypedValue oldValue, @NotNull TypedValue newValue) {
+        Object oldKey = keyOf(oldValue);
+        Object newKey = keyOf(newValue);
+        if (Objects.equals(oldKey, newKey)) return;
+        if (oldKey != null) remove(oldKey, rowIndex);
+        if (newKey != null) map.computeIfAbsent(newKey, k -> new RowIndexList()).insert(rowIndex);
+    }
+
+    @Override
+    void delete(int rowIndex, @NotNull TypedValue value) {
+        Object key = keyOf(value);
+        if (key != null) remove(key, rowIndex);
+        for (RowIndexList rows : map.values()) {
+            rows.shift(rowIndex);
+        }
+    }
+
+    private void remove(Object key, int rowIndex) {
+        RowIndexList rows = map.get(key);
+        if (rows == null) return;
+        rows.remove(rowIndex);
+        if (rows.size == 0) map.remove(key);
+    }
+}
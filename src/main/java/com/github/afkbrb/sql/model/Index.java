@@ -0,0 +1,136 @@
+package com.github.afkbrb.sql.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * 表中某一列上的索引，把列中的值映射到所在的行（行在表中的下标）。
+ * <p>
+ * 索引由 {@link Table#addIndex(Index)} 挂到表上，之后表在增删改行时负责维护它，索引本身不会读取表。
+ * 删除一行后，其后所有行的下标都减 1，索引中记录的下标也要随之调整。
+ * <p>
+ * 值按 = 的语义比较：数值统一按 double 比较（1 = 1.0），NULL 不等于任何值，所以不会出现在查找的结果中。
+ * <ul>
+ *     <li>{@link HashIndex}：只支持等值查找</li>
+ *     <li>{@link BTreeIndex}：键有序，还支持范围查找和按键的顺序读取</li>
+ *     <li>{@link BitmapIndex}：每个键对应一个压缩位图，适合不同值很少的列，多个条件可以在位图上组合</li>
+ * </ul>
+ * 索引还可以带 UNIQUE 或 PRIMARY KEY 约束，由 {@link Table#checkConstraint(int, int, TypedValue)} 检查。
+ */
+public abstract class Index {
+
+    public enum Type {
+        HASH,
+        BTREE,
+        BITMAP
+    }
+
+    public enum Constraint {
+        NONE,
+        // 非 NULL 的值不能重复，NULL 可以有多个
+        UNIQUE,
+        // 在 UNIQUE 的基础上不能为 NULL
+        PRIMARY_KEY
+    }
+
+    private final String indexName;
+    private final int columnIndex;
+    private Constraint constraint = Constraint.NONE;
+
+    protected Index(@NotNull String indexName, int columnIndex) {
+        this.indexName = Objects.requireNonNull(indexName);
+        this.columnIndex = columnIndex;
+    }
+
+    @NotNull
+    public static Index create(@NotNull Type type, @NotNull String indexName, int columnIndex) {
+        switch (type) {
+            case HASH:
+                return new HashIndex(indexName, columnIndex);
+            case BTREE:
+                return new BTreeIndex(indexName, columnIndex);
+            case BITMAP:
+                return new BitmapIndex(indexName, columnIndex);
+            default:
+                throw new IllegalArgumentException("unknown index type " + type);
+        }
+    }
+
+    @NotNull
+    public static Index create(@NotNull Type type, @NotNull String indexName, int columnIndex, @NotNull Constraint constraint) {
+        Index index = create(type, indexName, columnIndex);
+        index.constraint = Objects.requireNonNull(constraint);
+        return index;
+    }
+
+    @NotNull
+    public String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * 被索引的列在表中的下标。
+     */
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    @NotNull
+    public abstract Type getType();
+
+    @NotNull
+    public Constraint getConstraint() {
+        return constraint;
+    }
+
+    /**
+     * 返回值等于 value 的所有行的下标，按升序排列。
+     */
+    @NotNull
+    public abstract int[] lookup(@NotNull TypedValue value);
+
+    /**
+     * 不同的键（不含 NULL）的个数。
+     */
+    public abstract int getKeyCount();
+
+    /**
+     * 丢弃原来的内容，用列中现有的数据重建索引。
+     */
+    abstract void build(@NotNull ColumnVector vector);
+
+    /**
+     * 表的末尾追加了一行，该行的下标为 rowIndex。
+     */
+    abstract void insert(int rowIndex, @NotNull TypedValue value);
+
+    /**
+     * 第 rowIndex 行的值从 oldValue 改成了 newValue。
+     */
+    abstract void update(int rowIndex, @NotNull TypedValue oldValue, @NotNull TypedValue newValue);
+
+    /**
+     * 删除了值为 value 的第 rowIndex 行，其后的行的下标都减 1。
+     */
+    abstract void delete(int rowIndex, @NotNull TypedValue value);
+
+    /**
+     * 按 = 的语义计算索引的键：数值统一转成 double，NULL 返回 null。
+     * 连接算子也用它计算连接键，所以用索引连接时查索引的键与连接键一致。
+     */
+    @Nullable
+    public static Object keyOf(@NotNull TypedValue typedValue) {
+        switch (typedValue.getDataType()) {
+            case INT:
+            case DOUBLE:
+                double value = ((Number) typedValue.getValue()).doubleValue();
+                return value == 0 ? 0.0 : value; // -0.0 == 0.0
+            case STRING:
+                return typedValue.getValue();
+            default:
+                return null;
+        }
+    }
+}
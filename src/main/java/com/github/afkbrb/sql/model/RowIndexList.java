@@ -0,0 +1,51 @@
+package com.github.afkbrb.sql.model;
+
+import java.util.Arrays;
+
+/**
+ * 索引中一个键对应的行下标，按升序排列。
+ */
+class RowIndexList {
+
+    int[] rows = new int[1];
+    int size;
+
+    void add(int rowIndex) {
+        if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+        rows[size++] = rowIndex;
+    }
+
+    void insert(int rowIndex) {
+        if (size == 0 || rows[size - 1] < rowIndex) {
+            add(rowIndex);
+            return;
+        }
+        int position = Arrays.binarySearch(rows, 0, size, rowIndex);
+        if (position >= 0) return;
+        position = -position - 1;
+        if (size == rows.length) rows = Arrays.copyOf(rows, size * 2);
+        System.arraycopy(rows, position, rows, position + 1, size - position);
+        rows[position] = rowIndex;
+        size++;
+    }
+
+    void remove(int rowIndex) {
+        int position = Arrays.binarySearch(rows, 0, size, rowIndex);
+        if (position < 0) return;
+        System.arraycopy(rows, position + 1, rows, position, size - position - 1);
+        size--;
+    }
+
+    /**
+     * 删除第 rowIndex 行后，把更大的下标都减 1。
+     */
+    void shift(int rowIndex) {
+        for (int i = size - 1; i >= 0 && rows[i] > rowIndex; i--) {
+            rows[i]--;
+        }
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(rows, size);
+    }
+}
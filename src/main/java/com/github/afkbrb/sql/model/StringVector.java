@@ -0,0 +1,106 @@
+package com.github.afkbrb.sql.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+import static com.github.afkbrb.sql.model.DataType.STRING;
+
+/**
+ * 字典编码的字符串列，每行只存一个 int 编码，相同的字符串只保存一份。
+ * 删除或修改行时不回收字典中不再使用的字符串。
+ */
+public class StringVector extends ColumnVector {
+
+    private int[] codes = new int[INITIAL_CAPACITY];
+    private final List<String> dictionary = new ArrayList<>();
+    private final Map<String, Integer> codeMap = new HashMap<>();
+
+    /**
+     * 不检查 NULL，NULL 所在位置的编码为 0，调用前需要先用 isNull 判断。
+     */
+    public int getCode(int index) {
+        checkIndex(index);
+        return codes[index];
+    }
+
+    /**
+     * NULL 时返回 null。
+     */
+    public String getString(int index) {
+        return isNull(index) ? null : dictionary.get(codes[index]);
+    }
+
+    /**
+     * 编码到字符串的映射，第 i 个元素是编码为 i 的字符串。
+     */
+    @NotNull
+    public List<String> getDictionary() {
+        return Collections.unmodifiableList(dictionary);
+    }
+
+    public void addString(@NotNull String value) {
+        int code = encode(value);
+        codes[append()] = code;
+    }
+
+    private int encode(String value) {
+        Integer code = codeMap.get(Objects.requireNonNull(value));
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            codeMap.put(value, code);
+        }
+        return code;
+    }
+
+    @Override
+    protected boolean acceptsValue(@NotNull TypedValue typedValue) {
+        return typedValue.getDataType() == STRING;
+    }
+
+    @Override
+    protected TypedValue read(int index) {
+        return new TypedValue(STRING, dictionary.get(codes[index]));
+    }
+
+    @Override
+    protected void write(int index, @NotNull TypedValue typedValue) {
+        codes[index] = encode((String) typedValue.getValue());
+    }
+
+    /**
+     * 两个列的字典不同，先把 other 字典中的每个字符串编码一次，再逐行换算编码。
+     */
+    @Override
+    protected void copyFrom(@NotNull ColumnVector other, int offset) {
+        StringVector vector = (StringVector) other;
+        int[] translation = new int[vector.dictionary.size()];
+        for (int i = 0; i < translation.length; i++) {
+            translation[i] = encode(vector.dictionary.get(i));
+        }
+        for (int i = 0; i < vector.size; i++) {
+            codes[offset + i] = vector.isNull(i) ? 0 : translation[vector.codes[i]];
+        }
+    }
+
+    @Override
+    protected void clear(int index) {
+        codes[index] = 0;
+    }
+
+    @Override
+    protected int capacity() {
+        return codes.length;
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        codes = Arrays.copyOf(codes, capacity);
+    }
+
+    @Override
+    protected void move(int from, int to, int length) {
+        System.arraycopy(codes, from, codes, to, length);
+    }
+}
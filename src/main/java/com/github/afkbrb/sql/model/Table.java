@@ -4,34 +4,199 @@ import com.github.afkbrb.sql.SQLExecuteException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 /**
  * 数据表的 Java 表示。
+ * <p>
+ * 数据按列存放在 {@link ColumnVector} 中，{@link #getRows()} 和 {@link #getRow(int)} 返回的行只是视图，
+ * 读写视图中的 cell 就是读写表中对应位置的数据。视图按下标访问表，删除行后，其后的视图会指向下一行。
+ * <p>
+ * 表上的 {@link Index} 在增删改行时同步更新。
  */
 public class Table {
 
     private String tableName;
     private List<Column> columns;
     private Schema schema;
-    private List<Row> rows = new ArrayList<>();
+    private final ColumnVector[] vectors;
+    private int rowCount = 0;
+    // 与其他表共享列数据的表不允许修改
+    private final boolean shared;
+    private final List<Row> rows = new RowList();
+    // 已知按这些列升序排列（NULL 在最前），修改数据后失效
+    private int[] sortedBy = new int[0];
+    // 与共享数据的只读表共用
+    private List<Index> indexes = new ArrayList<>();
 
     public Table(@Nullable String tableName, @NotNull List<Column> columns) {
         this.tableName = tableName;
         this.columns = Objects.requireNonNull(columns);
         schema = new Schema(columns);
+        vectors = new ColumnVector[columns.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = ColumnVector.of(columns.get(i).getDataType());
+        }
+        shared = false;
+    }
+
+    /**
+     * 直接使用已经填充好的列数据建表，各列的行数必须相同。
+     */
+    public Table(@Nullable String tableName, @NotNull List<Column> columns, @NotNull List<ColumnVector> vectors) {
+        this(tableName, columns, vectors.toArray(new ColumnVector[0]), vectors.isEmpty() ? 0 : vectors.get(0).size(), false);
+        if (vectors.size() != columns.size()) throw new IllegalArgumentException("column count doesn't match");
+        for (ColumnVector vector : vectors) {
+            if (vector.size() != rowCount) throw new IllegalArgumentException("every column should have the same number of rows");
+        }
+    }
+
+    private Table(String tableName, List<Column> columns, ColumnVector[] vectors, int rowCount, boolean shared) {
+        this.tableName = tableName;
+        this.columns = Objects.requireNonNull(columns);
+        this.schema = new Schema(columns);
+        this.vectors = vectors;
+        this.rowCount = rowCount;
+        this.shared = shared;
+    }
+
+    /**
+     * 返回与当前表共享数据、但列信息不同（比如表名换成了别名）的只读表，不需要复制数据。
+     */
+    @NotNull
+    public Table withColumns(@Nullable String tableName, @NotNull List<Column> columns) {
+        if (columns.size() != vectors.length) throw new IllegalArgumentException("column count doesn't match");
+        Table table = new Table(tableName, columns, vectors, rowCount, true);
+        table.sortedBy = sortedBy;
+        table.indexes = indexes;
+        return table;
+    }
+
+    /**
+     * 表已知按哪些列（列下标）升序排列，前面的列优先，未知的话返回空数组。
+     */
+    @NotNull
+    public int[] getSortedBy() {
+        return sortedBy.clone();
+    }
+
+    public void setSortedBy(@NotNull int[] sortedBy) {
+        for (int columnIndex : sortedBy) {
+            if (columnIndex < 0 || columnIndex >= vectors.length) throw new IndexOutOfBoundsException("column index " + columnIndex);
+        }
+        this.sortedBy = sortedBy.clone();
     }
 
     public Schema getSchema() {
         return schema;
     }
 
+    /**
+     * 在表上添加索引，并用现有的数据建好。
+     */
+    public void addIndex(@NotNull Index index) {
+        checkWritable();
+        if (index.getColumnIndex() < 0 || index.getColumnIndex() >= vectors.length) {
+            throw new IndexOutOfBoundsException("column index " + index.getColumnIndex());
+        }
+        index.build(vectors[index.getColumnIndex()]);
+        indexes.add(index);
+    }
+
+    /**
+     * 添加已经包含表中现有数据的索引（比如从索引文件中读出的），不重建。
+     */
+    public void attachIndex(@NotNull Index index) {
+        checkWritable();
+        if (index.getColumnIndex() < 0 || index.getColumnIndex() >= vectors.length) {
+            throw new IndexOutOfBoundsException("column index " + index.getColumnIndex());
+        }
+        indexes.add(index);
+    }
+
+    public void removeIndex(@NotNull String indexName) {
+        checkWritable();
+        indexes.removeIf(index -> index.getIndexName().equalsIgnoreCase(indexName));
+    }
+
+    /**
+     * 表上的所有索引，只读。
+     */
+    @NotNull
+    public List<Index> getIndexes() {
+        return Collections.unmodifiableList(indexes);
+    }
+
+    /**
+     * 第 columnIndex 列上的某种索引，没有的话返回 null。
+     */
+    @Nullable
+    public Index getIndex(int columnIndex, @NotNull Index.Type type) {
+        for (Index index : indexes) {
+            if (index.getColumnIndex() == columnIndex && index.getType() == type) return index;
+        }
+        return null;
+    }
+
+    /**
+     * 追加一行，不检查约束（加载表和重放日志时数据本来就满足约束），需要的话先调用 {@link #checkConstraints(Row)}。
+     */
     public void addRow(@NotNull Row row) {
-        // TODO: 检查约束
-        rows.add(Objects.requireNonNull(row));
+        Objects.requireNonNull(row);
+        checkWritable();
+        if (row.size() != vectors.length) {
+            throw new IllegalArgumentException("row size is " + row.size() + ", while column count is " + vectors.length);
+        }
+        for (int i = 0; i < vectors.length; i++) {
+            TypedValue typedValue = row.getCells().get(i).getTypedValue();
+            ensureAccepts(i, typedValue);
+            vectors[i].add(typedValue);
+        }
+        rowCount++;
+        sortedBy = new int[0];
+        for (Index index : indexes) {
+            index.insert(rowCount - 1, vectors[index.getColumnIndex()].get(rowCount - 1));
+        }
+    }
+
+    /**
+     * 检查把 row 追加到表中是否违反约束。
+     */
+    public void checkConstraints(@NotNull Row row) throws SQLExecuteException {
+        if (row.size() != vectors.length) {
+            throw new IllegalArgumentException("row size is " + row.size() + ", while column count is " + vectors.length);
+        }
+        for (Index index : indexes) {
+            if (index.getConstraint() == Index.Constraint.NONE) continue;
+            checkConstraint(index, -1, row.getCells().get(index.getColumnIndex()).getTypedValue());
+        }
+    }
+
+    /**
+     * 检查把第 rowIndex 行第 columnIndex 列的值改成 typedValue 是否违反约束。
+     * 唯一性靠约束的索引查找，不需要扫描表。
+     */
+    public void checkConstraint(int rowIndex, int columnIndex, @NotNull TypedValue typedValue) throws SQLExecuteException {
+        checkRowIndex(rowIndex);
+        for (Index index : indexes) {
+            if (index.getConstraint() == Index.Constraint.NONE || index.getColumnIndex() != columnIndex) continue;
+            checkConstraint(index, rowIndex, typedValue);
+        }
+    }
+
+    // rowIndex 为 -1 时表示新追加的行
+    private void checkConstraint(Index index, int rowIndex, TypedValue typedValue) throws SQLExecuteException {
+        if (typedValue.getDataType() == DataType.NULL) {
+            if (index.getConstraint() == Index.Constraint.PRIMARY_KEY) {
+                throw new SQLExecuteException("Column '%s' cannot be null", columns.get(index.getColumnIndex()).getColumnName());
+            }
+            return;
+        }
+        for (int duplicate : index.lookup(typedValue)) {
+            if (duplicate != rowIndex) {
+                throw new SQLExecuteException("Duplicate entry '%s' for key '%s'", typedValue.getValue(), index.getIndexName());
+            }
+        }
     }
 
     public void addRows(@NotNull List<Row> rows) {
@@ -41,20 +206,62 @@ public class Table {
         }
     }
 
+    public void removeRow(int rowIndex) {
+        checkWritable();
+        checkRowIndex(rowIndex);
+        for (Index index : indexes) {
+            index.delete(rowIndex, vectors[index.getColumnIndex()].get(rowIndex));
+        }
+        for (ColumnVector vector : vectors) {
+            vector.remove(rowIndex);
+        }
+        rowCount--;
+    }
+
+    @NotNull
+    public TypedValue getValue(int rowIndex, int columnIndex) {
+        checkRowIndex(rowIndex);
+        return vectors[columnIndex].get(rowIndex);
+    }
+
+    public void setValue(int rowIndex, int columnIndex, @NotNull TypedValue typedValue) {
+        Objects.requireNonNull(typedValue);
+        checkWritable();
+        checkRowIndex(rowIndex);
+        ensureAccepts(columnIndex, typedValue);
+        TypedValue oldValue = vectors[columnIndex].get(rowIndex);
+        vectors[columnIndex].set(rowIndex, typedValue);
+        sortedBy = new int[0];
+        for (Index index : indexes) {
+            if (index.getColumnIndex() == columnIndex) index.update(rowIndex, oldValue, typedValue);
+        }
+    }
+
+    /**
+     * 第 columnIndex 列的数据，只读。
+     */
+    @NotNull
+    public ColumnVector getVector(int columnIndex) {
+        return vectors[columnIndex];
+    }
+
     @Nullable
     public Row getRow(int rowIndex) {
-        if (rowIndex >= 0 && rowIndex < rows.size()) {
-            return rows.get(rowIndex);
+        if (rowIndex >= 0 && rowIndex < rowCount) {
+            return new RowView(rowIndex);
         }
         return null;
     }
 
+    /**
+     * 所有行的视图，支持 get/set/remove 和在末尾 add，修改会直接反映到表中。
+     */
     public List<Row> getRows() {
         return rows;
     }
 
     public int getRowCount() {
-        return rows.size();
+        return rowCount;
     }
 
     public int getColumnCount() {
@@ -63,10 +270,10 @@ public class Table {
 
     @Nullable
     public Cell getCell(int rowIndex, String columnName) throws SQLExecuteException {
-        if (rowIndex >= 0 && rowIndex < rows.size()) {
+        if (rowIndex >= 0 && rowIndex < rowCount) {
             Column column = schema.getColumn(columnName);
             if (column != null) {
-                return rows.get(rowIndex).getCell(column.getColumnIndex());
+                return new CellView(rowIndex, column.getColumnIndex());
             }
         }
         return null;
@@ -80,13 +287,40 @@ public class Table {
         return tableName;
     }
 
+    /**
+     * 类型不符的值（比如表达式列中混合了不同类型）没法放进原始类型的列中，此时把该列换成 ValueVector。
+     */
+    private void ensureAccepts(int columnIndex, TypedValue typedValue) {
+        if (!vectors[columnIndex].accepts(typedValue)) {
+            vectors[columnIndex] = ValueVector.copyOf(vectors[columnIndex]);
+        }
+    }
+
+    private void checkWritable() {
+        if (shared) throw new UnsupportedOperationException("table '" + tableName + "' is read-only");
+    }
+
+    private void checkRowIndex(int rowIndex) {
+        if (rowIndex < 0 || rowIndex >= rowCount) {
+            throw new IndexOutOfBoundsException("row index " + rowIndex + ", row count " + rowCount);
+        }
+    }
+
+    private Row copyRow(int rowIndex) {
+        List<Cell> cells = new ArrayList<>(vectors.length);
+        for (ColumnVector vector : vectors) {
+            cells.add(new Cell(vector.get(rowIndex)));
+        }
+        return new Row(cells);
+    }
+
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("{\"tableName\": ").append("\"").append(tableName).append("\"").append(", ");
         sb.append("\"columnCount\": ").append(columns.size()).append(", ");
-        sb.append("\"rowCount\": ").append(rows.size()).append(", ");
+        sb.append("\"rowCount\": ").append(rowCount).append(", ");
 
         sb.append("\"columns\": [");
         boolean first = true;
@@ -118,4 +352,92 @@ public class Table {
         dummy.addRow(new Row(Collections.emptyList()));
         return dummy;
     }
+
+    private class RowList extends AbstractList<Row> implements RandomAccess {
+
+        @Override
+        public Row get(int index) {
+            checkRowIndex(index);
+            return new RowView(index);
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+
+        @Override
+        public Row set(int index, Row row) {
+            Row oldRow = copyRow(index);
+            if (row.size() != vectors.length) {
+                throw new IllegalArgumentException("row size is " + row.size() + ", while column count is " + vectors.length);
+            }
+            for (int i = 0; i < vectors.length; i++) {
+                setValue(index, i, row.getCells().get(i).getTypedValue());
+            }
+            return oldRow;
+        }
+
+        @Override
+        public void add(int index, Row row) {
+            if (index != rowCount) throw new UnsupportedOperationException("rows can only be appended");
+            addRow(row);
+        }
+
+        @Override
+        public Row remove(int index) {
+            Row oldRow = copyRow(index);
+            removeRow(index);
+            return oldRow;
+        }
+    }
+
+    private class RowView extends Row {
+
+        RowView(int rowIndex) {
+            super(new CellList(rowIndex));
+        }
+    }
+
+    private class CellList extends AbstractList<Cell> implements RandomAccess {
+
+        private final int rowIndex;
+
+        CellList(int rowIndex) {
+            this.rowIndex = rowIndex;
+        }
+
+        @Override
+        public Cell get(int index) {
+            if (index < 0 || index >= vectors.length) throw new IndexOutOfBoundsException();
+            return new CellView(rowIndex, index);
+        }
+
+        @Override
+        public int size() {
+            return vectors.length;
+        }
+    }
+
+    private class CellView extends Cell {
+
+        private final int rowIndex;
+        private final int columnIndex;
+
+        CellView(int rowIndex, int columnIndex) {
+            this.rowIndex = rowIndex;
+            this.columnIndex = columnIndex;
+        }
+
+        @NotNull
+        @Override
+        public TypedValue getTypedValue() {
+            return getValue(rowIndex, columnIndex);
+        }
+
+        @Override
+        public void setTypedValue(@NotNull TypedValue typedValue) {
+            setValue(rowIndex, columnIndex, typedValue);
+        }
+    }
 }
@@ -0,0 +1,61 @@
+package com.github.afkbrb.sql.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * 可以存放任意类型的列，用于类型不固定的列，或者存放了与列类型不符的值的列。
+ */
+public class ValueVector extends ColumnVector {
+
+    private TypedValue[] values = new TypedValue[INITIAL_CAPACITY];
+
+    @Override
+    protected boolean acceptsValue(@NotNull TypedValue typedValue) {
+        return true;
+    }
+
+    @Override
+    protected TypedValue read(int index) {
+        return values[index];
+    }
+
+    @Override
+    protected void write(int index, @NotNull TypedValue typedValue) {
+        values[index] = typedValue;
+    }
+
+    @Override
+    protected void clear(int index) {
+        values[index] = null;
+    }
+
+    @Override
+    protected int capacity() {
+        return values.length;
+    }
+
+    @Override
+    protected void grow(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected void move(int from, int to, int length) {
+        System.arraycopy(values, from, values, to, length);
+        if (from > to) Arrays.fill(values, to + length, from + length, null);
+    }
+
+    /**
+     * 复制另一个列的全部数据。
+     */
+    @NotNull
+    public static ValueVector copyOf(@NotNull ColumnVector vector) {
+        ValueVector copy = new ValueVector();
+        for (int i = 0; i < vector.size(); i++) {
+            copy.add(vector.get(i));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,339 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.ast.expressions.FunctionCallExpression;
+import com.github.afkbrb.sql.ast.expressions.WildcardExpression;
+import com.github.afkbrb.sql.functions.Accumulator;
+import com.github.afkbrb.sql.functions.AggregateFunction;
+import com.github.afkbrb.sql.functions.FunctionRegistry;
+import com.github.afkbrb.sql.model.*;
+import com.github.afkbrb.sql.visitors.CompiledExpression;
+import com.github.afkbrb.sql.visitors.ExpressionCompiler;
+import com.github.afkbrb.sql.visitors.GroupEvaluator;
+import com.github.afkbrb.sql.visitors.TypeInferer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import static com.github.afkbrb.sql.executors.Executor.compile;
+import static com.github.afkbrb.sql.executors.Executor.evaluate;
+import static com.github.afkbrb.sql.utils.DataTypeUtils.isError;
+
+/**
+ * 分组聚集：读入下层的所有行并按 groupByList 分组，过滤掉不满足 having 的组，
+ * 每组输出一行，各列是 expressions 在该组上的求值结果。组按第一次出现的顺序输出。
+ * <p>
+ * 行是流式地累积到每组的 {@link Accumulator} 中的，每组只保留第一行（用于求值不在聚集函数中的列）和各个聚集函数的状态。
+ * 分组键通过 {@link GroupTable} 映射为组号，按推导出的键类型选择专门的开放寻址哈希表。
+ * groupByList 为空时所有行（可能一行都没有）属于同一组，总是输出一行。
+ * <p>
+ * 下层是 {@link ParallelScanOperator} 并且分组键和聚集函数的参数都能并发求值时，分两个阶段并行聚集：
+ * 扫描的各个线程先在自己的局部状态中累积，局部状态按分组键的哈希值分成若干个分区（radix 分区），
+ * 然后每个分区在一个任务中合并各线程的同一个分区，用 {@link Accumulator#merge(Accumulator)} 合并同一组的状态。
+ * 不同分区的组互不相交，合并时不需要同步，分组键很多时合并也能并行。每个组记下第一行在表中的下标，
+ * 合并后按下标排序，输出的顺序与串行聚集相同。
+ * <p>
+ * 浮点数的加法不满足结合律，行以不确定的顺序进入各线程的局部状态，SUM、AVG 的结果会随执行而变。
+ * 所以参数不是 INT 的 SUM、AVG 总是串行聚集；INT 的和在 2^53 以内是精确的，与相加的顺序无关。
+ */
+public class AggregateOperator extends Operator {
+
+    private final Operator child;
+    private final List<Expression> groupByList;
+    private final List<CompiledExpression> groupByExpressions = new ArrayList<>();
+    private final DataType[] keyTypes;
+    private final Expression havingCondition;
+    private final List<Expression> expressions;
+    private final Schema schema;
+    private final InheritedContext context;
+    // having 和 expressions 中的聚集函数调用，以及它们编译后的参数
+    private final List<FunctionCallExpression> aggregateCalls = new ArrayList<>();
+    private final List<AggregateFunction> aggregateFunctions = new ArrayList<>();
+    private final List<CompiledExpression> aggregateArguments = new ArrayList<>();
+    // 分组键和聚集函数的参数都能在多个线程中同时求值，并且结果与累积的顺序无关
+    private final boolean parallelizable;
+    private Iterator<GroupState> groups;
+
+    public AggregateOperator(@NotNull Operator child, @NotNull List<Expression> groupByList, @Nullable Expression havingCondition,
+                             @NotNull List<Expression> expressions, @NotNull List<Column> columns, @Nullable InheritedContext context) {
+        if (expressions.size() != columns.size()) throw new IllegalArgumentException("column count doesn't match");
+        this.child = Objects.requireNonNull(child);
+        this.groupByList = Objects.requireNonNull(groupByList);
+        this.havingCondition = havingCondition;
+        this.expressions = expressions;
+        this.schema = new Schema(columns);
+        this.context = context;
+        Schema childSchema = child.getSchema();
+        TypeInferer typeInferer = new TypeInferer(context != null ? context : new InheritedContext(), childSchema);
+        keyTypes = new DataType[groupByList.size()];
+        for (int i = 0; i < groupByList.size(); i++) {
+            groupByExpressions.add(compile(context, childSchema, groupByList.get(i)));
+            keyTypes[i] = typeInferer.infer(groupByList.get(i));
+        }
+
+        if (havingCondition != null) GroupEvaluator.collectAggregates(havingCondition, aggregateCalls);
+        for (Expression expression : expressions) {
+            GroupEvaluator.collectAggregates(expression, aggregateCalls);
+        }
+        boolean parallelizable = groupByList.stream().allMatch(ExpressionCompiler::isThreadSafe);
+        for (FunctionCallExpression call : aggregateCalls) {
+            parallelizable &= ExpressionCompiler.isThreadSafe(call);
+            aggregateFunctions.add((AggregateFunction) FunctionRegistry.getFunction(call.getFunctionName()));
+            Expression argument = call.getArgumentList().get(0);
+            String functionName = call.getFunctionName().toLowerCase();
+            if ((functionName.equals("sum") || functionName.equals("avg")) && typeInferer.infer(argument) != DataType.INT) {
+                parallelizable = false;
+            }
+            if (call.getFunctionName().equalsIgnoreCase("count") && argument instanceof WildcardExpression
+                    && ((WildcardExpression) argument).getTableName() == null) {
+                // count(*) 统计所有行
+                aggregateArguments.add(row -> COUNT_STAR_ARGUMENT);
+            } else {
+                aggregateArguments.add(compile(context, childSchema, argument));
+            }
+        }
+        this.parallelizable = parallelizable;
+    }
+
+    private static final TypedValue COUNT_STAR_ARGUMENT = new TypedValue(DataType.INT, 1);
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        child.open();
+        groups = null;
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        if (groups == null) groups = group();
+        Schema childSchema = child.getSchema();
+        while (groups.hasNext()) {
+            GroupState group = groups.next();
+            Map<FunctionCallExpression, TypedValue> aggregates = new IdentityHashMap<>();
+            for (int i = 0; i < aggregateCalls.size(); i++) {
+                aggregates.put(aggregateCalls.get(i), group.finish(i));
+            }
+            GroupEvaluator evaluator = new GroupEvaluator(context, childSchema, group.firstRow, aggregates);
+            if (havingCondition != null && !isTrue(result(evaluator, havingCondition))) continue;
+            List<Cell> cells = new ArrayList<>(expressions.size());
+            for (Expression expression : expressions) {
+                cells.add(new Cell(result(evaluator, expression)));
+            }
+            return new Row(cells);
+        }
+        return null;
+    }
+
+    private static TypedValue result(GroupEvaluator evaluator, Expression expression) throws SQLExecuteException {
+        TypedValue typedValue = evaluator.evaluate(expression);
+        if (isError(typedValue)) throw new SQLExecuteException(typedValue.getValue().toString());
+        return typedValue;
+    }
+
+    private static boolean isTrue(TypedValue typedValue) {
+        return typedValue.getValue() instanceof Number && ((Number) typedValue.getValue()).intValue() != 0;
+    }
+
+    private Iterator<GroupState> group() throws SQLExecuteException {
+        if (child instanceof ParallelScanOperator && parallelizable) return parallelGroup((ParallelScanOperator) child);
+
+        if (groupByList.isEmpty()) {
+            GroupState group = new GroupState();
+            Row row;
+            for (long rowIndex = 0; (row = child.next()) != null; rowIndex++) {
+                group.accumulate(row, rowIndex);
+            }
+            return Collections.singletonList(group).iterator();
+        }
+
+        // 只保留每个组的累积状态，内存与组数成正比
+        GroupTable groupTable = GroupTable.create(keyTypes);
+        List<GroupState> groupStates = new ArrayList<>();
+        TypedValue[] keys = new TypedValue[groupByExpressions.size()];
+        Row row;
+        for (long rowIndex = 0; (row = child.next()) != null; rowIndex++) {
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = evaluate(groupByExpressions.get(i), row);
+            }
+            int groupId = groupTable.add(keys);
+            if (groupId < 0) {
+                // 键的实际类型与推导的不符
+                groupTable = groupTable.toPacked();
+                groupId = groupTable.add(keys);
+            }
+            if (groupId == groupStates.size()) groupStates.add(new GroupState());
+            groupStates.get(groupId).accumulate(row, rowIndex);
+        }
+        return groupStates.iterator();
+    }
+
+    private Iterator<GroupState> parallelGroup(ParallelScanOperator scan) throws SQLExecuteException {
+        int parallelism = scan.getParallelism();
+        // 分区数是 2 的幂，比线程数多一些，合并时各任务的负载比较均匀
+        int partitionBits = groupByList.isEmpty() ? 0 : 32 - Integer.numberOfLeadingZeros(4 * parallelism - 1);
+        List<Partial> partials = scan.consume(() -> new Partial(partitionBits), Partial::accumulate);
+
+        List<Callable<List<GroupState>>> tasks = new ArrayList<>();
+        for (int partition = 0; partition < 1 << partitionBits; partition++) {
+            int p = partition;
+            tasks.add(() -> merge(partials, p));
+        }
+        List<GroupState> groupStates = new ArrayList<>();
+        for (List<GroupState> merged : ParallelScanOperator.invokeAll(tasks, parallelism)) {
+            groupStates.addAll(merged);
+        }
+        if (groupByList.isEmpty() && groupStates.isEmpty()) groupStates.add(new GroupState());
+        groupStates.sort(Comparator.comparingLong(group -> group.firstIndex));
+        return groupStates.iterator();
+    }
+
+    /**
+     * 把各线程的同一个分区合并成一组状态。
+     */
+    private List<GroupState> merge(List<Partial> partials, int partition) {
+        GroupTable groupTable = GroupTable.create(keyTypes);
+        List<GroupState> merged = new ArrayList<>();
+        for (Partial partial : partials) {
+            for (GroupState groupState : partial.groupStates[partition]) {
+                int groupId = groupTable.add(groupState.keys);
+                if (groupId < 0) {
+                    groupTable = groupTable.toPacked();
+                    groupId = groupTable.add(groupState.keys);
+                }
+                if (groupId == merged.size()) merged.add(groupState);
+                else merged.get(groupId).merge(groupState);
+            }
+        }
+        return merged;
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        groups = null;
+        child.close();
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return groupByList.isEmpty() ? 1 : child.estimateRowCount();
+    }
+
+    /**
+     * 一个线程的局部聚集状态，按分组键的哈希值的高位分区。
+     */
+    private class Partial {
+
+        private final int partitionBits;
+        private final GroupTable[] groupTables;
+        private final List<GroupState>[] groupStates;
+        private final TypedValue[] keys = new TypedValue[groupByExpressions.size()];
+
+        @SuppressWarnings("unchecked")
+        Partial(int partitionBits) {
+            this.partitionBits = partitionBits;
+            groupTables = new GroupTable[1 << partitionBits];
+            groupStates = new List[1 << partitionBits];
+            for (int i = 0; i < groupTables.length; i++) {
+                groupTables[i] = GroupTable.create(keyTypes);
+                groupStates[i] = new ArrayList<>();
+            }
+        }
+
+        void accumulate(Row row, int rowIndex) throws SQLExecuteException {
+            int hash = 0;
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = evaluate(groupByExpressions.get(i), row);
+                hash = hash * 31 + keys[i].hashCode();
+            }
+            // 用高位分区，分区内的哈希表用低位选槽，两者互不影响
+            int partition = partitionBits == 0 ? 0 : GroupTable.mix(hash) >>> (32 - partitionBits);
+            int groupId = groupTables[partition].add(keys);
+            if (groupId < 0) {
+                groupTables[partition] = groupTables[partition].toPacked();
+                groupId = groupTables[partition].add(keys);
+            }
+            List<GroupState> states = groupStates[partition];
+            if (groupId == states.size()) {
+                GroupState groupState = new GroupState();
+                groupState.keys = keys.clone();
+                states.add(groupState);
+            }
+            states.get(groupId).accumulate(row, rowIndex);
+        }
+    }
+
+    /**
+     * 一个组的累积状态。
+     */
+    private class GroupState {
+
+        private Row firstRow = Row.EMPTY_ROW;
+        // 第一行的下标，用于按第一次出现的顺序输出并行聚集的结果
+        private long firstIndex = Long.MAX_VALUE;
+        // 分组键，只有并行聚集时需要
+        private TypedValue[] keys;
+        private final Accumulator[] accumulators = new Accumulator[aggregateCalls.size()];
+        // 聚集函数的参数求值出错时记下第一个错误，不再累积，只有用到该聚集函数的结果时才报错
+        private final TypedValue[] errors = new TypedValue[aggregateCalls.size()];
+        private final long[] errorIndexes = new long[aggregateCalls.size()];
+
+        GroupState() {
+            for (int i = 0; i < accumulators.length; i++) {
+                accumulators[i] = aggregateFunctions.get(i).init();
+            }
+        }
+
+        /**
+         * 累积一行。并行聚集时一个状态可能先累积表中靠后的小块，所以 rowIndex 不一定递增，
+         * 第一行和错误都按下标取最小的。
+         */
+        void accumulate(Row row, long rowIndex) {
+            if (rowIndex < firstIndex) {
+                firstRow = row;
+                firstIndex = rowIndex;
+            }
+            for (int i = 0; i < accumulators.length; i++) {
+                if (errors[i] != null && rowIndex > errorIndexes[i]) continue;
+                TypedValue typedValue = aggregateArguments.get(i).evaluate(row);
+                if (isError(typedValue)) {
+                    errors[i] = typedValue;
+                    errorIndexes[i] = rowIndex;
+                } else {
+                    accumulators[i].accumulate(typedValue);
+                }
+            }
+        }
+
+        /**
+         * 合并同一组的另一部分行的状态，出错时保留下标最小的错误，与串行累积时相同。
+         */
+        void merge(GroupState other) {
+            if (other.firstIndex < firstIndex) {
+                firstRow = other.firstRow;
+                firstIndex = other.firstIndex;
+            }
+            for (int i = 0; i < accumulators.length; i++) {
+                if (other.errors[i] != null && (errors[i] == null || other.errorIndexes[i] < errorIndexes[i])) {
+                    errors[i] = other.errors[i];
+                    errorIndexes[i] = other.errorIndexes[i];
+                } else if (errors[i] == null) {
+                    accumulators[i].merge(other.accumulators[i]);
+                }
+            }
+        }
+
+        TypedValue finish(int i) {
+            return errors[i] != null ? errors[i] : accumulators[i].finish();
+        }
+    }
+}
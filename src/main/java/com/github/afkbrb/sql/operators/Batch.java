@@ -0,0 +1,17 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.model.ColumnVector;
+
+/**
+ * 表中从 start 开始的连续 length 行，批内位置 i 对应表中的第 start + i 行。
+ */
+final class Batch {
+
+    final ColumnVector[] vectors;
+    int start;
+    int length;
+
+    Batch(ColumnVector[] vectors) {
+        this.vectors = vectors;
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.model.DataType;
+import com.github.afkbrb.sql.model.TypedValue;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+
+/**
+ * 向量化求值的结果，按批内位置存放，类型在规划时就确定了。
+ * type 为 NULL 时所有位置都是 NULL。
+ */
+final class BatchVector {
+
+    final DataType type;
+    int[] ints = new int[0];
+    double[] doubles = new double[0];
+    String[] strings = new String[0];
+    boolean[] nulls = new boolean[0];
+
+    BatchVector(DataType type) {
+        this.type = type;
+    }
+
+    void ensureCapacity(int length) {
+        if (nulls.length >= length) return;
+        nulls = new boolean[length];
+        if (type == INT) ints = new int[length];
+        else if (type == DOUBLE) doubles = new double[length];
+        else if (type == STRING) strings = new String[length];
+    }
+
+    boolean isNull(int position) {
+        return type == NULL || nulls[position];
+    }
+
+    /**
+     * 调用时保证了类型是数值且不为 NULL。
+     */
+    double getNumber(int position) {
+        return type == INT ? ints[position] : doubles[position];
+    }
+
+    /**
+     * 与 Executor#predicate 相同：只有值是数值并且 intValue() 不为 0 时才为真。
+     */
+    boolean isTrue(int position) {
+        if (isNull(position)) return false;
+        if (type == INT) return ints[position] != 0;
+        if (type == DOUBLE) return (int) doubles[position] != 0;
+        return false;
+    }
+
+    TypedValue get(int position) {
+        if (isNull(position)) return TypedValue.NULL;
+        switch (type) {
+            case INT:
+                return new TypedValue(INT, ints[position]);
+            case DOUBLE:
+                return new TypedValue(DOUBLE, doubles[position]);
+            default:
+                return new TypedValue(STRING, strings[position]);
+        }
+    }
+}
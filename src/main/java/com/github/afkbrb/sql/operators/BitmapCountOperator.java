@@ -0,0 +1,69 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Objects;
+
+/**
+ * 不分组的 SELECT COUNT(*) ... WHERE ...，条件能整个在位图索引上算出来时，直接输出结果位图中 1 的个数，不读取行。
+ * <p>
+ * 执行时才能知道位图是否用得上（常量的类型可能与列不符），用不上时改为执行 fallback，它是同一个查询的普通的计划。
+ */
+public class BitmapCountOperator extends Operator {
+
+    private final BitmapLookup lookup;
+    private final Operator fallback;
+    private boolean useFallback;
+    private Row row;
+
+    /**
+     * lookup 必须是精确的，fallback 的输出只有一列 COUNT(*)。
+     */
+    public BitmapCountOperator(@NotNull BitmapLookup lookup, @NotNull Operator fallback) {
+        if (!lookup.isExact()) throw new IllegalArgumentException("expected an exact bitmap lookup");
+        if (fallback.getSchema().size() != 1) throw new IllegalArgumentException("expected a single column");
+        this.lookup = lookup;
+        this.fallback = Objects.requireNonNull(fallback);
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return fallback.getSchema();
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        Integer count = lookup.count();
+        useFallback = count == null;
+        if (useFallback) {
+            fallback.open();
+        } else {
+            row = new Row(Collections.singletonList(new Cell(new TypedValue(DataType.INT, count))));
+        }
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        if (useFallback) return fallback.next();
+        Row result = row;
+        row = null;
+        return result;
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        if (useFallback) fallback.close();
+        row = null;
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return 1;
+    }
+}
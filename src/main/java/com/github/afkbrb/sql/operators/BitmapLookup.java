@@ -0,0 +1,209 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.*;
+import com.github.afkbrb.sql.ast.expressions.BinaryExpression.BinaryOperatorType;
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.STRING;
+import static com.github.afkbrb.sql.utils.DataTypeUtils.isNull;
+import static com.github.afkbrb.sql.utils.DataTypeUtils.isNumber;
+
+/**
+ * 用位图索引计算 WHERE 条件：column = 常量、column != 常量、column IN (常量, ...)、column IS [NOT] NULL
+ * 这样的项（column 上有位图索引）直接取出位图，再按 AND、OR、NOT 在位图上做与、或、差。
+ * <p>
+ * 每个子条件算出两个位图：结果为真的行和结果为假的行，两者都不包含的行结果为 NULL。
+ * AND 和 OR 与逐行求值一样是短路的（左边为 NULL 时结果就是 NULL），NOT 交换真和假。
+ * <p>
+ * 整个条件都能这样计算时结果是精确的（{@link #isExact()}），满足条件的行数就是位图中 1 的个数；
+ * 否则按 AND 拆开后只计算能计算的项，得到的是候选行，调用者仍然要在这些行上检查整个条件。
+ * 与 {@link IndexLookup} 一样，IN 列表中的常量总是全部求值，只有候选行会被求值（值为 NULL 的行不会因 IN 而报错）。
+ */
+public class BitmapLookup {
+
+    private final Table table;
+    // 能用位图计算的项，它们的 AND 就是候选行
+    private final List<Expression> conjuncts;
+    private final boolean exact;
+
+    private BitmapLookup(Table table, List<Expression> conjuncts, boolean exact) {
+        this.table = table;
+        this.conjuncts = conjuncts;
+        this.exact = exact;
+    }
+
+    /**
+     * 没有能用位图索引计算的项时返回 null。
+     */
+    @Nullable
+    public static BitmapLookup analyze(@Nullable Expression condition, @NotNull Table table) {
+        if (condition == null) return null;
+        boolean hasBitmapIndex = false;
+        for (Index index : table.getIndexes()) {
+            hasBitmapIndex |= index instanceof BitmapIndex;
+        }
+        if (!hasBitmapIndex) return null;
+        if (supports(condition, table)) {
+            List<Expression> conjuncts = new ArrayList<>();
+            conjuncts.add(condition);
+            return new BitmapLookup(table, conjuncts, true);
+        }
+        List<Expression> conjuncts = new ArrayList<>();
+        JoinCondition.splitConjuncts(condition, conjuncts);
+        conjuncts.removeIf(conjunct -> !supports(conjunct, table));
+        return conjuncts.isEmpty() ? null : new BitmapLookup(table, conjuncts, false);
+    }
+
+    /**
+     * 条件是否整个都用位图算出，这时候选行恰好是满足条件的行。
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * 返回候选行的下标（升序）。常量的类型与列的类型不符（比如数值列与字符串比较）时返回 null，
+     * 这时比较的结果要由求值决定，调用者应该扫描所有行。
+     */
+    @Nullable
+    public int[] rowIndexes() throws SQLExecuteException {
+        Bitmap bitmap = bitmap();
+        return bitmap == null ? null : bitmap.toArray();
+    }
+
+    /**
+     * 满足条件的行数，只能用于精确的查找，返回 null 的情况同 {@link #rowIndexes()}。
+     */
+    @Nullable
+    public Integer count() throws SQLExecuteException {
+        if (!exact) throw new IllegalStateException("not an exact lookup");
+        Bitmap bitmap = bitmap();
+        return bitmap == null ? null : bitmap.getCardinality();
+    }
+
+    @Nullable
+    private Bitmap bitmap() throws SQLExecuteException {
+        Bitmap result = null;
+        for (Expression conjunct : conjuncts) {
+            Result r = evaluate(conjunct);
+            if (r == null) return null;
+            result = result == null ? r.isTrue : result.and(r.isTrue);
+        }
+        return result;
+    }
+
+    private static boolean supports(Expression expression, Table table) {
+        if (expression instanceof AndExpression) {
+            AndExpression andExpression = (AndExpression) expression;
+            return supports(andExpression.getLeft(), table) && supports(andExpression.getRight(), table);
+        } else if (expression instanceof OrExpression) {
+            OrExpression orExpression = (OrExpression) expression;
+            return supports(orExpression.getLeft(), table) && supports(orExpression.getRight(), table);
+        } else if (expression instanceof NotExpression) {
+            return supports(((NotExpression) expression).getExpression(), table);
+        } else if (expression instanceof BinaryExpression) {
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            if (binaryExpression.getOp() != BinaryOperatorType.EQ && binaryExpression.getOp() != BinaryOperatorType.NE) return false;
+            return (bitmapIndex(binaryExpression.getLeft(), table) != null && IndexLookup.isConstant(binaryExpression.getRight()))
+                    || (bitmapIndex(binaryExpression.getRight(), table) != null && IndexLookup.isConstant(binaryExpression.getLeft()));
+        } else if (expression instanceof InListExpression) {
+            // NOT IN 留给逐行求值
+            InListExpression inListExpression = (InListExpression) expression;
+            if (inListExpression.isNot() || bitmapIndex(inListExpression.getTarget(), table) == null) return false;
+            return inListExpression.getList().stream().allMatch(IndexLookup::isConstant);
+        } else if (expression instanceof IsNullExpression) {
+            return bitmapIndex(((IsNullExpression) expression).getExpression(), table) != null;
+        }
+        return false;
+    }
+
+    /**
+     * 在位图上计算 expression，expression 必须通过了 {@link #supports(Expression, Table)} 的检查。
+     * 常量的类型与列的类型不符时返回 null。
+     */
+    @Nullable
+    private Result evaluate(Expression expression) throws SQLExecuteException {
+        if (expression instanceof AndExpression) {
+            AndExpression andExpression = (AndExpression) expression;
+            Result left = evaluate(andExpression.getLeft());
+            Result right = left == null ? null : evaluate(andExpression.getRight());
+            if (right == null) return null;
+            // 左边为假时不看右边，左边为真时结果与右边相同
+            return new Result(left.isTrue.and(right.isTrue), left.isFalse.or(left.isTrue.and(right.isFalse)));
+        } else if (expression instanceof OrExpression) {
+            OrExpression orExpression = (OrExpression) expression;
+            Result left = evaluate(orExpression.getLeft());
+            Result right = left == null ? null : evaluate(orExpression.getRight());
+            if (right == null) return null;
+            // 左边为真时不看右边，左边为假时结果与右边相同
+            return new Result(left.isTrue.or(left.isFalse.and(right.isTrue)), left.isFalse.and(right.isFalse));
+        } else if (expression instanceof NotExpression) {
+            Result result = evaluate(((NotExpression) expression).getExpression());
+            return result == null ? null : new Result(result.isFalse, result.isTrue);
+        } else if (expression instanceof BinaryExpression) {
+            BinaryExpression binaryExpression = (BinaryExpression) expression;
+            boolean columnOnLeft = bitmapIndex(binaryExpression.getLeft(), table) != null
+                    && IndexLookup.isConstant(binaryExpression.getRight());
+            Expression column = columnOnLeft ? binaryExpression.getLeft() : binaryExpression.getRight();
+            BitmapIndex index = bitmapIndex(column, table);
+            TypedValue value = IndexLookup.evaluate(columnOnLeft ? binaryExpression.getRight() : binaryExpression.getLeft());
+            if (isNull(value)) return new Result(new Bitmap(), new Bitmap()); // 与 NULL 比较的结果是 NULL
+            if (isNumberColumn(index) != isNumber(value)) return null;
+            Bitmap equal = index.bitmap(value);
+            Bitmap notEqual = notNull(index).andNot(equal);
+            return binaryExpression.getOp() == BinaryOperatorType.EQ ? new Result(equal, notEqual) : new Result(notEqual, equal);
+        } else if (expression instanceof InListExpression) {
+            InListExpression inListExpression = (InListExpression) expression;
+            BitmapIndex index = bitmapIndex(inListExpression.getTarget(), table);
+            Bitmap in = new Bitmap();
+            for (Expression element : inListExpression.getList()) {
+                TypedValue value = IndexLookup.evaluate(element);
+                // 类型不同的值和 NULL 不与任何值相等
+                if (!isNull(value) && isNumberColumn(index) == isNumber(value)) in = in.or(index.bitmap(value));
+            }
+            return new Result(in, notNull(index).andNot(in));
+        } else if (expression instanceof IsNullExpression) {
+            IsNullExpression isNullExpression = (IsNullExpression) expression;
+            BitmapIndex index = bitmapIndex(isNullExpression.getExpression(), table);
+            Bitmap nulls = index.nulls();
+            return isNullExpression.isNot() ? new Result(notNull(index), nulls) : new Result(nulls, notNull(index));
+        }
+        throw new IllegalArgumentException("unsupported expression " + expression);
+    }
+
+    private Bitmap notNull(BitmapIndex index) {
+        return Bitmap.range(table.getRowCount()).andNot(index.nulls());
+    }
+
+    private boolean isNumberColumn(BitmapIndex index) {
+        return table.getColumns().get(index.getColumnIndex()).getDataType() != STRING;
+    }
+
+    @Nullable
+    private static BitmapIndex bitmapIndex(Expression expression, Table table) {
+        if (!(expression instanceof ColumnNameExpression)) return null;
+        Column column = IndexLookup.resolve((ColumnNameExpression) expression, table.getSchema());
+        if (column == null) return null;
+        return (BitmapIndex) table.getIndex(column.getColumnIndex(), Index.Type.BITMAP);
+    }
+
+    /**
+     * 子条件为真的行和为假的行。
+     */
+    private static class Result {
+
+        final Bitmap isTrue;
+        final Bitmap isFalse;
+
+        Result(Bitmap isTrue, Bitmap isFalse) {
+            this.isTrue = isTrue;
+            this.isFalse = isFalse;
+        }
+    }
+}
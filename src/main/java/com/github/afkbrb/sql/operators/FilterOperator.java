@@ -0,0 +1,66 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.model.InheritedContext;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Schema;
+import com.github.afkbrb.sql.visitors.CompiledExpression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+import static com.github.afkbrb.sql.executors.Executor.compile;
+import static com.github.afkbrb.sql.executors.Executor.predicate;
+
+/**
+ * 只输出满足条件的行，不改变行的顺序。
+ */
+public class FilterOperator extends Operator {
+
+    private final Operator child;
+    private final CompiledExpression condition;
+
+    public FilterOperator(@NotNull Operator child, @NotNull Expression condition, @Nullable InheritedContext context) {
+        this.child = Objects.requireNonNull(child);
+        this.condition = compile(context, child.getSchema(), Objects.requireNonNull(condition));
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return child.getSchema();
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        child.open();
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        Row row;
+        while ((row = child.next()) != null) {
+            if (predicate(condition, row)) return row;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        child.close();
+    }
+
+    @NotNull
+    @Override
+    public int[] getSortedBy() {
+        return child.getSortedBy();
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return child.estimateRowCount();
+    }
+}
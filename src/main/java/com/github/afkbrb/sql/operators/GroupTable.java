@@ -0,0 +1,417 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.model.DataType;
+import com.github.afkbrb.sql.model.TypedValue;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+
+/**
+ * 分组用的开放寻址哈希表，把分组键映射为组号，组号按组第一次出现的顺序从 0 开始递增。
+ * <p>
+ * 单个 INT、DOUBLE、STRING 类型的键有专门的实现，键直接存放在原始类型的数组中，不会为每个组创建键对象。
+ * 多个键编码成字节序列后连续存放在一个字节数组中。
+ * 两个键相等当且仅当 TypedValue.equals 成立，即类型相同且值相等，NULL 与 NULL 属于同一组。
+ */
+abstract class GroupTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    protected int size;
+    // 每个槽中的组号，-1 表示空槽，容量总是 2 的幂，装载因子不超过 1/2
+    protected int[] ids = newIds(INITIAL_CAPACITY);
+
+    /**
+     * 根据分组键的类型选择实现，类型不确定时使用通用的实现。
+     */
+    @NotNull
+    static GroupTable create(@NotNull DataType[] keyTypes) {
+        if (keyTypes.length == 1) {
+            switch (keyTypes[0]) {
+                case INT:
+                    return new IntGroupTable();
+                case DOUBLE:
+                    return new DoubleGroupTable();
+                case STRING:
+                    return new StringGroupTable();
+            }
+        }
+        return new PackedGroupTable();
+    }
+
+    /**
+     * 返回 keys 所在组的组号，keys 是新的组时组号为原来的 size()。
+     * keys 的类型与专门的实现不符时返回 -1，调用者应改用 {@link #toPacked()} 得到的表。
+     * keys 数组可以在调用之后重用。
+     */
+    abstract int add(@NotNull TypedValue[] keys);
+
+    /**
+     * 组的个数。
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 返回包含相同的组（组号不变）的通用实现。
+     */
+    @NotNull
+    abstract PackedGroupTable toPacked();
+
+    /**
+     * 需要扩容时把各组重新放到 2 倍大小的槽中。
+     */
+    protected boolean needsResize() {
+        return (size + 1) * 2 > ids.length;
+    }
+
+    protected static int[] newIds(int capacity) {
+        int[] ids = new int[capacity];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+
+    protected static int mix(int hash) {
+        // murmur3 的 fmix32，让低位也能反映高位的变化
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    /**
+     * 单个键的实现，它们能按组号列出各组的键，据此把各组依次加入通用的实现。
+     */
+    abstract static class SingleKeyGroupTable extends GroupTable {
+
+        @NotNull
+        @Override
+        PackedGroupTable toPacked() {
+            PackedGroupTable table = new PackedGroupTable();
+            TypedValue[] keys = new TypedValue[1];
+            for (TypedValue key : keys()) {
+                keys[0] = key;
+                table.add(keys);
+            }
+            return table;
+        }
+
+        /**
+         * 按组号排列的各组的键。
+         */
+        @NotNull
+        abstract TypedValue[] keys();
+    }
+
+    /**
+     * 单个 INT 键，键放在槽对应的 int 数组中，NULL 单独记录组号。
+     */
+    static class IntGroupTable extends SingleKeyGroupTable {
+
+        private int[] slots = new int[INITIAL_CAPACITY];
+        private int nullId = -1;
+
+        @Override
+        int add(@NotNull TypedValue[] keys) {
+            TypedValue key = keys[0];
+            if (key.getDataType() == NULL) {
+                if (nullId < 0) nullId = size++;
+                return nullId;
+            }
+            if (key.getDataType() != INT) return -1;
+            int value = (Integer) key.getValue();
+            int mask = ids.length - 1;
+            int slot = mix(value) & mask;
+            while (ids[slot] >= 0) {
+                if (slots[slot] == value) return ids[slot];
+                slot = (slot + 1) & mask;
+            }
+            if (needsResize()) {
+                resize();
+                return add(keys);
+            }
+            slots[slot] = value;
+            ids[slot] = size;
+            return size++;
+        }
+
+        private void resize() {
+            int[] oldSlots = slots;
+            int[] oldIds = ids;
+            slots = new int[oldSlots.length * 2];
+            ids = newIds(oldIds.length * 2);
+            int mask = ids.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] < 0) continue;
+                int slot = mix(oldSlots[i]) & mask;
+                while (ids[slot] >= 0) slot = (slot + 1) & mask;
+                slots[slot] = oldSlots[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+
+        @NotNull
+        @Override
+        TypedValue[] keys() {
+            TypedValue[] keys = new TypedValue[size];
+            if (nullId >= 0) keys[nullId] = TypedValue.NULL;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] >= 0) keys[ids[i]] = new TypedValue(INT, slots[i]);
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * 单个 DOUBLE 键，按 Double.equals 的语义比较位模式，所以 0.0 与 -0.0 属于不同的组。
+     */
+    static class DoubleGroupTable extends SingleKeyGroupTable {
+
+        private long[] slots = new long[INITIAL_CAPACITY];
+        private int nullId = -1;
+
+        @Override
+        int add(@NotNull TypedValue[] keys) {
+            TypedValue key = keys[0];
+            if (key.getDataType() == NULL) {
+                if (nullId < 0) nullId = size++;
+                return nullId;
+            }
+            if (key.getDataType() != DOUBLE) return -1;
+            long bits = Double.doubleToLongBits((Double) key.getValue());
+            int mask = ids.length - 1;
+            int slot = mix(Long.hashCode(bits)) & mask;
+            while (ids[slot] >= 0) {
+                if (slots[slot] == bits) return ids[slot];
+                slot = (slot + 1) & mask;
+            }
+            if (needsResize()) {
+                resize();
+                return add(keys);
+            }
+            slots[slot] = bits;
+            ids[slot] = size;
+            return size++;
+        }
+
+        private void resize() {
+            long[] oldSlots = slots;
+            int[] oldIds = ids;
+            slots = new long[oldSlots.length * 2];
+            ids = newIds(oldIds.length * 2);
+            int mask = ids.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] < 0) continue;
+                int slot = mix(Long.hashCode(oldSlots[i])) & mask;
+                while (ids[slot] >= 0) slot = (slot + 1) & mask;
+                slots[slot] = oldSlots[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+
+        @NotNull
+        @Override
+        TypedValue[] keys() {
+            TypedValue[] keys = new TypedValue[size];
+            if (nullId >= 0) keys[nullId] = TypedValue.NULL;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] >= 0) keys[ids[i]] = new TypedValue(DOUBLE, Double.longBitsToDouble(slots[i]));
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * 单个 STRING 键，槽中同时存放字符串的哈希值，哈希值不同时不用比较字符串。
+     */
+    static class StringGroupTable extends SingleKeyGroupTable {
+
+        private String[] slots = new String[INITIAL_CAPACITY];
+        private int[] hashes = new int[INITIAL_CAPACITY];
+        private int nullId = -1;
+
+        @Override
+        int add(@NotNull TypedValue[] keys) {
+            TypedValue key = keys[0];
+            if (key.getDataType() == NULL) {
+                if (nullId < 0) nullId = size++;
+                return nullId;
+            }
+            if (key.getDataType() != STRING) return -1;
+            String value = (String) key.getValue();
+            int hash = mix(value.hashCode());
+            int mask = ids.length - 1;
+            int slot = hash & mask;
+            while (ids[slot] >= 0) {
+                if (hashes[slot] == hash && slots[slot].equals(value)) return ids[slot];
+                slot = (slot + 1) & mask;
+            }
+            if (needsResize()) {
+                resize();
+                return add(keys);
+            }
+            slots[slot] = value;
+            hashes[slot] = hash;
+            ids[slot] = size;
+            return size++;
+        }
+
+        private void resize() {
+            String[] oldSlots = slots;
+            int[] oldHashes = hashes;
+            int[] oldIds = ids;
+            slots = new String[oldSlots.length * 2];
+            hashes = new int[oldHashes.length * 2];
+            ids = newIds(oldIds.length * 2);
+            int mask = ids.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] < 0) continue;
+                int slot = oldHashes[i] & mask;
+                while (ids[slot] >= 0) slot = (slot + 1) & mask;
+                slots[slot] = oldSlots[i];
+                hashes[slot] = oldHashes[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+
+        @NotNull
+        @Override
+        TypedValue[] keys() {
+            TypedValue[] keys = new TypedValue[size];
+            if (nullId >= 0) keys[nullId] = TypedValue.NULL;
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] >= 0) keys[ids[i]] = new TypedValue(STRING, slots[i]);
+            }
+            return keys;
+        }
+    }
+
+    /**
+     * 通用的实现，每个值编码为一个类型标记加上值的字节，一个组的所有键连续存放在 data 中，
+     * 第 i 组的键占据 data[offsets[i], offsets[i + 1])。
+     */
+    static class PackedGroupTable extends GroupTable {
+
+        private static final byte NULL_TAG = 0;
+        private static final byte INT_TAG = 1;
+        private static final byte DOUBLE_TAG = 2;
+        private static final byte STRING_TAG = 3;
+
+        private int[] hashes = new int[INITIAL_CAPACITY];
+        private byte[] data = new byte[256];
+        private int[] offsets = new int[INITIAL_CAPACITY + 1];
+        // 待查找的键的编码
+        private byte[] buffer = new byte[64];
+        private int length;
+
+        @Override
+        int add(@NotNull TypedValue[] keys) {
+            encode(keys);
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + buffer[i];
+            }
+            hash = mix(hash);
+            int mask = ids.length - 1;
+            int slot = hash & mask;
+            while (ids[slot] >= 0) {
+                if (hashes[slot] == hash && matches(ids[slot])) return ids[slot];
+                slot = (slot + 1) & mask;
+            }
+            if (needsResize()) {
+                resize();
+                slot = hash & (ids.length - 1);
+                while (ids[slot] >= 0) slot = (slot + 1) & (ids.length - 1);
+            }
+            int offset = offsets[size];
+            if (offset + length > data.length) data = Arrays.copyOf(data, Math.max(data.length * 2, offset + length));
+            System.arraycopy(buffer, 0, data, offset, length);
+            if (size + 2 > offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            offsets[size + 1] = offset + length;
+            hashes[slot] = hash;
+            ids[slot] = size;
+            return size++;
+        }
+
+        @NotNull
+        @Override
+        PackedGroupTable toPacked() {
+            return this;
+        }
+
+        private boolean matches(int id) {
+            int offset = offsets[id];
+            if (offsets[id + 1] - offset != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (data[offset + i] != buffer[i]) return false;
+            }
+            return true;
+        }
+
+        private void resize() {
+            int[] oldHashes = hashes;
+            int[] oldIds = ids;
+            hashes = new int[oldHashes.length * 2];
+            ids = newIds(oldIds.length * 2);
+            int mask = ids.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] < 0) continue;
+                int slot = oldHashes[i] & mask;
+                while (ids[slot] >= 0) slot = (slot + 1) & mask;
+                hashes[slot] = oldHashes[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+
+        private void encode(TypedValue[] keys) {
+            length = 0;
+            for (TypedValue key : keys) {
+                switch (key.getDataType()) {
+                    case INT:
+                        ensureCapacity(5);
+                        buffer[length++] = INT_TAG;
+                        putInt((Integer) key.getValue());
+                        break;
+                    case DOUBLE:
+                        ensureCapacity(9);
+                        buffer[length++] = DOUBLE_TAG;
+                        long bits = Double.doubleToLongBits((Double) key.getValue());
+                        putInt((int) (bits >>> 32));
+                        putInt((int) bits);
+                        break;
+                    case STRING:
+                        String value = (String) key.getValue();
+                        ensureCapacity(5 + value.length() * 2);
+                        buffer[length++] = STRING_TAG;
+                        // 长度在前，保证不同的键序列编码不同
+                        putInt(value.length());
+                        for (int i = 0; i < value.length(); i++) {
+                            char c = value.charAt(i);
+                            buffer[length++] = (byte) (c >>> 8);
+                            buffer[length++] = (byte) c;
+                        }
+                        break;
+                    default:
+                        ensureCapacity(1);
+                        buffer[length++] = NULL_TAG;
+                }
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+
+        private void putInt(int value) {
+            buffer[length++] = (byte) (value >>> 24);
+            buffer[length++] = (byte) (value >>> 16);
+            buffer[length++] = (byte) (value >>> 8);
+            buffer[length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.statements.SelectStatement.TableJoin.JoinType;
+import com.github.afkbrb.sql.model.InheritedContext;
+import com.github.afkbrb.sql.model.Row;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * 用右表的连接键建哈希表，再用左表的每一行去探测，只有键相等的行对才会拼接并检查剩余条件。
+ * 哈希表中的行保持右表的顺序，所以输出顺序与嵌套循环连接相同。
+ */
+public class HashJoinOperator extends JoinOperator {
+
+    private final int[] leftKeys;
+    private final int[] rightKeys;
+    private Map<Object, List<Row>> hashTable;
+
+    public HashJoinOperator(@NotNull Operator left, @NotNull Operator right, @NotNull JoinType joinType,
+                            @NotNull JoinCondition joinCondition, @Nullable InheritedContext context) {
+        super(left, right, joinType, joinCondition.getResidual(), context);
+        if (!joinCondition.isEquiJoin()) throw new IllegalArgumentException("expected an equi-join condition");
+        this.leftKeys = joinCondition.getLeftKeys();
+        this.rightKeys = joinCondition.getRightKeys();
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        super.open();
+        hashTable = new HashMap<>();
+        Row row;
+        while ((row = right.next()) != null) {
+            Object key = JoinCondition.keyOf(row, rightKeys);
+            if (key == null) continue; // NULL 不等于任何值
+            hashTable.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+        }
+    }
+
+    @Override
+    protected boolean probeNext() throws SQLExecuteException {
+        Row leftRow = left.next();
+        if (leftRow == null) return false;
+        Object key = JoinCondition.keyOf(leftRow, leftKeys);
+        List<Row> matches = key == null ? null : hashTable.get(key);
+        join(leftRow, matches == null ? Collections.emptyList() : matches);
+        return true;
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        hashTable = null;
+        super.close();
+    }
+}
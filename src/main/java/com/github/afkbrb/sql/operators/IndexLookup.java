@@ -0,0 +1,374 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.*;
+import com.github.afkbrb.sql.ast.expressions.BinaryExpression.BinaryOperatorType;
+import com.github.afkbrb.sql.executors.Executor;
+import com.github.afkbrb.sql.model.*;
+import com.github.afkbrb.sql.utils.Pair;
+import com.github.afkbrb.sql.visitors.AbstractEvaluator;
+import com.github.afkbrb.sql.visitors.DefaultVisitor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+import static com.github.afkbrb.sql.model.DataType.STRING;
+import static com.github.afkbrb.sql.utils.DataTypeUtils.isNull;
+import static com.github.afkbrb.sql.utils.DataTypeUtils.isNumber;
+
+/**
+ * 从 WHERE 条件中找出能用索引查找的项，得到可能满足条件的行。
+ * <p>
+ * 条件按 AND 拆开后，形如 column = 常量、column IN (常量, ...) 的项，如果 column 上有索引，就可以用索引查找，
+ * 等值的项优先。column 上有 B+ 树索引时，&lt;、&lt;=、&gt;、&gt;=、BETWEEN 和以固定前缀开头的 LIKE（如 'abc%'）
+ * 也可以用索引做范围查找，同一列上的多个范围取交集。
+ * 找到的只是候选行，调用者仍然要在这些行上检查整个条件。
+ * 常量是不含列名、子查询和函数调用的表达式，在查找时才求值，IN 列表中的常量总是全部求值。
+ * <p>
+ * 不是候选行的行不会被求值，所以只在这些行上才会出现的错误不会报告，
+ * 比如逐行求值时 IN 的目标为 NULL 会报错，而值为 NULL 的行不会被 IN 查找选中。
+ */
+public class IndexLookup {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Table table;
+    private final Index index;
+    // 等值查找的常量，范围查找时为 null
+    private final List<Expression> values;
+    // 范围查找的边界
+    private final List<Bound> bounds;
+
+    private IndexLookup(Table table, Index index, List<Expression> values, List<Bound> bounds) {
+        this.table = table;
+        this.index = index;
+        this.values = values;
+        this.bounds = bounds;
+    }
+
+    /**
+     * 找不到能用索引查找的项时返回 null。
+     */
+    @Nullable
+    public static IndexLookup analyze(@Nullable Expression condition, @NotNull Table table) {
+        if (condition == null || table.getIndexes().isEmpty()) return null;
+        List<Expression> conjuncts = new ArrayList<>();
+        JoinCondition.splitConjuncts(condition, conjuncts);
+
+        IndexLookup inLookup = null;
+        for (Expression conjunct : conjuncts) {
+            if (conjunct instanceof BinaryExpression && ((BinaryExpression) conjunct).getOp() == BinaryOperatorType.EQ) {
+                BinaryExpression binaryExpression = (BinaryExpression) conjunct;
+                IndexLookup lookup = lookup(table, binaryExpression.getLeft(), Collections.singletonList(binaryExpression.getRight()));
+                if (lookup == null) {
+                    lookup = lookup(table, binaryExpression.getRight(), Collections.singletonList(binaryExpression.getLeft()));
+                }
+                if (lookup != null) return lookup;
+            } else if (conjunct instanceof InListExpression && !((InListExpression) conjunct).isNot() && inLookup == null) {
+                InListExpression inListExpression = (InListExpression) conjunct;
+                inLookup = lookup(table, inListExpression.getTarget(), inListExpression.getList());
+            }
+        }
+        if (inLookup != null) return inLookup;
+
+        // 范围查找用第一个能用 B+ 树索引的项所在的列
+        BTreeIndex rangeIndex = null;
+        List<Bound> bounds = new ArrayList<>();
+        for (Expression conjunct : conjuncts) {
+            for (Pair<ColumnNameExpression, Bound> pair : bounds(conjunct)) {
+                BTreeIndex index = btreeIndex(table, pair.getKey());
+                if (index == null || (rangeIndex != null && index != rangeIndex)) continue;
+                rangeIndex = index;
+                bounds.add(pair.getValue());
+            }
+        }
+        return rangeIndex == null ? null : new IndexLookup(table, rangeIndex, null, bounds);
+    }
+
+    /**
+     * ORDER BY 只有一项，并且是有 B+ 树索引的列时返回该索引，否则返回 null。
+     */
+    @Nullable
+    public static BTreeIndex orderIndex(@NotNull List<Pair<Expression, Boolean>> orderByList, @NotNull Table table) {
+        if (orderByList.size() != 1 || !(orderByList.get(0).getKey() instanceof ColumnNameExpression)) return null;
+        return btreeIndex(table, (ColumnNameExpression) orderByList.get(0).getKey());
+    }
+
+    private static IndexLookup lookup(Table table, Expression target, List<Expression> values) {
+        if (!(target instanceof ColumnNameExpression)) return null;
+        for (Expression value : values) {
+            if (!isConstant(value)) return null;
+        }
+        Column column = resolve((ColumnNameExpression) target, table.getSchema());
+        if (column == null) return null;
+        Index index = findIndex(table, column.getColumnIndex());
+        return index == null ? null : new IndexLookup(table, index, values, null);
+    }
+
+    /**
+     * 一个项给出的范围边界，不是范围条件时返回空表。
+     */
+    private static List<Pair<ColumnNameExpression, Bound>> bounds(Expression conjunct) {
+        List<Pair<ColumnNameExpression, Bound>> result = new ArrayList<>();
+        if (conjunct instanceof BinaryExpression) {
+            BinaryExpression binaryExpression = (BinaryExpression) conjunct;
+            BinaryOperatorType op = binaryExpression.getOp();
+            if (op != BinaryOperatorType.LT && op != BinaryOperatorType.LE && op != BinaryOperatorType.GT && op != BinaryOperatorType.GE) {
+                return result;
+            }
+            boolean inclusive = op == BinaryOperatorType.LE || op == BinaryOperatorType.GE;
+            boolean greater = op == BinaryOperatorType.GT || op == BinaryOperatorType.GE;
+            Expression left = binaryExpression.getLeft();
+            Expression right = binaryExpression.getRight();
+            if (left instanceof ColumnNameExpression && isConstant(right)) {
+                // column > 常量给出下界
+                result.add(new Pair<>((ColumnNameExpression) left, new Bound(right, greater, inclusive, false)));
+            } else if (right instanceof ColumnNameExpression && isConstant(left)) {
+                // 常量 > column 给出上界
+                result.add(new Pair<>((ColumnNameExpression) right, new Bound(left, !greater, inclusive, false)));
+            }
+        } else if (conjunct instanceof BetweenExpression) {
+            BetweenExpression betweenExpression = (BetweenExpression) conjunct;
+            if (betweenExpression.getTarget() instanceof ColumnNameExpression
+                    && isConstant(betweenExpression.getLeft()) && isConstant(betweenExpression.getRight())) {
+                ColumnNameExpression column = (ColumnNameExpression) betweenExpression.getTarget();
+                result.add(new Pair<>(column, new Bound(betweenExpression.getLeft(), true, true, false)));
+                result.add(new Pair<>(column, new Bound(betweenExpression.getRight(), false, true, false)));
+            }
+        } else if (conjunct instanceof LikeExpression) {
+            LikeExpression likeExpression = (LikeExpression) conjunct;
+            if (!likeExpression.isNot() && likeExpression.getLeft() instanceof ColumnNameExpression && isConstant(likeExpression.getRight())) {
+                result.add(new Pair<>((ColumnNameExpression) likeExpression.getLeft(), new Bound(likeExpression.getRight(), true, true, true)));
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private static BTreeIndex btreeIndex(Table table, ColumnNameExpression expression) {
+        Column column = resolve(expression, table.getSchema());
+        if (column == null) return null;
+        return (BTreeIndex) table.getIndex(column.getColumnIndex(), Index.Type.BTREE);
+    }
+
+    @Nullable
+    private static Index findIndex(Table table, int columnIndex) {
+        for (Index index : table.getIndexes()) {
+            if (index.getColumnIndex() == columnIndex) return index;
+        }
+        return null;
+    }
+
+    @Nullable
+    static Column resolve(ColumnNameExpression expression, Schema schema) {
+        try {
+            if (expression.getTableName() == null) {
+                return schema.getColumn(expression.getColumnName());
+            } else {
+                return schema.getColumn(expression.getTableName(), expression.getColumnName());
+            }
+        } catch (SQLExecuteException e) {
+            // 有歧义的列名留给求值时报错
+            return null;
+        }
+    }
+
+    static boolean isConstant(Expression expression) {
+        boolean[] constant = {true};
+        expression.accept(new DefaultVisitor<Void>() {
+            @Override
+            public Void visit(ColumnNameExpression node) {
+                constant[0] = false;
+                return null;
+            }
+
+            @Override
+            public Void visit(WildcardExpression node) {
+                constant[0] = false;
+                return null;
+            }
+
+            @Override
+            public Void visit(FunctionCallExpression node) {
+                constant[0] = false;
+                return null;
+            }
+
+            @Override
+            public Void visit(SubQueryExpression node) {
+                constant[0] = false;
+                return null;
+            }
+
+            @Override
+            public Void visit(InSubQueryExpression node) {
+                constant[0] = false;
+                return null;
+            }
+        });
+        return constant[0];
+    }
+
+    @NotNull
+    public Index getIndex() {
+        return index;
+    }
+
+    /**
+     * 是否是 B+ 树索引上的范围查找。
+     */
+    public boolean isRange() {
+        return bounds != null;
+    }
+
+    /**
+     * 返回候选行的下标（升序）。常量的类型与列的类型不符（比如数值列与字符串比较）时返回 null，
+     * 这时比较的结果要由求值决定，调用者应该扫描所有行。
+     */
+    @Nullable
+    public int[] rowIndexes() throws SQLExecuteException {
+        if (bounds != null) {
+            PrimitiveIterator.OfInt iterator = orderedRowIndexes(false);
+            if (iterator == null) return null;
+            int[] result = new int[16];
+            int size = 0;
+            while (iterator.hasNext()) {
+                if (size == result.length) result = Arrays.copyOf(result, size * 2);
+                result[size++] = iterator.nextInt();
+            }
+            result = Arrays.copyOf(result, size);
+            Arrays.sort(result);
+            return result;
+        }
+
+        // 先求出所有常量，其中任何一个出错都与逐行求值一样报错，不会因为用上了索引而被跳过
+        List<TypedValue> constants = new ArrayList<>(values.size());
+        for (Expression value : values) {
+            constants.add(evaluate(value));
+        }
+        boolean numberColumn = isNumberColumn();
+        List<TypedValue> keys = new ArrayList<>(constants.size());
+        for (TypedValue key : constants) {
+            if (isNull(key)) continue; // 不等于任何值
+            if (numberColumn != isNumber(key)) return null;
+            keys.add(key);
+        }
+        if (keys.size() == 1) return index.lookup(keys.get(0));
+
+        TreeSet<Integer> rowIndexes = new TreeSet<>();
+        for (TypedValue key : keys) {
+            for (int rowIndex : index.lookup(key)) {
+                rowIndexes.add(rowIndex);
+            }
+        }
+        int[] result = new int[rowIndexes.size()];
+        int i = 0;
+        for (int rowIndex : rowIndexes) {
+            result[i++] = rowIndex;
+        }
+        return result;
+    }
+
+    /**
+     * 范围查找时按键的顺序返回候选行，返回 null 的情况同 {@link #rowIndexes()}。
+     */
+    @Nullable
+    public PrimitiveIterator.OfInt orderedRowIndexes(boolean descending) throws SQLExecuteException {
+        if (bounds == null) throw new IllegalStateException("not a range lookup");
+        boolean numberColumn = isNumberColumn();
+        TypedValue low = null;
+        boolean lowInclusive = false;
+        TypedValue high = null;
+        boolean highInclusive = false;
+        for (Bound bound : bounds) {
+            TypedValue value = evaluate(bound.value);
+            if (isNull(value)) return Arrays.stream(EMPTY).iterator(); // 与 NULL 比较的结果不为真
+            if (numberColumn != isNumber(value)) return null;
+            boolean inclusive = bound.inclusive;
+            if (bound.prefix) {
+                // like 'abc%' 的候选行是 'abc' <= column < 'abd'
+                String pattern = (String) value.getValue();
+                if (AbstractEvaluator.checkLikePattern(pattern) != null) return null;
+                String prefix = likePrefix(pattern);
+                if (prefix.isEmpty()) continue;
+                value = new TypedValue(STRING, prefix);
+                String next = nextPrefix(prefix);
+                if (next != null && (high == null || BTreeIndex.compare(next, high.getValue()) <= 0)) {
+                    high = new TypedValue(STRING, next);
+                    highInclusive = false;
+                }
+            }
+            if (bound.lower) {
+                int c = low == null ? 1 : compare(value, low);
+                if (c > 0 || (c == 0 && !inclusive)) {
+                    low = value;
+                    lowInclusive = inclusive;
+                }
+            } else {
+                int c = high == null ? -1 : compare(value, high);
+                if (c < 0 || (c == 0 && !inclusive)) {
+                    high = value;
+                    highInclusive = inclusive;
+                }
+            }
+        }
+        return ((BTreeIndex) index).range(low, lowInclusive, high, highInclusive, descending);
+    }
+
+    private boolean isNumberColumn() {
+        return table.getColumns().get(index.getColumnIndex()).getDataType() != STRING;
+    }
+
+    static TypedValue evaluate(Expression expression) throws SQLExecuteException {
+        return Executor.evaluate(null, Schema.EMPTY_SCHEMA, Row.EMPTY_ROW, expression);
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    private static int compare(TypedValue a, TypedValue b) {
+        return BTreeIndex.compare(Index.keyOf(a), Index.keyOf(b));
+    }
+
+    /**
+     * like 模式中第一个通配符之前的部分（去掉转义）。
+     */
+    static String likePrefix(String pattern) {
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '%' || c == '_') break;
+            if (c == '\\') c = pattern.charAt(++i);
+            prefix.append(c);
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * 大于所有以 prefix 开头的字符串的最小的前缀，不存在时返回 null。
+     */
+    @Nullable
+    static String nextPrefix(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) end--;
+        if (end == 0) return null;
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    /**
+     * 范围的一端：lower 为 true 时是下界。prefix 为 true 时 value 是 like 的模式，它同时给出上下界。
+     */
+    private static class Bound {
+
+        final Expression value;
+        final boolean lower;
+        final boolean inclusive;
+        final boolean prefix;
+
+        Bound(Expression value, boolean lower, boolean inclusive, boolean prefix) {
+            this.value = value;
+            this.lower = lower;
+            this.inclusive = inclusive;
+            this.prefix = prefix;
+        }
+    }
+}
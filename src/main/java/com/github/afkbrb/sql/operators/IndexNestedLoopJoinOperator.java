@@ -0,0 +1,72 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.statements.SelectStatement.TableJoin.JoinType;
+import com.github.afkbrb.sql.model.Index;
+import com.github.afkbrb.sql.model.InheritedContext;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Table;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 右表是一张有索引的表时，对每个左表行用它的连接键查右表的索引，只读取键相等的右表行，不需要缓存或扫描右表。
+ * 适合左表行数远少于右表的情况，比如用少量的行去连接一张很大的维度表。
+ * <p>
+ * 索引只建在一个连接键上，有多个连接键时其他的键在候选行上再比较。
+ * 索引返回的行按在右表中的顺序排列，所以输出顺序与嵌套循环连接相同。
+ */
+public class IndexNestedLoopJoinOperator extends JoinOperator {
+
+    private final Table rightTable;
+    private final Index index;
+    private final int[] leftKeys;
+    private final int[] rightKeys;
+    // 用来查索引的左表的列
+    private final int probeKey;
+
+    /**
+     * right 必须是直接扫描 rightTable 的算子，index 必须建在 rightTable 的某个右连接键上。
+     */
+    public IndexNestedLoopJoinOperator(@NotNull Operator left, @NotNull ScanOperator right, @NotNull Index index, @NotNull JoinType joinType,
+                                       @NotNull JoinCondition joinCondition, @Nullable InheritedContext context) {
+        super(left, right, joinType, joinCondition.getResidual(), context);
+        this.rightTable = right.getTable();
+        this.index = Objects.requireNonNull(index);
+        this.leftKeys = joinCondition.getLeftKeys();
+        this.rightKeys = joinCondition.getRightKeys();
+        int probeKey = -1;
+        for (int i = 0; i < rightKeys.length; i++) {
+            if (rightKeys[i] == index.getColumnIndex()) probeKey = leftKeys[i];
+        }
+        if (probeKey < 0) throw new IllegalArgumentException("index " + index.getIndexName() + " is not on a join key");
+        this.probeKey = probeKey;
+    }
+
+    @Override
+    protected boolean probeNext() throws SQLExecuteException {
+        Row leftRow = left.next();
+        if (leftRow == null) return false;
+        List<Row> candidates = new ArrayList<>();
+        Object key = JoinCondition.keyOf(leftRow, leftKeys);
+        if (key != null) { // NULL 不等于任何值
+            for (int rowIndex : index.lookup(leftRow.getCell(probeKey).getTypedValue())) {
+                Row rightRow = rightTable.getRow(rowIndex);
+                if (leftKeys.length > 1 && !key.equals(JoinCondition.keyOf(rightRow, rightKeys))) continue;
+                candidates.add(rightRow);
+            }
+        }
+        join(leftRow, candidates);
+        return true;
+    }
+
+    @Override
+    public long estimateRowCount() {
+        // 假设右表的键分布均匀
+        return multiply(left.estimateRowCount(), Math.max(rightTable.getRowCount() / Math.max(index.getKeyCount(), 1), 1));
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.model.BTreeIndex;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Schema;
+import com.github.afkbrb.sql.model.Table;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+
+/**
+ * 只读取索引找到的候选行，按行号顺序输出，所以输出顺序与 {@link ScanOperator} 相同。
+ * 候选行不一定都满足条件，上层仍然需要过滤。索引用不上时（见 {@link IndexLookup#rowIndexes()}）读取所有行。
+ * 候选行也可以由 {@link BitmapLookup} 在位图索引上算出。
+ * <p>
+ * 也可以按 B+ 树索引的键的顺序输出，这样 ORDER BY 该列时不需要排序，有 LIMIT 时读够了行就停下。
+ */
+public class IndexScanOperator extends Operator {
+
+    private final Table table;
+    private final IndexLookup lookup;
+    private final BitmapLookup bitmapLookup;
+    // 按该索引的键的顺序输出，为 null 时按行号顺序输出
+    private final BTreeIndex orderIndex;
+    private final boolean descending;
+    private int[] rowIndexes;
+    private PrimitiveIterator.OfInt iterator;
+    private int position;
+
+    public IndexScanOperator(@NotNull Table table, @NotNull IndexLookup lookup) {
+        this.table = Objects.requireNonNull(table);
+        this.lookup = Objects.requireNonNull(lookup);
+        this.bitmapLookup = null;
+        this.orderIndex = null;
+        this.descending = false;
+    }
+
+    public IndexScanOperator(@NotNull Table table, @NotNull BitmapLookup bitmapLookup) {
+        this.table = Objects.requireNonNull(table);
+        this.lookup = null;
+        this.bitmapLookup = Objects.requireNonNull(bitmapLookup);
+        this.orderIndex = null;
+        this.descending = false;
+    }
+
+    /**
+     * 按 orderIndex 的键的顺序（降序时 NULL 在最后）输出行，键相同的行按行号顺序输出，与稳定排序的结果相同。
+     * lookup 不为 null 时只输出它找到的行，它必须是 orderIndex 上的范围查找。
+     */
+    public IndexScanOperator(@NotNull Table table, @NotNull BTreeIndex orderIndex, @Nullable IndexLookup lookup, boolean descending) {
+        if (lookup != null && (!lookup.isRange() || lookup.getIndex() != orderIndex)) {
+            throw new IllegalArgumentException("expected a range lookup on index " + orderIndex.getIndexName());
+        }
+        this.table = Objects.requireNonNull(table);
+        this.lookup = lookup;
+        this.bitmapLookup = null;
+        this.orderIndex = orderIndex;
+        this.descending = descending;
+    }
+
+    @NotNull
+    public Table getTable() {
+        return table;
+    }
+
+    @Nullable
+    public IndexLookup getLookup() {
+        return lookup;
+    }
+
+    @Nullable
+    public BitmapLookup getBitmapLookup() {
+        return bitmapLookup;
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return table.getSchema();
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        position = 0;
+        if (orderIndex == null) {
+            rowIndexes = lookup != null ? lookup.rowIndexes() : bitmapLookup.rowIndexes();
+            return;
+        }
+        iterator = lookup == null ? null : lookup.orderedRowIndexes(descending);
+        if (iterator == null) iterator = orderIndex.scan(descending);
+    }
+
+    @Nullable
+    @Override
+    public Row next() {
+        if (iterator != null) return iterator.hasNext() ? table.getRow(iterator.nextInt()) : null;
+        if (rowIndexes == null) return position < table.getRowCount() ? table.getRow(position++) : null;
+        return position < rowIndexes.length ? table.getRow(rowIndexes[position++]) : null;
+    }
+
+    @Override
+    public void close() {
+        rowIndexes = null;
+        iterator = null;
+    }
+
+    @NotNull
+    @Override
+    public int[] getSortedBy() {
+        if (orderIndex == null) return table.getSortedBy();
+        return descending ? new int[0] : new int[]{orderIndex.getColumnIndex()};
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return table.getRowCount();
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.AndExpression;
+import com.github.afkbrb.sql.ast.expressions.BinaryExpression;
+import com.github.afkbrb.sql.ast.expressions.ColumnNameExpression;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+
+/**
+ * 将连接条件拆成等值连接键和剩余条件。
+ * <p>
+ * ON 条件按 AND 拆开后，形如 left.x = right.y 的项（两边都是列名，且分别只属于左右两张表）作为连接键，
+ * 其他项合并成剩余条件，在键相等的行对上再求值。
+ */
+public class JoinCondition {
+
+    private final int[] leftKeys;
+    private final int[] rightKeys;
+    private final Expression residual;
+
+    private JoinCondition(int[] leftKeys, int[] rightKeys, @Nullable Expression residual) {
+        this.leftKeys = leftKeys;
+        this.rightKeys = rightKeys;
+        this.residual = residual;
+    }
+
+    /**
+     * 左表中连接键的列下标。
+     */
+    public int[] getLeftKeys() {
+        return leftKeys;
+    }
+
+    /**
+     * 右表中连接键的列下标，与 leftKeys 一一对应。
+     */
+    public int[] getRightKeys() {
+        return rightKeys;
+    }
+
+    public boolean isEquiJoin() {
+        return leftKeys.length > 0;
+    }
+
+    /**
+     * 剩余条件，没有的话返回 null。
+     */
+    @Nullable
+    public Expression getResidual() {
+        return residual;
+    }
+
+    public static JoinCondition analyze(@Nullable Expression condition, @NotNull Schema leftSchema, @NotNull Schema rightSchema) {
+        List<Expression> conjuncts = new ArrayList<>();
+        if (condition != null) splitConjuncts(condition, conjuncts);
+
+        List<Integer> leftKeys = new ArrayList<>();
+        List<Integer> rightKeys = new ArrayList<>();
+        Expression residual = null;
+        for (Expression conjunct : conjuncts) {
+            int[] keys = equiKeys(conjunct, leftSchema, rightSchema);
+            if (keys != null) {
+                leftKeys.add(keys[0]);
+                rightKeys.add(keys[1]);
+            } else {
+                residual = residual == null ? conjunct : new AndExpression(residual, conjunct);
+            }
+        }
+        return new JoinCondition(toArray(leftKeys), toArray(rightKeys), residual);
+    }
+
+    /**
+     * 计算 row 的连接键，用作 HashMap 的 key。
+     * 数值统一转成 double（与 = 的语义一致，1 = 1.0），包含 NULL 时返回 null，因为 NULL 不等于任何值。
+     */
+    @Nullable
+    static Object keyOf(Row row, int[] keys) {
+        if (keys.length == 1) return Index.keyOf(row.getCell(keys[0]).getTypedValue());
+        Object[] values = new Object[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = Index.keyOf(row.getCell(keys[i]).getTypedValue());
+            if (values[i] == null) return null;
+        }
+        return Arrays.asList(values);
+    }
+
+    /**
+     * 按连接键的相等语义比较两个值（数值统一按 double 比较），NULL 最小。
+     * 数值与字符串不会作为同一个连接键出现，这里让数值排在字符串前面，只是为了保证顺序是全序的。
+     */
+    static int compareKey(TypedValue first, TypedValue second) {
+        Object x = Index.keyOf(first);
+        Object y = Index.keyOf(second);
+        if (x == null || y == null) return x == null ? (y == null ? 0 : -1) : 1;
+        if (x instanceof Double && y instanceof Double) return Double.compare((Double) x, (Double) y);
+        if (x instanceof String && y instanceof String) return ((String) x).compareTo((String) y);
+        return x instanceof Double ? -1 : 1;
+    }
+
+    /**
+     * 按 compareKey 逐列比较 first 的 firstKeys 列与 second 的 secondKeys 列。
+     */
+    static int compareKeys(Row first, int[] firstKeys, Row second, int[] secondKeys) {
+        for (int i = 0; i < firstKeys.length; i++) {
+            int cmp = compareKey(first.getCell(firstKeys[i]).getTypedValue(), second.getCell(secondKeys[i]).getTypedValue());
+            if (cmp != 0) return cmp;
+        }
+        return 0;
+    }
+
+    static void splitConjuncts(Expression expression, List<Expression> conjuncts) {
+        if (expression instanceof AndExpression) {
+            splitConjuncts(((AndExpression) expression).getLeft(), conjuncts);
+            splitConjuncts(((AndExpression) expression).getRight(), conjuncts);
+        } else {
+            conjuncts.add(expression);
+        }
+    }
+
+    /**
+     * 如果 expression 是等值连接条件，返回 {左表列下标, 右表列下标}，否则返回 null。
+     * 两边类型不兼容（数值和字符串比较）时不作为连接键，留给求值时报错。
+     */
+    private static int[] equiKeys(Expression expression, Schema leftSchema, Schema rightSchema) {
+        if (!(expression instanceof BinaryExpression)) return null;
+        BinaryExpression binaryExpression = (BinaryExpression) expression;
+        if (binaryExpression.getOp() != BinaryExpression.BinaryOperatorType.EQ) return null;
+        if (!(binaryExpression.getLeft() instanceof ColumnNameExpression)) return null;
+        if (!(binaryExpression.getRight() instanceof ColumnNameExpression)) return null;
+        ColumnNameExpression first = (ColumnNameExpression) binaryExpression.getLeft();
+        ColumnNameExpression second = (ColumnNameExpression) binaryExpression.getRight();
+
+        Column leftColumn = onlyIn(first, leftSchema, rightSchema);
+        Column rightColumn = onlyIn(second, rightSchema, leftSchema);
+        if (leftColumn == null || rightColumn == null) {
+            leftColumn = onlyIn(second, leftSchema, rightSchema);
+            rightColumn = onlyIn(first, rightSchema, leftSchema);
+        }
+        if (leftColumn == null || rightColumn == null) return null;
+        if (!comparable(leftColumn.getDataType(), rightColumn.getDataType())) return null;
+        return new int[]{leftColumn.getColumnIndex(), rightColumn.getColumnIndex()};
+    }
+
+    /**
+     * 列名只能在 schema 中找到、且在 otherSchema 中找不到时返回对应的列。
+     */
+    private static Column onlyIn(ColumnNameExpression expression, Schema schema, Schema otherSchema) {
+        Column column = resolve(expression, schema);
+        if (column == null || resolve(expression, otherSchema) != null) return null;
+        return column;
+    }
+
+    private static Column resolve(ColumnNameExpression expression, Schema schema) {
+        try {
+            if (expression.getTableName() == null) {
+                return schema.getColumn(expression.getColumnName());
+            } else {
+                return schema.getColumn(expression.getTableName(), expression.getColumnName());
+            }
+        } catch (SQLExecuteException e) {
+            // 有歧义的列名留给求值时报错
+            return null;
+        }
+    }
+
+    private static boolean comparable(DataType first, DataType second) {
+        if (first == STRING || second == STRING) return first == second;
+        return (first == INT || first == DOUBLE) && (second == INT || second == DOUBLE);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
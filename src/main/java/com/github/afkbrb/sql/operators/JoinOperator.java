@@ -0,0 +1,135 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.ast.statements.SelectStatement.TableJoin.JoinType;
+import com.github.afkbrb.sql.model.*;
+import com.github.afkbrb.sql.visitors.CompiledExpression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+import static com.github.afkbrb.sql.executors.Executor.compile;
+import static com.github.afkbrb.sql.executors.Executor.predicate;
+
+/**
+ * 连接算子的公共部分：逐行读取左表，由子类找出可能匹配的右表行，再检查条件并拼接。
+ * 左连接时没有匹配的左表行紧跟着输出，右边补 NULL。
+ */
+public abstract class JoinOperator extends Operator {
+
+    protected final Operator left;
+    protected final Operator right;
+    private final JoinType joinType;
+    // 在候选行对上检查的条件，null 表示总是满足
+    private final CompiledExpression condition;
+    private final Schema schema;
+    private final Deque<Row> pending = new ArrayDeque<>();
+
+    protected JoinOperator(@NotNull Operator left, @NotNull Operator right, @NotNull JoinType joinType,
+                           @Nullable Expression condition, @Nullable InheritedContext context) {
+        this.left = Objects.requireNonNull(left);
+        this.right = Objects.requireNonNull(right);
+        this.joinType = Objects.requireNonNull(joinType);
+
+        // 合并列信息
+        List<Column> columns = new ArrayList<>();
+        for (Column column : left.getSchema().getColumns()) {
+            columns.add(new Column(columns.size(), column.getColumnName(), column.getDataType(), column.getTableName()));
+        }
+        for (Column column : right.getSchema().getColumns()) {
+            columns.add(new Column(columns.size(), column.getColumnName(), column.getDataType(), column.getTableName()));
+        }
+        schema = new Schema(columns);
+        this.condition = condition == null ? null : compile(context, schema, condition);
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        left.open();
+        right.open();
+        pending.clear();
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        while (pending.isEmpty()) {
+            if (!probeNext()) return null;
+        }
+        return pending.poll();
+    }
+
+    /**
+     * 处理下一个左表行，通过 {@link #join(Row, Iterable)} 输出，左表读完时返回 false。
+     */
+    protected abstract boolean probeNext() throws SQLExecuteException;
+
+    /**
+     * 将左表行与满足条件的候选右表行拼接后输出。
+     */
+    protected void join(@NotNull Row leftRow, @NotNull Iterable<Row> candidates) throws SQLExecuteException {
+        join(leftRow, candidates, pending);
+    }
+
+    /**
+     * 将左表行与满足条件的候选右表行拼接后放入 output。
+     * 不修改算子的状态，条件能并发求值时可以在多个线程中同时调用。
+     */
+    protected void join(@NotNull Row leftRow, @NotNull Iterable<Row> candidates, @NotNull Collection<Row> output) throws SQLExecuteException {
+        boolean matched = false;
+        for (Row rightRow : candidates) {
+            List<Cell> newCells = new ArrayList<>(schema.getColumns().size());
+            newCells.addAll(leftRow.getCells());
+            newCells.addAll(rightRow.getCells());
+            Row newRow = new Row(newCells);
+            // 简单优化：符合条件再连接，而不是连接后再根据条件过滤
+            if (condition == null || predicate(condition, newRow)) {
+                output.add(newRow);
+                matched = true;
+            }
+        }
+        if (!matched && joinType == JoinType.LEFT) {
+            List<Cell> newCells = new ArrayList<>(leftRow.getCells());
+            for (int i = leftRow.size(); i < schema.getColumns().size(); i++) {
+                newCells.add(new Cell(TypedValue.NULL));
+            }
+            output.add(new Row(newCells));
+        }
+    }
+
+    /**
+     * 直接输出已经拼接好的行。
+     */
+    protected void output(@NotNull Collection<Row> rows) {
+        pending.addAll(rows);
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        pending.clear();
+        left.close();
+        right.close();
+    }
+
+    /**
+     * 输出按左表的顺序排列。
+     */
+    @NotNull
+    @Override
+    public int[] getSortedBy() {
+        return left.getSortedBy();
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return multiply(left.estimateRowCount(), Math.max(right.estimateRowCount(), 1));
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Schema;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * 跳过前 offset 行，最多输出 limit 行。输出够了就不再从下层拉取，下层也就不会再做多余的计算。
+ */
+public class LimitOperator extends Operator {
+
+    private final Operator child;
+    private final int limit;
+    private final int offset;
+    private int returned;
+
+    public LimitOperator(@NotNull Operator child, int limit, int offset) {
+        if (limit < 0 || offset < 0) throw new IllegalArgumentException("limit and offset should be non-negative");
+        this.child = Objects.requireNonNull(child);
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return child.getSchema();
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        child.open();
+        returned = 0;
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        if (returned >= limit) return null;
+        if (returned == 0) {
+            for (int i = 0; i < offset; i++) {
+                if (child.next() == null) {
+                    returned = limit;
+                    return null;
+                }
+            }
+        }
+        Row row = child.next();
+        if (row == null) {
+            returned = limit;
+            return null;
+        }
+        returned++;
+        return row;
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        child.close();
+    }
+
+    @NotNull
+    @Override
+    public int[] getSortedBy() {
+        return child.getSortedBy();
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return Math.min(child.estimateRowCount(), limit);
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.Settings;
+import com.github.afkbrb.sql.ast.statements.SelectStatement.TableJoin.JoinType;
+import com.github.afkbrb.sql.model.InheritedContext;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.storage.ExternalSorter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * 两边按连接键有序后逐组归并：右表的键小于左表的键就前进，键相等的一组右表行缓存起来，
+ * 左表中键相同的行可以重复使用这一组。
+ * <p>
+ * presorted 表示两边已经按连接键有序，可以直接流式归并，此时输出顺序与嵌套循环连接相同；
+ * 否则先做外部排序，内存放不下的部分会溢出到临时文件。
+ */
+public class MergeJoinOperator extends JoinOperator {
+
+    private final int[] leftKeys;
+    private final int[] rightKeys;
+    private final boolean presorted;
+    private ExternalSorter leftSorter;
+    private ExternalSorter rightSorter;
+    private Iterator<Row> leftSorted;
+    private Iterator<Row> rightSorted;
+    private Row rightRow;
+    private final List<Row> group = new ArrayList<>();
+
+    public MergeJoinOperator(@NotNull Operator left, @NotNull Operator right, @NotNull JoinType joinType,
+                             @NotNull JoinCondition joinCondition, @Nullable InheritedContext context, boolean presorted) {
+        super(left, right, joinType, joinCondition.getResidual(), context);
+        if (!joinCondition.isEquiJoin()) throw new IllegalArgumentException("expected an equi-join condition");
+        this.leftKeys = joinCondition.getLeftKeys();
+        this.rightKeys = joinCondition.getRightKeys();
+        this.presorted = presorted;
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        super.open();
+        group.clear();
+        if (!presorted) {
+            int sortBufferRows = Settings.getInstance().getSortBufferRows();
+            long sortMemoryBytes = Settings.getInstance().getSortMemoryBytes();
+            leftSorter = new ExternalSorter((x, y) -> JoinCondition.compareKeys(x, leftKeys, y, leftKeys), sortBufferRows, sortMemoryBytes);
+            rightSorter = new ExternalSorter((x, y) -> JoinCondition.compareKeys(x, rightKeys, y, rightKeys), sortBufferRows, sortMemoryBytes);
+            try {
+                Row row;
+                while ((row = left.next()) != null) {
+                    leftSorter.add(row); // 键为 NULL 的左表行排在最前面，左连接时仍要输出
+                }
+                while ((row = right.next()) != null) {
+                    if (JoinCondition.keyOf(row, rightKeys) != null) rightSorter.add(row);
+                }
+                leftSorted = leftSorter.sorted();
+                rightSorted = rightSorter.sorted();
+            } catch (IOException e) {
+                throw new SQLExecuteException("unable to sort rows for merge join: %s", e.getMessage());
+            }
+        }
+        rightRow = nextRight();
+    }
+
+    @Override
+    protected boolean probeNext() throws SQLExecuteException {
+        Row leftRow = nextLeft();
+        if (leftRow == null) return false;
+        if (JoinCondition.keyOf(leftRow, leftKeys) == null) {
+            join(leftRow, Collections.emptyList());
+            return true;
+        }
+
+        if (group.isEmpty() || JoinCondition.compareKeys(leftRow, leftKeys, group.get(0), rightKeys) != 0) {
+            // 左表换了一个新键，重新找与之相等的一组右表行
+            group.clear();
+            while (rightRow != null && JoinCondition.compareKeys(rightRow, rightKeys, leftRow, leftKeys) < 0) {
+                rightRow = nextRight();
+            }
+            while (rightRow != null && JoinCondition.compareKeys(rightRow, rightKeys, leftRow, leftKeys) == 0) {
+                group.add(rightRow);
+                rightRow = nextRight();
+            }
+        }
+        join(leftRow, group);
+        return true;
+    }
+
+    private Row nextLeft() throws SQLExecuteException {
+        if (presorted) return left.next();
+        try {
+            return leftSorted.hasNext() ? leftSorted.next() : null;
+        } catch (UncheckedIOException e) {
+            throw new SQLExecuteException("unable to sort rows for merge join: %s", e.getCause().getMessage());
+        }
+    }
+
+    private Row nextRight() throws SQLExecuteException {
+        if (!presorted) {
+            try {
+                return rightSorted.hasNext() ? rightSorted.next() : null;
+            } catch (UncheckedIOException e) {
+                throw new SQLExecuteException("unable to sort rows for merge join: %s", e.getCause().getMessage());
+            }
+        }
+        Row row;
+        while ((row = right.next()) != null) {
+            if (JoinCondition.keyOf(row, rightKeys) != null) return row; // NULL 不等于任何值
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        group.clear();
+        rightRow = null;
+        leftSorted = rightSorted = null;
+        try {
+            if (leftSorter != null) leftSorter.close();
+            if (rightSorter != null) rightSorter.close();
+        } catch (IOException e) {
+            throw new SQLExecuteException("unable to remove sort runs: %s", e.getMessage());
+        } finally {
+            leftSorter = rightSorter = null;
+            super.close();
+        }
+    }
+
+    @NotNull
+    @Override
+    public int[] getSortedBy() {
+        return presorted ? left.getSortedBy() : leftKeys.clone();
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.ast.statements.SelectStatement.TableJoin.JoinType;
+import com.github.afkbrb.sql.model.InheritedContext;
+import com.github.afkbrb.sql.model.Row;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 缓存右表的所有行，逐对检查左右两表的行，用于没有等值连接键的条件。
+ */
+public class NestedLoopJoinOperator extends JoinOperator {
+
+    private List<Row> rightRows;
+
+    public NestedLoopJoinOperator(@NotNull Operator left, @NotNull Operator right, @NotNull JoinType joinType,
+                                  @Nullable Expression on, @Nullable InheritedContext context) {
+        super(left, right, joinType, on, context);
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        super.open();
+        rightRows = new ArrayList<>();
+        Row row;
+        while ((row = right.next()) != null) {
+            rightRows.add(row);
+        }
+    }
+
+    @Override
+    protected boolean probeNext() throws SQLExecuteException {
+        Row leftRow = left.next();
+        if (leftRow == null) return false;
+        join(leftRow, rightRows);
+        return true;
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        rightRows = null;
+        super.close();
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Schema;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 拉取式（Volcano 风格）的查询算子。
+ * <p>
+ * 使用时先 open，然后反复调用 next 取下一行，返回 null 表示没有更多行了，最后 close。
+ * 行在算子之间逐行流动，只有排序、聚集、连接的构建端等必须看到全部输入的算子才会缓存数据。
+ */
+public abstract class Operator {
+
+    /**
+     * 输出行的列信息。
+     */
+    @NotNull
+    public abstract Schema getSchema();
+
+    public void open() throws SQLExecuteException {
+    }
+
+    /**
+     * 返回下一行，没有更多行的话返回 null。
+     */
+    @Nullable
+    public abstract Row next() throws SQLExecuteException;
+
+    public void close() throws SQLExecuteException {
+    }
+
+    /**
+     * 输出已知按哪些列（列下标）升序排列，前面的列优先，未知的话返回空数组。
+     */
+    @NotNull
+    public int[] getSortedBy() {
+        return new int[0];
+    }
+
+    /**
+     * 输出行数的上界，用于在规划时选择算法。
+     */
+    public abstract long estimateRowCount();
+
+    static long multiply(long x, long y) {
+        try {
+            return Math.multiplyExact(x, y);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
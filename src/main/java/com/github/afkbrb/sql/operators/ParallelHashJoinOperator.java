@@ -0,0 +1,156 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.statements.SelectStatement.TableJoin.JoinType;
+import com.github.afkbrb.sql.model.InheritedContext;
+import com.github.afkbrb.sql.model.Row;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.github.afkbrb.sql.operators.ParallelScanOperator.MORSEL_SIZE;
+
+/**
+ * 并行版本的 {@link HashJoinOperator}。
+ * <p>
+ * 建表：读入右表的所有行后切成小块，各小块并行地计算连接键，并按键的哈希值的高位分到若干个分区，
+ * 然后每个分区在一个任务中按小块的顺序建自己的哈希表，分区之间没有共享的状态，不需要同步。
+ * 建好的哈希表只读，探测时可以被多个线程同时访问。
+ * <p>
+ * 探测：左表的行仍然由输出线程逐行读取，每攒够一个小块就提交一个任务，在池中与哈希表匹配、检查剩余条件并拼接，
+ * 同时最多有 2 * parallelism 个小块在计算或等待输出。结果按小块的顺序成批输出，
+ * 所以输出顺序与 HashJoinOperator 相同，出错时报的也是第一个出错的左表行的错。
+ * 剩余条件必须能在多个线程中同时求值。
+ */
+public class ParallelHashJoinOperator extends JoinOperator {
+
+    private final int[] leftKeys;
+    private final int[] rightKeys;
+    private final int parallelism;
+    // 分区数的二进制位数，分区数是 2 的幂
+    private final int partitionBits;
+    private List<Map<Object, List<Row>>> partitions;
+    private Deque<ForkJoinTask<List<Row>>> pending;
+    private boolean leftExhausted;
+
+    public ParallelHashJoinOperator(@NotNull Operator left, @NotNull Operator right, @NotNull JoinType joinType,
+                                    @NotNull JoinCondition joinCondition, @Nullable InheritedContext context, int parallelism) {
+        super(left, right, joinType, joinCondition.getResidual(), context);
+        if (!joinCondition.isEquiJoin()) throw new IllegalArgumentException("expected an equi-join condition");
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism should be positive");
+        this.leftKeys = joinCondition.getLeftKeys();
+        this.rightKeys = joinCondition.getRightKeys();
+        this.parallelism = parallelism;
+        this.partitionBits = 32 - Integer.numberOfLeadingZeros(4 * parallelism - 1);
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        super.open();
+        List<Row> rows = new ArrayList<>();
+        Row row;
+        while ((row = right.next()) != null) {
+            rows.add(row);
+        }
+        partitions = build(rows);
+        pending = new ArrayDeque<>();
+        leftExhausted = false;
+    }
+
+    private List<Map<Object, List<Row>>> build(List<Row> rows) throws SQLExecuteException {
+        int partitionCount = 1 << partitionBits;
+        // 第一阶段：每个小块的行按分区分开，chunks[小块][分区] 中是 {key, row}
+        List<Callable<List<List<Object[]>>>> scatterTasks = new ArrayList<>();
+        for (int start = 0; start < rows.size(); start += MORSEL_SIZE) {
+            List<Row> chunk = rows.subList(start, Math.min(rows.size(), start + MORSEL_SIZE));
+            scatterTasks.add(() -> {
+                List<List<Object[]>> scattered = new ArrayList<>(partitionCount);
+                for (int i = 0; i < partitionCount; i++) {
+                    scattered.add(new ArrayList<>());
+                }
+                for (Row rightRow : chunk) {
+                    Object key = JoinCondition.keyOf(rightRow, rightKeys);
+                    if (key == null) continue; // NULL 不等于任何值
+                    scattered.get(partitionOf(key)).add(new Object[]{key, rightRow});
+                }
+                return scattered;
+            });
+        }
+        List<List<List<Object[]>>> chunks = ParallelScanOperator.invokeAll(scatterTasks, parallelism);
+
+        // 第二阶段：每个分区按小块的顺序建哈希表，同一个键的行保持右表的顺序
+        List<Callable<Map<Object, List<Row>>>> buildTasks = new ArrayList<>();
+        for (int partition = 0; partition < partitionCount; partition++) {
+            int p = partition;
+            buildTasks.add(() -> {
+                Map<Object, List<Row>> hashTable = new HashMap<>();
+                for (List<List<Object[]>> chunk : chunks) {
+                    for (Object[] entry : chunk.get(p)) {
+                        hashTable.computeIfAbsent(entry[0], k -> new ArrayList<>(1)).add((Row) entry[1]);
+                    }
+                }
+                return hashTable;
+            });
+        }
+        return ParallelScanOperator.invokeAll(buildTasks, parallelism);
+    }
+
+    private int partitionOf(Object key) {
+        // 用高位分区，HashMap 用低位选桶
+        return GroupTable.mix(key.hashCode()) >>> (32 - partitionBits);
+    }
+
+    @Override
+    protected boolean probeNext() throws SQLExecuteException {
+        submit();
+        if (pending.isEmpty()) return false;
+        output(ParallelScanOperator.join(pending.poll()));
+        return true;
+    }
+
+    /**
+     * 读取左表的行并提交探测的任务，直到在途的小块达到上限。
+     */
+    private void submit() throws SQLExecuteException {
+        ForkJoinPool pool = ParallelScanOperator.pool(parallelism);
+        while (pending.size() < 2 * parallelism && !leftExhausted) {
+            List<Row> chunk = new ArrayList<>();
+            Row row;
+            while (chunk.size() < MORSEL_SIZE && (row = left.next()) != null) {
+                chunk.add(row);
+            }
+            if (chunk.size() < MORSEL_SIZE) leftExhausted = true;
+            if (!chunk.isEmpty()) pending.add(pool.submit(() -> probe(chunk)));
+        }
+    }
+
+    private List<Row> probe(List<Row> chunk) {
+        List<Row> rows = new ArrayList<>();
+        try {
+            for (Row leftRow : chunk) {
+                Object key = JoinCondition.keyOf(leftRow, leftKeys);
+                List<Row> matches = key == null ? null : partitions.get(partitionOf(key)).get(key);
+                join(leftRow, matches == null ? Collections.emptyList() : matches, rows);
+            }
+        } catch (SQLExecuteException e) {
+            throw new ParallelScanOperator.MorselException(e);
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        if (pending != null) {
+            for (ForkJoinTask<List<Row>> task : pending) {
+                task.cancel(false);
+            }
+        }
+        pending = null;
+        partitions = null;
+        super.close();
+    }
+}
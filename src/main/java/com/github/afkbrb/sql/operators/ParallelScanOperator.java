@@ -0,0 +1,305 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+import static com.github.afkbrb.sql.operators.VectorizedScanOperator.BATCH_SIZE;
+
+/**
+ * 并行版本的 {@link VectorizedScanOperator}：把表切成每段 {@link #MORSEL_SIZE} 行的小块（morsel），
+ * 在 ForkJoinPool 中并行地按批求值过滤条件和投影，再按小块的顺序输出，所以输出的顺序与串行扫描相同。
+ * <p>
+ * 同时最多有 2 * parallelism 个小块在计算或等待输出，内存不会随表的大小增长，上层不再拉取时剩下的小块也不会计算。
+ * 向量化的表达式带有各自的结果缓冲区，不能在线程间共享，所以每个工作线程使用自己编译的一份。
+ * 某个小块出错时，按顺序输出到它的时候才抛出异常，与串行扫描时报的错相同。
+ */
+public class ParallelScanOperator extends Operator {
+
+    public static final int MORSEL_SIZE = 16 * BATCH_SIZE;
+
+    private static ForkJoinPool pool;
+
+    private final Table table;
+    private final Expression condition;
+    private final List<Expression> expressions;
+    private final Schema schema;
+    private final int[] sortedBy;
+    private final int parallelism;
+    // 空闲的工作状态，每个小块的任务取出一个，用完后放回
+    private final Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+
+    private ColumnVector[] vectors;
+    private Deque<ForkJoinTask<List<Row>>> pending;
+    private int nextStart;
+    private Iterator<Row> current;
+
+    /**
+     * condition 和 expressions 必须都能在 table 上向量化，expressions 为 null 时只过滤，输出表中的行。
+     */
+    public ParallelScanOperator(@NotNull Table table, @Nullable Expression condition, @Nullable List<Expression> expressions,
+                                @Nullable List<Column> columns, @NotNull int[] sortedBy, int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism should be positive");
+        if (expressions != null && (columns == null || expressions.size() != columns.size())) {
+            throw new IllegalArgumentException("column count doesn't match");
+        }
+        this.table = Objects.requireNonNull(table);
+        this.condition = condition;
+        this.expressions = expressions;
+        this.schema = expressions == null ? table.getSchema() : new Schema(columns);
+        this.sortedBy = sortedBy.clone();
+        this.parallelism = parallelism;
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public void open() {
+        int columnCount = table.getColumns().size();
+        vectors = new ColumnVector[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            vectors[i] = table.getVector(i);
+        }
+        pending = new ArrayDeque<>();
+        nextStart = 0;
+        current = Collections.emptyIterator();
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        while (!current.hasNext()) {
+            submit();
+            if (pending.isEmpty()) return null;
+            current = join(pending.poll()).iterator();
+        }
+        return current.next();
+    }
+
+    /**
+     * 等待任务完成并返回结果，任务中用 {@link MorselException} 包装的异常会重新抛出。
+     */
+    static <T> T join(@NotNull ForkJoinTask<T> task) throws SQLExecuteException {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            // join 可能会重新包装任务中的异常
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof MorselException) throw ((MorselException) cause).cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 提交小块直到在途的小块达到上限。
+     */
+    private void submit() {
+        ForkJoinPool forkJoinPool = pool(parallelism);
+        int rowCount = table.getRowCount();
+        while (pending.size() < 2 * parallelism && nextStart < rowCount) {
+            int start = nextStart;
+            int end = Math.min(rowCount, start + MORSEL_SIZE);
+            nextStart = end;
+            pending.add(forkJoinPool.submit(() -> scan(start, end)));
+        }
+    }
+
+    private List<Row> scan(int start, int end) {
+        List<Row> rows = new ArrayList<>();
+        scan(start, end, (row, rowIndex) -> rows.add(row));
+        return rows;
+    }
+
+    private void scan(int start, int end, RowConsumer consumer) {
+        Worker worker = workers.poll();
+        if (worker == null) worker = new Worker();
+        try {
+            worker.scan(start, end, consumer);
+        } catch (SQLExecuteException e) {
+            throw new MorselException(e);
+        } finally {
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * 接收扫描输出的行，rowIndex 是行在表中的下标。
+     */
+    public interface RowConsumer {
+
+        void accept(Row row, int rowIndex) throws SQLExecuteException;
+    }
+
+    /**
+     * 接收扫描输出的行并累积到 state 中。
+     */
+    public interface StateConsumer<S> {
+
+        void accept(S state, Row row, int rowIndex) throws SQLExecuteException;
+    }
+
+    /**
+     * 不经过 next，在池中并行地把所有输出的行交给 consumer，用于在扫描的线程中直接做部分聚集。
+     * 同一时刻每个状态只被一个任务使用，任务开始时取一个空闲的状态（没有时用 newState 创建），结束时放回，
+     * 所以状态的个数大约是并行度。小块被执行的顺序不确定，同一个状态中的行不一定连续，也不一定按表中的顺序。
+     * 返回所有创建的状态。有任务出错时抛出表中位置最靠前的小块的异常。
+     */
+    @NotNull
+    public <S> List<S> consume(@NotNull Supplier<S> newState, @NotNull StateConsumer<S> consumer) throws SQLExecuteException {
+        Queue<S> idleStates = new ConcurrentLinkedQueue<>();
+        List<S> states = Collections.synchronizedList(new ArrayList<>());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < table.getRowCount(); start += MORSEL_SIZE) {
+            int morselStart = start;
+            int morselEnd = Math.min(table.getRowCount(), start + MORSEL_SIZE);
+            tasks.add(() -> {
+                S state = idleStates.poll();
+                if (state == null) {
+                    state = newState.get();
+                    states.add(state);
+                }
+                S current = state;
+                try {
+                    scan(morselStart, morselEnd, (row, rowIndex) -> consumer.accept(current, row, rowIndex));
+                } finally {
+                    idleStates.add(current);
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks, parallelism);
+        return new ArrayList<>(states);
+    }
+
+    /**
+     * 在共享的池中并行执行所有任务，按任务的顺序返回结果。有任务出错时抛出第一个出错的任务的异常。
+     */
+    @NotNull
+    static <T> List<T> invokeAll(@NotNull List<Callable<T>> tasks, int parallelism) throws SQLExecuteException {
+        List<Future<T>> futures = pool(parallelism).invokeAll(tasks);
+        List<T> results = new ArrayList<>(futures.size());
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLExecuteException("interrupted");
+            } catch (ExecutionException e) {
+                for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                    if (cause instanceof MorselException) throw ((MorselException) cause).cause;
+                    if (cause instanceof SQLExecuteException) throw (SQLExecuteException) cause;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        if (pending != null) {
+            for (ForkJoinTask<List<Row>> task : pending) {
+                task.cancel(false);
+            }
+        }
+        pending = null;
+        current = null;
+        vectors = null;
+        workers.clear();
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @NotNull
+    @Override
+    public int[] getSortedBy() {
+        return sortedBy.clone();
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return table.getRowCount();
+    }
+
+    /**
+     * 所有查询共享的池，并行度改变时重新创建。
+     */
+    static synchronized ForkJoinPool pool(int parallelism) {
+        if (pool == null || pool.getParallelism() != parallelism) {
+            if (pool != null) pool.shutdown();
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+    /**
+     * 一个工作线程的求值状态。
+     */
+    private class Worker {
+
+        private final VectorExpression condition;
+        private final List<VectorExpression> expressions;
+        private final Batch batch = new Batch(vectors);
+        private final int[] sel = new int[BATCH_SIZE];
+
+        Worker() {
+            this.condition = ParallelScanOperator.this.condition == null ? null : VectorExpression.compile(ParallelScanOperator.this.condition, table);
+            this.expressions = ParallelScanOperator.this.expressions == null ? null : VectorExpression.compile(ParallelScanOperator.this.expressions, table);
+        }
+
+        void scan(int start, int end, RowConsumer consumer) throws SQLExecuteException {
+            BatchVector[] outputs = expressions == null ? null : new BatchVector[expressions.size()];
+            for (batch.start = start; batch.start < end; batch.start += BATCH_SIZE) {
+                batch.length = Math.min(BATCH_SIZE, end - batch.start);
+                for (int i = 0; i < batch.length; i++) {
+                    sel[i] = i;
+                }
+                int selSize = batch.length;
+                if (condition != null) selSize = condition.select(batch, sel, selSize);
+                if (expressions == null) {
+                    for (int i = 0; i < selSize; i++) {
+                        consumer.accept(table.getRow(batch.start + sel[i]), batch.start + sel[i]);
+                    }
+                    continue;
+                }
+                if (selSize == 0) continue;
+                for (int i = 0; i < outputs.length; i++) {
+                    outputs[i] = expressions.get(i).evaluate(batch, sel, selSize);
+                }
+                for (int i = 0; i < selSize; i++) {
+                    List<Cell> cells = new ArrayList<>(outputs.length);
+                    for (BatchVector output : outputs) {
+                        cells.add(new Cell(output.get(sel[i])));
+                    }
+                    consumer.accept(new Row(cells), batch.start + sel[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在任务中包装求值时的异常，由输出线程取出后重新抛出。
+     */
+    static class MorselException extends RuntimeException {
+
+        private final SQLExecuteException cause;
+
+        MorselException(SQLExecuteException cause) {
+            super(cause);
+            this.cause = cause;
+        }
+    }
+}
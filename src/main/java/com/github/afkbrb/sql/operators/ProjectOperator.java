@@ -0,0 +1,96 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.model.*;
+import com.github.afkbrb.sql.visitors.CompiledExpression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static com.github.afkbrb.sql.executors.Executor.compile;
+import static com.github.afkbrb.sql.executors.Executor.evaluate;
+
+/**
+ * 对每一行计算 select 表达式，输出新的行。
+ */
+public class ProjectOperator extends Operator {
+
+    private final Operator child;
+    // 为 null 时表示只保留输入的前 columns.size() 列
+    private final List<CompiledExpression> expressions;
+    private final Schema schema;
+    private final int[] sortedBy;
+
+    /**
+     * sortedBy 是由规划器推断出的输出有序的列。
+     */
+    public ProjectOperator(@NotNull Operator child, @NotNull List<Expression> expressions, @NotNull List<Column> columns,
+                           @Nullable InheritedContext context, @NotNull int[] sortedBy) {
+        if (expressions.size() != columns.size()) throw new IllegalArgumentException("column count doesn't match");
+        this.child = Objects.requireNonNull(child);
+        this.expressions = new ArrayList<>(expressions.size());
+        for (Expression expression : expressions) {
+            this.expressions.add(compile(context, child.getSchema(), expression));
+        }
+        this.schema = new Schema(columns);
+        this.sortedBy = sortedBy.clone();
+    }
+
+    /**
+     * 只保留输入的前 columns.size() 列，用于去掉为了排序而附加的列。
+     */
+    public ProjectOperator(@NotNull Operator child, @NotNull List<Column> columns, @NotNull int[] sortedBy) {
+        if (columns.size() > child.getSchema().getColumns().size()) throw new IllegalArgumentException("column count doesn't match");
+        this.child = child;
+        this.expressions = null;
+        this.schema = new Schema(columns);
+        this.sortedBy = sortedBy.clone();
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        child.open();
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        Row row = child.next();
+        if (row == null) return null;
+        List<Cell> cells = new ArrayList<>(schema.getColumns().size());
+        if (expressions == null) {
+            cells.addAll(row.getCells().subList(0, schema.getColumns().size()));
+        } else {
+            for (CompiledExpression expression : expressions) {
+                cells.add(new Cell(evaluate(expression, row)));
+            }
+        }
+        return new Row(cells);
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        child.close();
+    }
+
+    @NotNull
+    @Override
+    public int[] getSortedBy() {
+        return sortedBy.clone();
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return child.estimateRowCount();
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Schema;
+import com.github.afkbrb.sql.model.Table;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+
+/**
+ * 按行号顺序读取表中的行，不复制数据。
+ */
+public class ScanOperator extends Operator {
+
+    private final Table table;
+    private int rowIndex;
+
+    public ScanOperator(@NotNull Table table) {
+        this.table = Objects.requireNonNull(table);
+    }
+
+    @NotNull
+    public Table getTable() {
+        return table;
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return table.getSchema();
+    }
+
+    @Override
+    public void open() {
+        rowIndex = 0;
+    }
+
+    @Nullable
+    @Override
+    public Row next() {
+        return rowIndex < table.getRowCount() ? table.getRow(rowIndex++) : null;
+    }
+
+    @NotNull
+    @Override
+    public int[] getSortedBy() {
+        return table.getSortedBy();
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return table.getRowCount();
+    }
+}
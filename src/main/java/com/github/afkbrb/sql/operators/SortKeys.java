@@ -0,0 +1,177 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.model.TypedValue;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static com.github.afkbrb.sql.model.DataType.STRING;
+import static com.github.afkbrb.sql.utils.DataTypeUtils.isNumber;
+
+/**
+ * 把多列排序键编码成规范化的字节序列，按无符号字节逐个比较（memcmp）两个序列的结果就是排序的结果，
+ * 比较时不再需要区分类型、装箱和处理 NULL。
+ * <p>
+ * 每一列编码为一个类型标记加上值：
+ * <ul>
+ *     <li>NULL：0x00 后跟 8 个 0，NULL 总是最小的</li>
+ *     <li>数字：0x01 后跟 8 字节，INT 和 DOUBLE 都按 double 比较，与 Double.compare 的顺序相同</li>
+ *     <li>字符串：0x02 后每个字符编码为 0x01 和字符的两个字节，最后以 0x00 结尾，与 String.compareTo 的顺序相同</li>
+ * </ul>
+ * 降序的列把编码的每个字节取反。每列的编码都有明确的结尾，所以一个键不会是另一个键的前缀。
+ * 数字和字符串相比时数字较小。
+ * <p>
+ * 只由 NULL 和数字组成的键长度固定，可以用 {@link #radixSort(byte[][])} 做基数排序。
+ */
+final class SortKeys {
+
+    private static final byte NULL_TAG = 0;
+    private static final byte NUMBER_TAG = 1;
+    private static final byte STRING_TAG = 2;
+
+    // 少于这么多行时基数排序的计数数组的开销不划算
+    private static final int RADIX_SORT_MIN_ROWS = 256;
+
+    @NotNull
+    static byte[] encode(@NotNull TypedValue[] keys, @NotNull boolean[] descending) {
+        int length = 0;
+        for (TypedValue key : keys) {
+            length += key.getDataType() == STRING ? 2 + 3 * ((String) key.getValue()).length() : 9;
+        }
+        byte[] bytes = new byte[length];
+        int position = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int start = position;
+            TypedValue key = keys[i];
+            if (key.getDataType() == STRING) {
+                String string = (String) key.getValue();
+                bytes[position++] = STRING_TAG;
+                for (int j = 0; j < string.length(); j++) {
+                    char c = string.charAt(j);
+                    bytes[position++] = 1;
+                    bytes[position++] = (byte) (c >>> 8);
+                    bytes[position++] = (byte) c;
+                }
+                bytes[position++] = 0;
+            } else if (isNumber(key)) {
+                long bits = Double.doubleToLongBits(((Number) key.getValue()).doubleValue());
+                // 负数的所有位取反，正数只把符号位取反，这样按无符号比较的顺序与数值的顺序相同
+                bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+                bytes[position++] = NUMBER_TAG;
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    bytes[position++] = (byte) (bits >>> shift);
+                }
+            } else {
+                bytes[position] = NULL_TAG;
+                position += 9;
+            }
+            if (descending[i]) {
+                for (int j = start; j < position; j++) {
+                    bytes[j] = (byte) ~bytes[j];
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 按无符号字节比较，前 8 个字节作为一个 long 一起比较。
+     */
+    static int compare(@NotNull byte[] a, @NotNull byte[] b) {
+        int cmp = Long.compareUnsigned(prefix(a), prefix(b));
+        if (cmp != 0) return cmp;
+        int length = Math.min(a.length, b.length);
+        for (int i = 8; i < length; i++) {
+            if (a[i] != b[i]) return (a[i] & 0xff) - (b[i] & 0xff);
+        }
+        return a.length - b.length;
+    }
+
+    private static long prefix(byte[] key) {
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = prefix << 8 | (i < key.length ? key[i] & 0xff : 0);
+        }
+        return prefix;
+    }
+
+    /**
+     * 与编码后的顺序相同地比较两个值（升序），用于没有编码的场合，比如溢出到磁盘的行。
+     */
+    static int compareValues(@NotNull TypedValue a, @NotNull TypedValue b) {
+        int cmp = Integer.compare(rank(a), rank(b));
+        if (cmp != 0) return cmp;
+        if (a.getDataType() == STRING) return ((String) a.getValue()).compareTo((String) b.getValue());
+        if (isNumber(a)) {
+            return Double.compare(((Number) a.getValue()).doubleValue(), ((Number) b.getValue()).doubleValue());
+        }
+        return 0;
+    }
+
+    private static int rank(TypedValue typedValue) {
+        if (typedValue.getDataType() == STRING) return STRING_TAG;
+        return isNumber(typedValue) ? NUMBER_TAG : NULL_TAG;
+    }
+
+    /**
+     * 返回按键排好序后的下标（稳定排序）。所有键长度相同并且行数足够多时使用 LSD 基数排序，
+     * 否则用归并排序比较编码后的键。
+     */
+    @NotNull
+    static int[] sort(@NotNull byte[][] keys) {
+        if (keys.length >= RADIX_SORT_MIN_ROWS && isFixedWidth(keys)) return radixSort(keys);
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> compare(keys[x], keys[y]));
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    private static boolean isFixedWidth(byte[][] keys) {
+        for (byte[] key : keys) {
+            if (key.length != keys[0].length) return false;
+        }
+        return true;
+    }
+
+    /**
+     * LSD 基数排序：从最后一个字节开始，每个字节做一次稳定的计数排序，所有键在这个字节上都相同时跳过。
+     * keys 的长度必须都相同。
+     */
+    @NotNull
+    static int[] radixSort(@NotNull byte[][] keys) {
+        int n = keys.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        if (n == 0) return order;
+        int[] buffer = new int[n];
+        int[] counts = new int[257];
+        for (int position = keys[0].length - 1; position >= 0; position--) {
+            Arrays.fill(counts, 0);
+            for (byte[] key : keys) {
+                counts[(key[position] & 0xff) + 1]++;
+            }
+            if (counts[(keys[0][position] & 0xff) + 1] == n) continue;
+            for (int i = 1; i < counts.length; i++) {
+                counts[i] += counts[i - 1];
+            }
+            for (int index : order) {
+                buffer[counts[keys[index][position] & 0xff]++] = index;
+            }
+            int[] temp = order;
+            order = buffer;
+            buffer = temp;
+        }
+        return order;
+    }
+
+    private SortKeys() {
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.Settings;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.model.Cell;
+import com.github.afkbrb.sql.model.InheritedContext;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Schema;
+import com.github.afkbrb.sql.model.TypedValue;
+import com.github.afkbrb.sql.storage.ExternalSorter;
+import com.github.afkbrb.sql.utils.Pair;
+import com.github.afkbrb.sql.visitors.CompiledExpression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+import static com.github.afkbrb.sql.executors.Executor.compile;
+import static com.github.afkbrb.sql.executors.Executor.evaluate;
+
+/**
+ * 第一次调用 next 时读入下层的所有行并排序（稳定排序），之后逐行输出。
+ * <p>
+ * 排序键求值后编码成 {@link SortKeys} 的规范化字节序列，在内存中排序时只比较字节，键长度固定时用基数排序。
+ * 超过 sort_buffer_rows 行或 sort_memory_mb 的内存预算时，改为把排序键附加到行的末尾交给 {@link ExternalSorter}，
+ * 溢出到临时文件，最后边归并边输出，输出时去掉附加的排序键。
+ * <p>
+ * orderByList 中的 Boolean 为 true 表示降序。
+ */
+public class SortOperator extends Operator {
+
+    private final Operator child;
+    private final List<Pair<Expression, Boolean>> orderByList;
+    private final CompiledExpression[] keyExpressions;
+    private ExternalSorter sorter;
+    private Iterator<Row> sorted;
+    private int runCount;
+    private long spilledBytes;
+
+    public SortOperator(@NotNull Operator child, @NotNull List<Pair<Expression, Boolean>> orderByList, @Nullable InheritedContext context) {
+        this.child = Objects.requireNonNull(child);
+        this.orderByList = Objects.requireNonNull(orderByList);
+        keyExpressions = new CompiledExpression[orderByList.size()];
+        for (int i = 0; i < keyExpressions.length; i++) {
+            keyExpressions[i] = compile(context, child.getSchema(), orderByList.get(i).getKey());
+        }
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return child.getSchema();
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        child.open();
+        sorted = null;
+        runCount = 0;
+        spilledBytes = 0;
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        try {
+            if (sorted == null) sorted = sort();
+            if (!sorted.hasNext()) return null;
+            Row row = sorted.next();
+            return new Row(row.getCells().subList(0, row.getCells().size() - keyExpressions.length));
+        } catch (IOException e) {
+            throw new SQLExecuteException("unable to sort rows: %s", e.getMessage());
+        } catch (UncheckedIOException e) {
+            throw new SQLExecuteException("unable to sort rows: %s", e.getCause().getMessage());
+        }
+    }
+
+    private Iterator<Row> sort() throws SQLExecuteException, IOException {
+        Settings settings = Settings.getInstance();
+        int bufferRows = settings.getSortBufferRows();
+        long memoryBytes = settings.getSortMemoryBytes();
+        int width = child.getSchema().getColumns().size();
+        boolean[] descending = new boolean[orderByList.size()];
+        for (int i = 0; i < descending.length; i++) {
+            descending[i] = orderByList.get(i).getValue();
+        }
+
+        // 先在外部将 evaluate 的结果计算出来，否则如果在比较器内部求值的话，异常没法处理。
+        List<Row> rows = new ArrayList<>();
+        List<byte[]> encodedKeys = new ArrayList<>();
+        long bytes = 0;
+        Row row;
+        while ((row = child.next()) != null) {
+            TypedValue[] keys = new TypedValue[keyExpressions.length];
+            List<Cell> cells = new ArrayList<>(width + keys.length);
+            cells.addAll(row.getCells());
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = evaluate(keyExpressions[i], row);
+                cells.add(new Cell(keys[i]));
+            }
+            Row keyedRow = new Row(cells);
+            if (sorter != null) {
+                sorter.add(keyedRow);
+                continue;
+            }
+            byte[] encodedKey = SortKeys.encode(keys, descending);
+            rows.add(keyedRow);
+            encodedKeys.add(encodedKey);
+            bytes += ExternalSorter.estimateSize(keyedRow) + encodedKey.length;
+            if (rows.size() >= bufferRows || bytes >= memoryBytes) {
+                // 内存中放不下，已经读入的行按原来的顺序交给外部排序
+                sorter = new ExternalSorter(comparator(width, descending), bufferRows, memoryBytes);
+                for (Row bufferedRow : rows) {
+                    sorter.add(bufferedRow);
+                }
+                rows = null;
+                encodedKeys = null;
+            }
+        }
+
+        if (sorter == null) {
+            int[] order = SortKeys.sort(encodedKeys.toArray(new byte[0][]));
+            List<Row> sortedRows = new ArrayList<>(order.length);
+            for (int index : order) {
+                sortedRows.add(rows.get(index));
+            }
+            return sortedRows.iterator();
+        }
+        Iterator<Row> iterator = sorter.sorted();
+        runCount = sorter.getRunCount();
+        spilledBytes = sorter.getSpilledBytes();
+        return iterator;
+    }
+
+    /**
+     * 溢出到磁盘的行没有编码的键，按附加在行末尾的键比较，顺序与编码后的键相同。
+     */
+    private static Comparator<Row> comparator(int width, boolean[] descending) {
+        return (thisRow, otherRow) -> {
+            for (int i = 0; i < descending.length; i++) {
+                int cmp = SortKeys.compareValues(thisRow.getCell(width + i).getTypedValue(), otherRow.getCell(width + i).getTypedValue());
+                if (cmp == 0) continue; // 继续比较
+                return descending[i] ? -cmp : cmp;
+            }
+            return 0; // 所有都尝试了，仍相等，返回 0
+        };
+    }
+
+    /**
+     * 最近一次排序溢出到磁盘的 run 的个数。
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * 最近一次排序溢出到磁盘的字节数。
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        sorted = null;
+        try {
+            if (sorter != null) sorter.close();
+        } catch (IOException e) {
+            throw new SQLExecuteException("unable to remove sort runs: %s", e.getMessage());
+        } finally {
+            sorter = null;
+            child.close();
+        }
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return child.estimateRowCount();
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.model.InheritedContext;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Schema;
+import com.github.afkbrb.sql.model.TypedValue;
+import com.github.afkbrb.sql.utils.Pair;
+import com.github.afkbrb.sql.visitors.CompiledExpression;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+import static com.github.afkbrb.sql.executors.Executor.compile;
+import static com.github.afkbrb.sql.executors.Executor.evaluate;
+
+/**
+ * 只输出排序后的前 n 行，用于 ORDER BY ... LIMIT。
+ * <p>
+ * 读入下层的所有行，但只用一个大小为 n 的堆保留目前为止最靠前的 n 行，堆顶是其中最靠后的一行，
+ * 新的行比堆顶靠前时才替换堆顶，时间为 O(m log n)，内存只与 n 有关。
+ * 排序键编码成 {@link SortKeys} 的字节序列后比较。键相等的行按读入的顺序排列，输出与 SortOperator 排序后取前 n 行相同。
+ */
+public class TopNOperator extends Operator {
+
+    private final Operator child;
+    private final List<Pair<Expression, Boolean>> orderByList;
+    private final CompiledExpression[] keyExpressions;
+    private final int n;
+    private Iterator<Row> sorted;
+
+    public TopNOperator(@NotNull Operator child, @NotNull List<Pair<Expression, Boolean>> orderByList, int n, @Nullable InheritedContext context) {
+        if (n < 0) throw new IllegalArgumentException("n should be non-negative");
+        this.child = Objects.requireNonNull(child);
+        this.orderByList = Objects.requireNonNull(orderByList);
+        this.n = n;
+        keyExpressions = new CompiledExpression[orderByList.size()];
+        for (int i = 0; i < keyExpressions.length; i++) {
+            keyExpressions[i] = compile(context, child.getSchema(), orderByList.get(i).getKey());
+        }
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return child.getSchema();
+    }
+
+    @Override
+    public void open() throws SQLExecuteException {
+        child.open();
+        sorted = null;
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        if (sorted == null) sorted = topN();
+        return sorted.hasNext() ? sorted.next() : null;
+    }
+
+    private Iterator<Row> topN() throws SQLExecuteException {
+        boolean[] descending = new boolean[orderByList.size()];
+        for (int i = 0; i < descending.length; i++) {
+            descending[i] = orderByList.get(i).getValue();
+        }
+        // 堆顶是最靠后的一行
+        PriorityQueue<Entry> heap = new PriorityQueue<>(Math.max(1, n), (a, b) -> compare(b, a));
+        long sequence = 0;
+        Row row;
+        while ((row = child.next()) != null) {
+            TypedValue[] keys = new TypedValue[keyExpressions.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = evaluate(keyExpressions[i], row);
+            }
+            Entry entry = new Entry(row, SortKeys.encode(keys, descending), sequence++);
+            if (heap.size() < n) {
+                heap.add(entry);
+            } else if (n > 0 && compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        Row[] rows = new Row[heap.size()];
+        for (int i = rows.length - 1; i >= 0; i--) {
+            rows[i] = heap.poll().row;
+        }
+        return Arrays.asList(rows).iterator();
+    }
+
+    private static int compare(Entry thisEntry, Entry otherEntry) {
+        int cmp = SortKeys.compare(thisEntry.key, otherEntry.key);
+        if (cmp != 0) return cmp;
+        return Long.compare(thisEntry.sequence, otherEntry.sequence); // 键都相等时先读入的靠前
+    }
+
+    @Override
+    public void close() throws SQLExecuteException {
+        sorted = null;
+        child.close();
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return Math.min(child.estimateRowCount(), n);
+    }
+
+    private static class Entry {
+
+        private final Row row;
+        private final byte[] key;
+        private final long sequence;
+
+        Entry(Row row, byte[] key, long sequence) {
+            this.row = row;
+            this.key = key;
+            this.sequence = sequence;
+        }
+    }
+}
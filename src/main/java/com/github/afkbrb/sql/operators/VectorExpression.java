@@ -0,0 +1,775 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.Settings;
+import com.github.afkbrb.sql.ast.expressions.*;
+import com.github.afkbrb.sql.ast.expressions.BinaryExpression.BinaryOperatorType;
+import com.github.afkbrb.sql.ast.expressions.UnaryExpression.UnaryOperationType;
+import com.github.afkbrb.sql.model.*;
+import com.github.afkbrb.sql.visitors.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static com.github.afkbrb.sql.utils.DataTypeUtils.isError;
+
+/**
+ * 向量化求值的表达式：一次对一批行求值，结果放在按批内位置下标的数组中，
+ * 只有选择向量 sel[0..size) 中的位置会被求值，其他位置的结果没有意义。
+ * <p>
+ * 由 {@link #compile} 在规划时从语法树生成，列名在此时就被解析为列下标，每个节点的结果类型也是确定的。
+ * 语义与 RowEvaluator 一致：NULL 传播，AND/OR 短路，INT 运算按 double 计算后截断，
+ * 某一行在逐行求值时会出错的话，这里抛出信息相同的异常。后面的子表达式只对前面的子表达式不为 NULL 的行求值，
+ * 所以不会对逐行求值时被跳过的行报错。
+ */
+public abstract class VectorExpression {
+
+    // 每个节点复用自己的结果缓冲区
+    protected final BatchVector result;
+
+    VectorExpression(DataType type) {
+        result = new BatchVector(type);
+    }
+
+    DataType getType() {
+        return result.type;
+    }
+
+    /**
+     * 对 batch 中 sel[0..size) 位置的行求值，返回的结果在下一次求值前有效。
+     */
+    abstract BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException;
+
+    /**
+     * 作为条件求值：把 sel 中满足条件的位置按原来的顺序移到 sel 的前面，返回满足条件的行数。
+     */
+    int select(Batch batch, int[] sel, int size) throws SQLExecuteException {
+        BatchVector vector = evaluate(batch, sel, size);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int position = sel[i];
+            if (vector.isTrue(position)) sel[count++] = position;
+        }
+        return count;
+    }
+
+    /**
+     * 把表达式编译成向量化的形式，表达式中包含不能向量化的部分时返回 null。
+     * 列名在 table 的列信息中解析，找不到（比如引用了外层查询的列）时也返回 null。
+     * <p>
+     * 打开了 codegen 并且表足够大时，先尝试为整个表达式生成字节码，不支持的话再使用解释执行的向量化节点。
+     */
+    @Nullable
+    public static VectorExpression compile(@NotNull Expression expression, @NotNull Table table) {
+        // 生成和加载类的开销只在长扫描上划算
+        if (Settings.getInstance().isCodegen() && table.getRowCount() >= VectorizedScanOperator.BATCH_SIZE) {
+            GeneratedEvaluator evaluator = BytecodeGenerator.generate(expression, table);
+            if (evaluator != null) return new GeneratedNode(evaluator);
+        }
+        return expression.accept(new Compiler(table));
+    }
+
+    /**
+     * 编译一组表达式，有任何一个不能向量化时返回 null。
+     */
+    @Nullable
+    public static List<VectorExpression> compile(@NotNull List<Expression> expressions, @NotNull Table table) {
+        List<VectorExpression> result = new ArrayList<>(expressions.size());
+        for (Expression expression : expressions) {
+            VectorExpression compiled = compile(expression, table);
+            if (compiled == null) return null;
+            result.add(compiled);
+        }
+        return result;
+    }
+
+    /**
+     * 把 sel[0..size) 中 vector 不为 NULL 的位置写到 out 中，返回个数。
+     */
+    static int nonNull(BatchVector vector, int[] sel, int size, int[] out) {
+        if (vector.type == NULL) return 0;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int position = sel[i];
+            if (!vector.nulls[position]) out[count++] = position;
+        }
+        return count;
+    }
+
+    void setAllNull(int[] sel, int size) {
+        if (result.type == NULL) return;
+        for (int i = 0; i < size; i++) {
+            result.nulls[sel[i]] = true;
+        }
+    }
+
+    static int[] ensureCapacity(int[] buffer, int length) {
+        return buffer.length >= length ? buffer : new int[length];
+    }
+
+    static boolean isNumber(DataType type) {
+        return type == INT || type == DOUBLE;
+    }
+
+    static int toInt(boolean isTrue) {
+        return isTrue ? 1 : 0;
+    }
+
+    private static class Compiler extends DefaultVisitor<VectorExpression> {
+
+        private final Table table;
+
+        Compiler(Table table) {
+            this.table = table;
+        }
+
+        @Override
+        public VectorExpression visit(ColumnNameExpression node) {
+            Column column;
+            try {
+                Schema schema = table.getSchema();
+                column = node.getTableName() == null ? schema.getColumn(node.getColumnName())
+                        : schema.getColumn(node.getTableName(), node.getColumnName());
+            } catch (SQLExecuteException e) {
+                return null; // 有歧义的列名留给逐行求值时报错
+            }
+            if (column == null) return null;
+            ColumnVector vector = table.getVector(column.getColumnIndex());
+            if (vector instanceof IntVector) return new ColumnNode(column.getColumnIndex(), INT);
+            if (vector instanceof DoubleVector) return new ColumnNode(column.getColumnIndex(), DOUBLE);
+            if (vector instanceof StringVector) return new ColumnNode(column.getColumnIndex(), STRING);
+            return null; // 混合类型的列
+        }
+
+        @Override
+        public VectorExpression visit(IntExpression node) {
+            return new ConstantNode(new TypedValue(INT, node.getValue()));
+        }
+
+        @Override
+        public VectorExpression visit(DoubleExpression node) {
+            return new ConstantNode(new TypedValue(DOUBLE, node.getValue()));
+        }
+
+        @Override
+        public VectorExpression visit(StringExpression node) {
+            return new ConstantNode(new TypedValue(STRING, node.getText()));
+        }
+
+        @Override
+        public VectorExpression visit(NullExpression node) {
+            return new ConstantNode(TypedValue.NULL);
+        }
+
+        @Override
+        public VectorExpression visit(BinaryExpression node) {
+            VectorExpression left = node.getLeft().accept(this);
+            VectorExpression right = node.getRight().accept(this);
+            if (left == null || right == null) return null;
+            return fold(node, new BinaryNode(node.getOp(), left, right), left, right);
+        }
+
+        @Override
+        public VectorExpression visit(UnaryExpression node) {
+            VectorExpression child = node.getExpression().accept(this);
+            if (child == null) return null;
+            return fold(node, new UnaryNode(node.getOp(), child), child);
+        }
+
+        @Override
+        public VectorExpression visit(NotExpression node) {
+            VectorExpression child = node.getExpression().accept(this);
+            if (child == null) return null;
+            return fold(node, new NotNode(child), child);
+        }
+
+        @Override
+        public VectorExpression visit(AndExpression node) {
+            VectorExpression left = node.getLeft().accept(this);
+            VectorExpression right = node.getRight().accept(this);
+            if (left == null || right == null) return null;
+            return fold(node, new LogicalNode(true, left, right), left, right);
+        }
+
+        @Override
+        public VectorExpression visit(OrExpression node) {
+            VectorExpression left = node.getLeft().accept(this);
+            VectorExpression right = node.getRight().accept(this);
+            if (left == null || right == null) return null;
+            return fold(node, new LogicalNode(false, left, right), left, right);
+        }
+
+        @Override
+        public VectorExpression visit(BetweenExpression node) {
+            VectorExpression target = node.getTarget().accept(this);
+            VectorExpression left = node.getLeft().accept(this);
+            VectorExpression right = node.getRight().accept(this);
+            if (target == null || left == null || right == null) return null;
+            return fold(node, new BetweenNode(target, left, right), target, left, right);
+        }
+
+        @Override
+        public VectorExpression visit(IsNullExpression node) {
+            VectorExpression child = node.getExpression().accept(this);
+            if (child == null) return null;
+            return fold(node, new IsNullNode(node.isNot(), child), child);
+        }
+
+        @Override
+        public VectorExpression visit(InListExpression node) {
+            // 逐行求值时没有处理 NOT IN，保持一致，交给逐行求值
+            if (node.isNot()) return null;
+            VectorExpression target = node.getTarget().accept(this);
+            if (target == null) return null;
+            Set<String> strings = new HashSet<>();
+            Set<Double> numbers = new HashSet<>();
+            for (Expression expression : node.getList()) {
+                VectorExpression element = expression.accept(this);
+                if (!(element instanceof ConstantNode)) return null;
+                TypedValue value = ((ConstantNode) element).value;
+                if (value.getDataType() == STRING) {
+                    strings.add((String) value.getValue());
+                } else if (isNumber(value.getDataType())) {
+                    double number = ((Number) value.getValue()).doubleValue();
+                    numbers.add(number == 0 ? 0.0 : number); // -0.0 == 0.0
+                }
+            }
+            return fold(node, new InListNode(target, strings, numbers), target);
+        }
+
+        @Override
+        public VectorExpression visit(LikeExpression node) {
+            VectorExpression left = node.getLeft().accept(this);
+            String pattern = constantString(node.getRight());
+            if (left == null || pattern == null) return null;
+            if (AbstractEvaluator.checkLikePattern(pattern) != null) return null; // 留给逐行求值时报错
+            return patternNode(node, node.isNot(), left, AbstractEvaluator.likeRegex(pattern), "like expects two strings");
+        }
+
+        @Override
+        public VectorExpression visit(RegexpExpression node) {
+            VectorExpression left = node.getLeft().accept(this);
+            String pattern = constantString(node.getRight());
+            if (left == null || pattern == null) return null;
+            // 与逐行求值一样，局部匹配
+            return patternNode(node, node.isNot(), left, ".*" + pattern + ".*", "regexp expects two strings");
+        }
+
+        @Override
+        public VectorExpression visit(FunctionCallExpression node) {
+            return null;
+        }
+
+        @Override
+        public VectorExpression visit(SubQueryExpression node) {
+            return null;
+        }
+
+        @Override
+        public VectorExpression visit(InSubQueryExpression node) {
+            return null;
+        }
+
+        @Override
+        public VectorExpression visit(WildcardExpression node) {
+            return null;
+        }
+
+        private VectorExpression patternNode(Expression node, boolean not, VectorExpression left, String regex, String typeError) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+            return fold(node, new PatternNode(not, left, pattern, typeError), left);
+        }
+
+        private String constantString(Expression expression) {
+            VectorExpression compiled = expression.accept(this);
+            if (!(compiled instanceof ConstantNode)) return null;
+            TypedValue value = ((ConstantNode) compiled).value;
+            return value.getDataType() == STRING ? (String) value.getValue() : null;
+        }
+
+        /**
+         * 子表达式都是常量的话，在规划时求值。求值出错时不能向量化，留给逐行求值时（真正有行的时候）报错。
+         */
+        private VectorExpression fold(Expression node, VectorExpression compiled, VectorExpression... children) {
+            for (VectorExpression child : children) {
+                if (!(child instanceof ConstantNode)) return compiled;
+            }
+            TypedValue value = new RowEvaluator(null, Schema.EMPTY_SCHEMA, Row.EMPTY_ROW).evaluate(node);
+            return isError(value) ? null : new ConstantNode(value);
+        }
+    }
+
+    /**
+     * 调用运行时生成的类求值。
+     */
+    private static class GeneratedNode extends VectorExpression {
+
+        private final GeneratedEvaluator evaluator;
+        // INT 类型的结果先以 double 的形式写到这里
+        private double[] values = new double[0];
+
+        GeneratedNode(GeneratedEvaluator evaluator) {
+            super(evaluator.getDataType());
+            this.evaluator = evaluator;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException {
+            result.ensureCapacity(batch.length);
+            if (result.type == DOUBLE) {
+                evaluator.evaluate(batch.vectors, batch.start, sel, size, result.doubles, result.nulls);
+                return result;
+            }
+            if (values.length < batch.length) values = new double[batch.length];
+            evaluator.evaluate(batch.vectors, batch.start, sel, size, values, result.nulls);
+            for (int i = 0; i < size; i++) {
+                int position = sel[i];
+                result.ints[position] = (int) values[position];
+            }
+            return result;
+        }
+    }
+
+    private static class ColumnNode extends VectorExpression {
+
+        private final int columnIndex;
+
+        ColumnNode(int columnIndex, DataType type) {
+            super(type);
+            this.columnIndex = columnIndex;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) {
+            result.ensureCapacity(batch.length);
+            ColumnVector vector = batch.vectors[columnIndex];
+            int start = batch.start;
+            if (result.type == INT) {
+                IntVector intVector = (IntVector) vector;
+                for (int i = 0; i < size; i++) {
+                    int position = sel[i];
+                    result.nulls[position] = intVector.isNull(start + position);
+                    result.ints[position] = intVector.getInt(start + position);
+                }
+            } else if (result.type == DOUBLE) {
+                DoubleVector doubleVector = (DoubleVector) vector;
+                for (int i = 0; i < size; i++) {
+                    int position = sel[i];
+                    result.nulls[position] = doubleVector.isNull(start + position);
+                    result.doubles[position] = doubleVector.getDouble(start + position);
+                }
+            } else {
+                StringVector stringVector = (StringVector) vector;
+                for (int i = 0; i < size; i++) {
+                    int position = sel[i];
+                    boolean isNull = stringVector.isNull(start + position);
+                    result.nulls[position] = isNull;
+                    result.strings[position] = isNull ? null : stringVector.getString(start + position);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class ConstantNode extends VectorExpression {
+
+        private final TypedValue value;
+
+        ConstantNode(TypedValue value) {
+            super(value.getDataType());
+            this.value = value;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) {
+            result.ensureCapacity(batch.length);
+            if (result.type == NULL) return result;
+            for (int i = 0; i < size; i++) {
+                int position = sel[i];
+                result.nulls[position] = false;
+                if (result.type == INT) result.ints[position] = (Integer) value.getValue();
+                else if (result.type == DOUBLE) result.doubles[position] = (Double) value.getValue();
+                else result.strings[position] = (String) value.getValue();
+            }
+            return result;
+        }
+    }
+
+    private static class BinaryNode extends VectorExpression {
+
+        private final BinaryOperatorType op;
+        private final VectorExpression left;
+        private final VectorExpression right;
+        private int[] subSel = new int[0];
+
+        BinaryNode(BinaryOperatorType op, VectorExpression left, VectorExpression right) {
+            super(resultType(op, left.getType(), right.getType()));
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        private static DataType resultType(BinaryOperatorType op, DataType leftType, DataType rightType) {
+            if (leftType == NULL || rightType == NULL) return NULL;
+            // 与 RowEvaluator 一致，数值比较的结果也是有 DOUBLE 时为 DOUBLE
+            if (isNumber(leftType) && isNumber(rightType)) {
+                return leftType == INT && rightType == INT ? INT : DOUBLE;
+            }
+            return INT; // 字符串比较的结果；类型不匹配时，不为 NULL 的行会报错
+        }
+
+        private static boolean isArithmetic(BinaryOperatorType op) {
+            return op == BinaryOperatorType.ADD || op == BinaryOperatorType.MINUS
+                    || op == BinaryOperatorType.MULT || op == BinaryOperatorType.DIV;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException {
+            BatchVector leftVector = left.evaluate(batch, sel, size);
+            result.ensureCapacity(batch.length);
+            setAllNull(sel, size);
+            subSel = ensureCapacity(subSel, batch.length);
+            int count = nonNull(leftVector, sel, size, subSel);
+            if (count == 0) return result;
+            BatchVector rightVector = right.evaluate(batch, subSel, count);
+            if (result.type == NULL) return result;
+
+            DataType leftType = leftVector.type;
+            DataType rightType = rightVector.type;
+            if (isNumber(leftType) && isNumber(rightType)) {
+                for (int i = 0; i < count; i++) {
+                    int position = subSel[i];
+                    if (rightVector.nulls[position]) continue;
+                    double value = compute(leftVector.getNumber(position), rightVector.getNumber(position));
+                    result.nulls[position] = false;
+                    if (result.type == INT) result.ints[position] = (int) value;
+                    else result.doubles[position] = value;
+                }
+            } else if (leftType == STRING && rightType == STRING) {
+                for (int i = 0; i < count; i++) {
+                    int position = subSel[i];
+                    if (rightVector.nulls[position]) continue;
+                    if (isArithmetic(op)) throw new SQLExecuteException("operator %s cannot be used on string", op);
+                    int cmp = leftVector.strings[position].compareTo(rightVector.strings[position]);
+                    result.nulls[position] = false;
+                    result.ints[position] = compare(cmp);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    if (!rightVector.nulls[subSel[i]]) throw new SQLExecuteException("expected two numbers or two strings");
+                }
+            }
+            return result;
+        }
+
+        private double compute(double leftVal, double rightVal) throws SQLExecuteException {
+            switch (op) {
+                case ADD:
+                    return leftVal + rightVal;
+                case MINUS:
+                    return leftVal - rightVal;
+                case MULT:
+                    return leftVal * rightVal;
+                case DIV:
+                    if (rightVal == 0) throw new SQLExecuteException("division by 0");
+                    return leftVal / rightVal;
+                case GT:
+                    return toInt(leftVal > rightVal);
+                case LT:
+                    return toInt(leftVal < rightVal);
+                case EQ:
+                    return toInt(leftVal == rightVal);
+                case LE:
+                    return toInt(leftVal <= rightVal);
+                case GE:
+                    return toInt(leftVal >= rightVal);
+                case NE:
+                    return toInt(leftVal != rightVal);
+                default:
+                    throw new SQLExecuteException("unexpected binary operator %s", op.name());
+            }
+        }
+
+        private int compare(int cmp) throws SQLExecuteException {
+            switch (op) {
+                case LT:
+                    return toInt(cmp < 0);
+                case GT:
+                    return toInt(cmp > 0);
+                case EQ:
+                    return toInt(cmp == 0);
+                case LE:
+                    return toInt(cmp <= 0);
+                case GE:
+                    return toInt(cmp >= 0);
+                case NE:
+                    return toInt(cmp != 0);
+                default:
+                    throw new SQLExecuteException("unexpected binary operator %s", op.name());
+            }
+        }
+    }
+
+    private static class UnaryNode extends VectorExpression {
+
+        private final UnaryOperationType op;
+        private final VectorExpression child;
+
+        UnaryNode(UnaryOperationType op, VectorExpression child) {
+            super(child.getType() == NULL || isNumber(child.getType()) ? child.getType() : INT);
+            this.op = op;
+            this.child = child;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException {
+            BatchVector vector = child.evaluate(batch, sel, size);
+            result.ensureCapacity(batch.length);
+            if (result.type == NULL) return result;
+            for (int i = 0; i < size; i++) {
+                int position = sel[i];
+                result.nulls[position] = vector.nulls[position];
+                if (vector.nulls[position]) continue;
+                if (!isNumber(vector.type)) throw new SQLExecuteException("expected a number");
+                double value = vector.getNumber(position);
+                if (op == UnaryOperationType.MINUS) value = -value;
+                if (result.type == INT) result.ints[position] = (int) value;
+                else result.doubles[position] = value;
+            }
+            return result;
+        }
+    }
+
+    private static class NotNode extends VectorExpression {
+
+        private final VectorExpression child;
+
+        NotNode(VectorExpression child) {
+            super(child.getType() == NULL ? NULL : INT);
+            this.child = child;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException {
+            BatchVector vector = child.evaluate(batch, sel, size);
+            result.ensureCapacity(batch.length);
+            if (result.type == NULL) return result;
+            for (int i = 0; i < size; i++) {
+                int position = sel[i];
+                result.nulls[position] = vector.nulls[position];
+                if (vector.nulls[position]) continue;
+                if (!isNumber(vector.type)) throw new SQLExecuteException("expected a number");
+                result.ints[position] = toInt(vector.getNumber(position) == 0);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * AND/OR：右边只对左边不能决定结果的行求值。
+     */
+    private static class LogicalNode extends VectorExpression {
+
+        private final boolean isAnd;
+        private final VectorExpression left;
+        private final VectorExpression right;
+        private int[] subSel = new int[0];
+
+        LogicalNode(boolean isAnd, VectorExpression left, VectorExpression right) {
+            super(INT);
+            this.isAnd = isAnd;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException {
+            BatchVector leftVector = left.evaluate(batch, sel, size);
+            result.ensureCapacity(batch.length);
+            subSel = ensureCapacity(subSel, batch.length);
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int position = sel[i];
+                if (leftVector.isNull(position)) {
+                    result.nulls[position] = true;
+                    continue;
+                }
+                if (!isNumber(leftVector.type)) throw new SQLExecuteException("expected two numbers");
+                double value = leftVector.getNumber(position);
+                if (isAnd ? value == 0 : value != 0) {
+                    result.nulls[position] = false;
+                    result.ints[position] = isAnd ? 0 : 1;
+                } else {
+                    subSel[count++] = position;
+                }
+            }
+            if (count == 0) return result;
+
+            BatchVector rightVector = right.evaluate(batch, subSel, count);
+            for (int i = 0; i < count; i++) {
+                int position = subSel[i];
+                if (rightVector.isNull(position)) {
+                    result.nulls[position] = true;
+                    continue;
+                }
+                if (!isNumber(rightVector.type)) throw new SQLExecuteException("expected two numbers");
+                result.nulls[position] = false;
+                result.ints[position] = toInt(rightVector.getNumber(position) != 0);
+            }
+            return result;
+        }
+    }
+
+    private static class BetweenNode extends VectorExpression {
+
+        private final VectorExpression target;
+        private final VectorExpression left;
+        private final VectorExpression right;
+        private int[] targetSel = new int[0];
+        private int[] leftSel = new int[0];
+
+        BetweenNode(VectorExpression target, VectorExpression left, VectorExpression right) {
+            super(target.getType() == NULL || left.getType() == NULL || right.getType() == NULL ? NULL : INT);
+            this.target = target;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException {
+            BatchVector targetVector = target.evaluate(batch, sel, size);
+            result.ensureCapacity(batch.length);
+            setAllNull(sel, size);
+            targetSel = ensureCapacity(targetSel, batch.length);
+            int targetCount = nonNull(targetVector, sel, size, targetSel);
+            if (targetCount == 0) return result;
+            BatchVector leftVector = left.evaluate(batch, targetSel, targetCount);
+            leftSel = ensureCapacity(leftSel, batch.length);
+            int leftCount = nonNull(leftVector, targetSel, targetCount, leftSel);
+            if (leftCount == 0) return result;
+            BatchVector rightVector = right.evaluate(batch, leftSel, leftCount);
+            if (result.type == NULL) return result;
+
+            boolean strings = targetVector.type == STRING && leftVector.type == STRING && rightVector.type == STRING;
+            boolean numbers = isNumber(targetVector.type) && isNumber(leftVector.type) && isNumber(rightVector.type);
+            for (int i = 0; i < leftCount; i++) {
+                int position = leftSel[i];
+                if (rightVector.nulls[position]) continue;
+                boolean between;
+                if (strings) {
+                    String value = targetVector.strings[position];
+                    between = value.compareTo(leftVector.strings[position]) >= 0 && value.compareTo(rightVector.strings[position]) <= 0;
+                } else if (numbers) {
+                    double value = targetVector.getNumber(position);
+                    between = value >= leftVector.getNumber(position) && value <= rightVector.getNumber(position);
+                } else {
+                    throw new SQLExecuteException("expected three strings or three numbers");
+                }
+                result.nulls[position] = false;
+                result.ints[position] = toInt(between);
+            }
+            return result;
+        }
+    }
+
+    private static class IsNullNode extends VectorExpression {
+
+        private final boolean not;
+        private final VectorExpression child;
+
+        IsNullNode(boolean not, VectorExpression child) {
+            super(INT);
+            this.not = not;
+            this.child = child;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException {
+            BatchVector vector = child.evaluate(batch, sel, size);
+            result.ensureCapacity(batch.length);
+            for (int i = 0; i < size; i++) {
+                int position = sel[i];
+                result.nulls[position] = false;
+                result.ints[position] = toInt(vector.isNull(position) != not);
+            }
+            return result;
+        }
+    }
+
+    private static class InListNode extends VectorExpression {
+
+        private final VectorExpression target;
+        private final Set<String> strings;
+        private final Set<Double> numbers;
+
+        InListNode(VectorExpression target, Set<String> strings, Set<Double> numbers) {
+            super(INT);
+            this.target = target;
+            this.strings = strings;
+            this.numbers = numbers;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException {
+            BatchVector vector = target.evaluate(batch, sel, size);
+            result.ensureCapacity(batch.length);
+            for (int i = 0; i < size; i++) {
+                int position = sel[i];
+                if (vector.isNull(position)) throw new SQLExecuteException("expected a string or a number");
+                boolean contains;
+                if (vector.type == STRING) {
+                    contains = strings.contains(vector.strings[position]);
+                } else {
+                    double value = vector.getNumber(position);
+                    contains = numbers.contains(value == 0 ? 0.0 : value);
+                }
+                result.nulls[position] = false;
+                result.ints[position] = toInt(contains);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * LIKE/REGEXP，模式是常量，在规划时就编译好了。
+     */
+    private static class PatternNode extends VectorExpression {
+
+        private final boolean not;
+        private final VectorExpression left;
+        private final Pattern pattern;
+        private final String typeError;
+
+        PatternNode(boolean not, VectorExpression left, Pattern pattern, String typeError) {
+            super(left.getType() == NULL ? NULL : INT);
+            this.not = not;
+            this.left = left;
+            this.pattern = pattern;
+            this.typeError = typeError;
+        }
+
+        @Override
+        BatchVector evaluate(Batch batch, int[] sel, int size) throws SQLExecuteException {
+            BatchVector vector = left.evaluate(batch, sel, size);
+            result.ensureCapacity(batch.length);
+            if (result.type == NULL) return result;
+            for (int i = 0; i < size; i++) {
+                int position = sel[i];
+                result.nulls[position] = vector.nulls[position];
+                if (vector.nulls[position]) continue;
+                if (vector.type != STRING) throw new SQLExecuteException(typeError);
+                result.ints[position] = toInt(not != pattern.matcher(vector.strings[position]).matches());
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 按批读取表并在批上求值过滤条件和投影。
+ * <p>
+ * 每批最多 {@link #BATCH_SIZE} 行，过滤条件把选择向量压缩为满足条件的位置，投影只对选中的位置求值，
+ * 之后再逐行输出。没有投影时直接输出表中的行，不复制数据。
+ */
+public class VectorizedScanOperator extends Operator {
+
+    public static final int BATCH_SIZE = 1024;
+
+    private final Table table;
+    private final VectorExpression condition;
+    private final List<VectorExpression> expressions;
+    private final Schema schema;
+    private final int[] sortedBy;
+
+    private final int[] sel = new int[BATCH_SIZE];
+    private Batch batch;
+    private BatchVector[] outputs;
+    private int selSize;
+    private int selIndex;
+
+    /**
+     * 只过滤，输出表中的行。
+     */
+    public VectorizedScanOperator(@NotNull Table table, @Nullable VectorExpression condition) {
+        this.table = Objects.requireNonNull(table);
+        this.condition = condition;
+        this.expressions = null;
+        this.schema = table.getSchema();
+        this.sortedBy = table.getSortedBy();
+    }
+
+    /**
+     * 过滤后按 expressions 投影，输出的列为 columns。
+     */
+    public VectorizedScanOperator(@NotNull Table table, @Nullable VectorExpression condition,
+                                  @NotNull List<VectorExpression> expressions, @NotNull List<Column> columns, @NotNull int[] sortedBy) {
+        if (expressions.size() != columns.size()) throw new IllegalArgumentException("column count doesn't match");
+        this.table = Objects.requireNonNull(table);
+        this.condition = condition;
+        this.expressions = Objects.requireNonNull(expressions);
+        this.schema = new Schema(columns);
+        this.sortedBy = sortedBy.clone();
+    }
+
+    @NotNull
+    @Override
+    public Schema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public void open() {
+        int columnCount = table.getColumns().size();
+        ColumnVector[] vectors = new ColumnVector[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            vectors[i] = table.getVector(i);
+        }
+        batch = new Batch(vectors);
+        if (expressions != null) outputs = new BatchVector[expressions.size()];
+        selSize = 0;
+        selIndex = 0;
+    }
+
+    @Nullable
+    @Override
+    public Row next() throws SQLExecuteException {
+        while (selIndex >= selSize) {
+            if (!nextBatch()) return null;
+        }
+        int position = sel[selIndex++];
+        if (expressions == null) return table.getRow(batch.start + position);
+        List<Cell> cells = new ArrayList<>(outputs.length);
+        for (BatchVector output : outputs) {
+            cells.add(new Cell(output.get(position)));
+        }
+        return new Row(cells);
+    }
+
+    private boolean nextBatch() throws SQLExecuteException {
+        int start = batch.start + batch.length;
+        int rowCount = table.getRowCount();
+        if (start >= rowCount) return false;
+        batch.start = start;
+        batch.length = Math.min(BATCH_SIZE, rowCount - start);
+        for (int i = 0; i < batch.length; i++) {
+            sel[i] = i;
+        }
+        selSize = batch.length;
+        selIndex = 0;
+        if (condition != null) selSize = condition.select(batch, sel, selSize);
+        if (expressions != null && selSize > 0) {
+            for (int i = 0; i < outputs.length; i++) {
+                outputs[i] = expressions.get(i).evaluate(batch, sel, selSize);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        batch = null;
+        outputs = null;
+    }
+
+    @NotNull
+    @Override
+    public int[] getSortedBy() {
+        return sortedBy.clone();
+    }
+
+    @Override
+    public long estimateRowCount() {
+        return table.getRowCount();
+    }
+}
@@ -0,0 +1,231 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+
+/**
+ * 二进制列式表文件，加载时不需要做任何文本解析。
+ * <pre>
+ * magic(int) version(short)
+ * columnCount(int) { name(长度 + UTF-8) type(byte) } * columnCount
+ * rowCount(int)
+ * 之后按列存放：
+ *   null 位图，(rowCount + 7) / 8 个字节，第 i 位为 1 表示第 i 行为 NULL
+ *   INT 列：rowCount 个 int
+ *   DOUBLE 列：rowCount 个 double
+ *   STRING 列：rowCount 个 长度(int) + UTF-8 字节
+ * </pre>
+ * NULL 值在数据区中占位（数值为 0，字符串长度为 0），这样数值列总是定长的连续数组。
+ * 多字节数值都是大端序，可以直接从映射的 ByteBuffer 中读取。
+ */
+public final class BinaryTableFile {
+
+    static final int MAGIC = 0x48535754; // "HSWT"
+    static final short VERSION = 1;
+
+    private static final byte INT_TYPE = 0;
+    private static final byte DOUBLE_TYPE = 1;
+    private static final byte STRING_TYPE = 2;
+
+    public static Table read(@NotNull File file, @NotNull String tableName) throws IOException {
+        return open(file, tableName).load();
+    }
+
+    /**
+     * 映射文件并解析文件头，数据在 {@link TableSource#load()} 时才从映射的内存中解码。
+     */
+    public static TableSource open(@NotNull File file, @NotNull String tableName) throws IOException {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(tableName);
+        ByteBuffer buffer = TableSource.map(file);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                throw new IOException("invalid format of '" + tableName + "': not a binary table file");
+            }
+            int columnCount = buffer.getInt();
+            List<Column> columns = new ArrayList<>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                String columnName = getString(buffer);
+                columns.add(new Column(i, columnName, toDataType(buffer.get()), tableName));
+            }
+            return new BinaryTableSource(tableName, columns, buffer.slice());
+        } catch (BufferUnderflowException e) {
+            throw new IOException("invalid format of '" + tableName + "': unexpected end of file");
+        }
+    }
+
+    public static void write(@NotNull Table table, @NotNull File file) throws IOException {
+        Objects.requireNonNull(table);
+        Objects.requireNonNull(file);
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            List<Column> columns = table.getColumns();
+            out.writeInt(columns.size());
+            for (Column column : columns) {
+                RowCodec.writeString(out, column.getColumnName());
+                out.writeByte(toTypeTag(column.getDataType()));
+            }
+
+            int rowCount = table.getRowCount();
+            out.writeInt(rowCount);
+            byte[] nullBitmap = new byte[(rowCount + 7) / 8];
+            for (int j = 0; j < columns.size(); j++) {
+                DataType dataType = columns.get(j).getDataType();
+                ColumnVector vector = table.getVector(j);
+                Arrays.fill(nullBitmap, (byte) 0);
+                for (int i = 0; i < rowCount; i++) {
+                    if (vector.isNull(i)) {
+                        nullBitmap[i >>> 3] |= 1 << (i & 7);
+                    }
+                }
+                out.write(nullBitmap);
+                if (dataType == STRING && vector instanceof StringVector) {
+                    // 每个不同的字符串只编码一次
+                    StringVector stringVector = (StringVector) vector;
+                    List<String> dictionary = stringVector.getDictionary();
+                    byte[][] encoded = new byte[dictionary.size()][];
+                    for (int i = 0; i < rowCount; i++) {
+                        if (vector.isNull(i)) {
+                            out.writeInt(0);
+                            continue;
+                        }
+                        int code = stringVector.getCode(i);
+                        if (encoded[code] == null) encoded[code] = dictionary.get(code).getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(encoded[code].length);
+                        out.write(encoded[code]);
+                    }
+                    continue;
+                }
+                for (int i = 0; i < rowCount; i++) {
+                    TypedValue typedValue = vector.get(i);
+                    boolean isNull = typedValue.getDataType() == NULL;
+                    if (dataType == INT) {
+                        out.writeInt(isNull ? 0 : ((Number) typedValue.getValue()).intValue());
+                    } else if (dataType == DOUBLE) {
+                        out.writeDouble(isNull ? 0 : ((Number) typedValue.getValue()).doubleValue());
+                    } else {
+                        byte[] bytes = isNull ? new byte[0] : ((String) typedValue.getValue()).getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(bytes.length);
+                        out.write(bytes);
+                    }
+                }
+            }
+            out.flush();
+            fileOutputStream.getFD().sync();
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0) throw new IOException("invalid string length " + length);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static boolean isNull(byte[] nullBitmap, int index) {
+        return (nullBitmap[index >>> 3] & (1 << (index & 7))) != 0;
+    }
+
+    static DataType toDataType(byte tag) throws IOException {
+        switch (tag) {
+            case INT_TYPE:
+                return INT;
+            case DOUBLE_TYPE:
+                return DOUBLE;
+            case STRING_TYPE:
+                return STRING;
+            default:
+                throw new IOException("invalid column type " + tag);
+        }
+    }
+
+    private static byte toTypeTag(DataType dataType) {
+        switch (dataType) {
+            case INT:
+                return INT_TYPE;
+            case DOUBLE:
+                return DOUBLE_TYPE;
+            case STRING:
+                return STRING_TYPE;
+            default:
+                throw new IllegalArgumentException("unexpected column type " + dataType);
+        }
+    }
+
+    private BinaryTableFile() {
+    }
+
+    private static class BinaryTableSource extends TableSource {
+
+        // 从 rowCount 开始的数据部分
+        private final ByteBuffer data;
+
+        BinaryTableSource(String tableName, List<Column> columns, ByteBuffer data) {
+            super(tableName, columns);
+            this.data = data;
+        }
+
+        @NotNull
+        @Override
+        public Table load() throws IOException {
+            String tableName = getTableName();
+            List<Column> columns = getColumns();
+            ByteBuffer buffer = data.duplicate();
+            try {
+                int rowCount = buffer.getInt();
+                if (rowCount < 0) throw new IOException("invalid format of '" + tableName + "': invalid row count " + rowCount);
+
+                // 直接解码到列中，不经过 Row/Cell
+                List<ColumnVector> vectors = new ArrayList<>(columns.size());
+                byte[] nullBitmap = new byte[(rowCount + 7) / 8];
+                for (Column column : columns) {
+                    buffer.get(nullBitmap);
+                    DataType dataType = column.getDataType();
+                    if (dataType == INT) {
+                        IntVector vector = new IntVector();
+                        for (int i = 0; i < rowCount; i++) {
+                            int value = buffer.getInt();
+                            if (isNull(nullBitmap, i)) vector.addNull();
+                            else vector.addInt(value);
+                        }
+                        vectors.add(vector);
+                    } else if (dataType == DOUBLE) {
+                        DoubleVector vector = new DoubleVector();
+                        for (int i = 0; i < rowCount; i++) {
+                            double value = buffer.getDouble();
+                            if (isNull(nullBitmap, i)) vector.addNull();
+                            else vector.addDouble(value);
+                        }
+                        vectors.add(vector);
+                    } else {
+                        StringVector vector = new StringVector();
+                        for (int i = 0; i < rowCount; i++) {
+                            String value = getString(buffer);
+                            if (isNull(nullBitmap, i)) vector.addNull();
+                            else vector.addString(value);
+                        }
+                        vectors.add(vector);
+                    }
+                }
+
+                return new Table(tableName, columns, vectors);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("invalid format of '" + tableName + "': unexpected end of file");
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.*;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+
+/**
+ * UTF-8 编码的 csv 表文件，第一行是列名，第二行是列类型，之后每行一条记录。
+ */
+public final class CsvTableFile {
+
+    /**
+     * 流式读取时每块的行数。
+     */
+    public static final int CHUNK_SIZE = 4096;
+
+    /**
+     * 并行解析时每段至少的字节数，太小的话拆分的开销不划算。
+     */
+    static int splitSize = 4 * 1024 * 1024;
+
+    /**
+     * 接收流式读取出的一块行，传入的 list 之后不会再被修改。
+     */
+    public interface RowSink {
+
+        void accept(@NotNull List<Row> rows) throws IOException;
+    }
+
+    /**
+     * 根据 csv 文件生成 table。
+     */
+    public static Table read(@NotNull File file, @NotNull String tableName) throws IOException {
+        return open(file, tableName).load();
+    }
+
+    /**
+     * 映射文件并只解析前两行（列名和类型），数据在 {@link TableSource#load()} 时才解析。
+     */
+    public static TableSource open(@NotNull File file, @NotNull String tableName) throws IOException {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(tableName);
+        ByteBuffer buffer = TableSource.map(file);
+        try (CSVParser parser = newParser(buffer.duplicate())) {
+            Iterator<CSVRecord> iterator = parser.iterator();
+            CSVRecord columnsRecord = iterator.hasNext() ? iterator.next() : null;
+            CSVRecord typesRecord = iterator.hasNext() ? iterator.next() : null;
+            List<Column> columns = parseColumns(tableName, columnsRecord, typesRecord);
+            // 数据部分从第三条记录开始
+            int dataStart = nextRecord(buffer, nextRecord(buffer, 0));
+            return new CsvTableSource(tableName, columns, buffer, dataStart);
+        }
+    }
+
+    /**
+     * 返回 position 所在的记录之后下一条记录的开始位置。
+     * 只有在引号外的换行符才是记录的结尾，转义的引号 "" 会让状态翻转两次，不影响结果。
+     */
+    private static int nextRecord(ByteBuffer buffer, int position) {
+        int limit = buffer.limit();
+        boolean quoted = false;
+        for (int i = position; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * 把 [start, limit) 切成若干段，每段的边界都是记录的开始位置。
+     * 为了知道某个位置是否在引号内，只能从头扫描一遍，但只是逐字节比较，比解析快得多。
+     */
+    private static List<ByteBuffer> split(ByteBuffer buffer, int start, int parts) {
+        int limit = buffer.limit();
+        int partSize = Math.max(splitSize, (limit - start + parts - 1) / parts);
+        List<ByteBuffer> ranges = new ArrayList<>();
+        int position = start;
+        boolean quoted = false;
+        int rangeStart = start;
+        while (position < limit) {
+            int target = Math.min(limit, rangeStart + partSize);
+            for (; position < target; position++) {
+                if (buffer.get(position) == '"') quoted = !quoted;
+            }
+            // 走到当前记录的末尾
+            while (position < limit) {
+                byte b = buffer.get(position++);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    break;
+                }
+            }
+            ByteBuffer range = buffer.duplicate();
+            range.limit(position).position(rangeStart);
+            ranges.add(range.slice());
+            rangeStart = position;
+        }
+        return ranges;
+    }
+
+    private static CSVParser newParser(ByteBuffer buffer) throws IOException {
+        return new CSVParser(new InputStreamReader(new ByteBufferInputStream(buffer), StandardCharsets.UTF_8), CSVFormat.DEFAULT);
+    }
+
+    private static List<Column> parseColumns(String tableName, CSVRecord columnsRecord, CSVRecord typesRecord) throws IOException {
+        if (columnsRecord == null || typesRecord == null) {
+            throw new IOException("invalid format of '" + tableName + "': missing columns and/or types");
+        }
+        int columnCount = columnsRecord.size();
+        if (typesRecord.size() != columnCount) {
+            throw new IOException("invalid format of '" + tableName + "': every record should have the same number of items");
+        }
+
+        List<Column> columns = new ArrayList<>();
+        for (int i = 0; i < columnCount; i++) {
+            String columnName = columnsRecord.get(i);
+            DataType dateType = getDateType(typesRecord.get(i));
+            Column column = new Column(i, columnName, dateType, tableName);
+            columns.add(column);
+        }
+        return columns;
+    }
+
+    /**
+     * 解析数据部分。在 {@link ParallelLoader} 的池中执行时，大文件会被切成几段并行解析，最后按顺序拼接。
+     * 每段与不分段时一样逐块解码到自己的列中，拼接时把后面各段的列追加到第一段的列后面，
+     * 任何时候都不会有整段的 Row 在内存中。
+     */
+    private static Table parse(ByteBuffer buffer, int dataStart, String tableName, List<Column> columns) throws IOException {
+        List<ParallelLoader.IOTask<Table>> tasks = new ArrayList<>();
+        for (ByteBuffer range : split(buffer, dataStart, ParallelLoader.currentParallelism())) {
+            tasks.add(() -> {
+                Table part = new Table(tableName, columns);
+                try (CSVParser parser = newParser(range)) {
+                    readRows(parser.iterator(), tableName, columns, part::addRows);
+                }
+                return part;
+            });
+        }
+
+        List<Table> parts = ParallelLoader.invokeAll(tasks);
+        if (parts.isEmpty()) return new Table(tableName, columns);
+        if (parts.size() == 1) return parts.get(0);
+        List<ColumnVector> vectors = new ArrayList<>(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnVector vector = parts.get(0).getVector(i);
+            for (int j = 1; j < parts.size(); j++) {
+                vector.addAll(parts.get(j).getVector(i));
+            }
+            vectors.add(vector);
+        }
+        return new Table(tableName, columns, vectors);
+    }
+
+    /**
+     * 流式读取 csv 文件中的数据并交给 sink，用于向已有的表中追加数据。
+     * 文件的前两行同样是列名和类型，必须与 columns 一致（列名忽略大小写）。
+     *
+     * @return 读取的行数
+     */
+    public static int stream(@NotNull File file, @NotNull String tableName, @NotNull List<Column> columns, @NotNull RowSink sink) throws IOException {
+        Objects.requireNonNull(file);
+        Objects.requireNonNull(tableName);
+        Objects.requireNonNull(columns);
+        Objects.requireNonNull(sink);
+        try (CSVParser parser = new CSVParser(new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)), CSVFormat.DEFAULT)) {
+            Iterator<CSVRecord> iterator = parser.iterator();
+            CSVRecord columnsRecord = iterator.hasNext() ? iterator.next() : null;
+            CSVRecord typesRecord = iterator.hasNext() ? iterator.next() : null;
+            List<Column> fileColumns = parseColumns(tableName, columnsRecord, typesRecord);
+            if (fileColumns.size() != columns.size()) {
+                throw new IOException("columns of '" + file.getName() + "' don't match table '" + tableName + "'");
+            }
+            for (int i = 0; i < columns.size(); i++) {
+                Column fileColumn = fileColumns.get(i);
+                Column column = columns.get(i);
+                if (!fileColumn.getColumnName().equalsIgnoreCase(column.getColumnName()) || fileColumn.getDataType() != column.getDataType()) {
+                    throw new IOException("columns of '" + file.getName() + "' don't match table '" + tableName + "'");
+                }
+            }
+            return readRows(iterator, tableName, columns, sink);
+        }
+    }
+
+    /**
+     * 逐条解析记录，每攒够 {@link #CHUNK_SIZE} 行交给 sink 一次。
+     * 同一时刻只有一条 CSVRecord 和一块 Row 在内存中，而不是整个文件的记录。
+     */
+    private static int readRows(Iterator<CSVRecord> iterator, String tableName, List<Column> columns, RowSink sink) throws IOException {
+        int columnCount = columns.size();
+        DataType[] dataTypes = new DataType[columnCount]; // 为了快速访问，提高加载速度
+        for (int i = 0; i < columnCount; i++) {
+            dataTypes[i] = columns.get(i).getDataType();
+        }
+
+        int rowCount = 0;
+        List<Row> rows = new ArrayList<>(CHUNK_SIZE);
+        while (iterator.hasNext()) {
+            CSVRecord record = iterator.next();
+            if (record.size() != columnCount)
+                throw new IOException("invalid format of '" + tableName + "': every record should have the same number of items");
+            List<Cell> cells = new ArrayList<>(columnCount);
+            for (int j = 0; j < columnCount; j++) {
+                String valueStr = record.get(j);
+
+                DataType dataType = dataTypes[j];
+                Cell cell;
+                try {
+                    if (valueStr.equals("")) {
+                        cell = new Cell(TypedValue.NULL);
+                    } else if (dataType == INT) {
+                        cell = new Cell(new TypedValue(INT, Integer.parseInt(valueStr)));
+                    } else if (dataType == DOUBLE) {
+                        cell = new Cell(new TypedValue(DOUBLE, Double.parseDouble(valueStr)));
+                    } else {
+                        cell = new Cell(new TypedValue(STRING, valueStr));
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("invalid format of '" + tableName + "': '" + valueStr + "' is not " + dataType + " in record " + record.getRecordNumber());
+                }
+                cells.add(cell);
+            }
+            rows.add(new Row(cells));
+            if (rows.size() == CHUNK_SIZE) {
+                sink.accept(rows);
+                rowCount += rows.size();
+                rows = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+        if (!rows.isEmpty()) {
+            sink.accept(rows);
+            rowCount += rows.size();
+        }
+        return rowCount;
+    }
+
+    /**
+     * 将 table 以 UTF-8 编码保存到 csv 文件中。
+     */
+    public static void write(@NotNull Table table, @NotNull File file) throws IOException {
+        Objects.requireNonNull(table);
+        Objects.requireNonNull(file);
+        if (table.getColumnCount() == 0) return;
+        FileOutputStream out = new FileOutputStream(file);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            List<Column> columns = table.getColumns();
+            writer.write(csvNormalize(columns.get(0).getColumnName()));
+            for (int i = 1; i < columns.size(); i++) {
+                writer.write(",");
+                writer.write(csvNormalize(columns.get(i).getColumnName()));
+            }
+            writer.write("\n"); // TODO: \r\n?
+
+            writer.write(csvNormalize(columns.get(0).getDataType().name()));
+            for (int i = 1; i < columns.size(); i++) {
+                writer.write(",");
+                writer.write(csvNormalize(columns.get(i).getDataType().name()));
+            }
+            writer.write("\n");
+
+            for (Row row : table.getRows()) {
+                List<Cell> cells = row.getCells();
+                writer.write(normalizeTypedData(cells.get(0).getTypedValue()));
+                for (int i = 1; i < cells.size(); i++) {
+                    writer.write(",");
+                    writer.write(normalizeTypedData(cells.get(i).getTypedValue()));
+                }
+                writer.write("\n");
+            }
+            writer.flush();
+            out.getFD().sync();
+        }
+    }
+
+    private static DataType getDateType(String type) {
+        String t = type.toUpperCase();
+        if (t.equals("INT")) return INT;
+        if (t.equals("STRING")) return STRING;
+        if (t.equals("DOUBLE")) return DOUBLE;
+        throw new IllegalArgumentException("invalid type '" + type + "'");
+    }
+
+    private static String normalizeTypedData(TypedValue typedValue) {
+        switch (typedValue.getDataType()) {
+            case INT:
+            case DOUBLE:
+                return typedValue.getValue().toString();
+            case STRING:
+                return csvNormalize((String) typedValue.getValue());
+            case NULL:
+                return "";
+            case ERROR:
+                throw new IllegalStateException("unexpected error data a table: " + typedValue.getValue());
+            default:
+                throw new IllegalStateException("bug");
+        }
+    }
+
+    private static String csvNormalize(String str) {
+        String replace = str.replace("\"", "\"\"");
+        return "\"" + replace + "\"";
+    }
+
+    private CsvTableFile() {
+    }
+
+    private static class CsvTableSource extends TableSource {
+
+        private final ByteBuffer buffer;
+        private final int dataStart;
+
+        CsvTableSource(String tableName, List<Column> columns, ByteBuffer buffer, int dataStart) {
+            super(tableName, columns);
+            this.buffer = buffer;
+            this.dataStart = dataStart;
+        }
+
+        @NotNull
+        @Override
+        public Table load() throws IOException {
+            return parse(buffer, dataStart, getTableName(), getColumns());
+        }
+    }
+}
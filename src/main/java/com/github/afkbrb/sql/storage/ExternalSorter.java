@@ -0,0 +1,254 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.Cell;
+import com.github.afkbrb.sql.model.Row;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 外部排序：内存中最多缓存 bufferRows 行、估算大约 memoryBytes 字节，满了就排好序用 {@link RowCodec} 写到临时文件中（一个 run），
+ * 最后对所有 run 做多路归并，边归并边输出。没有溢出到磁盘时直接在内存中排序。
+ * run 的个数达到 MAX_MERGE_WIDTH 时先把它们归并成一个 run，同时打开的临时文件不会太多。
+ * <p>
+ * 排序是稳定的：run 内部用稳定排序，归并时键相等的行优先取前面的 run。
+ */
+public class ExternalSorter implements Closeable {
+
+    private static final int MAX_MERGE_WIDTH = 64;
+
+    // 所有外部排序溢出到磁盘的 run 的个数和字节数，用于统计
+    private static final AtomicLong totalRunCount = new AtomicLong();
+    private static final AtomicLong totalSpilledBytes = new AtomicLong();
+
+    private final Comparator<Row> comparator;
+    private final int bufferRows;
+    private final long memoryBytes;
+    private final List<Row> buffer = new ArrayList<>();
+    private long bufferBytes;
+    private final List<File> runs = new ArrayList<>();
+    private int runCount;
+    private long spilledBytes;
+    private Merger merger;
+
+    public ExternalSorter(@NotNull Comparator<Row> comparator, int bufferRows) {
+        this(comparator, bufferRows, Long.MAX_VALUE);
+    }
+
+    public ExternalSorter(@NotNull Comparator<Row> comparator, int bufferRows, long memoryBytes) {
+        if (bufferRows <= 0) throw new IllegalArgumentException("bufferRows should be positive");
+        if (memoryBytes <= 0) throw new IllegalArgumentException("memoryBytes should be positive");
+        this.comparator = Objects.requireNonNull(comparator);
+        this.bufferRows = bufferRows;
+        this.memoryBytes = memoryBytes;
+    }
+
+    public void add(@NotNull Row row) throws IOException {
+        buffer.add(Objects.requireNonNull(row));
+        bufferBytes += estimateSize(row);
+        if (buffer.size() >= bufferRows || bufferBytes >= memoryBytes) spill();
+    }
+
+    /**
+     * 溢出到磁盘的 run 的个数，不包括中间归并产生的 run。
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * 写到磁盘的字节数，包括中间归并写出的 run。
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * 进程启动以来所有外部排序溢出的 run 的个数。
+     */
+    public static long getTotalRunCount() {
+        return totalRunCount.get();
+    }
+
+    /**
+     * 进程启动以来所有外部排序写到磁盘的字节数。
+     */
+    public static long getTotalSpilledBytes() {
+        return totalSpilledBytes.get();
+    }
+
+    /**
+     * 返回排好序的行，只能调用一次。读取临时文件出错时迭代器抛出 UncheckedIOException。
+     */
+    @NotNull
+    public Iterator<Row> sorted() throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(comparator);
+            return buffer.iterator();
+        }
+        if (!buffer.isEmpty()) spill();
+
+        merger = new Merger(runs);
+        return new Iterator<Row>() {
+            @Override
+            public boolean hasNext() {
+                return merger.hasNext();
+            }
+
+            @Override
+            public Row next() {
+                if (!merger.hasNext()) throw new NoSuchElementException();
+                try {
+                    return merger.next();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * 删除临时文件。
+     */
+    @Override
+    public void close() throws IOException {
+        if (merger != null) {
+            merger.close();
+            merger = null;
+        }
+        for (File run : runs) {
+            if (run.exists() && !run.delete()) {
+                throw new IOException("unable to delete file " + run.getCanonicalPath());
+            }
+        }
+        runs.clear();
+        buffer.clear();
+        bufferBytes = 0;
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(comparator);
+        writeRun(buffer.size(), buffer.iterator());
+        buffer.clear();
+        bufferBytes = 0;
+        runCount++;
+        totalRunCount.incrementAndGet();
+
+        if (runs.size() >= MAX_MERGE_WIDTH) {
+            // 归并成一个 run 后放在原来的位置，保持 run 的先后顺序
+            List<File> merging = new ArrayList<>(runs);
+            runs.clear();
+            try (Merger intermediate = new Merger(merging)) {
+                writeRun(intermediate.rowCount, new Iterator<Row>() {
+                    @Override
+                    public boolean hasNext() {
+                        return intermediate.hasNext();
+                    }
+
+                    @Override
+                    public Row next() {
+                        try {
+                            return intermediate.next();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                for (File run : merging) {
+                    if (run.exists() && !run.delete()) throw new IOException("unable to delete file " + run.getCanonicalPath());
+                }
+            }
+        }
+    }
+
+    private void writeRun(int rowCount, Iterator<Row> rows) throws IOException {
+        File run = File.createTempFile("sort-", ".run");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            out.writeInt(rowCount);
+            while (rows.hasNext()) {
+                RowCodec.writeRow(out, rows.next());
+            }
+        }
+        spilledBytes += run.length();
+        totalSpilledBytes.addAndGet(run.length());
+    }
+
+    /**
+     * 粗略估算一行在堆中占用的字节数：每个单元格包括 Cell、TypedValue 和装箱的值三个对象，字符串按 UTF-16 计算。
+     */
+    public static long estimateSize(@NotNull Row row) {
+        long size = 48;
+        for (Cell cell : row.getCells()) {
+            size += 56;
+            Object value = cell.getTypedValue().getValue();
+            if (value instanceof String) size += 24 + 2L * ((String) value).length();
+        }
+        return size;
+    }
+
+    /**
+     * 对若干个 run 做多路归并。
+     */
+    private class Merger implements Closeable {
+
+        private final List<DataInputStream> inputs = new ArrayList<>();
+        // 每个 run 中还没有读取的行数
+        private final int[] remaining;
+        // 所有 run 的总行数
+        private int rowCount;
+        // 堆中的元素是 {row, run 下标}
+        private final PriorityQueue<Object[]> heap = new PriorityQueue<>((a, b) -> {
+            int cmp = comparator.compare((Row) a[0], (Row) b[0]);
+            return cmp != 0 ? cmp : Integer.compare((Integer) a[1], (Integer) b[1]);
+        });
+
+        Merger(List<File> runs) throws IOException {
+            remaining = new int[runs.size()];
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(runs.get(i)), 1 << 16));
+                    inputs.add(input);
+                    remaining[i] = input.readInt();
+                    rowCount += remaining[i];
+                    Row row = readNext(i);
+                    if (row != null) heap.add(new Object[]{row, i});
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        boolean hasNext() {
+            return !heap.isEmpty();
+        }
+
+        Row next() throws IOException {
+            Object[] top = heap.poll();
+            int run = (Integer) top[1];
+            Row row = readNext(run);
+            if (row != null) heap.add(new Object[]{row, run});
+            return (Row) top[0];
+        }
+
+        private Row readNext(int run) throws IOException {
+            if (remaining[run] == 0) return null;
+            remaining[run]--;
+            return RowCodec.readRow(inputs.get(run));
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (DataInputStream input : inputs) {
+                input.close();
+            }
+            inputs.clear();
+        }
+    }
+}
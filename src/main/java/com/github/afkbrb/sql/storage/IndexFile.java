@@ -0,0 +1,77 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.BTreeIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * B+ 树索引文件（`.idx`），和表文件放在同一个目录下，加载表时直接读出建好的树，不需要重新排序。
+ * <pre>
+ * magic(int) version(short)
+ * 表文件的长度(long) 表文件内容的 CRC32(long) rowCount(int) columnIndex(int)
+ * 索引的内容，见 {@link BTreeIndex#write(DataOutput)}
+ * </pre>
+ * 索引文件记下了写出时表文件的长度和校验和，表文件之后被改写过的话索引文件就作废了，需要重建索引。
+ * 不用修改时间判断：checkpoint 替换表文件后、重写索引文件前崩溃时，新的表文件可能恰好长度相同、修改时间落在同一个时钟刻度内。
+ * 所以只有表的数据与表文件一致（没有未折叠的日志）时才能写索引文件。
+ */
+public final class IndexFile {
+
+    public static final String EXTENSION = ".idx";
+
+    static final int MAGIC = 0x48535749; // "HSWI"
+    static final short VERSION = 2;
+
+    public static void write(@NotNull BTreeIndex index, @NotNull File file, @NotNull File tableFile, int rowCount) throws IOException {
+        Objects.requireNonNull(index);
+        Objects.requireNonNull(file);
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOutputStream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(tableFile.length());
+            out.writeLong(checksum(tableFile));
+            out.writeInt(rowCount);
+            out.writeInt(index.getColumnIndex());
+            index.write(out);
+            out.flush();
+            fileOutputStream.getFD().sync();
+        }
+    }
+
+    /**
+     * 索引文件与表文件对得上时读出索引的内容并返回 true；文件不存在、已经过期或者损坏时返回 false，
+     * 这时 index 的内容是不确定的，调用者应该重建索引。
+     */
+    public static boolean read(@NotNull BTreeIndex index, @NotNull File file, @NotNull File tableFile, int rowCount) {
+        Objects.requireNonNull(index);
+        if (!file.exists() || !tableFile.exists()) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) return false;
+            if (in.readLong() != tableFile.length() || in.readLong() != checksum(tableFile)) return false;
+            if (in.readInt() != rowCount || in.readInt() != index.getColumnIndex()) return false;
+            index.read(in, rowCount);
+            return in.read() < 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private IndexFile() {
+    }
+}
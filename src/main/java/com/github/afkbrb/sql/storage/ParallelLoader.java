@@ -0,0 +1,111 @@
+package com.github.afkbrb.sql.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 用一个大小固定的 ForkJoinPool 并行地打开、解码表文件。
+ * <p>
+ * 结果总是按任务的顺序返回，与哪个任务先完成无关，所以调用者可以按确定的顺序注册表。
+ * 任务内部还可以再通过 {@link #invokeAll(List)} 拆分子任务（比如把一个大文件分成几段并行解析），
+ * 子任务在同一个池中执行，等待子任务的线程会去帮忙执行其他任务，不会死锁。
+ */
+public class ParallelLoader {
+
+    /**
+     * 可以抛出 IOException 的任务。
+     */
+    public interface IOTask<T> {
+
+        T call() throws IOException;
+    }
+
+    private final ForkJoinPool pool;
+
+    public ParallelLoader(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("parallelism should be positive");
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * 在池中并行执行所有任务，按任务的顺序返回结果。
+     */
+    public <T> List<T> run(@NotNull List<? extends IOTask<T>> tasks) throws IOException {
+        Objects.requireNonNull(tasks);
+        try {
+            return pool.invoke(new RecursiveTask<List<T>>() {
+                @Override
+                protected List<T> compute() {
+                    try {
+                        return ParallelLoader.invokeAll(tasks);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * 当前线程是池中的线程时，在当前池中并行执行所有任务；否则在当前线程中依次执行。
+     * 结果按任务的顺序返回。
+     */
+    public static <T> List<T> invokeAll(@NotNull List<? extends IOTask<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.size() <= 1 || !ForkJoinTask.inForkJoinPool()) {
+            for (IOTask<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        List<RecursiveTask<T>> forkJoinTasks = new ArrayList<>(tasks.size());
+        for (IOTask<T> task : tasks) {
+            forkJoinTasks.add(new RecursiveTask<T>() {
+                @Override
+                protected T compute() {
+                    try {
+                        return task.call();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+        try {
+            ForkJoinTask.invokeAll(forkJoinTasks);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (RecursiveTask<T> forkJoinTask : forkJoinTasks) {
+            results.add(forkJoinTask.join());
+        }
+        return results;
+    }
+
+    /**
+     * 当前线程所在池的并行度，不在池中时为 1。
+     */
+    static int currentParallelism() {
+        ForkJoinPool pool = ForkJoinTask.getPool();
+        return pool == null ? 1 : pool.getParallelism();
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.Cell;
+import com.github.afkbrb.sql.model.DataType;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.TypedValue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 行和值的紧凑二进制编码，每个值由一个字节的类型标记加上具体数据组成。
+ * <p>
+ * 字符串使用 长度 + UTF-8 字节 的形式，没有 {@link DataOutput#writeUTF(String)} 的 64KB 限制。
+ */
+public final class RowCodec {
+
+    private static final byte NULL_TAG = 0;
+    private static final byte INT_TAG = 1;
+    private static final byte DOUBLE_TAG = 2;
+    private static final byte STRING_TAG = 3;
+
+    public static void writeRow(DataOutput out, Row row) throws IOException {
+        List<Cell> cells = row.getCells();
+        out.writeInt(cells.size());
+        for (Cell cell : cells) {
+            writeValue(out, cell.getTypedValue());
+        }
+    }
+
+    public static Row readRow(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) throw new IOException("invalid row size " + size);
+        List<Cell> cells = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            cells.add(new Cell(readValue(in)));
+        }
+        return new Row(cells);
+    }
+
+    public static void writeValue(DataOutput out, TypedValue typedValue) throws IOException {
+        switch (typedValue.getDataType()) {
+            case INT:
+                out.writeByte(INT_TAG);
+                out.writeInt((Integer) typedValue.getValue());
+                break;
+            case DOUBLE:
+                out.writeByte(DOUBLE_TAG);
+                out.writeDouble((Double) typedValue.getValue());
+                break;
+            case STRING:
+                out.writeByte(STRING_TAG);
+                writeString(out, (String) typedValue.getValue());
+                break;
+            case NULL:
+                out.writeByte(NULL_TAG);
+                break;
+            default:
+                throw new IllegalStateException("unexpected data type " + typedValue.getDataType());
+        }
+    }
+
+    public static TypedValue readValue(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL_TAG:
+                return TypedValue.NULL;
+            case INT_TAG:
+                return new TypedValue(DataType.INT, in.readInt());
+            case DOUBLE_TAG:
+                return new TypedValue(DataType.DOUBLE, in.readDouble());
+            case STRING_TAG:
+                return new TypedValue(DataType.STRING, readString(in));
+            default:
+                throw new IOException("invalid value tag " + tag);
+        }
+    }
+
+    public static void writeString(DataOutput out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new IOException("invalid string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private RowCodec() {
+    }
+}
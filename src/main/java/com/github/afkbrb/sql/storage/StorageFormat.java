@@ -0,0 +1,65 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.Table;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 表文件的存储格式，由文件扩展名区分。
+ */
+public enum StorageFormat {
+
+    CSV(".csv"),
+    BINARY(".tbl");
+
+    private final String extension;
+
+    StorageFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public Table read(@NotNull File file, @NotNull String tableName) throws IOException {
+        return this == CSV ? CsvTableFile.read(file, tableName) : BinaryTableFile.read(file, tableName);
+    }
+
+    public TableSource open(@NotNull File file, @NotNull String tableName) throws IOException {
+        return this == CSV ? CsvTableFile.open(file, tableName) : BinaryTableFile.open(file, tableName);
+    }
+
+    public void write(@NotNull Table table, @NotNull File file) throws IOException {
+        if (this == CSV) {
+            CsvTableFile.write(table, file);
+        } else {
+            BinaryTableFile.write(table, file);
+        }
+    }
+
+    /**
+     * 根据文件名判断格式，不是表文件的话返回 null。
+     */
+    @Nullable
+    public static StorageFormat fromFileName(@NotNull String filename) {
+        for (StorageFormat format : values()) {
+            if (filename.endsWith(format.extension)) return format;
+        }
+        return null;
+    }
+
+    /**
+     * 根据名字（忽略大小写）获取格式，找不到的话返回 null。
+     */
+    @Nullable
+    public static StorageFormat fromName(@NotNull String name) {
+        for (StorageFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) return format;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.Column;
+import com.github.afkbrb.sql.model.Table;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 已经注册但还没有解码的表。
+ * <p>
+ * 打开时只解析文件头（列名和类型），数据通过 {@link FileChannel#map} 映射到内存，
+ * 第一次 {@link #load()} 时才解码成 {@link Table}。映射的内存在堆外，没被访问过的表几乎不占用堆空间。
+ */
+public abstract class TableSource {
+
+    private final String tableName;
+    private final List<Column> columns;
+
+    protected TableSource(@NotNull String tableName, @NotNull List<Column> columns) {
+        this.tableName = Objects.requireNonNull(tableName);
+        this.columns = Objects.requireNonNull(columns);
+    }
+
+    @NotNull
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * 文件头中的列信息，不需要解码数据。
+     */
+    @NotNull
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * 解码全部数据。
+     */
+    @NotNull
+    public abstract Table load() throws IOException;
+
+    /**
+     * 将整个文件以只读方式映射到内存。
+     * 单个映射最大为 2GB，更大的文件需要分块读取，这里暂不支持。
+     */
+    static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file '" + file + "' is too large to be mapped");
+            }
+            // 映射建立后即使关闭 channel 也仍然有效
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.Row;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * 预写日志（write-ahead log），每个数据库目录一个。
+ * <p>
+ * insert/update/delete 只把受影响的行追加到日志中，commit 时写入 COMMIT 记录并 fsync，
+ * 而不是每条语句都重写整个 csv 文件。加载数据库时先读 csv，再重放日志中已提交的部分；
+ * 日志的内容由 checkpoint 折叠回表文件，之后日志被清空。
+ * <p>
+ * 每条记录的格式为 length(int) + crc32(int) + payload，
+ * 重放时遇到不完整或校验失败的记录就停下，最后一个 COMMIT 之后的内容都会被丢弃。
+ */
+public class WriteAheadLog implements Closeable {
+
+    public static final String FILE_NAME = "wal.log";
+
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+    private static final byte COMMIT = 4;
+
+    private final File file;
+    private final FileOutputStream fileOutputStream;
+    private final DataOutputStream out;
+
+    // 当前语句产生的、尚未提交的记录
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pending = new DataOutputStream(pendingBytes);
+    private final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+    private final DataOutputStream payload = new DataOutputStream(payloadBytes);
+    private final CRC32 crc32 = new CRC32();
+
+    public WriteAheadLog(@NotNull File dbDir) throws IOException {
+        this.file = new File(Objects.requireNonNull(dbDir), FILE_NAME);
+        this.fileOutputStream = new FileOutputStream(file, true);
+        this.out = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+    }
+
+    public void logInsert(@NotNull String tableName, @NotNull Row row) throws IOException {
+        payload.writeByte(INSERT);
+        payload.writeUTF(tableName);
+        RowCodec.writeRow(payload, row);
+        appendRecord();
+    }
+
+    public void logUpdate(@NotNull String tableName, int rowIndex, @NotNull Row row) throws IOException {
+        payload.writeByte(UPDATE);
+        payload.writeUTF(tableName);
+        payload.writeInt(rowIndex);
+        RowCodec.writeRow(payload, row);
+        appendRecord();
+    }
+
+    public void logDelete(@NotNull String tableName, int rowIndex) throws IOException {
+        payload.writeByte(DELETE);
+        payload.writeUTF(tableName);
+        payload.writeInt(rowIndex);
+        appendRecord();
+    }
+
+    /**
+     * 是否有尚未提交的记录。
+     */
+    public boolean hasPending() {
+        return pendingBytes.size() > 0;
+    }
+
+    /**
+     * 将当前语句的记录连同 COMMIT 记录一起写入日志，并 fsync。
+     */
+    public void commit() throws IOException {
+        if (!hasPending()) return;
+        payload.writeByte(COMMIT);
+        appendRecord();
+        pendingBytes.writeTo(out);
+        pendingBytes.reset();
+        out.flush();
+        fileOutputStream.getChannel().force(false);
+    }
+
+    /**
+     * 丢弃尚未提交的记录。
+     */
+    public void discard() {
+        pendingBytes.reset();
+    }
+
+    /**
+     * 日志文件的大小，不包括尚未提交的记录。
+     */
+    public long size() throws IOException {
+        return fileOutputStream.getChannel().size();
+    }
+
+    /**
+     * checkpoint 之后调用，清空日志。
+     */
+    public void truncate() throws IOException {
+        discard();
+        out.flush();
+        FileChannel channel = fileOutputStream.getChannel();
+        channel.truncate(0);
+        channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void appendRecord() throws IOException {
+        byte[] bytes = payloadBytes.toByteArray();
+        payloadBytes.reset();
+        crc32.reset();
+        crc32.update(bytes, 0, bytes.length);
+        pending.writeInt(bytes.length);
+        pending.writeInt((int) crc32.getValue());
+        pending.write(bytes);
+    }
+
+    /**
+     * 重放 dbDir 下的日志，只有完整提交了的语句才会被交给 handler，
+     * 日志末尾损坏或未提交的部分会被截掉。
+     *
+     * @return 重放的语句数
+     */
+    public static int replay(@NotNull File dbDir, @NotNull Handler handler) throws IOException {
+        File file = new File(Objects.requireNonNull(dbDir), FILE_NAME);
+        if (!file.exists()) return 0;
+
+        int committed = 0;
+        long validLength = 0;
+        long position = 0;
+        List<byte[]> batch = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            CRC32 crc32 = new CRC32();
+            while (true) {
+                byte[] bytes;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length <= 0) break;
+                    bytes = new byte[length];
+                    in.readFully(bytes);
+                    crc32.reset();
+                    crc32.update(bytes, 0, bytes.length);
+                    if ((int) crc32.getValue() != checksum) break;
+                    position += 8 + length;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (bytes[0] == COMMIT) {
+                    for (byte[] record : batch) {
+                        apply(record, handler);
+                    }
+                    batch.clear();
+                    committed++;
+                    validLength = position;
+                } else {
+                    batch.add(bytes);
+                }
+            }
+        }
+
+        if (validLength < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.getChannel().truncate(validLength);
+            }
+        }
+        return committed;
+    }
+
+    private static void apply(byte[] record, Handler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        String tableName = in.readUTF();
+        switch (type) {
+            case INSERT:
+                handler.insert(tableName, RowCodec.readRow(in));
+                break;
+            case UPDATE:
+                int updateIndex = in.readInt();
+                handler.update(tableName, updateIndex, RowCodec.readRow(in));
+                break;
+            case DELETE:
+                handler.delete(tableName, in.readInt());
+                break;
+            default:
+                throw new IOException("invalid log record type " + type);
+        }
+    }
+
+    /**
+     * 重放日志时的回调。
+     */
+    public interface Handler {
+
+        void insert(String tableName, Row row) throws IOException;
+
+        void update(String tableName, int rowIndex, Row row) throws IOException;
+
+        void delete(String tableName, int rowIndex) throws IOException;
+    }
+}
@@ -2,6 +2,8 @@ package com.github.afkbrb.sql.visitors;
 
 import com.github.afkbrb.sql.SQLExecuteException;
 import com.github.afkbrb.sql.ast.expressions.*;
+import com.github.afkbrb.sql.ast.expressions.BinaryExpression.BinaryOperatorType;
+import com.github.afkbrb.sql.ast.expressions.UnaryExpression.UnaryOperationType;
 import com.github.afkbrb.sql.ast.statements.SelectStatement;
 import com.github.afkbrb.sql.executors.SelectExecutor;
 import com.github.afkbrb.sql.model.*;
@@ -37,6 +39,10 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
         TypedValue target = node.getTarget().accept(this);
         TypedValue left = node.getLeft().accept(this);
         TypedValue right = node.getRight().accept(this);
+        return between(target, left, right);
+    }
+
+    static TypedValue between(TypedValue target, TypedValue left, TypedValue right) {
         if (isErrorOrNull(target)) return target;
         if (isErrorOrNull(left)) return left;
         if (isErrorOrNull(right)) return right;
@@ -59,13 +65,17 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
     public TypedValue visit(BinaryExpression node) {
         TypedValue left = node.getLeft().accept(this);
         TypedValue right = node.getRight().accept(this);
+        return binary(node.getOp(), left, right);
+    }
+
+    static TypedValue binary(BinaryOperatorType op, TypedValue left, TypedValue right) {
         if (isErrorOrNull(left)) return left;
         if (isErrorOrNull(right)) return right;
         if (isNumber(left) && isNumber(right)) {
             double leftVal = ((Number) left.getValue()).doubleValue();
             double rightVal = ((Number) right.getValue()).doubleValue();
             double result;
-            switch (node.getOp()) {
+            switch (op) {
                 case ADD:
                     result = leftVal + rightVal;
                     break;
@@ -98,7 +108,7 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
                     result = toInt(leftVal != rightVal);
                     break;
                 default:
-                    return new EvaluateError("unexpected binary operator %s", node.getOp().name());
+                    return new EvaluateError("unexpected binary operator %s", op.name());
             }
 
             if (isInt(left) && isInt(right)) {
@@ -109,12 +119,12 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
         } else if (isString(left) && isString(right)) {
             String leftStr = (String) left.getValue();
             String rightStr = (String) right.getValue();
-            switch (node.getOp()) {
+            switch (op) {
                 case ADD:
                 case MINUS:
                 case MULT:
                 case DIV:
-                    return new EvaluateError("operator %s cannot be used on string", node.getOp());
+                    return new EvaluateError("operator %s cannot be used on string", op);
                 case LT:
                     return new TypedValue(INT, toInt(leftStr.compareTo(rightStr) < 0));
                 case GT:
@@ -210,7 +220,7 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
         return table;
     }
 
-    private static TypedValue inList(TypedValue target, List<TypedValue> typedValueList) {
+    static TypedValue inList(TypedValue target, List<TypedValue> typedValueList) {
         if (isString(target)) {
             String targetStr = (String) target.getValue();
             for (TypedValue typedValue : typedValueList) {
@@ -289,9 +299,12 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
 
     @Override
     public TypedValue visit(IsNullExpression node) {
-        TypedValue typedValue = node.getExpression().accept(this);
+        return isNull(node.isNot(), node.getExpression().accept(this));
+    }
+
+    static TypedValue isNull(boolean not, TypedValue typedValue) {
         if (isError(typedValue)) return typedValue;
-        if (node.isNot()) {
+        if (not) {
             return new TypedValue(INT, toInt(typedValue.getDataType() != NULL));
         } else {
             return new TypedValue(INT, toInt(typedValue.getDataType() == NULL));
@@ -302,28 +315,20 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
     public TypedValue visit(LikeExpression node) {
         TypedValue left = node.getLeft().accept(this);
         TypedValue right = node.getRight().accept(this);
+        return like(node.isNot(), left, right);
+    }
+
+    static TypedValue like(boolean not, TypedValue left, TypedValue right) {
         if (isErrorOrNull(left)) return left;
         if (isErrorOrNull(right)) return right;
         if (isString(left) && isString(right)) {
             String leftStr = (String) left.getValue();
             String rightStr = (String) right.getValue();
-            for (int i = 0; i < rightStr.length(); i++) {
-                if (rightStr.charAt(i) == '\\') { // \ 只能以 \\ \_ \% d的形式出现
-                    if (i + 1 < rightStr.length()) {
-                        char next = rightStr.charAt(i + 1);
-                        if (next == '\\' || next == '_' || next == '%') {
-                            i++;
-                        } else {
-                            return new EvaluateError("invalid escape '\\%c'", next);
-                        }
-                    } else {
-                        return new EvaluateError("the character to be escaped is missing");
-                    }
-                }
-            }
+            String error = checkLikePattern(rightStr);
+            if (error != null) return new EvaluateError("%s", error);
             try {
                 boolean result = like(leftStr, rightStr);
-                return new TypedValue(INT, toInt(node.isNot() != result));
+                return new TypedValue(INT, toInt(not != result));
             } catch (Exception e) {
                 return new EvaluateError(e.getMessage());
             }
@@ -331,9 +336,37 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
         return new EvaluateError("like expects two strings");
     }
 
+    /**
+     * 检查 like 模式中的转义是否合法，合法的话返回 null，否则返回错误信息。
+     */
+    @Nullable
+    public static String checkLikePattern(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == '\\') { // \ 只能以 \\ \_ \% d的形式出现
+                if (i + 1 < pattern.length()) {
+                    char next = pattern.charAt(i + 1);
+                    if (next == '\\' || next == '_' || next == '%') {
+                        i++;
+                    } else {
+                        return String.format("invalid escape '\\%c'", next);
+                    }
+                } else {
+                    return "the character to be escaped is missing";
+                }
+            }
+        }
+        return null;
+    }
+
     public static boolean like(String left, String right) {
-        // 调用时保证了 right 是合法的
-        String regex = right.replace("\\", "\\\\")
+        return left.matches(likeRegex(right)); // 完全匹配，符合 like 语义
+    }
+
+    /**
+     * 把 like 模式转换成等价的正则表达式，调用时保证了 right 是合法的。
+     */
+    public static String likeRegex(String right) {
+        return right.replace("\\", "\\\\")
                 .replace(".", "\\.")
                 .replace("*", "\\*")
                 .replaceAll("(?<!\\\\\\\\)_", ".")
@@ -351,13 +384,16 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
                 .replace("$", "\\$")
                 .replace("?", "\\?")
                 .replace("+", "\\+");
-        return left.matches(regex); // 完全匹配，符合 like 语义
     }
 
     @Override
     public TypedValue visit(RegexpExpression node) {
         TypedValue left = node.getLeft().accept(this);
         TypedValue right = node.getRight().accept(this);
+        return regexp(node.isNot(), left, right);
+    }
+
+    static TypedValue regexp(boolean not, TypedValue left, TypedValue right) {
         if (isErrorOrNull(left)) return left;
         if (isErrorOrNull(right)) return right;
         if (isString(left) && isString(right)) {
@@ -369,7 +405,7 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
             String regex = ".*" + rightStr + ".*";
             try {
                 boolean result = leftStr.matches(regex);
-                return new TypedValue(INT, toInt(node.isNot() != result));
+                return new TypedValue(INT, toInt(not != result));
             } catch (Exception e) {
                 return new EvaluateError(e.getMessage());
             }
@@ -379,18 +415,21 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
 
     @Override
     public TypedValue visit(UnaryExpression node) {
-        TypedValue typedValue = node.getExpression().accept(this);
+        return unary(node.getOp(), node.getExpression().accept(this));
+    }
+
+    static TypedValue unary(UnaryOperationType op, TypedValue typedValue) {
         if (isErrorOrNull(typedValue)) return typedValue;
         if (isNumber(typedValue)) {
             double value = ((Number) typedValue.getValue()).doubleValue();
-            switch (node.getOp()) {
+            switch (op) {
                 case ADD:
                     break;
                 case MINUS:
                     value = -value;
                     break;
                 default:
-                    return new EvaluateError("unexpected unary operator %s", node.getOp().name());
+                    return new EvaluateError("unexpected unary operator %s", op.name());
             }
             if (isInt(typedValue)) {
                 return new TypedValue(INT, (int) value);
@@ -447,7 +486,10 @@ public abstract class AbstractEvaluator extends DefaultVisitor<TypedValue> {
 
     @Override
     public TypedValue visit(NotExpression node) {
-        TypedValue typedValue = node.getExpression().accept(this);
+        return not(node.getExpression().accept(this));
+    }
+
+    static TypedValue not(TypedValue typedValue) {
         if (isErrorOrNull(typedValue)) return typedValue;
         if (isNumber(typedValue)) {
             double value = ((Number) typedValue.getValue()).doubleValue();
@@ -0,0 +1,494 @@
+package com.github.afkbrb.sql.visitors;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.*;
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.afkbrb.sql.model.DataType.DOUBLE;
+import static com.github.afkbrb.sql.model.DataType.INT;
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * 在运行时为表达式生成 JVM 字节码，生成的类在一个循环中直接读取列中的原始值求值，
+ * 整个表达式被展开在同一个方法里，JIT 可以把它当作普通代码编译、内联。
+ * <p>
+ * 只支持数值的列和常量、算术、比较、NOT/AND/OR、BETWEEN 和 IS NULL，其他表达式返回 null，由调用方退回到解释执行。
+ * 求值过程中值都是 double，INT 运算的结果按 RowEvaluator 的规则截断成整数；
+ * NULL 的传播通过跳转实现：子表达式为 NULL 时跳到最近的 IS NULL 或者外层循环的 NULL 处理，
+ * 因为所有的中间结果都先存到局部变量中，跳转时操作数栈总是空的。
+ */
+public class BytecodeGenerator extends DefaultVisitor<DataType> {
+
+    private static final AtomicInteger classCount = new AtomicInteger();
+
+    private static final String BASE_CLASS = Type.getInternalName(GeneratedEvaluator.class);
+    private static final String COLUMN_VECTOR = Type.getInternalName(ColumnVector.class);
+    private static final String INT_VECTOR = Type.getInternalName(IntVector.class);
+    private static final String DOUBLE_VECTOR = Type.getInternalName(DoubleVector.class);
+    private static final String EXCEPTION = Type.getInternalName(SQLExecuteException.class);
+
+    // evaluate 方法的参数和循环变量所在的局部变量
+    private static final int VECTORS = 1;
+    private static final int START = 2;
+    private static final int SEL = 3;
+    private static final int SIZE = 4;
+    private static final int VALUES = 5;
+    private static final int NULLS = 6;
+    private static final int I = 7;
+    private static final int POSITION = 8;
+    private static final int ROW = 9;
+    private static final int FIRST_TEMP = 10;
+
+    private final Table table;
+    private final MethodVisitor mv;
+    // 当前子表达式为 NULL 时跳转的目标
+    private Label nullLabel;
+    private int nextTemp = FIRST_TEMP;
+
+    private BytecodeGenerator(Table table, MethodVisitor mv) {
+        this.table = table;
+        this.mv = mv;
+    }
+
+    /**
+     * 为在 table 的列上求值的 expression 生成求值类，表达式中有不支持的部分时返回 null。
+     */
+    @Nullable
+    public static GeneratedEvaluator generate(@NotNull Expression expression, @NotNull Table table) {
+        String className = "com/github/afkbrb/sql/visitors/Generated$" + classCount.incrementAndGet();
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SYNTHETIC, className, null, BASE_CLASS, null);
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, BASE_CLASS, "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "evaluate", "([L" + COLUMN_VECTOR + ";I[II[D[Z)V", null, new String[]{EXCEPTION});
+        mv.visitCode();
+        BytecodeGenerator generator = new BytecodeGenerator(table, mv);
+        DataType dataType = generator.generateLoop(expression);
+        if (dataType == null) return null;
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        try {
+            Class<?> clazz = new GeneratedClassLoader().define(className.replace('/', '.'), cw.toByteArray());
+            GeneratedEvaluator evaluator = (GeneratedEvaluator) clazz.getConstructor().newInstance();
+            evaluator.setDataType(dataType);
+            return evaluator;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * <pre>
+     * for (i = 0; i < size; i++) {
+     *     position = sel[i]; row = start + position;
+     *     values[position] = 表达式; nulls[position] = false;  // 表达式为 NULL 时 nulls[position] = true
+     * }
+     * </pre>
+     */
+    private DataType generateLoop(Expression expression) {
+        Label loop = new Label();
+        Label end = new Label();
+        Label isNull = new Label();
+        Label next = new Label();
+
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, I);
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ILOAD, I);
+        mv.visitVarInsn(ILOAD, SIZE);
+        mv.visitJumpInsn(IF_ICMPGE, end);
+        mv.visitVarInsn(ALOAD, SEL);
+        mv.visitVarInsn(ILOAD, I);
+        mv.visitInsn(IALOAD);
+        mv.visitVarInsn(ISTORE, POSITION);
+        mv.visitVarInsn(ILOAD, START);
+        mv.visitVarInsn(ILOAD, POSITION);
+        mv.visitInsn(IADD);
+        mv.visitVarInsn(ISTORE, ROW);
+
+        nullLabel = isNull;
+        DataType dataType = expression.accept(this);
+        if (dataType == null) return null;
+        int result = newTemp();
+        mv.visitVarInsn(DSTORE, result);
+        mv.visitVarInsn(ALOAD, VALUES);
+        mv.visitVarInsn(ILOAD, POSITION);
+        mv.visitVarInsn(DLOAD, result);
+        mv.visitInsn(DASTORE);
+        mv.visitVarInsn(ALOAD, NULLS);
+        mv.visitVarInsn(ILOAD, POSITION);
+        mv.visitInsn(ICONST_0);
+        mv.visitInsn(BASTORE);
+        mv.visitJumpInsn(GOTO, next);
+
+        mv.visitLabel(isNull);
+        mv.visitVarInsn(ALOAD, NULLS);
+        mv.visitVarInsn(ILOAD, POSITION);
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(BASTORE);
+
+        mv.visitLabel(next);
+        mv.visitIincInsn(I, 1);
+        mv.visitJumpInsn(GOTO, loop);
+        mv.visitLabel(end);
+        mv.visitInsn(RETURN);
+        return dataType;
+    }
+
+    // 下面的 visit 方法在操作数栈为空时开始，正常结束时栈上留下一个 double，为 NULL 时跳转到 nullLabel（栈为空）。
+    // 返回结果的类型，不支持时返回 null。
+
+    @Override
+    public DataType visit(ColumnNameExpression node) {
+        Column column = resolve(node);
+        if (column == null) return null;
+        int columnIndex = column.getColumnIndex();
+        ColumnVector vector = table.getVector(columnIndex);
+        if (!(vector instanceof IntVector) && !(vector instanceof DoubleVector)) return null;
+
+        loadVector(columnIndex);
+        mv.visitVarInsn(ILOAD, ROW);
+        mv.visitMethodInsn(INVOKEVIRTUAL, COLUMN_VECTOR, "isNull", "(I)Z", false);
+        mv.visitJumpInsn(IFNE, nullLabel);
+        loadVector(columnIndex);
+        if (vector instanceof IntVector) {
+            mv.visitTypeInsn(CHECKCAST, INT_VECTOR);
+            mv.visitVarInsn(ILOAD, ROW);
+            mv.visitMethodInsn(INVOKEVIRTUAL, INT_VECTOR, "getInt", "(I)I", false);
+            mv.visitInsn(I2D);
+            return INT;
+        } else {
+            mv.visitTypeInsn(CHECKCAST, DOUBLE_VECTOR);
+            mv.visitVarInsn(ILOAD, ROW);
+            mv.visitMethodInsn(INVOKEVIRTUAL, DOUBLE_VECTOR, "getDouble", "(I)D", false);
+            return DOUBLE;
+        }
+    }
+
+    @Override
+    public DataType visit(IntExpression node) {
+        mv.visitLdcInsn((double) node.getValue());
+        return INT;
+    }
+
+    @Override
+    public DataType visit(DoubleExpression node) {
+        mv.visitLdcInsn(node.getValue());
+        return DOUBLE;
+    }
+
+    @Override
+    public DataType visit(BinaryExpression node) {
+        DataType leftType = node.getLeft().accept(this);
+        if (leftType == null) return null;
+        int left = newTemp();
+        mv.visitVarInsn(DSTORE, left);
+        DataType rightType = node.getRight().accept(this);
+        if (rightType == null) return null;
+        int right = newTemp();
+        mv.visitVarInsn(DSTORE, right);
+        DataType resultType = leftType == INT && rightType == INT ? INT : DOUBLE;
+
+        switch (node.getOp()) {
+            case ADD:
+                arithmetic(left, right, DADD, resultType);
+                return resultType;
+            case MINUS:
+                arithmetic(left, right, DSUB, resultType);
+                return resultType;
+            case MULT:
+                arithmetic(left, right, DMUL, resultType);
+                return resultType;
+            case DIV:
+                Label nonZero = new Label();
+                mv.visitVarInsn(DLOAD, right);
+                mv.visitInsn(DCONST_0);
+                mv.visitInsn(DCMPL);
+                mv.visitJumpInsn(IFNE, nonZero);
+                throwException("division by 0");
+                mv.visitLabel(nonZero);
+                arithmetic(left, right, DDIV, resultType);
+                return resultType;
+            // 与 Java 的比较运算一致，有 NaN 时只有 != 为真；与 RowEvaluator 一致，比较结果的类型也取决于两边的类型
+            case GT:
+                compare(left, right, DCMPL, IFGT);
+                return resultType;
+            case LT:
+                compare(left, right, DCMPG, IFLT);
+                return resultType;
+            case EQ:
+                compare(left, right, DCMPL, IFEQ);
+                return resultType;
+            case LE:
+                compare(left, right, DCMPG, IFLE);
+                return resultType;
+            case GE:
+                compare(left, right, DCMPL, IFGE);
+                return resultType;
+            case NE:
+                compare(left, right, DCMPL, IFNE);
+                return resultType;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public DataType visit(UnaryExpression node) {
+        DataType dataType = node.getExpression().accept(this);
+        if (dataType == null) return null;
+        switch (node.getOp()) {
+            case ADD:
+                return dataType;
+            case MINUS:
+                mv.visitInsn(DNEG);
+                if (dataType == INT) truncate();
+                return dataType;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public DataType visit(NotExpression node) {
+        if (node.getExpression().accept(this) == null) return null;
+        mv.visitInsn(DCONST_0);
+        mv.visitInsn(DCMPL);
+        pushBoolean(IFEQ);
+        return INT;
+    }
+
+    @Override
+    public DataType visit(AndExpression node) {
+        return logical(node.getLeft(), node.getRight(), true);
+    }
+
+    @Override
+    public DataType visit(OrExpression node) {
+        return logical(node.getLeft(), node.getRight(), false);
+    }
+
+    /**
+     * 左边为 0（AND）或者不为 0（OR）时不再计算右边。
+     */
+    private DataType logical(Expression leftExpression, Expression rightExpression, boolean isAnd) {
+        if (leftExpression.accept(this) == null) return null;
+        Label evaluateRight = new Label();
+        Label end = new Label();
+        mv.visitInsn(DCONST_0);
+        mv.visitInsn(DCMPL);
+        mv.visitJumpInsn(isAnd ? IFNE : IFEQ, evaluateRight);
+        mv.visitInsn(isAnd ? DCONST_0 : DCONST_1);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(evaluateRight);
+        if (rightExpression.accept(this) == null) return null;
+        mv.visitInsn(DCONST_0);
+        mv.visitInsn(DCMPL);
+        pushBoolean(IFNE);
+        mv.visitLabel(end);
+        return INT;
+    }
+
+    @Override
+    public DataType visit(BetweenExpression node) {
+        if (node.getTarget().accept(this) == null) return null;
+        int target = newTemp();
+        mv.visitVarInsn(DSTORE, target);
+        if (node.getLeft().accept(this) == null) return null;
+        int left = newTemp();
+        mv.visitVarInsn(DSTORE, left);
+        if (node.getRight().accept(this) == null) return null;
+        int right = newTemp();
+        mv.visitVarInsn(DSTORE, right);
+
+        Label isFalse = new Label();
+        Label end = new Label();
+        mv.visitVarInsn(DLOAD, target);
+        mv.visitVarInsn(DLOAD, left);
+        mv.visitInsn(DCMPL);
+        mv.visitJumpInsn(IFLT, isFalse);
+        mv.visitVarInsn(DLOAD, target);
+        mv.visitVarInsn(DLOAD, right);
+        mv.visitInsn(DCMPG);
+        mv.visitJumpInsn(IFGT, isFalse);
+        mv.visitInsn(DCONST_1);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(isFalse);
+        mv.visitInsn(DCONST_0);
+        mv.visitLabel(end);
+        return INT;
+    }
+
+    @Override
+    public DataType visit(IsNullExpression node) {
+        Label outerNullLabel = nullLabel;
+        Label isNull = new Label();
+        Label end = new Label();
+        nullLabel = isNull;
+        Expression child = node.getExpression();
+        Column column = child instanceof ColumnNameExpression ? resolve((ColumnNameExpression) child) : null;
+        if (column != null && !(table.getVector(column.getColumnIndex()) instanceof IntVector)
+                && !(table.getVector(column.getColumnIndex()) instanceof DoubleVector)) {
+            // 任意类型的列都可以判断是否为 NULL
+            loadVector(column.getColumnIndex());
+            mv.visitVarInsn(ILOAD, ROW);
+            mv.visitMethodInsn(INVOKEVIRTUAL, COLUMN_VECTOR, "isNull", "(I)Z", false);
+            mv.visitJumpInsn(IFNE, isNull);
+        } else {
+            if (child.accept(this) == null) return null;
+            mv.visitInsn(POP2);
+        }
+        nullLabel = outerNullLabel;
+        mv.visitInsn(node.isNot() ? DCONST_1 : DCONST_0);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(isNull);
+        mv.visitInsn(node.isNot() ? DCONST_0 : DCONST_1);
+        mv.visitLabel(end);
+        return INT;
+    }
+
+    @Override
+    public DataType visit(StringExpression node) {
+        return null;
+    }
+
+    @Override
+    public DataType visit(NullExpression node) {
+        return null;
+    }
+
+    @Override
+    public DataType visit(FunctionCallExpression node) {
+        return null;
+    }
+
+    @Override
+    public DataType visit(InListExpression node) {
+        return null;
+    }
+
+    @Override
+    public DataType visit(InSubQueryExpression node) {
+        return null;
+    }
+
+    @Override
+    public DataType visit(SubQueryExpression node) {
+        return null;
+    }
+
+    @Override
+    public DataType visit(LikeExpression node) {
+        return null;
+    }
+
+    @Override
+    public DataType visit(RegexpExpression node) {
+        return null;
+    }
+
+    @Override
+    public DataType visit(WildcardExpression node) {
+        return null;
+    }
+
+    @Nullable
+    private Column resolve(ColumnNameExpression node) {
+        try {
+            Schema schema = table.getSchema();
+            return node.getTableName() == null ? schema.getColumn(node.getColumnName())
+                    : schema.getColumn(node.getTableName(), node.getColumnName());
+        } catch (SQLExecuteException e) {
+            return null; // 有歧义的列名留给解释执行时报错
+        }
+    }
+
+    private void loadVector(int columnIndex) {
+        mv.visitVarInsn(ALOAD, VECTORS);
+        mv.visitLdcInsn(columnIndex);
+        mv.visitInsn(AALOAD);
+    }
+
+    private void arithmetic(int left, int right, int opcode, DataType resultType) {
+        mv.visitVarInsn(DLOAD, left);
+        mv.visitVarInsn(DLOAD, right);
+        mv.visitInsn(opcode);
+        if (resultType == INT) truncate();
+    }
+
+    private void compare(int left, int right, int cmpOpcode, int jumpOpcode) {
+        mv.visitVarInsn(DLOAD, left);
+        mv.visitVarInsn(DLOAD, right);
+        mv.visitInsn(cmpOpcode);
+        pushBoolean(jumpOpcode);
+    }
+
+    /**
+     * 根据栈顶的 int 和跳转条件压入 1.0 或 0.0。
+     */
+    private void pushBoolean(int jumpOpcode) {
+        Label isTrue = new Label();
+        Label end = new Label();
+        mv.visitJumpInsn(jumpOpcode, isTrue);
+        mv.visitInsn(DCONST_0);
+        mv.visitJumpInsn(GOTO, end);
+        mv.visitLabel(isTrue);
+        mv.visitInsn(DCONST_1);
+        mv.visitLabel(end);
+    }
+
+    /**
+     * 与 (int) 转换相同，INT 运算的结果先按 double 计算再截断。
+     */
+    private void truncate() {
+        mv.visitInsn(D2I);
+        mv.visitInsn(I2D);
+    }
+
+    private void throwException(String message) {
+        mv.visitTypeInsn(NEW, EXCEPTION);
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn(message);
+        mv.visitInsn(ICONST_0);
+        mv.visitTypeInsn(ANEWARRAY, Type.getInternalName(Object.class));
+        mv.visitMethodInsn(INVOKESPECIAL, EXCEPTION, "<init>", "(Ljava/lang/String;[Ljava/lang/Object;)V", false);
+        mv.visitInsn(ATHROW);
+    }
+
+    private int newTemp() {
+        int temp = nextTemp;
+        nextTemp += 2; // double 占两个位置
+        return temp;
+    }
+
+    /**
+     * 每个生成的类使用单独的类加载器，查询结束后可以连同类一起被回收。
+     */
+    private static class GeneratedClassLoader extends ClassLoader {
+
+        GeneratedClassLoader() {
+            super(GeneratedEvaluator.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.github.afkbrb.sql.visitors;
+
+import com.github.afkbrb.sql.model.EvaluateError;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.TypedValue;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 由 {@link ExpressionCompiler} 生成的表达式，可以在同一个 schema 的多行上反复求值。
+ */
+@FunctionalInterface
+public interface CompiledExpression {
+
+    /**
+     * 与 RowEvaluator 的结果相同，出错时返回 {@link EvaluateError}。
+     */
+    @NotNull
+    TypedValue evaluate(@NotNull Row row);
+}
@@ -13,6 +13,16 @@ public class DefaultVisitor<T> implements Visitor<T> {
         return null;
     }
 
+    @Override
+    public T visit(CreateIndexStatement node) {
+        return null;
+    }
+
+    @Override
+    public T visit(CopyStatement node) {
+        return null;
+    }
+
     @Override
     public T visit(DeleteStatement node) {
         if (node.getWhereCondition() != null) {
@@ -26,6 +36,11 @@ public class DefaultVisitor<T> implements Visitor<T> {
         return null;
     }
 
+    @Override
+    public T visit(DropIndexStatement node) {
+        return null;
+    }
+
     @Override
     public T visit(InsertStatement node) {
         node.getValueList().forEach(expression -> expression.accept(this));
@@ -0,0 +1,308 @@
+package com.github.afkbrb.sql.visitors;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.*;
+import com.github.afkbrb.sql.ast.expressions.BinaryExpression.BinaryOperatorType;
+import com.github.afkbrb.sql.ast.expressions.UnaryExpression.UnaryOperationType;
+import com.github.afkbrb.sql.functions.Function;
+import com.github.afkbrb.sql.functions.FunctionRegistry;
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static com.github.afkbrb.sql.model.DataType.INT;
+import static com.github.afkbrb.sql.utils.DataTypeUtils.*;
+
+/**
+ * 把表达式编译成 {@link CompiledExpression}，每个查询只编译一次。
+ * <p>
+ * 列名在编译时就解析为列下标，常量只创建一次，常量的 LIKE/REGEXP 模式预先编译好，
+ * 求值时不再遍历语法树、查找列名，也不用为每一行创建 RowEvaluator。
+ * 求值的结果与 RowEvaluator 完全相同，运算的语义都来自 AbstractEvaluator。
+ * 子查询需要把当前行压入上下文，仍然交给 RowEvaluator 逐行求值。
+ */
+public class ExpressionCompiler extends DefaultVisitor<CompiledExpression> {
+
+    private static final TypedValue TRUE = new TypedValue(INT, 1);
+    private static final TypedValue FALSE = new TypedValue(INT, 0);
+
+    private final InheritedContext context;
+    private final Schema schema;
+
+    private ExpressionCompiler(@Nullable InheritedContext context, @NotNull Schema schema) {
+        this.context = context;
+        this.schema = schema;
+    }
+
+    /**
+     * 编译在 schema 的行上求值的表达式，context 是外层查询的上下文。
+     */
+    @NotNull
+    public static CompiledExpression compile(@Nullable InheritedContext context, @NotNull Schema schema, @NotNull Expression expression) {
+        return expression.accept(new ExpressionCompiler(context, schema));
+    }
+
+    /**
+     * 编译后的表达式能否在多个线程中同时求值。子查询求值时要把当前行压入上下文，不能并发。
+     */
+    public static boolean isThreadSafe(@NotNull Expression expression) {
+        boolean[] threadSafe = {true};
+        expression.accept(new DefaultVisitor<Void>() {
+            @Override
+            public Void visit(SubQueryExpression node) {
+                threadSafe[0] = false;
+                return null;
+            }
+
+            @Override
+            public Void visit(InSubQueryExpression node) {
+                threadSafe[0] = false;
+                return null;
+            }
+        });
+        return threadSafe[0];
+    }
+
+    @Override
+    public CompiledExpression visit(ColumnNameExpression node) {
+        String tableName = node.getTableName();
+        String columnName = node.getColumnName();
+        Column column;
+        try {
+            column = tableName == null ? schema.getColumn(columnName) : schema.getColumn(tableName, columnName);
+        } catch (SQLExecuteException e) {
+            return error(new EvaluateError(e.getMessage()));
+        }
+        if (column != null) {
+            int columnIndex = column.getColumnIndex();
+            return row -> row.getCell(columnIndex).getTypedValue();
+        }
+
+        EvaluateError notFound = new EvaluateError("cannot find column with name %s", node);
+        if (context == null) return error(notFound);
+        // 外层查询的值随外层的行变化，每次求值时查找
+        return row -> {
+            try {
+                TypedValue typedValue = tableName == null ? context.getTypedValue(columnName) : context.getTypedValue(tableName, columnName);
+                return typedValue != null ? typedValue : notFound;
+            } catch (SQLExecuteException e) {
+                return new EvaluateError(e.getMessage());
+            }
+        };
+    }
+
+    @Override
+    public CompiledExpression visit(IntExpression node) {
+        return constant(new TypedValue(INT, node.getValue()));
+    }
+
+    @Override
+    public CompiledExpression visit(DoubleExpression node) {
+        return constant(new TypedValue(DataType.DOUBLE, node.getValue()));
+    }
+
+    @Override
+    public CompiledExpression visit(StringExpression node) {
+        return constant(new TypedValue(DataType.STRING, node.getText()));
+    }
+
+    @Override
+    public CompiledExpression visit(NullExpression node) {
+        return constant(TypedValue.NULL);
+    }
+
+    @Override
+    public CompiledExpression visit(WildcardExpression node) {
+        return error(new EvaluateError("unexpected wildcard expression %s", node.toString()));
+    }
+
+    @Override
+    public CompiledExpression visit(BinaryExpression node) {
+        BinaryOperatorType op = node.getOp();
+        CompiledExpression left = node.getLeft().accept(this);
+        CompiledExpression right = node.getRight().accept(this);
+        return row -> AbstractEvaluator.binary(op, left.evaluate(row), right.evaluate(row));
+    }
+
+    @Override
+    public CompiledExpression visit(UnaryExpression node) {
+        UnaryOperationType op = node.getOp();
+        CompiledExpression child = node.getExpression().accept(this);
+        return row -> AbstractEvaluator.unary(op, child.evaluate(row));
+    }
+
+    @Override
+    public CompiledExpression visit(NotExpression node) {
+        CompiledExpression child = node.getExpression().accept(this);
+        return row -> AbstractEvaluator.not(child.evaluate(row));
+    }
+
+    @Override
+    public CompiledExpression visit(IsNullExpression node) {
+        boolean not = node.isNot();
+        CompiledExpression child = node.getExpression().accept(this);
+        return row -> AbstractEvaluator.isNull(not, child.evaluate(row));
+    }
+
+    @Override
+    public CompiledExpression visit(BetweenExpression node) {
+        CompiledExpression target = node.getTarget().accept(this);
+        CompiledExpression left = node.getLeft().accept(this);
+        CompiledExpression right = node.getRight().accept(this);
+        return row -> AbstractEvaluator.between(target.evaluate(row), left.evaluate(row), right.evaluate(row));
+    }
+
+    @Override
+    public CompiledExpression visit(AndExpression node) {
+        CompiledExpression left = node.getLeft().accept(this);
+        CompiledExpression right = node.getRight().accept(this);
+        // 逻辑短路
+        return row -> {
+            TypedValue leftValue = left.evaluate(row);
+            if (isErrorOrNull(leftValue)) return leftValue;
+            if (!isNumber(leftValue)) return new EvaluateError("expected two numbers");
+            if (((Number) leftValue.getValue()).doubleValue() == 0) return FALSE;
+            return logical(right.evaluate(row));
+        };
+    }
+
+    @Override
+    public CompiledExpression visit(OrExpression node) {
+        CompiledExpression left = node.getLeft().accept(this);
+        CompiledExpression right = node.getRight().accept(this);
+        // 逻辑短路
+        return row -> {
+            TypedValue leftValue = left.evaluate(row);
+            if (isErrorOrNull(leftValue)) return leftValue;
+            if (!isNumber(leftValue)) return new EvaluateError("expected two numbers");
+            if (((Number) leftValue.getValue()).doubleValue() != 0) return TRUE;
+            return logical(right.evaluate(row));
+        };
+    }
+
+    private static TypedValue logical(TypedValue right) {
+        if (isErrorOrNull(right)) return right;
+        if (!isNumber(right)) return new EvaluateError("expected two numbers");
+        return ((Number) right.getValue()).doubleValue() != 0 ? TRUE : FALSE;
+    }
+
+    @Override
+    public CompiledExpression visit(InListExpression node) {
+        CompiledExpression target = node.getTarget().accept(this);
+        List<CompiledExpression> list = compileAll(node.getList());
+        return row -> {
+            TypedValue targetValue = target.evaluate(row);
+            if (isError(targetValue)) return targetValue;
+            List<TypedValue> typedValueList = new ArrayList<>(list.size());
+            for (CompiledExpression expression : list) {
+                TypedValue typedValue = expression.evaluate(row);
+                if (isError(typedValue)) return typedValue;
+                typedValueList.add(typedValue);
+            }
+            return AbstractEvaluator.inList(targetValue, typedValueList);
+        };
+    }
+
+    @Override
+    public CompiledExpression visit(LikeExpression node) {
+        boolean not = node.isNot();
+        CompiledExpression left = node.getLeft().accept(this);
+        String pattern = constantString(node.getRight());
+        if (pattern != null && AbstractEvaluator.checkLikePattern(pattern) == null) {
+            CompiledExpression matcher = patternMatcher(not, left, AbstractEvaluator.likeRegex(pattern), "like expects two strings");
+            if (matcher != null) return matcher;
+        }
+        CompiledExpression right = node.getRight().accept(this);
+        return row -> AbstractEvaluator.like(not, left.evaluate(row), right.evaluate(row));
+    }
+
+    @Override
+    public CompiledExpression visit(RegexpExpression node) {
+        boolean not = node.isNot();
+        CompiledExpression left = node.getLeft().accept(this);
+        String pattern = constantString(node.getRight());
+        if (pattern != null) {
+            CompiledExpression matcher = patternMatcher(not, left, ".*" + pattern + ".*", "regexp expects two strings");
+            if (matcher != null) return matcher;
+        }
+        CompiledExpression right = node.getRight().accept(this);
+        return row -> AbstractEvaluator.regexp(not, left.evaluate(row), right.evaluate(row));
+    }
+
+    @Override
+    public CompiledExpression visit(FunctionCallExpression node) {
+        Function function = FunctionRegistry.getFunction(node.getFunctionName());
+        if (function == null) return error(new EvaluateError("Function %s not found", node.getFunctionName()));
+        if (function.isAggregate()) return error(new EvaluateError("invalid use of aggregate function %s", node.getFunctionName()));
+        List<CompiledExpression> argumentList = compileAll(node.getArgumentList());
+        return row -> {
+            List<TypedValue> arguments = new ArrayList<>(argumentList.size());
+            for (CompiledExpression argument : argumentList) {
+                TypedValue typedValue = argument.evaluate(row);
+                if (isError(typedValue)) return typedValue;
+                arguments.add(typedValue);
+            }
+            return function.call(arguments);
+        };
+    }
+
+    @Override
+    public CompiledExpression visit(SubQueryExpression node) {
+        return interpret(node);
+    }
+
+    @Override
+    public CompiledExpression visit(InSubQueryExpression node) {
+        return interpret(node);
+    }
+
+    private CompiledExpression interpret(Expression node) {
+        return row -> new RowEvaluator(context, schema, row).evaluate(node);
+    }
+
+    private List<CompiledExpression> compileAll(List<Expression> expressions) {
+        List<CompiledExpression> compiled = new ArrayList<>(expressions.size());
+        for (Expression expression : expressions) {
+            compiled.add(expression.accept(this));
+        }
+        return compiled;
+    }
+
+    /**
+     * 常量模式预先编译，左边的值不是字符串时报 typeError。模式不合法时返回 null，由 AbstractEvaluator 在求值时报错。
+     */
+    @Nullable
+    private static CompiledExpression patternMatcher(boolean not, CompiledExpression left, String regex, String typeError) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+        return row -> {
+            TypedValue leftValue = left.evaluate(row);
+            if (isErrorOrNull(leftValue)) return leftValue;
+            if (!isString(leftValue)) return new EvaluateError(typeError);
+            boolean matches = pattern.matcher((String) leftValue.getValue()).matches();
+            return not != matches ? TRUE : FALSE;
+        };
+    }
+
+    @Nullable
+    private static String constantString(Expression expression) {
+        return expression instanceof StringExpression ? ((StringExpression) expression).getText() : null;
+    }
+
+    private static CompiledExpression constant(TypedValue typedValue) {
+        return row -> typedValue;
+    }
+
+    private static CompiledExpression error(EvaluateError error) {
+        return row -> error;
+    }
+}
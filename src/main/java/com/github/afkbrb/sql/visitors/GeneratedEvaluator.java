@@ -0,0 +1,31 @@
+package com.github.afkbrb.sql.visitors;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.model.ColumnVector;
+import com.github.afkbrb.sql.model.DataType;
+
+/**
+ * 由 {@link BytecodeGenerator} 在运行时生成的表达式求值类的基类。
+ */
+public abstract class GeneratedEvaluator {
+
+    private DataType dataType;
+
+    /**
+     * 结果的类型，INT 或 DOUBLE。
+     */
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    void setDataType(DataType dataType) {
+        this.dataType = dataType;
+    }
+
+    /**
+     * 对 vectors 中第 start + sel[i] 行（i < size）求值，结果写到 values[sel[i]]，结果为 NULL 时 nulls[sel[i]] 为 true。
+     * INT 类型的结果也以 double 的形式写出，取值总是整数。
+     */
+    public abstract void evaluate(ColumnVector[] vectors, int start, int[] sel, int size,
+                                  double[] values, boolean[] nulls) throws SQLExecuteException;
+}
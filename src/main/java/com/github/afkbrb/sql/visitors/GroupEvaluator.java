@@ -0,0 +1,83 @@
+package com.github.afkbrb.sql.visitors;
+
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.ast.expressions.FunctionCallExpression;
+import com.github.afkbrb.sql.ast.expressions.InSubQueryExpression;
+import com.github.afkbrb.sql.ast.expressions.SubQueryExpression;
+import com.github.afkbrb.sql.functions.Function;
+import com.github.afkbrb.sql.functions.FunctionRegistry;
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.afkbrb.sql.utils.DataTypeUtils.isError;
+
+/**
+ * 在一个组上求值，聚集函数的结果已经由调用方流式地算好了，通过 aggregates 传入（以语法树节点为键）。
+ * 其他的列取组中的第一行，与 {@link RowsEvaluator} 的结果相同，但不需要保留组中的所有行。
+ */
+public class GroupEvaluator extends AbstractEvaluator {
+
+    private final Map<FunctionCallExpression, TypedValue> aggregates;
+
+    /**
+     * firstRow 是组中的第一行，组为空时传入 {@link Row#EMPTY_ROW}。
+     */
+    public GroupEvaluator(@Nullable InheritedContext context, @NotNull Schema schema, @NotNull Row firstRow,
+                          @NotNull Map<FunctionCallExpression, TypedValue> aggregates) {
+        super(context, schema, firstRow);
+        this.aggregates = aggregates;
+    }
+
+    @Override
+    public TypedValue visit(FunctionCallExpression node) {
+        Function function = FunctionRegistry.getFunction(node.getFunctionName());
+        if (function == null) return new EvaluateError("Function %s not found", node.getFunctionName());
+
+        if (function.isAggregate()) {
+            TypedValue typedValue = aggregates.get(node);
+            return typedValue != null ? typedValue : new EvaluateError("Aggregate function expects one argument");
+        }
+
+        List<TypedValue> arguments = new ArrayList<>();
+        for (Expression expression : node.getArgumentList()) {
+            TypedValue typedValue = expression.accept(this);
+            if (isError(typedValue)) return typedValue;
+            arguments.add(typedValue);
+        }
+        return function.call(arguments);
+    }
+
+    /**
+     * 找出 expression 中需要在组上累积的聚集函数调用（只有一个参数的），不包括子查询中的。
+     */
+    public static void collectAggregates(@NotNull Expression expression, @NotNull List<FunctionCallExpression> result) {
+        expression.accept(new DefaultVisitor<Void>() {
+            @Override
+            public Void visit(FunctionCallExpression node) {
+                Function function = FunctionRegistry.getFunction(node.getFunctionName());
+                if (function != null && function.isAggregate()) {
+                    // 参数中的聚集函数是不合法的，求值参数时会报错，不需要再往下找
+                    if (node.getArgumentList().size() == 1) result.add(node);
+                    return null;
+                }
+                return super.visit(node);
+            }
+
+            @Override
+            public Void visit(SubQueryExpression node) {
+                return null;
+            }
+
+            @Override
+            public Void visit(InSubQueryExpression node) {
+                node.getTarget().accept(this);
+                return null;
+            }
+        });
+    }
+}
@@ -4,6 +4,8 @@ import com.github.afkbrb.sql.ast.expressions.Expression;
 import com.github.afkbrb.sql.ast.expressions.FunctionCallExpression;
 import com.github.afkbrb.sql.ast.expressions.WildcardExpression;
 import com.github.afkbrb.sql.model.*;
+import com.github.afkbrb.sql.functions.Accumulator;
+import com.github.afkbrb.sql.functions.AggregateFunction;
 import com.github.afkbrb.sql.functions.Function;
 import com.github.afkbrb.sql.functions.FunctionRegistry;
 import org.jetbrains.annotations.NotNull;
@@ -38,14 +40,15 @@ public class RowsEvaluator extends AbstractEvaluator {
                 // 对 count(*) 特殊处理
                 return new TypedValue(INT, rows.size());
             }
-            List<TypedValue> aggregatedArguments = new ArrayList<>();
-            // 同一个表达式在不同 row 上进行求值，作为聚集函数的参数
+            // 同一个表达式在不同 row 上进行求值，逐个累积
+            CompiledExpression argument = ExpressionCompiler.compile(context, schema, expression);
+            Accumulator accumulator = ((AggregateFunction) function).init();
             for (Row row : rows) {
-                TypedValue typedValue = new RowEvaluator(context, schema, row).evaluate(expression);
+                TypedValue typedValue = argument.evaluate(row);
                 if (isError(typedValue)) return typedValue;
-                aggregatedArguments.add(typedValue);
+                accumulator.accumulate(typedValue);
             }
-            return function.call(aggregatedArguments);
+            return accumulator.finish();
         } else {
             List<TypedValue> arguments = new ArrayList<>();
             for (Expression expression : node.getArgumentList()) {
@@ -4,6 +4,7 @@ import com.github.afkbrb.sql.ast.Node;
 import com.github.afkbrb.sql.ast.expressions.*;
 import com.github.afkbrb.sql.ast.statements.*;
 import com.github.afkbrb.sql.ast.statements.SelectStatement.*;
+import com.github.afkbrb.sql.model.Index;
 import com.github.afkbrb.sql.utils.Pair;
 
 import java.util.List;
@@ -37,11 +38,27 @@ public class ToStringVisitor extends DefaultVisitor<Void> {
             if (first) first = false;
             else sb.append(", ");
             sb.append(columnDefinition.getColumnName()).append(" ").append(columnDefinition.getColumnType());
+            if (columnDefinition.getConstraint() == Index.Constraint.PRIMARY_KEY) sb.append(" PRIMARY KEY");
+            else if (columnDefinition.getConstraint() == Index.Constraint.UNIQUE) sb.append(" UNIQUE");
         }
         sb.append(")");
         return null;
     }
 
+    @Override
+    public Void visit(CreateIndexStatement node) {
+        sb.append("CREATE INDEX ").append(node.getIndexName()).append(" ON ").append(node.getTableName())
+                .append("(").append(node.getColumnName()).append(") USING ").append(node.getIndexType());
+        return null;
+    }
+
+    @Override
+    public Void visit(CopyStatement node) {
+        sb.append("COPY ").append(node.getTableName()).append(" FROM ");
+        new StringExpression(node.getFilename()).accept(this);
+        return null;
+    }
+
     @Override
     public Void visit(DeleteStatement node) {
         sb.append("DELETE FROM ").append(node.getTableName());
@@ -58,6 +75,12 @@ public class ToStringVisitor extends DefaultVisitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visit(DropIndexStatement node) {
+        sb.append("DROP INDEX ").append(node.getIndexName());
+        return null;
+    }
+
     @Override
     public Void visit(InsertStatement node) {
         sb.append("INSERT INTO ").append(node.getTableName()).append(" ");
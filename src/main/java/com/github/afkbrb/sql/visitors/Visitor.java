@@ -6,12 +6,18 @@ import com.github.afkbrb.sql.ast.statements.SelectStatement.*;
 
 public interface Visitor<T> {
 
+    T visit(CopyStatement node);
+
     T visit(CreateStatement node);
 
+    T visit(CreateIndexStatement node);
+
     T visit(DeleteStatement node);
 
     T visit(DropStatement node);
 
+    T visit(DropIndexStatement node);
+
     T visit(InsertStatement node);
 
     T visit(SelectStatement node);
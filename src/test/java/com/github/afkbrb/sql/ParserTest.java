@@ -16,6 +16,19 @@ public class ParserTest {
         Parser parser = new Parser(lexer);
         List<Statement> statementList = parser.statementList();
         Assert.assertEquals("CREATE TABLE table1(id INT, name STRING, age INT, grade DOUBLE);", statementList.get(0).toString());
+
+        statement = "create table table2 (id int primary key, name string unique, age int);";
+        statementList = new Parser(new Lexer(new StringReader(statement))).statementList();
+        Assert.assertEquals("CREATE TABLE table2(id INT PRIMARY KEY, name STRING UNIQUE, age INT);", statementList.get(0).toString());
+    }
+
+    @Test
+    public void copyTest() throws SQLParseException {
+        String statement = "copy table1 from 'data/table1.csv';";
+        Lexer lexer = new Lexer(new StringReader(statement));
+        Parser parser = new Parser(lexer);
+        List<Statement> statementList = parser.statementList();
+        Assert.assertEquals("COPY table1 FROM 'data/table1.csv';", statementList.get(0).toString());
     }
 
     @Test
@@ -27,6 +40,18 @@ public class ParserTest {
         Assert.assertEquals("DROP TABLE table1;", statementList.get(0).toString());
     }
 
+    @Test
+    public void indexTest() throws SQLParseException {
+        String statement = "create index idx_id on table1 (id); create index idx_name on table1 (name) using btree; drop index idx_id; create index idx_age on table1 (age) using Bitmap;";
+        Lexer lexer = new Lexer(new StringReader(statement));
+        Parser parser = new Parser(lexer);
+        List<Statement> statementList = parser.statementList();
+        Assert.assertEquals("CREATE INDEX idx_id ON table1(id) USING HASH;", statementList.get(0).toString());
+        Assert.assertEquals("CREATE INDEX idx_name ON table1(name) USING BTREE;", statementList.get(1).toString());
+        Assert.assertEquals("DROP INDEX idx_id;", statementList.get(2).toString());
+        Assert.assertEquals("CREATE INDEX idx_age ON table1(age) USING BITMAP;", statementList.get(3).toString());
+    }
+
     @Test
     public void insertTest() throws SQLParseException {
         String statement = "insert into table1 (id, name, age, grade) values (1 + 1 * 1 / 1 - 1, '渣渣辉', 2333 + 6666, 2333.6666);";
@@ -0,0 +1,284 @@
+package com.github.afkbrb.sql;
+
+import com.github.afkbrb.sql.executors.ExecutorTest;
+import com.github.afkbrb.sql.model.DataType;
+import com.github.afkbrb.sql.model.Index;
+import com.github.afkbrb.sql.model.Table;
+import com.github.afkbrb.sql.model.TypedValue;
+import com.github.afkbrb.sql.storage.StorageFormat;
+import com.github.afkbrb.sql.storage.WriteAheadLog;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class TableManagerTest extends ExecutorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void close() throws IOException {
+        TableManager.getInstance().close();
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void walTest() throws Exception {
+        File dbDir = folder.newFolder();
+        TableManager manager = TableManager.getInstance();
+        manager.setDbDir(dbDir);
+        manager.loadTables();
+
+        execute("create table student (id int, name string, grade double)");
+        execute("insert into student values (1, '张三', 66.6)");
+        execute("insert into student values (2, 'afkbrb', 90.01)");
+        execute("insert into student values (3, 'squanchy', null)");
+        execute("update student set grade = 100 where id = 2");
+        execute("delete from student where id = 1");
+
+        // insert/update/delete 只追加日志，不会重写表文件
+        File csv = new File(dbDir, "student.csv");
+        assertEquals(2, Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8).size());
+        assertTrue(new File(dbDir, WriteAheadLog.FILE_NAME).length() > 0);
+
+        // 重新加载时重放日志
+        manager.loadTables();
+        Table student = manager.getTable("student");
+        assertEquals(2, student.getRowCount());
+        assertEquals(2, student.getRow(0).getCell(0).getTypedValue().getValue());
+        assertEquals(100.0, student.getRow(0).getCell(2).getTypedValue().getValue());
+        assertEquals(3, student.getRow(1).getCell(0).getTypedValue().getValue());
+
+        // 重放后已经做过 checkpoint，日志被折叠进了表文件
+        assertEquals(0, new File(dbDir, WriteAheadLog.FILE_NAME).length());
+        assertEquals(4, Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void checkpointThresholdTest() throws Exception {
+        File dbDir = folder.newFolder();
+        TableManager manager = TableManager.getInstance();
+        manager.setDbDir(dbDir);
+        manager.loadTables();
+        manager.setCheckpointThreshold(1);
+        try {
+            execute("create table t (id int)");
+            execute("insert into t values (1)");
+            assertEquals(0, new File(dbDir, WriteAheadLog.FILE_NAME).length());
+            assertEquals(3, Files.readAllLines(new File(dbDir, "t.csv").toPath(), StandardCharsets.UTF_8).size());
+        } finally {
+            manager.setCheckpointThreshold(16 * 1024 * 1024);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void storageFormatTest() throws Exception {
+        File dbDir = folder.newFolder();
+        TableManager manager = TableManager.getInstance();
+        manager.setDbDir(dbDir);
+        manager.loadTables();
+        manager.setDefaultFormat(StorageFormat.BINARY);
+
+        execute("create table student (id int, name string)");
+        execute("insert into student values (1, '张三')");
+        execute("insert into student values (2, null)");
+        manager.checkpoint();
+        assertTrue(new File(dbDir, "student.tbl").exists());
+        assertFalse(new File(dbDir, "student.csv").exists());
+
+        // 默认格式按数据库保存，重新加载后仍然有效
+        manager.loadTables();
+        assertEquals(StorageFormat.BINARY, manager.getDefaultFormat());
+        assertEquals(StorageFormat.BINARY, manager.getTableFormat("student"));
+        assertEquals(2, manager.getTable("student").getRowCount());
+
+        // 单张表可以换回 csv
+        manager.setTableFormat("student", StorageFormat.CSV);
+        assertFalse(new File(dbDir, "student.tbl").exists());
+        assertTrue(new File(dbDir, "student.csv").exists());
+
+        // csv 导入导出
+        File exported = folder.newFile("exported.csv");
+        manager.exportTable("student", exported);
+        manager.importTable(exported, "copy");
+        assertEquals(StorageFormat.BINARY, manager.getTableFormat("copy"));
+        assertEquals(manager.getTable("student").getRows().toString(), manager.getTable("copy").getRows().toString());
+        assertTrue(new File(dbDir, "copy.tbl").exists());
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void storageFormatWithLogTest() throws Exception {
+        File dbDir = folder.newFolder();
+        TableManager manager = TableManager.getInstance();
+        manager.setDbDir(dbDir);
+        manager.loadTables();
+        execute("create table t (id int)");
+        execute("insert into t values (1)");
+        execute("insert into t values (2)");
+        assertTrue(new File(dbDir, WriteAheadLog.FILE_NAME).length() > 0);
+
+        // 转换格式后马上崩溃：复制此刻的文件再加载，日志中的插入不能在新的表文件上重放第二次
+        manager.setTableFormat("t", StorageFormat.BINARY);
+        File crashDir = folder.newFolder();
+        for (File file : dbDir.listFiles()) {
+            Files.copy(file.toPath(), new File(crashDir, file.getName()).toPath());
+        }
+        manager.setDbDir(crashDir);
+        manager.loadTables();
+        assertEquals(StorageFormat.BINARY, manager.getTableFormat("t"));
+        assertEquals(2, manager.getTable("t").getRowCount());
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void lazyLoadTest() throws Exception {
+        File dbDir = folder.newFolder();
+        TableManager manager = TableManager.getInstance();
+        manager.setDbDir(dbDir);
+        manager.loadTables();
+        execute("create table a (id int, name string)");
+        execute("insert into a values (1, 'x')");
+        manager.setDefaultFormat(StorageFormat.BINARY);
+        execute("create table b (id int)");
+        execute("insert into b values (2)");
+
+        // 重新加载后只注册了表，没有解码数据
+        manager.loadTables();
+        assertFalse(manager.isLoaded("a"));
+        assertFalse(manager.isLoaded("b"));
+        assertTrue(manager.hasTable("A"));
+        assertEquals(2, manager.getTableNames().size());
+        assertEquals(2, manager.getColumns("a").size());
+        assertFalse(manager.isLoaded("a"));
+
+        // 第一次访问时才加载
+        assertEquals(1, manager.getTable("a").getRowCount());
+        assertTrue(manager.isLoaded("a"));
+        assertFalse(manager.isLoaded("b"));
+        execute("select * from b");
+        assertTrue(manager.isLoaded("b"));
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void indexTest() throws Exception {
+        File dbDir = folder.newFolder();
+        TableManager manager = TableManager.getInstance();
+        manager.setDbDir(dbDir);
+        manager.loadTables();
+        execute("create table a (id int, name string)");
+        execute("insert into a values (1, 'x')");
+        execute("insert into a values (2, 'y')");
+        execute("create index a_id on a (id)");
+        execute("create table b (id int)");
+        execute("create index b_id on b (id)");
+        execute("insert into a values (2, 'z')");
+
+        // 索引的定义被保存下来，表被加载时重建索引，日志中的修改也会反映到索引中
+        manager.loadTables();
+        assertTrue(manager.hasIndex("A_ID"));
+        assertFalse(manager.isLoaded("a"));
+        Table a = manager.getTable("a");
+        assertEquals(1, a.getIndexes().size());
+        assertArrayEquals(new int[]{1, 2}, a.getIndexes().get(0).lookup(new TypedValue(DataType.INT, 2)));
+
+        // 删除表或索引时删除索引的定义
+        execute("drop table b");
+        assertFalse(manager.hasIndex("b_id"));
+        execute("drop index a_id");
+        manager.loadTables();
+        assertFalse(manager.hasIndex("a_id"));
+        assertTrue(manager.getTable("a").getIndexes().isEmpty());
+        assertFalse(new File(dbDir, "indexes.properties").exists());
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void constraintTest() throws Exception {
+        File dbDir = folder.newFolder();
+        TableManager manager = TableManager.getInstance();
+        manager.setDbDir(dbDir);
+        manager.loadTables();
+        execute("create table a (id int primary key, name string unique)");
+        execute("insert into a values (1, 'x')");
+        manager.checkpoint();
+        execute("insert into a values (2, 'y')");
+
+        // 约束随索引的定义保存下来，重放日志之后仍然生效
+        manager.loadTables();
+        Table a = manager.getTable("a");
+        assertEquals(Index.Constraint.PRIMARY_KEY, a.getIndex(0, Index.Type.HASH).getConstraint());
+        assertEquals(Index.Constraint.UNIQUE, a.getIndex(1, Index.Type.HASH).getConstraint());
+        try {
+            execute("insert into a values (2, 'z')");
+            fail();
+        } catch (SQLExecuteException e) {
+            assertEquals("Duplicate entry '2' for key 'a_pkey'", e.getMessage());
+        }
+        assertEquals(2, a.getRowCount());
+    }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void indexFileTest() throws Exception {
+        File dbDir = folder.newFolder();
+        TableManager manager = TableManager.getInstance();
+        manager.setDbDir(dbDir);
+        manager.loadTables();
+        execute("create table a (id int, name string)");
+        for (int i = 0; i < 100; i++) {
+            execute("insert into a values (" + (i % 10) + ", 'n" + i + "')");
+        }
+        execute("create index a_id on a (id) using btree");
+        int[] expected = {3, 13, 23, 33, 43, 53, 63, 73, 83, 93};
+
+        // 表有还没折叠的日志，checkpoint 之后才写索引文件
+        File indexFile = new File(dbDir, "a.a_id.idx");
+        assertFalse(indexFile.exists());
+        manager.checkpoint();
+        assertTrue(indexFile.exists());
+
+        // 重新加载时直接读取索引文件，不重建
+        assertTrue(indexFile.setLastModified(1_000_000L));
+        manager.loadTables();
+        assertArrayEquals(expected, manager.getTable("a").getIndexes().get(0).lookup(new TypedValue(DataType.INT, 3)));
+        assertEquals(1_000_000L, indexFile.lastModified());
+
+        // 索引文件损坏时重建并重写
+        Files.write(indexFile.toPath(), new byte[]{1, 2, 3});
+        manager.loadTables();
+        assertArrayEquals(expected, manager.getTable("a").getIndexes().get(0).lookup(new TypedValue(DataType.INT, 3)));
+        assertTrue(indexFile.length() > 3);
+
+        // checkpoint 改写表文件时也重写索引文件
+        execute("delete from a where id = 3 and name < 'n50'");
+        manager.checkpoint();
+        assertTrue(indexFile.setLastModified(1_000_000L));
+        manager.loadTables();
+        assertArrayEquals(new int[]{48, 58, 68, 78, 88}, manager.getTable("a").getIndexes().get(0).lookup(new TypedValue(DataType.INT, 3)));
+
+        // 表文件的长度和修改时间都没变、内容变了时也要重建索引
+        File tableFile = new File(dbDir, "a.csv");
+        long lastModified = tableFile.lastModified();
+        String content = new String(Files.readAllBytes(tableFile.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("\n3,\"n53\"\n"));
+        Files.write(tableFile.toPath(), content.replace("\n3,\"n53\"\n", "\n4,\"n53\"\n").getBytes(StandardCharsets.UTF_8));
+        assertTrue(tableFile.setLastModified(lastModified));
+        manager.loadTables();
+        assertArrayEquals(new int[]{58, 68, 78, 88}, manager.getTable("a").getIndexes().get(0).lookup(new TypedValue(DataType.INT, 3)));
+
+        execute("drop index a_id");
+        assertFalse(indexFile.exists());
+    }
+}
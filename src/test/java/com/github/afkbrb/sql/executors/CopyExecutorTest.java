@@ -0,0 +1,60 @@
+package com.github.afkbrb.sql.executors;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.TableManager;
+import com.github.afkbrb.sql.model.Table;
+import com.github.afkbrb.sql.model.TypedValue;
+import com.github.afkbrb.sql.storage.CsvTableFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CopyExecutorTest extends ExecutorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void test() throws Exception {
+        execute("create table student (id int, name string, grade double)");
+        execute("insert into student values (0, 'first', 1.5)");
+
+        // 超过一块的数据
+        int rowCount = CsvTableFile.CHUNK_SIZE + 10;
+        List<String> lines = new ArrayList<>();
+        lines.add("\"ID\",\"name\",\"grade\"");
+        lines.add("\"INT\",\"STRING\",\"DOUBLE\"");
+        for (int i = 1; i <= rowCount; i++) {
+            lines.add(i + ",\"s," + i + "\"," + (i % 2 == 0 ? "" : i + ".5"));
+        }
+        File file = folder.newFile("student.csv");
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        execute("copy student from '" + file.getPath().replace("\\", "\\\\") + "'");
+
+        Table student = TableManager.getInstance().getTable("student");
+        assertEquals(rowCount + 1, student.getRowCount());
+        assertEquals("first", student.getRow(0).getCell(1).getTypedValue().getValue());
+        assertEquals(rowCount, student.getRow(rowCount).getCell(0).getTypedValue().getValue());
+        assertEquals("s,1", student.getRow(1).getCell(1).getTypedValue().getValue());
+        assertEquals(1.5, student.getRow(1).getCell(2).getTypedValue().getValue());
+        assertEquals(TypedValue.NULL, student.getRow(2).getCell(2).getTypedValue());
+    }
+
+    @Test(expected = SQLExecuteException.class)
+    public void columnMismatchTest() throws Exception {
+        execute("create table student (id int, name string)");
+        File file = folder.newFile("student.csv");
+        Files.write(file.toPath(), Arrays.asList("\"id\",\"grade\"", "\"INT\",\"DOUBLE\""), StandardCharsets.UTF_8);
+        execute("copy student from '" + file.getPath().replace("\\", "\\\\") + "'");
+    }
+}
@@ -19,14 +19,25 @@ public class ExecutorTest {
     protected static void execute(String statement) throws SQLParseException, SQLExecuteException, IOException {
         statement = statement.trim();
         Parser parser = new Parser(new Lexer(new StringReader(statement)));
-        String action = statement.split("\\s+")[0].toLowerCase();
+        String[] words = statement.split("\\s+");
+        String action = words[0].toLowerCase();
+        if (words.length > 1 && words[1].equalsIgnoreCase("index")) action += " index";
         switch (action) {
+            case "copy":
+                CopyExecutor.doCopy(parser.copyStatement());
+                break;
             case "create":
                 CreateExecutor.doCreate(parser.createStatement());
                 break;
             case "drop":
                 DropExecutor.doDrop(parser.dropStatement());
                 break;
+            case "create index":
+                IndexExecutor.doCreateIndex(parser.createIndexStatement());
+                break;
+            case "drop index":
+                IndexExecutor.doDropIndex(parser.dropIndexStatement());
+                break;
             case "insert":
                 InsertExecutor.doInsert(parser.insertStatement());
                 break;
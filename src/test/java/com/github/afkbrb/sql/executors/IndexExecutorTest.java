@@ -0,0 +1,268 @@
+package com.github.afkbrb.sql.executors;
+
+import com.github.afkbrb.sql.Lexer;
+import com.github.afkbrb.sql.Parser;
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.SQLParseException;
+import com.github.afkbrb.sql.TableManager;
+import com.github.afkbrb.sql.model.Index;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.Table;
+import com.github.afkbrb.sql.model.TypedValue;
+import com.github.afkbrb.sql.operators.BitmapCountOperator;
+import com.github.afkbrb.sql.operators.Operator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.INT;
+import static org.junit.Assert.*;
+
+public class IndexExecutorTest extends ExecutorTest {
+
+    @Test
+    public void createDropTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table student (id int, name string)");
+        execute("create index idx_id on student (id)");
+        Table student = TableManager.getInstance().getTable("student");
+        assertEquals(Index.Type.HASH, student.getIndexes().get(0).getType());
+        assertError("create index idx_id on student (name)", "index idx_id already exists");
+        assertError("create index idx_x on student (x)", "cannot find column x in table student");
+        assertError("create index idx_x on teacher (id)", "table teacher doesn't exist!");
+        execute("drop index idx_id");
+        assertTrue(student.getIndexes().isEmpty());
+        assertError("drop index idx_id", "index idx_id doesn't exist");
+    }
+
+    @Test
+    public void lookupTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table student (id int, name string, grade double)");
+        for (int i = 1; i <= 100; i++) {
+            execute("insert into student values (" + i % 10 + ", 'n" + i + "', " + i + ")");
+        }
+        execute("create index idx_id on student (id)");
+        execute("create index idx_name on student (name)");
+
+        // 只有索引找到的行才会被求值，其他行上的错误不会出现
+        assertEquals("[[n23], [n33]]", names("select name from student where id = 3 and grade > 20 and grade < 40 and 10 / (id - 1) > 0"));
+        assertEquals("[[n12], [n22]]", names("select name from student where 2.0 = id and grade > 10 and grade < 30"));
+        assertEquals("[[n1], [n3], [n11], [n13]]", names("select name from student where id in (3, 1, null, 1) and grade < 20"));
+        assertEquals("[[n42]]", names("select s.name from student s where s.name = 'n42'"));
+        assertEquals("[]", names("select name from student where id = null"));
+        assertEquals("[]", names("select name from student where id = 42"));
+        // IN 列表中的常量总是全部求值，出错时与逐行求值一样报错
+        assertError("select name from student where id in (3, 1 / 0)", "division by 0");
+        assertError("select name from student where id in ('x', 3, 'a' - 1)", "expected two numbers or two strings");
+        assertError("delete from student where id in (3, 1 / 0)", "division by 0");
+
+        // 用 update/delete 修改后索引仍然正确
+        execute("update student set id = 42 where id = 5 and grade > 50");
+        assertEquals("[[n55], [n65], [n75], [n85], [n95]]", names("select name from student where id = 42"));
+        execute("delete from student where id in (42, 7)");
+        assertEquals(85, TableManager.getInstance().getTable("student").getRowCount());
+        assertEquals("[]", names("select name from student where id = 42"));
+        assertEquals("[[n5], [n15], [n25], [n35], [n45]]", names("select name from student where id = 5"));
+        assertEquals("[[n8]]", names("select name from student where name = 'n8'"));
+        Index index = TableManager.getInstance().getTable("student").getIndexes().get(0);
+        for (int rowIndex : index.lookup(new TypedValue(INT, 9))) {
+            assertEquals(new TypedValue(INT, 9), TableManager.getInstance().getTable("student").getValue(rowIndex, 0));
+        }
+    }
+
+    @Test
+    public void rangeTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table student (id int, name string, grade double)");
+        for (int i = 1; i <= 100; i++) {
+            execute("insert into student values (" + (i % 7 == 0 ? "null" : String.valueOf(i % 10)) + ", 'n" + i + "', " + i + ")");
+        }
+        String[] queries = {
+                "select name from student where grade > 95",
+                "select name from student where 5.5 >= grade and grade > 3",
+                "select name from student where grade between 10 and 12.5 and grade < 12",
+                "select name from student where grade < 3 and grade < 2",
+                "select name from student where grade > null",
+                "select name from student where name like 'n1%'",
+                "select name from student where name like 'n1_' and name >= 'n15'",
+                "select name from student where name like 'n\\\\_%' or name < 'n11'",
+                "select name from student order by grade desc limit 3",
+                "select name from student where grade < 10 order by grade desc limit 3 offset 2",
+                "select name from student order by id limit 15",
+                "select name from student order by id desc limit 15",
+                "select name from student where id > 7 order by id desc limit 15",
+                "select name from student where id = 3 order by id desc limit 5",
+                "select name from student order by name limit 5",
+        };
+        List<String> expected = new ArrayList<>();
+        for (String query : queries) {
+            expected.add(names(query));
+        }
+        execute("create index idx_grade on student (grade) using btree");
+        execute("create index idx_name on student (name) using btree");
+        execute("create index idx_id on student (id) using btree");
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(queries[i], expected.get(i), names(queries[i]));
+        }
+
+        // 只有范围内的行才会被求值
+        assertEquals("[[n3], [n4], [n5]]", names("select name from student where grade between 3 and 5 and 10 / (grade - 1) > 0"));
+        assertEquals("[[n2], [n20], [n21], [n22], [n23], [n24]]", names("select name from student where name like 'n2%' and grade < 25 and 10 / (grade - 1) > 0"));
+        // 按索引的顺序读够了行就停下，排在后面的行不会被过滤
+        assertEquals("[[n100], [n99], [n98]]", names("select name from student where 10 / (grade - 1) > 0 order by grade desc limit 3"));
+        assertEquals("[[n1], [n2]]", names("select name from student where 10 / (grade - 100) < 0 order by grade limit 2"));
+
+        // 修改之后范围查找的结果仍然正确
+        execute("update student set grade = grade + 100 where grade between 20 and 29");
+        execute("delete from student where grade > 125 and grade < 180");
+        assertEquals("[[n20], [n21], [n22], [n23], [n24], [n25]]", names("select name from student where grade > 100 order by grade limit 10"));
+        assertEquals("[[n19], [n30]]", names("select name from student where grade > 18 and grade < 31"));
+    }
+
+    @Test
+    public void bitmapTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table person (id int, region string, status int)");
+        String[] regions = {"east", "west", "north"};
+        for (int i = 0; i < 300; i++) {
+            String region = i % 11 == 0 ? "null" : "'" + regions[i % 3] + "'";
+            String status = i % 13 == 0 ? "null" : String.valueOf(i % 4);
+            execute("insert into person values (" + i + ", " + region + ", " + status + ")");
+        }
+        String[] queries = {
+                "select id from person where region = 'east'",
+                "select id from person where region = 'east' and status = 1",
+                "select id from person where 'east' = region or status != 2.0",
+                "select id from person where not (region = 'west' or status = 3)",
+                "select id from person where region is not null and region in ('east', 'north', null, 1) and not status is null",
+                "select id from person where region is null or status is not null and region != 'north'",
+                "select id from person where status = null and region = 'east' or not (status = null) or status = 0",
+                "select id from person where region like 'e%' and (status = 1 or status in (2, 'x'))",
+                "select count(*) from person where region = 'east' and not status = 1",
+                "select count(*) as n from person where region != 'west' or status is null",
+                "select count(*) from person where status is not null and status in (1, 2) and id > 100",
+        };
+        List<String> expected = new ArrayList<>();
+        for (String query : queries) {
+            expected.add(names(query));
+        }
+        execute("create index person_region on person (region) using bitmap");
+        execute("create index person_status on person (status) using bitmap");
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(queries[i], expected.get(i), names(queries[i]));
+        }
+
+        // 条件整个都能在位图上算出来时，count(*) 直接数位图
+        assertTrue(plan(queries[8]) instanceof BitmapCountOperator);
+        assertTrue(plan(queries[9]) instanceof BitmapCountOperator);
+        assertFalse(plan(queries[10]) instanceof BitmapCountOperator);
+        // 只有候选行会被求值
+        assertEquals("[[1], [25]]", names("select id from person where status = 1 and region = 'west' and id < 30 and id / (id - 4) < 100"));
+
+        // 修改之后位图仍然正确
+        execute("update person set region = 'south', status = null where id / 7 * 7 = id");
+        execute("delete from person where status = 2 and region = 'north'");
+        execute("delete from person where id > 250");
+        List<String> actual = new ArrayList<>();
+        for (String query : queries) {
+            actual.add(names(query));
+        }
+        execute("drop index person_region");
+        execute("drop index person_status");
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(queries[i], names(queries[i]), actual.get(i));
+        }
+    }
+
+    @Test
+    public void constraintTest() throws SQLParseException, SQLExecuteException, IOException {
+        assertError("create table student (id int primary key, no int primary key)", "multiple primary keys for table student are not allowed");
+        assertFalse(TableManager.getInstance().hasTable("student"));
+        execute("create table course (id int)");
+        execute("create index student_pkey on course (id)"); // 名字被占用了
+        execute("create table student (id int primary key, name string unique, grade double)");
+        Table student = TableManager.getInstance().getTable("student");
+        assertEquals(2, student.getIndexes().size());
+        assertEquals(Index.Constraint.PRIMARY_KEY, student.getIndexes().get(0).getConstraint());
+        assertEquals("student_pkey1", student.getIndexes().get(0).getIndexName());
+        assertEquals(Index.Constraint.UNIQUE, student.getIndexes().get(1).getConstraint());
+        assertEquals("student_name_key", student.getIndexes().get(1).getIndexName());
+
+        execute("insert into student values (1, 'a', 90)");
+        execute("insert into student (id, grade) values (2, 80)");
+        execute("insert into student (id, grade) values (3, 70)"); // UNIQUE 的列可以有多个 NULL
+        assertError("insert into student values (1.0, 'b', 60)", "Duplicate entry '1' for key 'student_pkey1'");
+        assertError("insert into student values (4, 'a', 60)", "Duplicate entry 'a' for key 'student_name_key'");
+        assertError("insert into student (name) values ('b')", "Column 'id' cannot be null");
+        assertEquals(3, student.getRowCount());
+
+        // 把值改成自己原来的值不算重复
+        execute("update student set id = id, name = name");
+        execute("update student set name = 'c' where id = 2");
+        assertError("update student set name = 'c' where id = 3", "Duplicate entry 'c' for key 'student_name_key'");
+        assertError("update student set grade = 0, id = 1 where id = 3", "Duplicate entry '1' for key 'student_pkey1'");
+        // 出错时整行都不修改
+        assertEquals("[[1, a, 90.0], [2, c, 80.0], [3, null, 70.0]]", names("select * from student"));
+        execute("update student set id = id + 10 where id > 1");
+        assertEquals("[[c]]", names("select name from student where id = 12"));
+
+        assertError("drop index student_name_key", "cannot drop index student_name_key because a constraint requires it");
+        execute("drop table student");
+        assertFalse(TableManager.getInstance().hasIndex("student_pkey1"));
+    }
+
+    @Test
+    public void joinTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table course (id int, name string, teacher int)");
+        for (int i = 0; i < 200; i++) {
+            execute("insert into course values (" + (i % 150) + ", 'c" + i + "', " + (i % 3) + ")");
+        }
+        execute("create table choice (student string, cid int, teacher int)");
+        for (int i = 0; i < 20; i++) {
+            execute("insert into choice values ('s" + i + "', " + (i % 7 == 0 ? "null" : String.valueOf(i * 11)) + ", " + (i % 2) + ")");
+        }
+        String[] queries = {
+                "select choice.student, course.name from choice inner join course on choice.cid = course.id",
+                "select choice.student, course.name from choice left join course on course.id = choice.cid and course.name > 'c100'",
+                "select choice.student, course.name from choice left join course on choice.cid = course.id and choice.teacher = course.teacher",
+                "select x.student, y.name from (select * from choice where cid > 50) x inner join course y on x.cid = y.id where y.teacher = 1",
+        };
+        List<String> expected = new ArrayList<>();
+        for (String query : queries) {
+            expected.add(names(query));
+        }
+        execute("create index course_id on course (id)");
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(queries[i], expected.get(i), names(queries[i]));
+        }
+        execute("drop index course_id");
+        execute("create index course_id on course (id) using btree");
+        for (int i = 0; i < queries.length; i++) {
+            assertEquals(queries[i], expected.get(i), names(queries[i]));
+        }
+    }
+
+    private static Operator plan(String query) throws SQLParseException, SQLExecuteException {
+        return new SelectExecutor().plan(new Parser(new Lexer(new StringReader(query))).selectStatement(), "result");
+    }
+
+    private static String names(String query) throws SQLParseException, SQLExecuteException {
+        Table table = new SelectExecutor().doSelect(new Parser(new Lexer(new StringReader(query))).selectStatement());
+        List<List<Object>> values = new ArrayList<>();
+        for (Row row : table.getRows()) {
+            List<Object> rowValues = new ArrayList<>();
+            row.getCells().forEach(cell -> rowValues.add(cell.getTypedValue().getValue()));
+            values.add(rowValues);
+        }
+        return values.toString();
+    }
+
+    private static void assertError(String statement, String message) throws SQLParseException, IOException {
+        try {
+            execute(statement);
+            fail();
+        } catch (SQLExecuteException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -4,11 +4,23 @@ import com.github.afkbrb.sql.Lexer;
 import com.github.afkbrb.sql.Parser;
 import com.github.afkbrb.sql.SQLExecuteException;
 import com.github.afkbrb.sql.SQLParseException;
-import com.github.afkbrb.sql.model.Table;
+import com.github.afkbrb.sql.Settings;
+import com.github.afkbrb.sql.TableManager;
+import com.github.afkbrb.sql.model.*;
+import com.github.afkbrb.sql.operators.Operator;
+import com.github.afkbrb.sql.operators.ParallelScanOperator;
+import com.github.afkbrb.sql.operators.VectorizedScanOperator;
+import com.github.afkbrb.sql.storage.ExternalSorter;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.*;
 
 
 public class SelectExecutorTest extends ExecutorTest {
@@ -29,4 +41,347 @@ public class SelectExecutorTest extends ExecutorTest {
         execute("insert into student values (3, '渣渣辉', 24, 80)");
     }
 
+    @Test
+    public void joinTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table student (id int, name string, class_id int)");
+        execute("insert into student values (1, 'a', 1)");
+        execute("insert into student values (2, 'b', 2)");
+        execute("insert into student values (3, 'c', null)");
+        execute("insert into student values (4, 'd', 1)");
+        execute("create table class (id double, name string)");
+        execute("insert into class values (1.0, 'x')");
+        execute("insert into class values (2, 'y')");
+        execute("insert into class values (null, 'z')");
+
+        // 等值连接键的 INT 和 DOUBLE 按数值比较，NULL 不与任何值匹配，输出顺序与嵌套循环相同
+        Table table = select("select s.id, c.name from student s inner join class c on s.class_id = c.id");
+        assertEquals("[[1, x], [2, y], [4, x]]", values(table));
+
+        // 剩余条件
+        table = select("select s.id, c.name from student s inner join class c on c.id = s.class_id and s.id > 1");
+        assertEquals("[[2, y], [4, x]]", values(table));
+
+        // 左连接，没有匹配的行紧跟着输出，右边补 NULL
+        table = select("select s.id, c.name from student s left join class c on s.class_id = c.id and c.name != 'x'");
+        assertEquals("[[1, null], [2, y], [3, null], [4, null]]", values(table));
+
+        // 非等值条件仍然使用嵌套循环
+        table = select("select s.id, c.name from student s inner join class c on s.class_id < c.id");
+        assertEquals("[[1, y], [4, y]]", values(table));
+    }
+
+    @Test
+    public void mergeJoinTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table student (id int, name string, class_id int)");
+        execute("insert into student values (1, 'a', 2)");
+        execute("insert into student values (2, 'b', 1)");
+        execute("insert into student values (3, 'c', null)");
+        execute("insert into student values (4, 'd', 1)");
+        execute("create table class (id double, name string)");
+        execute("insert into class values (2, 'y')");
+        execute("insert into class values (1.0, 'x')");
+        execute("insert into class values (1, 'w')");
+
+        // order by 的结果已经按连接键有序，直接归并，不需要排序或建哈希表
+        Table sorted = select("select class_id, id from student order by class_id, id");
+        assertArrayEquals(new int[]{0, 1}, sorted.getSortedBy());
+        Table table = select("select s.id, c.name from (select class_id, id from student order by class_id) s " +
+                "left join (select id, name from class order by id) c on s.class_id = c.id");
+        assertEquals("[[3, null], [2, x], [2, w], [4, x], [4, w], [1, y]]", values(table));
+
+        // 右表超过哈希连接的上限时，两边先外部排序（溢出到磁盘）再归并
+        Settings settings = Settings.getInstance();
+        settings.setHashJoinMaxRows(1);
+        settings.setSortBufferRows(2);
+        try {
+            table = select("select s.id, c.name from student s inner join class c on s.class_id = c.id and c.name != 'w'");
+            assertEquals("[[2, x], [4, x], [1, y]]", values(table));
+            table = select("select s.id, c.name from student s left join class c on s.class_id = c.id");
+            assertEquals("[[3, null], [2, x], [2, w], [4, x], [4, w], [1, y]]", values(table));
+        } finally {
+            settings.setHashJoinMaxRows(1_000_000);
+            settings.setSortBufferRows(100_000);
+        }
+    }
+
+    @Test
+    public void groupByTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table student (id int, class_id int, grade double)");
+        execute("insert into student values (1, 2, 60)");
+        execute("insert into student values (2, 1, 80)");
+        execute("insert into student values (3, 2, 90)");
+        execute("insert into student values (4, 3, 70)");
+
+        // 组按第一次出现的顺序输出
+        Table table = select("select class_id, count(*) from student group by class_id");
+        assertEquals("[[2, 2], [1, 1], [3, 1]]", values(table));
+
+        // 按没有出现在 select 中的聚集排序
+        table = select("select class_id from student group by class_id having count(*) < 3 order by max(grade) desc limit 2");
+        assertEquals("[[2], [1]]", values(table));
+        assertEquals(1, table.getColumnCount());
+
+        // 没有 group by 的聚集总是输出一行
+        table = select("select count(*) from student where id > 10");
+        assertEquals("[[0]]", values(table));
+    }
+
+    @Test
+    public void vectorizedTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table t (id int, name string, grade double)");
+        fillTable("t", 3000, i -> new Object[]{i, i % 7 == 0 ? null : "n" + i % 100, i % 5 == 0 ? null : i / 10.0});
+
+        String[] queries = {
+                "select * from t where id / 3 * 3 = id",
+                "select id, grade * 2 + 1, -id, name from t where grade > 100 and name like 'n1%'",
+                "select id from t where not (id between 100 and 2900) or name is null",
+                "select id, name from t where id in (1, 42, 7.0, 'x') or name is not null and name in ('n1', 'n42', 7)",
+                "select id, grade / 3 from t where name regexp '^n9' and grade >= 10",
+                "select id from t where id < 5 and 10 / (id - 100) > 0", // 右边只对左边为真的行求值，不会除以 0
+                "select name, count(*), sum(grade) from t where id > 1000 group by name order by name",
+                "select id from t where grade > 200 order by grade desc limit 3",
+                "select id, grade <= 100, -grade / 2 from t where (grade + id) is null or id between 10 and 20",
+        };
+        Settings settings = Settings.getInstance();
+        assertSameWith(settings::setVectorized, false, true, queries);
+        // 生成字节码与解释执行的结果相同
+        assertSameWith(settings::setCodegen, false, true, queries);
+
+        // 过滤和投影融合进了扫描
+        Parser parser = new Parser(new Lexer(new StringReader("select id + 1 from t where id > 2000")));
+        Operator plan = new SelectExecutor().plan(parser.selectStatement(), "result");
+        assertTrue(plan instanceof VectorizedScanOperator);
+        assertEquals(999, values(select("select id + 1 from t where id > 2000")).split("], ").length);
+
+        // 出错的信息与逐行求值相同
+        for (String query : new String[]{"select id from t where name + 1 > 0", "select id / (id - 1500) from t"}) {
+            String expected = null;
+            String actual = null;
+            settings.setVectorized(false);
+            try {
+                select(query);
+            } catch (SQLExecuteException e) {
+                expected = e.getMessage();
+            }
+            settings.setVectorized(true);
+            try {
+                select(query);
+            } catch (SQLExecuteException e) {
+                actual = e.getMessage();
+            }
+            assertNotNull(expected);
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void topNTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table t (id int, name string, grade double)");
+        fillTable("t", 3000, i -> new Object[]{i, "n" + i % 100, i % 5 == 0 ? null : (double) (i % 37)});
+
+        String[] queries = {
+                "select id, grade from t order by grade desc limit 600",
+                "select id, grade from t order by grade limit 590, 20", // NULL 最小，键相等时保持原来的顺序
+                "select id from t where id > 100 order by name desc, id limit 1000",
+                "select name, count(*), max(grade) from t group by name order by max(grade), name desc limit 7 offset 3",
+                "select id from t order by id limit 5000",
+        };
+        Settings settings = Settings.getInstance();
+        int sortBufferRows = settings.getSortBufferRows();
+        try {
+            // offset + limit 超过 sort_buffer_rows 时对所有行排序
+            assertSameWith(settings::setSortBufferRows, 500, sortBufferRows, queries);
+
+            // 只保留前 offset + limit 行，不会像排序那样因为行数超过 sort_buffer_rows 而溢出到磁盘
+            settings.setSortBufferRows(600);
+            long runCount = ExternalSorter.getTotalRunCount();
+            assertEquals(600, values(select("select id from t order by grade desc limit 600")).split("], ").length);
+            assertEquals(runCount, ExternalSorter.getTotalRunCount());
+            select("select id from t order by grade desc limit 601");
+            assertTrue(ExternalSorter.getTotalRunCount() > runCount);
+        } finally {
+            settings.setSortBufferRows(sortBufferRows);
+        }
+    }
+
+    @Test
+    public void externalSortTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table t (id int, name string, grade double)");
+        fillTable("t", 2000, i -> new Object[]{i, "n" + i % 100, i % 5 == 0 ? null : (double) (i % 37)});
+
+        String[] queries = {
+                "select id, grade from t order by grade desc, name",
+                "select name, count(*), sum(grade) from t group by name order by sum(grade) desc",
+                "select a.id, b.id from t a inner join (select id, name from t where id < 500) b on a.id = b.id + 1 order by a.name, b.id desc",
+        };
+        Settings settings = Settings.getInstance();
+        int sortBufferRows = settings.getSortBufferRows();
+        try {
+            for (String query : queries) {
+                // 排序溢出到磁盘后的结果与在内存中排序相同
+                long runCount = ExternalSorter.getTotalRunCount();
+                assertSameWith(settings::setSortBufferRows, sortBufferRows, 30, query);
+                assertTrue(query, ExternalSorter.getTotalRunCount() > runCount);
+            }
+        } finally {
+            settings.setSortBufferRows(sortBufferRows);
+        }
+    }
+
+    @Test
+    public void parallelTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table t (id int, name string, grade double)");
+        fillTable("t", 40000, i -> new Object[]{i, i % 7 == 0 ? null : "n" + i % 100, i % 5 == 0 ? null : i / 10.0});
+
+        String[] queries = {
+                "select * from t where id / 3 * 3 = id and name like 'n1%'",
+                "select id, grade * 2 + 1, name from t where grade > 100",
+                "select id + 1 from t",
+                "select name, count(*), sum(grade) from t where id > 1000 group by name order by name",
+                "select id from t where grade > 200 order by grade desc limit 3",
+        };
+        Settings settings = Settings.getInstance();
+        int parallelism = settings.getParallelism();
+        try {
+            assertSameWith(settings::setParallelism, 1, 4, queries);
+
+            // 输出的顺序与串行扫描相同，出错时报的是第一个出错的小块的错
+            Parser parser = new Parser(new Lexer(new StringReader("select id from t where id > 3")));
+            assertTrue(new SelectExecutor().plan(parser.selectStatement(), "result") instanceof ParallelScanOperator);
+            try {
+                select("select id / (id - 30000) from t where id > 20000 or 1 / (id - 35000) > 0");
+                fail();
+            } catch (SQLExecuteException e) {
+                assertEquals("division by 0", e.getMessage());
+            }
+        } finally {
+            settings.setParallelism(parallelism);
+        }
+    }
+
+    @Test
+    public void parallelAggregateTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table t (id int, name string, grade double)");
+        // 整数值的 double，求和的顺序不影响结果
+        fillTable("t", 40000, i -> new Object[]{i, i % 7 == 0 ? null : "n" + (i * 37) % 100, i % 5 == 0 ? null : (double) (i % 1000)});
+
+        String[] queries = {
+                "select name, count(*), count(grade), sum(grade), avg(grade), max(id), min(grade) from t group by name",
+                "select id / 4, count(*), sum(grade) from t group by id / 4 having count(grade) > 3",
+                "select name, grade, count(*) from t where id > 1000 group by name, grade",
+                "select count(*), sum(id), max(grade), avg(grade) from t",
+                "select count(*), sum(grade) from t where id < 0",
+                "select name, sum(id), avg(id), min(grade) from t group by name",
+        };
+        Settings settings = Settings.getInstance();
+        int parallelism = settings.getParallelism();
+        try {
+            assertSameWith(settings::setParallelism, 1, 4, queries);
+
+            // 各分区的部分结果合并后与逐行计算的值相同，组仍然按第一次出现的顺序输出
+            assertEquals("[[40000, 7.9998E8]]", values(select("select count(*), sum(id) from t")));
+            Table table = select("select name, count(*) from t group by name");
+            assertEquals(101, table.getRowCount());
+            assertEquals(TypedValue.NULL, table.getValue(0, 0));
+            assertEquals(5715, table.getValue(0, 1).getValue());
+            assertEquals("n37", table.getValue(1, 0).getValue());
+
+            // 分组键出错时报的是表中最靠前的错误
+            try {
+                select("select 1 / (id - 30000), count(*) from t group by 1 / (id - 30000)");
+                fail();
+            } catch (SQLExecuteException e) {
+                assertEquals("division by 0", e.getMessage());
+            }
+        } finally {
+            settings.setParallelism(parallelism);
+        }
+    }
+
+    @Test
+    public void parallelJoinTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table t (id int, k int, name string)");
+        execute("create table d (id double, label string)");
+        fillTable("t", 40000, i -> new Object[]{i, i % 11 == 0 ? null : (i * 7) % 3000, "n" + i % 3});
+        fillTable("d", 2000, i -> new Object[]{(double) (i % 1500), "n" + i % 5});
+
+        String[] queries = {
+                "select t.id, d.id, d.label from t inner join d on t.k = d.id",
+                "select t.id, d.label from t left join d on t.k = d.id and d.label != 'n1'",
+                "select t.id, d.id from t inner join d on t.k = d.id and t.name = d.label",
+                "select d.label, count(*) from t inner join d on d.id = t.k group by d.label",
+        };
+        Settings settings = Settings.getInstance();
+        int parallelism = settings.getParallelism();
+        try {
+            assertSameWith(settings::setParallelism, 1, 4, queries);
+
+            // 匹配的行数与直接数出来的相同，输出按左表的顺序
+            int[] matches = new int[3000];
+            for (int i = 0; i < 2000; i++) {
+                matches[i % 1500]++;
+            }
+            int expected = 0;
+            for (int i = 0; i < 40000; i++) {
+                if (i % 11 != 0) expected += matches[(i * 7) % 3000];
+            }
+            Table table = select("select t.id from t inner join d on t.k = d.id");
+            assertEquals(expected, table.getRowCount());
+            for (int i = 1; i < table.getRowCount(); i++) {
+                assertTrue((Integer) table.getValue(i - 1, 0).getValue() <= (Integer) table.getValue(i, 0).getValue());
+            }
+
+            // 出错时报的是第一个出错的左表行的错
+            try {
+                select("select t.id from t inner join d on t.k = d.id and 1 / (t.id - 30000) > 0");
+                fail();
+            } catch (SQLExecuteException e) {
+                assertEquals("division by 0", e.getMessage());
+            }
+        } finally {
+            settings.setParallelism(parallelism);
+        }
+    }
+
+    /**
+     * 向已经建好的表中直接加入 rowCount 行，不经过 insert 语句。第 i 行各列的值为 values(i)，
+     * Integer、Double、String 分别是 INT、DOUBLE、STRING，null 是 NULL。
+     */
+    private static void fillTable(String tableName, int rowCount, IntFunction<Object[]> values) {
+        Table table = TableManager.getInstance().getTable(tableName);
+        for (int i = 0; i < rowCount; i++) {
+            List<Cell> cells = new ArrayList<>();
+            for (Object value : values.apply(i)) {
+                if (value == null) cells.add(new Cell(TypedValue.NULL));
+                else if (value instanceof Integer) cells.add(new Cell(new TypedValue(DataType.INT, value)));
+                else if (value instanceof Double) cells.add(new Cell(new TypedValue(DataType.DOUBLE, value)));
+                else cells.add(new Cell(new TypedValue(DataType.STRING, value)));
+            }
+            table.addRow(new Row(cells));
+        }
+    }
+
+    /**
+     * 分别在设置为 baseline 和 value 时执行每个查询，两次的结果必须相同。执行之后设置停留在 value。
+     */
+    private static <T> void assertSameWith(Consumer<T> setting, T baseline, T value, String... queries) throws SQLParseException, SQLExecuteException {
+        for (String query : queries) {
+            setting.accept(baseline);
+            String expected = values(select(query));
+            setting.accept(value);
+            assertEquals(query, expected, values(select(query)));
+        }
+    }
+
+    private static String values(Table table) {
+        List<List<Object>> values = new ArrayList<>();
+        for (Row row : table.getRows()) {
+            List<Object> rowValues = new ArrayList<>();
+            for (Cell cell : row.getCells()) {
+                rowValues.add(cell.getTypedValue().getValue());
+            }
+            values.add(rowValues);
+        }
+        return values.toString();
+    }
 }
@@ -38,4 +38,21 @@ public class UpdateExecutorTest extends ExecutorTest {
         Assert.assertEquals(new TypedValue(INT, 2333), student.getRow(2).getCell(2).getTypedValue());
         Assert.assertEquals(new TypedValue(INT, 2333), student.getRow(3).getCell(2).getTypedValue());
     }
+
+    @Test
+    @SuppressWarnings("ConstantConditions")
+    public void sequentialTest() throws SQLParseException, SQLExecuteException, IOException {
+        execute("create table t (a int, b int)");
+        execute("insert into t values (1, 0)");
+        Table t = TableManager.getInstance().getTable("t");
+
+        // 后面的项看到的是前面的项更新后的值
+        execute("update t set a = a + 1, b = a");
+        Assert.assertEquals(new TypedValue(INT, 2), t.getRow(0).getCell(0).getTypedValue());
+        Assert.assertEquals(new TypedValue(INT, 2), t.getRow(0).getCell(1).getTypedValue());
+
+        execute("update t set b = a * 10, a = b + 1");
+        Assert.assertEquals(new TypedValue(INT, 21), t.getRow(0).getCell(0).getTypedValue());
+        Assert.assertEquals(new TypedValue(INT, 20), t.getRow(0).getCell(1).getTypedValue());
+    }
 }
@@ -0,0 +1,159 @@
+package com.github.afkbrb.sql.model;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static org.junit.Assert.*;
+
+public class BTreeIndexTest {
+
+    @Test
+    public void randomTest() throws IOException {
+        Random random = new Random(42);
+        Table table = newTable();
+        BTreeIndex index = (BTreeIndex) Index.create(Index.Type.BTREE, "idx", 0);
+        for (int i = 0; i < 3000; i++) {
+            table.addRow(row(randomValue(random)));
+        }
+        table.addIndex(index); // 批量建树
+        check(table, index, random);
+
+        // 增删改之后节点会分裂、叶子会变空
+        for (int i = 0; i < 20000; i++) {
+            int op = random.nextInt(10);
+            if (op < 4 || table.getRowCount() == 0) {
+                table.addRow(row(randomValue(random)));
+            } else if (op < 7) {
+                table.setValue(random.nextInt(table.getRowCount()), 0, randomValue(random));
+            } else {
+                table.removeRow(random.nextInt(table.getRowCount()));
+            }
+        }
+        check(table, index, random);
+
+        // 递增地追加
+        for (int i = 0; i < 1000; i++) {
+            table.addRow(row(new TypedValue(INT, 1000 + i)));
+        }
+        check(table, index, random);
+
+        // 写出再读回来
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bytes));
+        BTreeIndex copy = (BTreeIndex) Index.create(Index.Type.BTREE, "copy", 0);
+        copy.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), table.getRowCount());
+        assertEquals(index.getKeyCount(), copy.getKeyCount());
+        table.attachIndex(copy);
+        check(table, copy, random);
+
+        // 行数对不上时读取失败
+        try {
+            copy.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), table.getRowCount() + 1);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void stringTest() {
+        Table table = newTable();
+        String[] names = {"abc", "abd", "ab", "b", "abc", "", "ab\uffff", "ac"};
+        for (String name : names) {
+            table.addRow(row(TypedValue.NULL, new TypedValue(STRING, name)));
+        }
+        table.addRow(row(TypedValue.NULL, TypedValue.NULL));
+        BTreeIndex index = (BTreeIndex) Index.create(Index.Type.BTREE, "idx", 1);
+        table.addIndex(index);
+        assertEquals(7, index.getKeyCount());
+        assertEquals(Arrays.asList(8, 5, 2, 0, 4, 1, 6, 7, 3), toList(index.scan(false)));
+        assertEquals(Arrays.asList(3, 7, 6, 1, 0, 4, 2, 5, 8), toList(index.scan(true)));
+        assertEquals(Arrays.asList(2, 0, 4, 1, 6), toList(index.range(new TypedValue(STRING, "ab"), true, new TypedValue(STRING, "ac"), false, false)));
+        assertEquals(Arrays.asList(6, 1), toList(index.range(new TypedValue(STRING, "abc"), false, new TypedValue(STRING, "ac"), false, true)));
+        assertEquals(Collections.emptyList(), toList(index.range(TypedValue.NULL, true, null, false, false)));
+    }
+
+    private static void check(Table table, BTreeIndex index, Random random) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < table.getRowCount(); i++) {
+            rows.add(i);
+        }
+        // 稳定排序，NULL 最小
+        Comparator<Integer> comparator = Comparator.comparing(i -> key(table, i), Comparator.nullsFirst(Comparator.naturalOrder()));
+        List<Integer> ascending = new ArrayList<>(rows);
+        ascending.sort(comparator);
+        List<Integer> descending = new ArrayList<>(rows);
+        descending.sort(comparator.reversed());
+        assertEquals(ascending, toList(index.scan(false)));
+        assertEquals(descending, toList(index.scan(true)));
+        assertEquals(ascending.stream().filter(i -> key(table, i) != null).map(i -> key(table, i)).distinct().count(), index.getKeyCount());
+
+        for (int i = 0; i < 200; i++) {
+            TypedValue low = random.nextInt(5) == 0 ? null : randomKey(random);
+            TypedValue high = random.nextInt(5) == 0 ? null : randomKey(random);
+            boolean lowInclusive = random.nextBoolean();
+            boolean highInclusive = random.nextBoolean();
+            List<Integer> expected = ascending.stream().filter(row -> {
+                Double key = key(table, row);
+                if (key == null) return false;
+                if (low != null) {
+                    double lowKey = ((Number) low.getValue()).doubleValue();
+                    if (key < lowKey || (key == lowKey && !lowInclusive)) return false;
+                }
+                if (high != null) {
+                    double highKey = ((Number) high.getValue()).doubleValue();
+                    return key < highKey || (key == highKey && highInclusive);
+                }
+                return true;
+            }).collect(Collectors.toList());
+            assertEquals(expected, toList(index.range(low, lowInclusive, high, highInclusive, false)));
+            Set<Integer> expectedSet = new HashSet<>(expected);
+            List<Integer> reversed = descending.stream().filter(expectedSet::contains).collect(Collectors.toList());
+            assertEquals(reversed, toList(index.range(low, lowInclusive, high, highInclusive, true)));
+
+            TypedValue value = randomKey(random);
+            int[] lookup = index.lookup(value);
+            int[] expectedLookup = rows.stream().filter(row -> Objects.equals(key(table, row), ((Number) value.getValue()).doubleValue())).mapToInt(Integer::intValue).toArray();
+            assertArrayEquals(expectedLookup, lookup);
+        }
+    }
+
+    private static Double key(Table table, int rowIndex) {
+        TypedValue value = table.getValue(rowIndex, 0);
+        return value.getDataType() == NULL ? null : ((Number) value.getValue()).doubleValue();
+    }
+
+    private static TypedValue randomValue(Random random) {
+        return random.nextInt(20) == 0 ? TypedValue.NULL : randomKey(random);
+    }
+
+    private static TypedValue randomKey(Random random) {
+        return new TypedValue(INT, random.nextInt(2000) - 1000);
+    }
+
+    private static List<Integer> toList(PrimitiveIterator.OfInt iterator) {
+        List<Integer> list = new ArrayList<>();
+        iterator.forEachRemaining((int i) -> list.add(i));
+        return list;
+    }
+
+    private static Table newTable() {
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column(0, "id", INT, "t"));
+        columns.add(new Column(1, "name", STRING, "t"));
+        return new Table("t", columns);
+    }
+
+    private static Row row(TypedValue... values) {
+        List<Cell> cells = new ArrayList<>();
+        for (TypedValue value : values) {
+            cells.add(new Cell(value));
+        }
+        if (values.length == 1) cells.add(new Cell(TypedValue.NULL));
+        return new Row(cells);
+    }
+}
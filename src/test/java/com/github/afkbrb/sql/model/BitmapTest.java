@@ -0,0 +1,89 @@
+package com.github.afkbrb.sql.model;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class BitmapTest {
+
+    @Test
+    public void randomTest() {
+        Random random = new Random(42);
+        // 既有稀疏的块也有稠密的块
+        for (int density : new int[]{100, 5000, 60000}) {
+            Bitmap a = new Bitmap();
+            Bitmap b = new Bitmap();
+            TreeSet<Integer> setA = new TreeSet<>();
+            TreeSet<Integer> setB = new TreeSet<>();
+            for (int i = 0; i < 3 * density; i++) {
+                int x = random.nextInt(3 << 16);
+                int y = random.nextInt(3 << 16);
+                a.add(x);
+                setA.add(x);
+                b.add(y);
+                setB.add(y);
+            }
+            check(setA, a);
+            check(setB, b);
+
+            TreeSet<Integer> expected = new TreeSet<>(setA);
+            expected.retainAll(setB);
+            check(expected, a.and(b));
+            expected = new TreeSet<>(setA);
+            expected.addAll(setB);
+            check(expected, a.or(b));
+            expected = new TreeSet<>(setA);
+            expected.removeAll(setB);
+            check(expected, a.andNot(b));
+            // 运算不修改参与运算的位图
+            check(setA, a);
+            check(setB, b);
+
+            for (int i = 0; i < 2 * density; i++) { // 稠密的块删到一定程度后变回数组
+                Integer existing = setA.ceiling(random.nextInt(3 << 16));
+                int x = existing != null && random.nextBoolean() ? existing : random.nextInt(3 << 16);
+                assertEquals(setA.contains(x), a.contains(x));
+                a.remove(x);
+                setA.remove(x);
+            }
+            check(setA, a);
+
+            for (int i = 0; i < 20; i++) {
+                int x = random.nextInt(3 << 16);
+                a.removeAndShift(x);
+                TreeSet<Integer> shifted = new TreeSet<>();
+                for (int v : setA) {
+                    if (v != x) shifted.add(v < x ? v : v - 1);
+                }
+                setA = shifted;
+            }
+            check(setA, a);
+        }
+    }
+
+    @Test
+    public void rangeTest() {
+        for (int end : new int[]{0, 1, 64, 4096, 4097, 65536, 65537, 200000}) {
+            Bitmap bitmap = Bitmap.range(end);
+            assertEquals(end, bitmap.getCardinality());
+            int[] array = bitmap.toArray();
+            for (int i = 0; i < end; i++) {
+                assertEquals(i, array[i]);
+            }
+            assertFalse(bitmap.contains(end));
+        }
+        Bitmap odd = new Bitmap();
+        for (int i = 1; i < 200000; i += 2) {
+            odd.add(i);
+        }
+        assertEquals(100000, Bitmap.range(200000).andNot(odd).getCardinality());
+        assertTrue(Bitmap.range(200000).andNot(odd).and(odd).isEmpty());
+    }
+
+    private static void check(TreeSet<Integer> expected, Bitmap bitmap) {
+        assertEquals(expected.size(), bitmap.getCardinality());
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), bitmap.toArray());
+    }
+}
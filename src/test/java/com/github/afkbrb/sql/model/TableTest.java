@@ -0,0 +1,115 @@
+package com.github.afkbrb.sql.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static org.junit.Assert.*;
+
+public class TableTest {
+
+    @Test
+    public void columnarTest() {
+        Table table = newTable();
+        for (int i = 0; i < 200; i++) { // 跨越多个 long 的 null 位图
+            table.addRow(row(i % 3 == 0 ? TypedValue.NULL : new TypedValue(INT, i),
+                    new TypedValue(STRING, "s" + (i % 10)),
+                    i % 2 == 0 ? new TypedValue(DOUBLE, i / 2.0) : TypedValue.NULL));
+        }
+        assertTrue(table.getVector(0) instanceof IntVector);
+        assertTrue(table.getVector(2) instanceof DoubleVector);
+        StringVector names = (StringVector) table.getVector(1);
+        assertEquals(10, names.getDictionary().size()); // 字典编码，相同的字符串只保存一份
+
+        assertEquals(TypedValue.NULL, table.getValue(0, 0));
+        assertEquals(new TypedValue(INT, 1), table.getValue(1, 0));
+        assertEquals(TypedValue.NULL, table.getValue(199, 2));
+
+        // 删除之后，后面的行（包括 null 标记）往前移
+        table.removeRow(0);
+        assertEquals(199, table.getRowCount());
+        assertEquals(new TypedValue(INT, 1), table.getValue(0, 0));
+        assertEquals(TypedValue.NULL, table.getValue(0, 2));
+        assertEquals(TypedValue.NULL, table.getValue(2, 0));
+        assertEquals(new TypedValue(DOUBLE, 99.0), table.getValue(197, 2));
+        assertEquals(TypedValue.NULL, table.getValue(198, 2));
+    }
+
+    @Test
+    public void viewTest() {
+        Table table = newTable();
+        table.addRow(row(new TypedValue(INT, 1), new TypedValue(STRING, "a"), new TypedValue(DOUBLE, 1.5)));
+        table.addRow(row(new TypedValue(INT, 2), new TypedValue(STRING, "b"), TypedValue.NULL));
+
+        // 行和 cell 都是视图，修改会反映到表中
+        Row row = table.getRows().get(1);
+        row.setCell(2, new TypedValue(DOUBLE, 2.5));
+        assertEquals(new TypedValue(DOUBLE, 2.5), table.getValue(1, 2));
+        table.getRows().set(0, row(TypedValue.NULL, new TypedValue(STRING, "c"), TypedValue.NULL));
+        assertEquals("[{\"type\": \"NULL\", \"value\": null}, {\"type\": \"STRING\", \"value\": \"c\"}, {\"type\": \"NULL\", \"value\": null}]", table.getRow(0).toString());
+
+        // 类型不符的值会让该列退化成 ValueVector
+        table.setValue(0, 0, new TypedValue(DOUBLE, 0.5));
+        assertTrue(table.getVector(0) instanceof ValueVector);
+        assertEquals(new TypedValue(DOUBLE, 0.5), table.getValue(0, 0));
+        assertEquals(new TypedValue(INT, 2), table.getValue(1, 0));
+
+        // 共享数据的表是只读的
+        Table alias = table.withColumns("alias", table.getColumns());
+        assertEquals(table.getRows().toString(), alias.getRows().toString());
+        try {
+            alias.removeRow(0);
+            fail();
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+
+    @Test
+    public void indexTest() {
+        Table table = newTable();
+        for (int i = 0; i < 10; i++) {
+            table.addRow(row(i % 4 == 0 ? TypedValue.NULL : new TypedValue(INT, i % 3), new TypedValue(STRING, "s" + i), TypedValue.NULL));
+        }
+        Index index = Index.create(Index.Type.HASH, "idx", 0);
+        table.addIndex(index);
+        assertArrayEquals(new int[]{1, 7}, index.lookup(new TypedValue(INT, 1)));
+        assertArrayEquals(new int[]{2, 5}, index.lookup(new TypedValue(DOUBLE, 2.0))); // 1 = 1.0
+        assertArrayEquals(new int[0], index.lookup(TypedValue.NULL));
+
+        // 增删改行时索引同步更新，删除后其后的下标减 1
+        table.addRow(row(new TypedValue(INT, 1), new TypedValue(STRING, "s10"), TypedValue.NULL));
+        table.removeRow(2);
+        table.setValue(0, 0, new TypedValue(INT, 1));
+        table.getRows().set(4, row(new TypedValue(INT, 2), new TypedValue(STRING, "x"), TypedValue.NULL));
+        assertArrayEquals(new int[]{0, 1, 6, 9}, index.lookup(new TypedValue(INT, 1)));
+        assertArrayEquals(new int[]{4}, index.lookup(new TypedValue(INT, 2)));
+        for (int value = 0; value < 3; value++) {
+            for (int rowIndex : index.lookup(new TypedValue(INT, value))) {
+                assertEquals(new TypedValue(INT, value), table.getValue(rowIndex, 0));
+            }
+        }
+
+        // 共享数据的表也能看到索引
+        assertEquals(1, table.withColumns("alias", table.getColumns()).getIndexes().size());
+        table.removeIndex("IDX");
+        assertTrue(table.getIndexes().isEmpty());
+    }
+
+    private static Table newTable() {
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column(0, "id", INT, "t"));
+        columns.add(new Column(1, "name", STRING, "t"));
+        columns.add(new Column(2, "grade", DOUBLE, "t"));
+        return new Table("t", columns);
+    }
+
+    private static Row row(TypedValue... values) {
+        List<Cell> cells = new ArrayList<>();
+        for (TypedValue value : values) {
+            cells.add(new Cell(value));
+        }
+        return new Row(cells);
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.model.DataType;
+import com.github.afkbrb.sql.model.TypedValue;
+import org.junit.Test;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static org.junit.Assert.assertEquals;
+
+public class GroupTableTest {
+
+    @Test
+    public void intTest() {
+        GroupTable table = GroupTable.create(new DataType[]{INT});
+        // 多次扩容后组号不变
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 10000; i++) {
+                assertEquals(i, table.add(keys(new TypedValue(INT, i * 7919))));
+            }
+        }
+        assertEquals(10000, table.add(keys(TypedValue.NULL)));
+        assertEquals(10000, table.add(keys(TypedValue.NULL)));
+        assertEquals(10001, table.size());
+
+        // 类型不符时转成通用的实现，组号保持不变
+        assertEquals(-1, table.add(keys(new TypedValue(DOUBLE, 7919.0))));
+        table = table.toPacked();
+        assertEquals(1, table.add(keys(new TypedValue(INT, 7919))));
+        assertEquals(10000, table.add(keys(TypedValue.NULL)));
+        assertEquals(10001, table.add(keys(new TypedValue(DOUBLE, 7919.0))));
+    }
+
+    @Test
+    public void doubleAndStringTest() {
+        GroupTable doubles = GroupTable.create(new DataType[]{DOUBLE});
+        assertEquals(0, doubles.add(keys(new TypedValue(DOUBLE, 0.0))));
+        assertEquals(1, doubles.add(keys(new TypedValue(DOUBLE, -0.0))));
+        assertEquals(2, doubles.add(keys(new TypedValue(DOUBLE, Double.NaN))));
+        assertEquals(2, doubles.add(keys(new TypedValue(DOUBLE, Double.NaN))));
+
+        GroupTable strings = GroupTable.create(new DataType[]{STRING});
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, strings.add(keys(new TypedValue(STRING, "s" + i))));
+        }
+        assertEquals(999, strings.add(keys(new TypedValue(STRING, "s999"))));
+        assertEquals(1000, strings.add(keys(new TypedValue(STRING, ""))));
+    }
+
+    @Test
+    public void packedTest() {
+        GroupTable table = GroupTable.create(new DataType[]{STRING, STRING});
+        assertEquals(0, table.add(keys(new TypedValue(STRING, "ab"), new TypedValue(STRING, "c"))));
+        assertEquals(1, table.add(keys(new TypedValue(STRING, "a"), new TypedValue(STRING, "bc"))));
+        assertEquals(2, table.add(keys(new TypedValue(STRING, "a"), TypedValue.NULL)));
+        assertEquals(3, table.add(keys(new TypedValue(INT, 1), new TypedValue(STRING, "bc"))));
+        assertEquals(4, table.add(keys(new TypedValue(DOUBLE, 1.0), new TypedValue(STRING, "bc"))));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(5 + i, table.add(keys(new TypedValue(INT, i), new TypedValue(STRING, "中" + i))));
+        }
+        assertEquals(1, table.add(keys(new TypedValue(STRING, "a"), new TypedValue(STRING, "bc"))));
+        assertEquals(5 + 999, table.add(keys(new TypedValue(INT, 999), new TypedValue(STRING, "中999"))));
+        assertEquals(1005, table.size());
+    }
+
+    private static TypedValue[] keys(TypedValue... keys) {
+        return keys;
+    }
+}
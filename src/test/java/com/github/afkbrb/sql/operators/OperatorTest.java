@@ -0,0 +1,179 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.ast.expressions.*;
+import com.github.afkbrb.sql.ast.statements.SelectStatement.TableJoin.JoinType;
+import com.github.afkbrb.sql.functions.Accumulator;
+import com.github.afkbrb.sql.functions.AggregateFunction;
+import com.github.afkbrb.sql.functions.FunctionRegistry;
+import com.github.afkbrb.sql.model.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.INT;
+import static org.junit.Assert.assertEquals;
+
+public class OperatorTest {
+
+    @Test
+    public void limitTest() throws SQLExecuteException {
+        CountingOperator left = new CountingOperator(new ScanOperator(table("a", 1000)));
+        CountingOperator right = new CountingOperator(new ScanOperator(table("b", 10)));
+        BinaryExpression on = new BinaryExpression(BinaryExpression.BinaryOperatorType.EQ, new ColumnNameExpression("a", "id"), new ColumnNameExpression("b", "id"));
+        JoinCondition joinCondition = JoinCondition.analyze(on, left.getSchema(), right.getSchema());
+        BinaryExpression condition = new BinaryExpression(BinaryExpression.BinaryOperatorType.GT, new ColumnNameExpression("a", "id"), new IntExpression(1));
+        Operator plan = new LimitOperator(new FilterOperator(new HashJoinOperator(left, right, JoinType.LEFT, joinCondition, null), condition, null), 3, 1);
+
+        List<Object> ids = new ArrayList<>();
+        plan.open();
+        Row row;
+        while ((row = plan.next()) != null) {
+            ids.add(row.getCell(1).getTypedValue().getValue());
+        }
+        plan.close();
+
+        // 构建端读完了右表，探测端只读了够用的行
+        assertEquals("[3, 4, 5]", ids.toString());
+        assertEquals(10, right.pulled);
+        assertEquals(6, left.pulled);
+        assertEquals(3, plan.estimateRowCount());
+    }
+
+    @Test
+    public void aggregateTest() throws SQLExecuteException {
+        CountingOperator child = new CountingOperator(new ScanOperator(table("a", 1000)));
+        Expression key = new BinaryExpression(BinaryExpression.BinaryOperatorType.DIV, new ColumnNameExpression("a", "id"), new IntExpression(300));
+        Expression count = new FunctionCallExpression("count", Collections.singletonList(new WildcardExpression()));
+        Expression sum = new FunctionCallExpression("sum", Collections.singletonList(new ColumnNameExpression("a", "id")));
+        Expression having = new BinaryExpression(BinaryExpression.BinaryOperatorType.GT, count, new IntExpression(100));
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column(0, "k", INT, ""));
+        columns.add(new Column(1, "c", INT, ""));
+        columns.add(new Column(2, "s", DataType.DOUBLE, ""));
+        Operator plan = new AggregateOperator(child, Collections.singletonList(key), having, Arrays.asList(key, count, sum), columns, null);
+
+        List<String> rows = new ArrayList<>();
+        plan.open();
+        Row row;
+        while ((row = plan.next()) != null) {
+            rows.add(row.getCell(0).getTypedValue().getValue() + " " + row.getCell(1).getTypedValue().getValue()
+                    + " " + row.getCell(2).getTypedValue().getValue());
+        }
+        plan.close();
+
+        // 组 3 只有 100 行，被 having 过滤掉
+        assertEquals("[0 300 44850.0, 1 300 134850.0, 2 300 224850.0]", rows.toString());
+        assertEquals(1000, child.pulled);
+
+        // 部分聚集的结果合并后与一次聚集相同
+        AggregateFunction avg = (AggregateFunction) FunctionRegistry.getFunction("avg");
+        Accumulator whole = avg.init();
+        Accumulator left = avg.init();
+        Accumulator right = avg.init();
+        for (int i = 0; i < 10; i++) {
+            whole.accumulate(new TypedValue(INT, i));
+            (i < 3 ? left : right).accumulate(new TypedValue(INT, i));
+        }
+        left.merge(right);
+        assertEquals(whole.finish(), left.finish());
+    }
+
+    @Test
+    public void parallelHashJoinTest() throws SQLExecuteException {
+        Operator left = new ScanOperator(table("a", 40000));
+        Operator right = new ScanOperator(table("b", 30000));
+        BinaryExpression on = new BinaryExpression(BinaryExpression.BinaryOperatorType.EQ, new ColumnNameExpression("a", "id"), new ColumnNameExpression("b", "id"));
+        BinaryExpression residual = new BinaryExpression(BinaryExpression.BinaryOperatorType.GT, new ColumnNameExpression("b", "id"), new IntExpression(5));
+        JoinCondition joinCondition = JoinCondition.analyze(new AndExpression(on, residual), left.getSchema(), right.getSchema());
+
+        // 按小块成批输出，顺序与串行的哈希连接相同
+        List<Object> expected = values(new HashJoinOperator(left, right, JoinType.LEFT, joinCondition, null));
+        List<Object> actual = values(new ParallelHashJoinOperator(left, right, JoinType.LEFT, joinCondition, null, 4));
+        assertEquals(40000, actual.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void indexJoinTest() throws SQLExecuteException {
+        Table a = table("a", 50);
+        a.addRow(new Row(Collections.singletonList(new Cell(TypedValue.NULL))));
+        Table b = table("b", 1000);
+        for (int i = 0; i < 1000; i += 3) {
+            b.addRow(new Row(Collections.singletonList(new Cell(new TypedValue(DataType.DOUBLE, i * 2.0)))));
+        }
+        b.addIndex(Index.create(Index.Type.HASH, "b_id", 0));
+        Operator left = new ScanOperator(a);
+        ScanOperator right = new ScanOperator(b);
+        BinaryExpression on = new BinaryExpression(BinaryExpression.BinaryOperatorType.EQ, new ColumnNameExpression("a", "id"), new ColumnNameExpression("b", "id"));
+        BinaryExpression residual = new BinaryExpression(BinaryExpression.BinaryOperatorType.GT, new ColumnNameExpression("b", "id"), new IntExpression(5));
+        JoinCondition joinCondition = JoinCondition.analyze(new AndExpression(on, residual), left.getSchema(), right.getSchema());
+
+        // 输出与哈希连接相同（包括左连接补 NULL 的行和重复的键）
+        List<Object> expected = values(new HashJoinOperator(left, right, JoinType.LEFT, joinCondition, null));
+        List<Object> actual = values(new IndexNestedLoopJoinOperator(left, right, b.getIndexes().get(0), JoinType.LEFT, joinCondition, null));
+        assertEquals(59, actual.size());
+        assertEquals(expected, actual);
+    }
+
+    private static List<Object> values(Operator plan) throws SQLExecuteException {
+        List<Object> values = new ArrayList<>();
+        plan.open();
+        Row row;
+        while ((row = plan.next()) != null) {
+            values.add(Arrays.asList(row.getCell(0).getTypedValue().getValue(), row.getCell(1).getTypedValue().getValue()));
+        }
+        plan.close();
+        return values;
+    }
+
+    private static Table table(String name, int rowCount) {
+        Table table = new Table(name, Collections.singletonList(new Column(0, "id", INT, name)));
+        for (int i = 0; i < rowCount; i++) {
+            table.addRow(new Row(Collections.singletonList(new Cell(new TypedValue(INT, i)))));
+        }
+        return table;
+    }
+
+    /**
+     * 记录从下层拉取了多少行。
+     */
+    private static class CountingOperator extends Operator {
+
+        private final Operator child;
+        private int pulled;
+
+        CountingOperator(Operator child) {
+            this.child = child;
+        }
+
+        @NotNull
+        @Override
+        public Schema getSchema() {
+            return child.getSchema();
+        }
+
+        @Override
+        public void open() throws SQLExecuteException {
+            child.open();
+        }
+
+        @Nullable
+        @Override
+        public Row next() throws SQLExecuteException {
+            Row row = child.next();
+            if (row != null) pulled++;
+            return row;
+        }
+
+        @Override
+        public long estimateRowCount() {
+            return child.estimateRowCount();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.afkbrb.sql.operators;
+
+import com.github.afkbrb.sql.model.TypedValue;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SortKeysTest {
+
+    private static final TypedValue[] VALUES = {
+            TypedValue.NULL, new TypedValue(INT, 0), new TypedValue(INT, -1), new TypedValue(INT, Integer.MAX_VALUE),
+            new TypedValue(INT, Integer.MIN_VALUE), new TypedValue(DOUBLE, 0.0), new TypedValue(DOUBLE, -0.0),
+            new TypedValue(DOUBLE, -1.5), new TypedValue(DOUBLE, 1e300), new TypedValue(DOUBLE, Double.NEGATIVE_INFINITY),
+            new TypedValue(DOUBLE, Double.NaN), new TypedValue(DOUBLE, 1.0), new TypedValue(INT, 1),
+            new TypedValue(STRING, ""), new TypedValue(STRING, "a"), new TypedValue(STRING, "ab"), new TypedValue(STRING, "a\0"),
+            new TypedValue(STRING, "b"), new TypedValue(STRING, "中文"), new TypedValue(STRING, "￿"),
+    };
+
+    @Test
+    public void encodeTest() {
+        // 编码后按字节比较的结果与直接比较值相同，包括降序和多列
+        for (boolean descending : new boolean[]{false, true}) {
+            for (TypedValue a : VALUES) {
+                for (TypedValue b : VALUES) {
+                    int expected = Integer.signum(SortKeys.compareValues(a, b)) * (descending ? -1 : 1);
+                    byte[] x = SortKeys.encode(new TypedValue[]{a}, new boolean[]{descending});
+                    byte[] y = SortKeys.encode(new TypedValue[]{b}, new boolean[]{descending});
+                    assertEquals(a + " " + b, expected, Integer.signum(SortKeys.compare(x, y)));
+
+                    // 第二列的顺序与第一列相反，第一列相等时才比较第二列
+                    TypedValue d = new TypedValue(INT, 1);
+                    for (TypedValue c : new TypedValue[]{TypedValue.NULL, new TypedValue(STRING, "a"), new TypedValue(INT, 2)}) {
+                        boolean[] order = {descending, !descending};
+                        x = SortKeys.encode(new TypedValue[]{a, c}, order);
+                        y = SortKeys.encode(new TypedValue[]{b, d}, order);
+                        int both = expected != 0 ? expected : Integer.signum(SortKeys.compareValues(c, d)) * (descending ? 1 : -1);
+                        assertEquals(a + " " + c + " " + b, both, Integer.signum(SortKeys.compare(x, y)));
+                    }
+                }
+            }
+        }
+        assertEquals(0, SortKeys.compareValues(new TypedValue(INT, 1), new TypedValue(DOUBLE, 1.0)));
+    }
+
+    @Test
+    public void radixSortTest() {
+        Random random = new Random(42);
+        byte[][] keys = new byte[5000][];
+        for (int i = 0; i < keys.length; i++) {
+            TypedValue first = random.nextInt(10) == 0 ? TypedValue.NULL : new TypedValue(INT, random.nextInt(50) - 25);
+            TypedValue second = new TypedValue(DOUBLE, random.nextGaussian());
+            keys[i] = SortKeys.encode(new TypedValue[]{first, second}, new boolean[]{true, false});
+        }
+        int[] radix = SortKeys.radixSort(keys);
+        Integer[] expected = new Integer[keys.length];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i;
+        }
+        Arrays.sort(expected, (x, y) -> SortKeys.compare(keys[x], keys[y]));
+        assertArrayEquals(Arrays.stream(expected).mapToInt(Integer::intValue).toArray(), radix);
+        assertArrayEquals(radix, SortKeys.sort(keys));
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static org.junit.Assert.assertEquals;
+
+public class BinaryTableFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripTest() throws IOException {
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column(0, "id", INT, "student"));
+        columns.add(new Column(1, "name", STRING, "student"));
+        columns.add(new Column(2, "grade", DOUBLE, "student"));
+        Table table = new Table("student", columns);
+        table.addRow(row(new TypedValue(INT, 1), new TypedValue(STRING, "渣渣辉"), new TypedValue(DOUBLE, 66.6)));
+        table.addRow(row(new TypedValue(INT, 2), TypedValue.NULL, TypedValue.NULL));
+        table.addRow(row(TypedValue.NULL, new TypedValue(STRING, ""), new TypedValue(DOUBLE, -0.5)));
+        for (int i = 0; i < 10; i++) { // 跨越多个字节的 null 位图
+            table.addRow(row(new TypedValue(INT, i), i % 3 == 0 ? TypedValue.NULL : new TypedValue(STRING, "s" + i), new TypedValue(DOUBLE, i)));
+        }
+
+        File file = folder.newFile("student" + StorageFormat.BINARY.getExtension());
+        BinaryTableFile.write(table, file);
+        Table loaded = BinaryTableFile.read(file, "student");
+
+        // toString 包含了表名、列信息和所有数据
+        assertEquals(table.toString(), loaded.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidFileTest() throws IOException {
+        File file = folder.newFile("bad.tbl");
+        Files.write(file.toPath(), Arrays.asList("\"id\"", "\"INT\""));
+        BinaryTableFile.read(file, "bad");
+    }
+
+    private static Row row(TypedValue... values) {
+        List<Cell> cells = new ArrayList<>();
+        for (TypedValue value : values) {
+            cells.add(new Cell(value));
+        }
+        return new Row(cells);
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static org.junit.Assert.assertEquals;
+
+public class CsvTableFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parallelReadTest() throws IOException {
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column(0, "id", INT, "t"));
+        columns.add(new Column(1, "text", STRING, "t"));
+        columns.add(new Column(2, "score", DOUBLE, "t"));
+        Table table = new Table("t", columns);
+        for (int i = 0; i < 1000; i++) {
+            // 引号内的换行符和转义的引号不能被当作记录的边界
+            String text = i % 7 == 0 ? "line\n\"" + i + "\"\nline" : "text" + i;
+            table.addRow(row(new TypedValue(INT, i), i % 5 == 0 ? TypedValue.NULL : new TypedValue(STRING, text),
+                    i % 3 == 0 ? TypedValue.NULL : new TypedValue(DOUBLE, i / 4.0)));
+        }
+        File file = folder.newFile("t.csv");
+        CsvTableFile.write(table, file);
+
+        int splitSize = CsvTableFile.splitSize;
+        CsvTableFile.splitSize = 100;
+        ParallelLoader loader = new ParallelLoader(4);
+        try {
+            TableSource source = CsvTableFile.open(file, "t");
+            Table loaded = loader.run(Collections.<ParallelLoader.IOTask<Table>>singletonList(source::load)).get(0);
+            assertEquals(table.toString(), loaded.toString());
+            assertEquals(table.toString(), CsvTableFile.read(file, "t").toString());
+            // 各段的列拼接之后仍然可以继续追加
+            Row last = row(new TypedValue(INT, 1000), new TypedValue(STRING, "text1"), TypedValue.NULL);
+            table.addRow(last);
+            loaded.addRow(last);
+            assertEquals(table.toString(), loaded.toString());
+        } finally {
+            CsvTableFile.splitSize = splitSize;
+            loader.shutdown();
+        }
+    }
+
+    private static Row row(TypedValue... values) {
+        List<Cell> cells = new ArrayList<>();
+        for (TypedValue value : values) {
+            cells.add(new Cell(value));
+        }
+        return new Row(cells);
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.Cell;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.TypedValue;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.INT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExternalSorterTest {
+
+    @Test
+    public void spillTest() throws IOException {
+        Comparator<Row> byKey = Comparator.comparing(row -> row.getCell(0).getTypedValue());
+        List<String> expected = new ArrayList<>();
+        try (ExternalSorter sorter = new ExternalSorter(byKey, 3)) {
+            int[] keys = {5, 3, 5, 1, 3, 5, 0, 2};
+            for (int i = 0; i < keys.length; i++) {
+                sorter.add(row(keys[i], i));
+            }
+            assertEquals(2, sorter.getRunCount());
+
+            // 键相等的行保持插入顺序
+            for (int i : new int[]{6, 3, 7, 1, 4, 0, 2, 5}) {
+                expected.add(Arrays.asList(keys[i], i).toString());
+            }
+            List<String> actual = new ArrayList<>();
+            for (Iterator<Row> iterator = sorter.sorted(); iterator.hasNext(); ) {
+                Row row = iterator.next();
+                actual.add(Arrays.asList(row.getCell(0).getTypedValue().getValue(), row.getCell(1).getTypedValue().getValue()).toString());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void memoryBudgetTest() throws IOException {
+        Comparator<Row> byKey = Comparator.comparing(row -> row.getCell(0).getTypedValue());
+        // 每行大约 160 字节，预算只够 10 行左右；run 超过 64 个时会先归并
+        try (ExternalSorter sorter = new ExternalSorter(byKey, Integer.MAX_VALUE, 1600)) {
+            for (int i = 0; i < 10000; i++) {
+                sorter.add(row((i * 7919) % 1000, i));
+            }
+            assertTrue(sorter.getRunCount() > 64);
+            assertTrue(sorter.getSpilledBytes() > 10000 * 10);
+
+            int count = 0;
+            Row last = null;
+            for (Iterator<Row> iterator = sorter.sorted(); iterator.hasNext(); count++) {
+                Row row = iterator.next();
+                if (last != null) {
+                    int cmp = byKey.compare(last, row);
+                    assertTrue(cmp < 0 || cmp == 0 && last.getCell(1).getTypedValue().compareTo(row.getCell(1).getTypedValue()) < 0);
+                }
+                last = row;
+            }
+            assertEquals(10000, count);
+        }
+    }
+
+    private static Row row(int key, int index) {
+        return new Row(Arrays.asList(new Cell(new TypedValue(INT, key)), new Cell(new TypedValue(INT, index))));
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.afkbrb.sql.storage;
+
+import com.github.afkbrb.sql.model.Cell;
+import com.github.afkbrb.sql.model.Row;
+import com.github.afkbrb.sql.model.TypedValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static org.junit.Assert.assertEquals;
+
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replayTest() throws IOException {
+        File dbDir = folder.newFolder();
+        try (WriteAheadLog wal = new WriteAheadLog(dbDir)) {
+            wal.logInsert("student", row(new TypedValue(INT, 1), new TypedValue(STRING, "渣渣辉"), TypedValue.NULL));
+            wal.logInsert("student", row(new TypedValue(INT, 2), new TypedValue(STRING, "squanchy"), new TypedValue(DOUBLE, 66.6)));
+            wal.commit();
+            wal.logUpdate("student", 1, row(new TypedValue(INT, 2), new TypedValue(STRING, "abc"), new TypedValue(DOUBLE, 90.0)));
+            wal.logDelete("student", 0);
+            wal.commit();
+            wal.logDelete("student", 0); // 没有提交，不会被重放
+        }
+
+        List<String> events = new ArrayList<>();
+        int committed = WriteAheadLog.replay(dbDir, new RecordingHandler(events));
+        assertEquals(2, committed);
+        assertEquals(Arrays.asList(
+                "insert student [1, 渣渣辉, null]",
+                "insert student [2, squanchy, 66.6]",
+                "update student 1 [2, abc, 90.0]",
+                "delete student 0"), events);
+    }
+
+    @Test
+    public void tornTailTest() throws IOException {
+        File dbDir = folder.newFolder();
+        try (WriteAheadLog wal = new WriteAheadLog(dbDir)) {
+            wal.logInsert("t", row(new TypedValue(INT, 1)));
+            wal.commit();
+            wal.logInsert("t", row(new TypedValue(INT, 2)));
+            wal.commit();
+        }
+
+        // 模拟写到一半崩溃：截掉最后几个字节
+        File log = new File(dbDir, WriteAheadLog.FILE_NAME);
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        List<String> events = new ArrayList<>();
+        assertEquals(1, WriteAheadLog.replay(dbDir, new RecordingHandler(events)));
+        assertEquals(Arrays.asList("insert t [1]"), events);
+
+        // 损坏的尾部已被截掉，之后追加的记录可以正常重放
+        try (WriteAheadLog wal = new WriteAheadLog(dbDir)) {
+            wal.logInsert("t", row(new TypedValue(INT, 3)));
+            wal.commit();
+        }
+        events.clear();
+        assertEquals(2, WriteAheadLog.replay(dbDir, new RecordingHandler(events)));
+        assertEquals(Arrays.asList("insert t [1]", "insert t [3]"), events);
+    }
+
+    private static Row row(TypedValue... values) {
+        List<Cell> cells = new ArrayList<>();
+        for (TypedValue value : values) {
+            cells.add(new Cell(value));
+        }
+        return new Row(cells);
+    }
+
+    private static String format(Row row) {
+        List<String> values = new ArrayList<>();
+        for (Cell cell : row.getCells()) {
+            values.add(cell.getTypedValue().getValue().toString());
+        }
+        return values.toString();
+    }
+
+    private static class RecordingHandler implements WriteAheadLog.Handler {
+
+        private final List<String> events;
+
+        RecordingHandler(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void insert(String tableName, Row row) {
+            events.add("insert " + tableName + " " + format(row));
+        }
+
+        @Override
+        public void update(String tableName, int rowIndex, Row row) {
+            events.add("update " + tableName + " " + rowIndex + " " + format(row));
+        }
+
+        @Override
+        public void delete(String tableName, int rowIndex) {
+            events.add("delete " + tableName + " " + rowIndex);
+        }
+    }
+}
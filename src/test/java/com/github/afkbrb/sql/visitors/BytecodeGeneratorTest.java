@@ -0,0 +1,106 @@
+package com.github.afkbrb.sql.visitors;
+
+import com.github.afkbrb.sql.Lexer;
+import com.github.afkbrb.sql.Parser;
+import com.github.afkbrb.sql.SQLExecuteException;
+import com.github.afkbrb.sql.SQLParseException;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.model.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static org.junit.Assert.*;
+
+public class BytecodeGeneratorTest {
+
+    private Table table;
+
+    @Before
+    public void setup() {
+        List<Column> columns = new ArrayList<>();
+        columns.add(new Column(0, "id", INT, "t"));
+        columns.add(new Column(1, "grade", DOUBLE, "t"));
+        columns.add(new Column(2, "name", STRING, "t"));
+        table = new Table("t", columns);
+        addRow(new TypedValue(INT, 1), new TypedValue(DOUBLE, 2.5), new TypedValue(STRING, "a"));
+        addRow(new TypedValue(INT, 0), new TypedValue(DOUBLE, -0.0), TypedValue.NULL);
+        addRow(TypedValue.NULL, new TypedValue(DOUBLE, 7.0), new TypedValue(STRING, "b"));
+        addRow(new TypedValue(INT, -7), TypedValue.NULL, new TypedValue(STRING, "c"));
+        addRow(new TypedValue(INT, Integer.MIN_VALUE), new TypedValue(DOUBLE, 1e300), TypedValue.NULL);
+    }
+
+    @Test
+    public void sameAsRowEvaluatorTest() throws SQLParseException {
+        String[] expressions = {
+                "id", "grade", "1", "2.5", "id + 1", "id * grade", "id / 2", "grade / 2", "7 / id", "grade * grade - grade",
+                "-id", "+grade", "id > 0", "grade <= 2.5", "id = grade", "id != 0", "id >= -7", "grade < id",
+                "not id", "not grade", "id and grade", "id or grade", "id > 0 and 1 / id > 0", "id is null", "grade is not null",
+                "name is null", "(id + grade) is null", "not (id is null)", "grade between 0 and 10", "id between grade and 10",
+        };
+        for (String expression : expressions) {
+            Expression ast = parse(expression);
+            GeneratedEvaluator evaluator = BytecodeGenerator.generate(ast, table);
+            assertNotNull(expression, evaluator);
+            for (int i = 0; i < table.getRowCount(); i++) {
+                TypedValue expected = new RowEvaluator(null, table.getSchema(), table.getRow(i)).evaluate(ast);
+                double[] values = new double[table.getRowCount()];
+                boolean[] nulls = new boolean[table.getRowCount()];
+                try {
+                    evaluator.evaluate(vectors(), 0, new int[]{i}, 1, values, nulls);
+                } catch (SQLExecuteException e) {
+                    assertEquals(expression, expected, new TypedValue(ERROR, e.getMessage()));
+                    continue;
+                }
+                TypedValue actual;
+                if (nulls[i]) actual = TypedValue.NULL;
+                else if (evaluator.getDataType() == INT) actual = new TypedValue(INT, (int) values[i]);
+                else actual = new TypedValue(DOUBLE, values[i]);
+                assertEquals(expression + " at row " + i, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void unsupportedTest() throws SQLParseException {
+        for (String expression : new String[]{"name", "name = 'a'", "null", "upper(name)", "id in (1, 2)", "foo", "name like 'a%'"}) {
+            assertNull(expression, BytecodeGenerator.generate(parse(expression), table));
+        }
+    }
+
+    @Test
+    public void selectionTest() throws SQLParseException, SQLExecuteException {
+        // 只写 sel 中的位置
+        GeneratedEvaluator evaluator = BytecodeGenerator.generate(parse("id * 2"), table);
+        assertNotNull(evaluator);
+        double[] values = {-1, -1, -1, -1};
+        boolean[] nulls = new boolean[4];
+        evaluator.evaluate(vectors(), 1, new int[]{0, 2}, 2, values, nulls);
+        assertArrayEquals(new double[]{0, -1, -14, -1}, values, 0);
+        assertFalse(nulls[0] || nulls[1] || nulls[2] || nulls[3]);
+    }
+
+    private ColumnVector[] vectors() {
+        ColumnVector[] vectors = new ColumnVector[table.getColumnCount()];
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = table.getVector(i);
+        }
+        return vectors;
+    }
+
+    private void addRow(TypedValue... values) {
+        List<Cell> cells = new ArrayList<>();
+        for (TypedValue value : values) {
+            cells.add(new Cell(value));
+        }
+        table.addRow(new Row(cells));
+    }
+
+    private static Expression parse(String expression) throws SQLParseException {
+        return new Parser(new Lexer(new StringReader(expression))).expression();
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.afkbrb.sql.visitors;
+
+import com.github.afkbrb.sql.Lexer;
+import com.github.afkbrb.sql.Parser;
+import com.github.afkbrb.sql.SQLParseException;
+import com.github.afkbrb.sql.ast.expressions.Expression;
+import com.github.afkbrb.sql.model.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.afkbrb.sql.model.DataType.*;
+import static org.junit.Assert.assertEquals;
+
+public class ExpressionCompilerTest {
+
+    private Schema schema;
+    private List<Row> rows;
+
+    @Before
+    public void setup() {
+        List<Column> columnList = new ArrayList<>();
+        columnList.add(new Column(0, "id", INT, "a"));
+        columnList.add(new Column(1, "name", STRING, "a"));
+        columnList.add(new Column(2, "grade", DOUBLE, "a"));
+        columnList.add(new Column(3, "id", INT, "b"));
+        schema = new Schema(columnList);
+        rows = new ArrayList<>();
+        rows.add(row(new TypedValue(INT, 1), new TypedValue(STRING, "afk"), new TypedValue(DOUBLE, 233.3), new TypedValue(INT, 0)));
+        rows.add(row(TypedValue.NULL, new TypedValue(STRING, "a%b"), TypedValue.NULL, new TypedValue(INT, 2)));
+        rows.add(row(new TypedValue(INT, 0), TypedValue.NULL, new TypedValue(DOUBLE, -1.5), TypedValue.NULL));
+    }
+
+    @Test
+    public void sameAsRowEvaluatorTest() throws SQLParseException {
+        String[] expressions = {
+                "2333", "'x'", "null", "a.id", "b.id", "grade", "id", "c", "a.c", // 有歧义和找不到的列
+                "a.id + b.id * 2", "grade / b.id", "a.id / 0", "-grade", "+name", "not a.id", "not name",
+                "a.id > b.id", "name < 'b'", "name + 1", "name = grade",
+                "a.id and b.id", "a.id or 1 / 0", "b.id and name", "name or 1",
+                "a.id is null", "name is not null", "grade between 0 and 300", "name between 'a' and 1",
+                "a.id in (1, 2.0, 'x')", "name in ('afk', null)", "grade in (b.id, 1 / 0)",
+                "name like 'a%'", "name not like '_\\\\%_'", "name like name", "name like '\\\\x'", "grade like 'a'",
+                "name regexp 'f'", "name not regexp '^a'", "name regexp '('", "upper(name)", "lower(upper(name))",
+                "foo(1)", "count(*)", "a.*",
+        };
+        for (String expression : expressions) {
+            Expression ast = parse(expression);
+            CompiledExpression compiled = ExpressionCompiler.compile(null, schema, ast);
+            for (Row row : rows) {
+                assertEquals(expression, new RowEvaluator(null, schema, row).evaluate(ast), compiled.evaluate(row));
+            }
+        }
+    }
+
+    @Test
+    public void contextTest() throws SQLParseException {
+        // 外层查询的列每次求值时才查找
+        InheritedContext context = new InheritedContext();
+        List<Column> outerColumns = new ArrayList<>();
+        outerColumns.add(new Column(0, "outer_id", INT, "o"));
+        CompiledExpression compiled = ExpressionCompiler.compile(context, schema, parse("a.id + outer_id"));
+        assertEquals(new TypedValue(ERROR, "cannot find column with name outer_id"), compiled.evaluate(rows.get(0)));
+        context.push(new Schema(outerColumns), row(new TypedValue(INT, 10)));
+        assertEquals(new TypedValue(INT, 11), compiled.evaluate(rows.get(0)));
+        context.pop();
+        context.push(new Schema(outerColumns), row(new TypedValue(INT, 20)));
+        assertEquals(new TypedValue(INT, 21), compiled.evaluate(rows.get(0)));
+    }
+
+    private static Expression parse(String expression) throws SQLParseException {
+        return new Parser(new Lexer(new StringReader(expression))).expression();
+    }
+
+    private static Row row(TypedValue... values) {
+        List<Cell> cells = new ArrayList<>();
+        for (TypedValue value : values) {
+            cells.add(new Cell(value));
+        }
+        return new Row(cells);
+    }
+}